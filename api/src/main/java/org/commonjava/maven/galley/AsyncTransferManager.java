@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.ListingResult;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferBatch;
+import org.commonjava.maven.galley.model.VirtualResource;
+
+/**
+ * Non-blocking counterpart to {@link TransferManager}. Each operation returns at once with a {@link CompletableFuture}
+ * (a {@link java.util.concurrent.CompletionStage}), which completes on a Galley worker thread. Callers register
+ * callbacks on it instead of parking a thread of their own on every request.
+ * <br/>
+ * Results and failures are the same as for the matching {@link TransferManager} method. A failure completes the future
+ * exceptionally with the original {@link TransferException}. Cancelling the future interrupts the operation if it has
+ * started, or keeps it from starting otherwise.
+ * <br/>
+ * Streams passed to {@link #store} and {@link #publish} are read on the worker thread. The caller must leave them open
+ * until the future completes; they are not closed for you.
+ */
+public interface AsyncTransferManager
+{
+
+    /**
+     * @return a view of this manager whose operations fail if they haven't completed within the given time. A timed-out
+     * operation is cancelled. For single resources, the future fails with {@link TransferTimeoutException}; for
+     * virtual resources and batches, with {@link java.util.concurrent.TimeoutException}. A timeout of zero disables it.
+     */
+    AsyncTransferManager withTimeout( long timeout, TimeUnit unit );
+
+    CompletableFuture<Transfer> retrieve( ConcreteResource resource );
+
+    CompletableFuture<Transfer> retrieve( ConcreteResource resource, boolean suppressFailures,
+                                          EventMetadata eventMetadata );
+
+    CompletableFuture<Transfer> retrieveFirst( VirtualResource resource, EventMetadata eventMetadata );
+
+    CompletableFuture<List<Transfer>> retrieveAll( VirtualResource resource, EventMetadata eventMetadata );
+
+    <T extends TransferBatch> CompletableFuture<T> batchRetrieve( T batch, EventMetadata eventMetadata );
+
+    <T extends TransferBatch> CompletableFuture<T> batchRetrieveAll( T batch, EventMetadata eventMetadata );
+
+    CompletableFuture<Boolean> exists( ConcreteResource resource );
+
+    CompletableFuture<ListingResult> list( ConcreteResource resource, EventMetadata eventMetadata );
+
+    CompletableFuture<List<ListingResult>> listAll( VirtualResource resource, EventMetadata eventMetadata );
+
+    CompletableFuture<Transfer> store( ConcreteResource resource, InputStream stream, EventMetadata eventMetadata );
+
+    CompletableFuture<Boolean> publish( ConcreteResource resource, InputStream stream, long length, String contentType,
+                                        EventMetadata eventMetadata );
+
+    CompletableFuture<Boolean> delete( ConcreteResource resource, EventMetadata eventMetadata );
+
+}
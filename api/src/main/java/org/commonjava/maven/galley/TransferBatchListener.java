@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+
+/**
+ * Receives the results of a batch retrieval one resource at a time, as each finishes, instead of all at once when the
+ * whole batch is done. Calls come from the thread that runs the batch, one at a time, so implementations don't need to
+ * be thread-safe. They should return quickly, since the batch does not start more work while a callback runs.
+ */
+@FunctionalInterface
+public interface TransferBatchListener
+{
+
+    /**
+     * @param resource the location and path the content was found at
+     */
+    void transferCompleted( ConcreteResource resource, Transfer transfer );
+
+    /**
+     * Called for failures that the batch records in {@link org.commonjava.maven.galley.model.TransferBatch#getErrors()}.
+     */
+    default void transferFailed( ConcreteResource resource, TransferException error )
+    {
+    }
+
+}
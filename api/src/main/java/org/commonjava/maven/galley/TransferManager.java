@@ -31,6 +31,14 @@ public interface TransferManager
 
     static final String ALLOW_REMOTE_LISTING_DOWNLOAD = "Allow-remote-listing-download";
 
+    /**
+     * {@link EventMetadata} key. When set to {@link Boolean#TRUE}, retrieving content that is already cached asks the
+     * transport whether it changed instead of using the cached copy as-is. Transports that support it send a conditional
+     * request, and keep the cached copy when the remote reports it unchanged. If the check fails, the cached copy is
+     * still returned.
+     */
+    static final String REVALIDATE = "Revalidate-cached-content";
+
     <T extends TransferBatch> T batchRetrieve( T batch )
     throws TransferException;
 
@@ -43,6 +51,21 @@ public interface TransferManager
     <T extends TransferBatch> T batchRetrieveAll( T batch , EventMetadata eventMetadata  )
         throws TransferException;
 
+    /**
+     * Same as {@link #batchRetrieve(TransferBatch, EventMetadata)}, but also hands each result to the listener as soon
+     * as it is available.
+     */
+    <T extends TransferBatch> T batchRetrieve( T batch, EventMetadata eventMetadata, TransferBatchListener listener )
+        throws TransferException;
+
+    /**
+     * Same as {@link #batchRetrieveAll(TransferBatch, EventMetadata)}, but also hands each result to the listener as
+     * soon as it is available.
+     */
+    <T extends TransferBatch> T batchRetrieveAll( T batch, EventMetadata eventMetadata,
+                                                  TransferBatchListener listener )
+        throws TransferException;
+
     Transfer retrieveFirst( VirtualResource resource )
         throws TransferException;
 
@@ -28,6 +28,13 @@ import org.commonjava.maven.galley.model.ConcreteResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Single exclusive lock per resource, shared by readers and writers, guarded by one monitor.
+ *
+ * @deprecated use {@link StripedLockingSupport}, which lets readers share a resource and doesn't serialize unrelated
+ * resources behind one monitor.
+ */
+@Deprecated
 @ApplicationScoped
 public class SimpleLockingSupport
 {
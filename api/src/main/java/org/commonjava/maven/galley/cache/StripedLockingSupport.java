@@ -0,0 +1,645 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-resource read/write locks, for {@link org.commonjava.maven.galley.spi.cache.CacheProvider} implementations.
+ * <br/>
+ * Lock state is spread over a fixed number of stripes, each guarded by its own {@link ReentrantLock}, so threads
+ * working on unrelated resources rarely contend. Any number of threads may hold the read lock on a resource at once;
+ * the write lock excludes all other threads. Waiting writers hold off new readers, so a steady stream of reads can't
+ * starve a write. Each resource has its own wait condition, and only threads waiting on that resource are woken.
+ * <br/>
+ * The contract follows {@link SimpleLockingSupport}, which existing callers depend on:
+ * <ul>
+ *     <li>locks are owned by threads, and a thread re-acquiring a lock it holds returns immediately</li>
+ *     <li>holds are not counted; one unlock releases the thread's hold</li>
+ *     <li>unlocks from a thread that doesn't hold the lock are ignored</li>
+ *     <li>isReadLocked() / isWriteLocked() report locks held by <b>other</b> threads</li>
+ * </ul>
+ * Locks held by threads that have died are treated as released.
+ */
+@ApplicationScoped
+public class StripedLockingSupport
+{
+
+    public static final int DEFAULT_STRIPES = 64;
+
+    private static final long WAIT_LOG_MILLIS = 500;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Stripe[] stripes;
+
+    private ReportingTask reporter;
+
+    private final Timer timer = new Timer( true );
+
+    public StripedLockingSupport()
+    {
+        this( DEFAULT_STRIPES );
+    }
+
+    public StripedLockingSupport( final int stripeCount )
+    {
+        int size = 1;
+        while ( size < stripeCount )
+        {
+            size <<= 1;
+        }
+
+        stripes = new Stripe[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public void lockRead( final ConcreteResource resource )
+    {
+        acquire( resource, false, -1 );
+    }
+
+    public void lockWrite( final ConcreteResource resource )
+    {
+        acquire( resource, true, -1 );
+    }
+
+    /**
+     * @return true if the read lock was acquired before the timeout elapsed; false if it timed out, or if the thread was
+     * interrupted while waiting. An interrupt leaves the thread's interrupt flag set.
+     */
+    public boolean tryLockRead( final ConcreteResource resource, final long timeout, final TimeUnit unit )
+    {
+        return acquire( resource, false, Math.max( 0, unit.toNanos( timeout ) ) );
+    }
+
+    /**
+     * @return true if the write lock was acquired before the timeout elapsed; false if it timed out, or if the thread was
+     * interrupted while waiting. An interrupt leaves the thread's interrupt flag set.
+     */
+    public boolean tryLockWrite( final ConcreteResource resource, final long timeout, final TimeUnit unit )
+    {
+        return acquire( resource, true, Math.max( 0, unit.toNanos( timeout ) ) );
+    }
+
+    public void unlockRead( final ConcreteResource resource )
+    {
+        unlockRead( resource, Thread.currentThread() );
+    }
+
+    /**
+     * Release a read lock on behalf of the thread that acquired it, for streams that are opened on one thread and
+     * closed on another.
+     */
+    public void unlockRead( final ConcreteResource resource, final Thread owner )
+    {
+        final Stripe stripe = stripe( resource );
+        stripe.lock.lock();
+        try
+        {
+            final ResourceLock state = stripe.locks.get( resource );
+            if ( state != null && state.readers.remove( owner ) )
+            {
+                logger.debug( "Read-unlocked: {} by: {}", resource, owner.getName() );
+                state.signalWaiters();
+                stripe.removeIfIdle( resource, state );
+            }
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void unlockWrite( final ConcreteResource resource )
+    {
+        unlockWrite( resource, Thread.currentThread() );
+    }
+
+    /**
+     * Release a write lock on behalf of the thread that acquired it.
+     */
+    public void unlockWrite( final ConcreteResource resource, final Thread owner )
+    {
+        final Stripe stripe = stripe( resource );
+        stripe.lock.lock();
+        try
+        {
+            final ResourceLock state = stripe.locks.get( resource );
+            if ( state == null )
+            {
+                return;
+            }
+
+            if ( state.writer == owner )
+            {
+                logger.debug( "Write-unlocked: {} by: {}", resource, owner.getName() );
+                state.writer = null;
+                state.signalWaiters();
+                stripe.removeIfIdle( resource, state );
+            }
+            else if ( state.writer != null )
+            {
+                logger.debug( "{} write-locked by: {}. Not unlocking.", resource, state.writer.getName() );
+            }
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if a thread other than the caller holds the read lock on this resource
+     */
+    public boolean isReadLocked( final ConcreteResource resource )
+    {
+        final Thread me = Thread.currentThread();
+        final Stripe stripe = stripe( resource );
+        stripe.lock.lock();
+        try
+        {
+            final ResourceLock state = stripe.locks.get( resource );
+            return state != null && state.hasOtherReaders( me );
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if a thread other than the caller holds the write lock on this resource
+     */
+    public boolean isWriteLocked( final ConcreteResource resource )
+    {
+        final Thread me = Thread.currentThread();
+        final Stripe stripe = stripe( resource );
+        stripe.lock.lock();
+        try
+        {
+            final ResourceLock state = stripe.locks.get( resource );
+            return state != null && state.hasOtherWriter( me );
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the caller could take the read lock, i.e. no other thread is writing.
+     */
+    public void waitForReadUnlock( final ConcreteResource resource )
+    {
+        awaitAvailable( resource, false );
+    }
+
+    /**
+     * Wait until the caller could take the write lock, i.e. no other thread is reading or writing.
+     */
+    public void waitForWriteUnlock( final ConcreteResource resource )
+    {
+        awaitAvailable( resource, true );
+    }
+
+    public void cleanupCurrentThread()
+    {
+        final Thread me = Thread.currentThread();
+        for ( final Stripe stripe : stripes )
+        {
+            stripe.lock.lock();
+            try
+            {
+                for ( final Iterator<Map.Entry<ConcreteResource, ResourceLock>> it = stripe.locks.entrySet().iterator();
+                      it.hasNext(); )
+                {
+                    final Map.Entry<ConcreteResource, ResourceLock> entry = it.next();
+                    final ResourceLock state = entry.getValue();
+
+                    boolean changed = state.readers.remove( me );
+                    if ( state.writer == me )
+                    {
+                        state.writer = null;
+                        changed = true;
+                    }
+
+                    if ( changed )
+                    {
+                        logger.debug( "Cleaning up lock: {} for thread: {}", entry.getKey(), me.getName() );
+                        state.signalWaiters();
+                        if ( state.isIdle() )
+                        {
+                            it.remove();
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    public Map<ConcreteResource, CharSequence> getActiveLocks()
+    {
+        final Map<ConcreteResource, CharSequence> active = new HashMap<>();
+        for ( final Stripe stripe : stripes )
+        {
+            stripe.lock.lock();
+            try
+            {
+                stripe.locks.forEach( ( resource, state ) -> {
+                    final StringBuilder owner = new StringBuilder();
+                    if ( state.writer != null )
+                    {
+                        owner.append( "WRITE: " );
+                        describe( owner, state.writer );
+                    }
+
+                    for ( final Thread reader : state.readers )
+                    {
+                        if ( owner.length() > 0 )
+                        {
+                            owner.append( ", " );
+                        }
+                        owner.append( "READ: " );
+                        describe( owner, reader );
+                    }
+
+                    if ( owner.length() > 0 )
+                    {
+                        active.put( resource, owner );
+                    }
+                } );
+            }
+            finally
+            {
+                stripe.lock.unlock();
+            }
+        }
+
+        return active;
+    }
+
+    public synchronized void startReporting()
+    {
+        startReporting( 0, 10000 );
+    }
+
+    public synchronized void startReporting( final long delay, final long period )
+    {
+        if ( reporter == null )
+        {
+            logger.info( "Starting file-lock statistics reporting with initial delay: {}ms and period: {}ms", delay,
+                         period );
+            reporter = new ReportingTask();
+            timer.schedule( reporter, delay, period );
+        }
+    }
+
+    public synchronized void stopReporting()
+    {
+        if ( reporter != null )
+        {
+            logger.info( "Stopping file-lock statistics reporting." );
+            reporter.cancel();
+            reporter = null;
+        }
+    }
+
+    private boolean acquire( final ConcreteResource resource, final boolean write, final long timeoutNanos )
+    {
+        final Thread me = Thread.currentThread();
+        final Stripe stripe = stripe( resource );
+
+        boolean acquired = false;
+        boolean interrupted = false;
+
+        stripe.lock.lock();
+        try
+        {
+            ResourceLock state = stripe.locks.get( resource );
+            if ( state == null )
+            {
+                state = stripe.newResourceLock();
+                stripe.locks.put( resource, state );
+            }
+
+            if ( write )
+            {
+                state.waitingWriters++;
+            }
+
+            try
+            {
+                long remaining = timeoutNanos;
+                while ( !( write ? state.canWrite( me ) : state.canRead( me ) ) )
+                {
+                    if ( timeoutNanos >= 0 )
+                    {
+                        if ( remaining <= 0 || interrupted )
+                        {
+                            return false;
+                        }
+
+                        try
+                        {
+                            remaining = state.awaitNanos( remaining );
+                        }
+                        catch ( final InterruptedException e )
+                        {
+                            interrupted = true;
+                        }
+                    }
+                    else
+                    {
+                        logger.debug( "{} waiting for {} lock of {}", me.getName(), write ? "write" : "read",
+                                      resource );
+                        try
+                        {
+                            state.await( WAIT_LOG_MILLIS );
+                        }
+                        catch ( final InterruptedException e )
+                        {
+                            // keep waiting; the interrupt is re-asserted once we have the lock.
+                            interrupted = true;
+                        }
+                    }
+                }
+
+                if ( write )
+                {
+                    state.writer = me;
+                }
+                else if ( !state.readers.contains( me ) )
+                {
+                    state.readers.add( me );
+                }
+
+                acquired = true;
+                logger.debug( "{}-locked: {} in: {}", write ? "Write" : "Read", resource, me.getName() );
+                return true;
+            }
+            finally
+            {
+                if ( write )
+                {
+                    state.waitingWriters--;
+                    if ( !acquired )
+                    {
+                        // readers may have been holding off for us
+                        state.signalWaiters();
+                    }
+                }
+
+                if ( !acquired )
+                {
+                    stripe.removeIfIdle( resource, state );
+                }
+            }
+        }
+        finally
+        {
+            stripe.lock.unlock();
+            if ( interrupted )
+            {
+                me.interrupt();
+            }
+        }
+    }
+
+    private void awaitAvailable( final ConcreteResource resource, final boolean write )
+    {
+        final Thread me = Thread.currentThread();
+        final Stripe stripe = stripe( resource );
+        stripe.lock.lock();
+        try
+        {
+            final ResourceLock state = stripe.locks.get( resource );
+            if ( state == null )
+            {
+                return;
+            }
+
+            while ( write ? state.hasOtherWriter( me ) || state.hasOtherReaders( me ) : state.hasOtherWriter( me ) )
+            {
+                logger.debug( "{} waiting for unlock of {}", me.getName(), resource );
+                try
+                {
+                    state.await( WAIT_LOG_MILLIS );
+                }
+                catch ( final InterruptedException e )
+                {
+                    logger.debug( "{} interrupted while waiting for unlock of: {}", me.getName(), resource );
+                    me.interrupt();
+                    break;
+                }
+            }
+
+            stripe.removeIfIdle( resource, state );
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripe( final ConcreteResource resource )
+    {
+        int h = resource.hashCode();
+        h ^= ( h >>> 16 );
+        return stripes[h & ( stripes.length - 1 )];
+    }
+
+    private static void describe( final StringBuilder sb, final Thread thread )
+    {
+        sb.append( thread.getName() );
+        if ( !thread.isAlive() )
+        {
+            sb.append( " (DEAD)" );
+        }
+    }
+
+    private static final class Stripe
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Map<ConcreteResource, ResourceLock> locks = new HashMap<>();
+
+        ResourceLock newResourceLock()
+        {
+            return new ResourceLock( lock.newCondition() );
+        }
+
+        void removeIfIdle( final ConcreteResource resource, final ResourceLock state )
+        {
+            if ( state.isIdle() )
+            {
+                locks.remove( resource, state );
+            }
+        }
+    }
+
+    /**
+     * Lock state for a single resource. Only accessed while holding the owning stripe's lock.
+     */
+    private static final class ResourceLock
+    {
+        private final Condition changed;
+
+        // usually one or two threads; a list is cheaper to create and scan than a set
+        private final List<Thread> readers = new ArrayList<>( 2 );
+
+        private Thread writer;
+
+        private int waitingWriters;
+
+        private int waiters;
+
+        ResourceLock( final Condition changed )
+        {
+            this.changed = changed;
+        }
+
+        long awaitNanos( final long nanos )
+                throws InterruptedException
+        {
+            waiters++;
+            try
+            {
+                return changed.awaitNanos( nanos );
+            }
+            finally
+            {
+                waiters--;
+            }
+        }
+
+        void await( final long millis )
+                throws InterruptedException
+        {
+            awaitNanos( TimeUnit.MILLISECONDS.toNanos( millis ) );
+        }
+
+        void signalWaiters()
+        {
+            if ( waiters > 0 )
+            {
+                changed.signalAll();
+            }
+        }
+
+        boolean canRead( final Thread me )
+        {
+            if ( hasOtherWriter( me ) )
+            {
+                return false;
+            }
+
+            // give waiting writers priority over readers that don't already hold the lock
+            return waitingWriters == 0 || writer == me || readers.contains( me );
+        }
+
+        boolean canWrite( final Thread me )
+        {
+            return !hasOtherWriter( me ) && !hasOtherReaders( me );
+        }
+
+        boolean hasOtherWriter( final Thread me )
+        {
+            if ( writer != null && !writer.isAlive() )
+            {
+                writer = null;
+            }
+
+            return writer != null && writer != me;
+        }
+
+        boolean hasOtherReaders( final Thread me )
+        {
+            boolean others = false;
+            for ( final Iterator<Thread> it = readers.iterator(); it.hasNext(); )
+            {
+                final Thread reader = it.next();
+                if ( !reader.isAlive() )
+                {
+                    it.remove();
+                }
+                else if ( reader != me )
+                {
+                    others = true;
+                }
+            }
+
+            return others;
+        }
+
+        boolean isIdle()
+        {
+            return writer == null && readers.isEmpty() && waitingWriters == 0 && waiters == 0;
+        }
+    }
+
+    private final class ReportingTask
+        extends TimerTask
+    {
+        @Override
+        public void run()
+        {
+            final Map<ConcreteResource, CharSequence> activeLocks = getActiveLocks();
+            if ( activeLocks.isEmpty() )
+            {
+                logger.debug( "No file locks to report." );
+                return;
+            }
+
+            final StringBuilder sb = new StringBuilder();
+            sb.append( "\n\nThe following file locks are still active:" );
+            for ( final ConcreteResource file : activeLocks.keySet() )
+            {
+                sb.append( "\n" )
+                  .append( file )
+                  .append( " is owned by " )
+                  .append( activeLocks.get( file ) );
+            }
+
+            sb.append( "\n\n" );
+
+            logger.info( sb.toString() );
+        }
+    }
+
+}
@@ -32,12 +32,30 @@ public class TransportManagerConfig
 
     float DEFAULT_TIMEOUT_OVEREXTENSION_FACTOR = 1.25f;
 
+    long DEFAULT_HEDGE_DELAY_MILLIS = 500;
+
+    int DEFAULT_MAX_QUEUED_DOWNLOADS_PER_LOCATION = 1000;
+
+    int DEFAULT_MAX_INDEXED_LISTINGS = 10000;
+
     private long thresholdWaitRetrySize;
 
     private long waitRetryScalingIncrement;
 
     private float timeoutOverextensionFactor;
 
+    private int hedgeFanout;
+
+    private long hedgeDelayMillis = DEFAULT_HEDGE_DELAY_MILLIS;
+
+    private int maxRunningDownloads;
+
+    private int maxQueuedDownloadsPerLocation = DEFAULT_MAX_QUEUED_DOWNLOADS_PER_LOCATION;
+
+    private long listingIndexMaxAgeSeconds;
+
+    private int maxIndexedListings = DEFAULT_MAX_INDEXED_LISTINGS;
+
     public TransportManagerConfig()
     {
         thresholdWaitRetrySize = DEFAULT_THRESHOLD_WAIT_RETRY_SIZE;
@@ -65,4 +83,97 @@ public class TransportManagerConfig
     {
         return timeoutOverextensionFactor;
     }
+
+    /**
+     * Turn on hedged retrieveFirst(). While a location is slow to answer, up to <code>fanout</code> later locations are
+     * tried alongside it. A later location is started once the latest attempt has run longer than its location usually
+     * takes, according to recorded latencies, and never later than <code>maxDelayMillis</code>. A delay of zero starts
+     * all attempts at once. The earliest location with the file still wins, as long as it answers within the same delay
+     * of a later one.
+     *
+     * @param fanout how many extra locations may be in flight at once; zero (the default) turns hedging off
+     */
+    public TransportManagerConfig withHedging( final int fanout, final long maxDelayMillis )
+    {
+        this.hedgeFanout = fanout;
+        this.hedgeDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    public boolean isHedgingEnabled()
+    {
+        return hedgeFanout > 0;
+    }
+
+    public int getHedgeFanout()
+    {
+        return hedgeFanout;
+    }
+
+    public long getHedgeDelayMillis()
+    {
+        return hedgeDelayMillis;
+    }
+
+    /**
+     * Bound the download scheduler. Each location may also run at most its max-connections attribute worth of jobs.
+     *
+     * @param maxRunning download jobs handed to the executor at once; zero (the default) uses the executor's pool size
+     * @param maxQueuedPerLocation jobs a location may have waiting before new ones are refused; zero means no limit
+     */
+    public TransportManagerConfig withDownloadLimits( final int maxRunning, final int maxQueuedPerLocation )
+    {
+        this.maxRunningDownloads = maxRunning;
+        this.maxQueuedDownloadsPerLocation = maxQueuedPerLocation;
+        return this;
+    }
+
+    public int getMaxRunningDownloads()
+    {
+        return maxRunningDownloads;
+    }
+
+    public int getMaxQueuedDownloadsPerLocation()
+    {
+        return maxQueuedDownloadsPerLocation;
+    }
+
+    /**
+     * Answer existence checks from directory listings instead of a request per path. Listings come from remote list()
+     * calls, as the server returned them, and are trusted for <code>maxAgeSeconds</code> after they were taken. Paths
+     * in directories without a fresh listing are still checked remotely.
+     *
+     * @param maxAgeSeconds how long a listing is trusted; zero (the default) turns the index off
+     */
+    public TransportManagerConfig withListingIndex( final long maxAgeSeconds )
+    {
+        return withListingIndex( maxAgeSeconds, DEFAULT_MAX_INDEXED_LISTINGS );
+    }
+
+    /**
+     * @param maxAgeSeconds how long a listing is trusted; zero (the default) turns the index off
+     * @param maxListings how many directory listings to keep, across all locations; the least recently used are dropped
+     * @see #withListingIndex(long)
+     */
+    public TransportManagerConfig withListingIndex( final long maxAgeSeconds, final int maxListings )
+    {
+        this.listingIndexMaxAgeSeconds = maxAgeSeconds;
+        this.maxIndexedListings = maxListings;
+        return this;
+    }
+
+    public boolean isListingIndexEnabled()
+    {
+        return listingIndexMaxAgeSeconds > 0;
+    }
+
+    public long getListingIndexMaxAgeSeconds()
+    {
+        return listingIndexMaxAgeSeconds;
+    }
+
+    public int getMaxIndexedListings()
+    {
+        return maxIndexedListings;
+    }
 }
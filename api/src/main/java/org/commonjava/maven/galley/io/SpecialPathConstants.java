@@ -77,6 +77,20 @@ public class SpecialPathConstants
 
         standardSp.add( pi );
 
+        // bytes kept from an interrupted download. Not metadata about anything, just local state, so it's never
+        // listed, fetched or published itself.
+        pi = SpecialPathInfo.from( new FilePatternMatcher( ".*\\.to-resume$" ) )
+                            .setDecoratable( false )
+                            .setListable( false )
+                            .setPublishable( false )
+                            .setRetrievable( false )
+                            .setStorable( true )
+                            .setMetadata( false )
+                            .setMergable( false )
+                            .build();
+
+        standardSp.add( pi );
+
         pi = SpecialPathInfo.from( new FilePatternMatcher( "\\.listing\\.txt" ) )
                             .setDecoratable( false )
                             .setListable( false )
@@ -30,6 +30,8 @@ public interface Location
 
     String MAX_CONNECTIONS = "max-connections";
 
+    String NFC_TIMEOUT_SECONDS = "nfc-timeout";
+
     int DEFAULT_CONNECTION_TIMEOUT_SECONDS = 30;
 
     int DEFAULT_CACHE_TIMEOUT_SECONDS = 86400;
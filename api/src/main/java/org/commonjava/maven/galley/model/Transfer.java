@@ -29,6 +29,7 @@ import org.commonjava.maven.galley.util.TransferOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -156,7 +157,14 @@ public class Transfer
             InputStream stream = provider.openInputStream( resource );
             if ( stream == null )
             {
-                return null;
+                // a decorator may vouch for content that isn't stored; it supplies that content in decorateRead().
+                if ( decorator == null
+                        || decorator.decorateExists( this, eventMetadata ) != OverriddenBooleanValue.OVERRIDE_TRUE )
+                {
+                    return null;
+                }
+
+                stream = new ByteArrayInputStream( new byte[0] );
             }
 
             if ( fireEvents )
@@ -388,6 +396,16 @@ public class Transfer
         }
     }
 
+    /**
+     * Moves the stored content to the destination's path as-is. No decorators run and no events fire, so this is for
+     * bookkeeping files (such as the bytes kept from an interrupted download), not for publishing content.
+     */
+    public void moveTo( final Transfer destination )
+        throws IOException
+    {
+        provider.move( resource, destination.getResource() );
+    }
+
     public String[] list()
         throws IOException
     {
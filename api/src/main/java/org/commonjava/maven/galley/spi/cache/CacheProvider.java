@@ -32,6 +32,11 @@ public interface CacheProvider
 
     String SUFFIX_TO_WRITE = ".to-write";
 
+    /**
+     * Suffix of the bytes kept from an interrupted download, so a retry can pick up where it stopped.
+     */
+    String SUFFIX_TO_RESUME = ".to-resume";
+
     @Deprecated
     String STORAGE_PATH = "storage-path";
 
@@ -42,6 +47,7 @@ public interface CacheProvider
         {
             add( SUFFIX_TO_DELETE );
             add( SUFFIX_TO_WRITE );
+            add( SUFFIX_TO_RESUME );
         }
 
         private static final long serialVersionUID = 1L;
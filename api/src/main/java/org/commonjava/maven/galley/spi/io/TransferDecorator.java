@@ -67,6 +67,12 @@ public interface TransferDecorator
 
     void decorateTouch( Transfer transfer, EventMetadata metadata );
 
+    /**
+     * Override whether a {@link Transfer} exists. If this returns {@link OverriddenBooleanValue#OVERRIDE_TRUE} for a
+     * transfer that has nothing stored, {@link Transfer#openInputStream(boolean, EventMetadata)} opens it anyway,
+     * passing an empty stream to {@link #decorateRead(InputStream, Transfer, EventMetadata)}. The decorator that
+     * vouched for it is expected to replace that stream with the content.
+     */
     OverriddenBooleanValue decorateExists( Transfer transfer, EventMetadata metadata );
 
     /**
@@ -0,0 +1,462 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pulls the links out of an HTML page as it is read, without building a document. Each <code>&lt;a&gt;</code>
+ * element is handed to an {@link AnchorHandler} with its raw href and its text, once its end tag (or the next anchor,
+ * or the end of the page) is reached. Only the current anchor is held in memory, so directory pages with tens of
+ * thousands of entries are read in constant space.
+ * <br/>
+ * Comments, <code>&lt;script&gt;</code> and <code>&lt;style&gt;</code> contents are skipped. Common character
+ * references are decoded in hrefs and text, and whitespace in the text is collapsed, as browsers display it.
+ */
+public final class HtmlAnchorParser
+{
+
+    private static final Map<String, Character> ENTITIES = new HashMap<>();
+
+    static
+    {
+        ENTITIES.put( "amp", '&' );
+        ENTITIES.put( "lt", '<' );
+        ENTITIES.put( "gt", '>' );
+        ENTITIES.put( "quot", '"' );
+        ENTITIES.put( "apos", '\'' );
+        ENTITIES.put( "nbsp", '\u00a0' );
+    }
+
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    /**
+     * Receives the anchors found in a page.
+     */
+    @FunctionalInterface
+    public interface AnchorHandler
+    {
+        /**
+         * @param href the href attribute, or null if the anchor has none
+         * @param text the text inside the anchor, with whitespace collapsed and trimmed
+         */
+        void anchor( String href, String text );
+    }
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[8192];
+
+    private int pos;
+
+    private int limit;
+
+    private int pushback = -1;
+
+    private final StringBuilder text = new StringBuilder();
+
+    private boolean inAnchor;
+
+    private String href;
+
+    public HtmlAnchorParser( final Reader reader )
+    {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the page to the end, handing each anchor to the handler in document order.
+     */
+    public void parse( final AnchorHandler handler )
+            throws IOException
+    {
+        int c;
+        while ( ( c = read() ) != -1 )
+        {
+            if ( c == '<' )
+            {
+                markup( handler );
+            }
+            else if ( inAnchor )
+            {
+                if ( c == '&' )
+                {
+                    entity( text );
+                }
+                else
+                {
+                    text.append( (char) c );
+                }
+            }
+        }
+
+        endAnchor( handler );
+    }
+
+    private void markup( final AnchorHandler handler )
+            throws IOException
+    {
+        final int c = read();
+        if ( c == '!' )
+        {
+            if ( skipIf( '-' ) && skipIf( '-' ) )
+            {
+                skipPast( "-->" );
+            }
+            else
+            {
+                skipPast( ">" );
+            }
+        }
+        else if ( c == '?' )
+        {
+            skipPast( ">" );
+        }
+        else if ( c == '/' )
+        {
+            final String name = tagName();
+            if ( "a".equals( name ) )
+            {
+                endAnchor( handler );
+            }
+            skipPast( ">" );
+        }
+        else if ( isLetter( c ) )
+        {
+            unread( c );
+            final String name = tagName();
+            if ( "a".equals( name ) )
+            {
+                // anchors don't nest; a new one ends the last.
+                endAnchor( handler );
+                inAnchor = true;
+                href = attributes( "href" );
+            }
+            else
+            {
+                attributes( null );
+                if ( "script".equals( name ) || "style".equals( name ) )
+                {
+                    skipPast( "</" + name );
+                    skipPast( ">" );
+                }
+            }
+        }
+        else
+        {
+            // not markup after all, just a stray '<'.
+            if ( inAnchor )
+            {
+                text.append( '<' );
+            }
+            unread( c );
+        }
+    }
+
+    private void endAnchor( final AnchorHandler handler )
+    {
+        if ( inAnchor )
+        {
+            inAnchor = false;
+            handler.anchor( href, collapseWhitespace( text ) );
+            href = null;
+            text.setLength( 0 );
+        }
+    }
+
+    private String tagName()
+            throws IOException
+    {
+        final StringBuilder name = new StringBuilder();
+        int c;
+        while ( ( c = read() ) != -1 )
+        {
+            if ( !isLetter( c ) && !Character.isDigit( c ) )
+            {
+                unread( c );
+                break;
+            }
+            name.append( Character.toLowerCase( (char) c ) );
+        }
+
+        return name.toString();
+    }
+
+    /**
+     * Reads the attributes of a tag, through its closing '&gt;'.
+     *
+     * @param wanted the attribute to return the value of, or null to discard them all
+     * @return the first value of the wanted attribute, or null if it isn't there
+     */
+    private String attributes( final String wanted )
+            throws IOException
+    {
+        String value = null;
+        while ( true )
+        {
+            int c = skipWhitespace();
+            if ( c == -1 || c == '>' )
+            {
+                return value;
+            }
+            else if ( c == '/' )
+            {
+                continue;
+            }
+
+            final StringBuilder name = new StringBuilder();
+            do
+            {
+                name.append( Character.toLowerCase( (char) c ) );
+                c = read();
+            }
+            while ( c != -1 && c != '=' && c != '>' && c != '/' && !Character.isWhitespace( c ) );
+
+            if ( Character.isWhitespace( c ) )
+            {
+                c = skipWhitespace();
+            }
+
+            if ( c != '=' )
+            {
+                unread( c );
+                continue;
+            }
+
+            final boolean keep = value == null && name.toString().equals( wanted );
+            final StringBuilder attr = keep ? new StringBuilder() : null;
+            c = skipWhitespace();
+            if ( c == '"' || c == '\'' )
+            {
+                final int quote = c;
+                while ( ( c = read() ) != -1 && c != quote )
+                {
+                    appendAttributeChar( attr, c );
+                }
+            }
+            else
+            {
+                while ( c != -1 && c != '>' && !Character.isWhitespace( c ) )
+                {
+                    appendAttributeChar( attr, c );
+                    c = read();
+                }
+                unread( c );
+            }
+
+            if ( keep )
+            {
+                value = attr.toString();
+            }
+        }
+    }
+
+    private void appendAttributeChar( final StringBuilder attr, final int c )
+            throws IOException
+    {
+        if ( attr == null )
+        {
+            return;
+        }
+
+        if ( c == '&' )
+        {
+            entity( attr );
+        }
+        else
+        {
+            attr.append( (char) c );
+        }
+    }
+
+    /**
+     * Decodes a character reference, the '&amp;' having been read. Anything unrecognized is kept as written.
+     */
+    private void entity( final StringBuilder out )
+            throws IOException
+    {
+        final StringBuilder name = new StringBuilder();
+        int c;
+        while ( ( c = read() ) != -1 && name.length() < MAX_ENTITY_LENGTH
+                && ( Character.isLetterOrDigit( c ) || ( c == '#' && name.length() == 0 ) ) )
+        {
+            name.append( (char) c );
+        }
+
+        if ( c == ';' )
+        {
+            final int decoded = decode( name.toString() );
+            if ( decoded != -1 )
+            {
+                out.appendCodePoint( decoded );
+                return;
+            }
+        }
+
+        out.append( '&' ).append( name );
+        unread( c );
+    }
+
+    private static int decode( final String name )
+    {
+        if ( name.startsWith( "#" ) && name.length() > 1 )
+        {
+            try
+            {
+                final int codePoint;
+                if ( name.charAt( 1 ) == 'x' || name.charAt( 1 ) == 'X' )
+                {
+                    codePoint = Integer.parseInt( name.substring( 2 ), 16 );
+                }
+                else
+                {
+                    codePoint = Integer.parseInt( name.substring( 1 ) );
+                }
+
+                return Character.isValidCodePoint( codePoint ) ? codePoint : -1;
+            }
+            catch ( final NumberFormatException e )
+            {
+                return -1;
+            }
+        }
+
+        final Character c = ENTITIES.get( name.toLowerCase( Locale.ROOT ) );
+        return c == null ? -1 : c;
+    }
+
+    private static String collapseWhitespace( final CharSequence raw )
+    {
+        final StringBuilder sb = new StringBuilder( raw.length() );
+        boolean space = false;
+        for ( int i = 0; i < raw.length(); i++ )
+        {
+            final char c = raw.charAt( i );
+            if ( Character.isWhitespace( c ) )
+            {
+                space = sb.length() > 0;
+            }
+            else
+            {
+                if ( space )
+                {
+                    sb.append( ' ' );
+                    space = false;
+                }
+                sb.append( c );
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private boolean skipIf( final char expected )
+            throws IOException
+    {
+        final int c = read();
+        if ( c == expected )
+        {
+            return true;
+        }
+
+        unread( c );
+        return false;
+    }
+
+    /**
+     * Skips to just after the next occurrence of the marker, ignoring case, or to the end of the page.
+     */
+    private void skipPast( final String marker )
+            throws IOException
+    {
+        int matched = 0;
+        int c;
+        while ( matched < marker.length() && ( c = read() ) != -1 )
+        {
+            final char lower = Character.toLowerCase( (char) c );
+            if ( lower == marker.charAt( matched ) )
+            {
+                matched++;
+            }
+            else if ( matched > 0 )
+            {
+                // fall back to the longest part of the marker that still ends here, as in "--->".
+                final String seen = marker.substring( 0, matched ) + lower;
+                matched = 0;
+                for ( int len = seen.length() - 1; len > 0; len-- )
+                {
+                    if ( seen.endsWith( marker.substring( 0, len ) ) )
+                    {
+                        matched = len;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private int skipWhitespace()
+            throws IOException
+    {
+        int c;
+        do
+        {
+            c = read();
+        }
+        while ( c != -1 && Character.isWhitespace( c ) );
+
+        return c;
+    }
+
+    private static boolean isLetter( final int c )
+    {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' );
+    }
+
+    private int read()
+            throws IOException
+    {
+        if ( pushback != -1 )
+        {
+            final int c = pushback;
+            pushback = -1;
+            return c;
+        }
+
+        if ( pos == limit )
+        {
+            limit = reader.read( buffer, 0, buffer.length );
+            pos = 0;
+            if ( limit < 1 )
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[pos++];
+    }
+
+    private void unread( final int c )
+    {
+        pushback = c;
+    }
+
+}
@@ -18,14 +18,29 @@ package org.commonjava.maven.galley.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Base for the output stream decorators around cached content. Unlike {@link FilterOutputStream}, buffers are passed
+ * down whole instead of one byte at a time. It is also a {@link WritableByteChannel}: a {@link ByteBuffer} written here
+ * goes down through the other decorators that extend this class, and into the file's channel when the innermost
+ * stream is a {@link FileOutputStream}.
+ * <br/>
+ * Subclasses that look at the data must override both {@link #write(byte[], int, int)} and {@link #write(ByteBuffer)}.
+ */
 public class IdempotentCloseOutputStream
         extends FilterOutputStream
+        implements WritableByteChannel
 {
+    private static final int COPY_CHUNK_SIZE = 8192;
+
     private AtomicBoolean closed = new AtomicBoolean( false );
 
     protected IdempotentCloseOutputStream( final OutputStream out )
@@ -33,6 +48,62 @@ public class IdempotentCloseOutputStream
         super( out );
     }
 
+    @Override
+    public void write( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        out.write( b, off, len );
+    }
+
+    @Override
+    public int write( final ByteBuffer src )
+            throws IOException
+    {
+        final int len = src.remaining();
+        if ( out instanceof WritableByteChannel )
+        {
+            writeFully( (WritableByteChannel) out, src );
+        }
+        else if ( out instanceof FileOutputStream )
+        {
+            // the file's channel shares its position with the stream, and closing the stream closes it.
+            final FileChannel channel = ( (FileOutputStream) out ).getChannel();
+            writeFully( channel, src );
+        }
+        else if ( src.hasArray() )
+        {
+            out.write( src.array(), src.arrayOffset() + src.position(), len );
+            src.position( src.limit() );
+        }
+        else
+        {
+            final byte[] chunk = new byte[Math.min( len, COPY_CHUNK_SIZE )];
+            while ( src.hasRemaining() )
+            {
+                final int n = Math.min( chunk.length, src.remaining() );
+                src.get( chunk, 0, n );
+                out.write( chunk, 0, n );
+            }
+        }
+
+        return len;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return !closed.get();
+    }
+
+    private static void writeFully( final WritableByteChannel channel, final ByteBuffer src )
+            throws IOException
+    {
+        while ( src.hasRemaining() )
+        {
+            channel.write( src );
+        }
+    }
+
     @Override
     public void close()
             throws IOException
@@ -56,4 +56,9 @@ public final class LocationUtils
         return location.getAttribute( Location.METADATA_TIMEOUT_SECONDS, Integer.class,
                                       Location.DEFAULT_CACHE_TIMEOUT_SECONDS );
     }
+
+    public static int getNfcTimeoutSeconds( final Location location, final int defaultTimeoutSeconds )
+    {
+        return location.getAttribute( Location.NFC_TIMEOUT_SECONDS, Integer.class, defaultTimeoutSeconds );
+    }
 }
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class StripedLockingSupportTest
+{
+
+    private final StripedLockingSupport locks = new StripedLockingSupport( 4 );
+
+    private final ConcreteResource resource =
+            new ConcreteResource( new SimpleLocation( "test", "http://127.0.0.1/repo" ), "org/foo/foo.pom" );
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void tryLockWriteTimesOutWhileOtherThreadReads()
+            throws Exception
+    {
+        assertThat( executor.submit( () -> locks.tryLockRead( resource, 1, TimeUnit.SECONDS ) )
+                            .get( 5, TimeUnit.SECONDS ), equalTo( true ) );
+
+        assertThat( locks.tryLockWrite( resource, 100, TimeUnit.MILLISECONDS ), equalTo( false ) );
+        assertThat( locks.isReadLocked( resource ), equalTo( true ) );
+        assertThat( locks.isWriteLocked( resource ), equalTo( false ) );
+    }
+
+    @Test
+    public void waitingWriterHoldsOffNewReaders()
+            throws Exception
+    {
+        locks.lockRead( resource );
+
+        final Future<Boolean> writer = executor.submit( () -> {
+            locks.lockWrite( resource );
+            locks.unlockWrite( resource );
+            return true;
+        } );
+
+        // let the writer queue up behind our read lock
+        Thread.sleep( 100 );
+
+        assertThat( executor.submit( () -> locks.tryLockRead( resource, 100, TimeUnit.MILLISECONDS ) )
+                            .get( 5, TimeUnit.SECONDS ), equalTo( false ) );
+
+        // re-entering a lock we already hold must not wait for the queued writer.
+        assertThat( locks.tryLockRead( resource, 0, TimeUnit.MILLISECONDS ), equalTo( true ) );
+
+        locks.unlockRead( resource );
+        assertThat( writer.get( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( locks.getActiveLocks().isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void readLockReleasedOnBehalfOfOwner()
+            throws Exception
+    {
+        final Thread owner = executor.submit( () -> {
+            locks.lockRead( resource );
+            return Thread.currentThread();
+        } ).get( 5, TimeUnit.SECONDS );
+
+        // an unlock from a thread that doesn't hold the lock is ignored
+        locks.unlockRead( resource );
+        assertThat( locks.isReadLocked( resource ), equalTo( true ) );
+
+        locks.unlockRead( resource, owner );
+        assertThat( locks.isReadLocked( resource ), equalTo( false ) );
+        assertThat( locks.tryLockWrite( resource, 0, TimeUnit.MILLISECONDS ), equalTo( true ) );
+    }
+
+    @Test
+    public void locksOfDeadThreadsAreReleased()
+            throws Exception
+    {
+        final Thread t = new Thread( () -> locks.lockWrite( resource ) );
+        t.start();
+        t.join();
+
+        assertThat( locks.tryLockRead( resource, 1, TimeUnit.SECONDS ), equalTo( true ) );
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class HtmlAnchorParserTest
+{
+
+    @Test
+    public void readsHrefAndTextOfEachAnchor()
+            throws Exception
+    {
+        final String page = "<html><body><pre>\n<A HREF=\"../\">../</A>\n"
+                + "<a class='file' href='foo-1.0.pom'>foo-1.0.pom</a>   2014-01-01 10:00  1k\n"
+                + "<a href=foo-1.0.jar >foo-1.0.jar</a>\n</pre></body></html>";
+
+        assertThat( parse( page ), equalTo( Arrays.asList( "../ -> ../", "foo-1.0.pom -> foo-1.0.pom",
+                                                           "foo-1.0.jar -> foo-1.0.jar" ) ) );
+    }
+
+    @Test
+    public void skipsCommentsScriptsAndStyles()
+            throws Exception
+    {
+        final String page = "<!DOCTYPE html><!-- <a href=\"commented\">x</a> --->"
+                + "<script>if ( a<b ) { document.write( '<a href=\"scripted\">y</a>' ); }</script>"
+                + "<style>a > b { color: red; }</STYLE>" + "<a href=\"real/\">real/</a>";
+
+        assertThat( parse( page ), equalTo( Arrays.asList( "real/ -> real/" ) ) );
+    }
+
+    @Test
+    public void decodesReferencesAndCollapsesWhitespace()
+            throws Exception
+    {
+        final String page = "<a href=\"a&amp;b%20c.jar\" title=\"x > y\">\n  a&amp;b <img src=\"i.png\"/>&#32;c&#x2e;jar  \n</a>"
+                + "<a href=\"d.txt\">d &bogus; e</a>";
+
+        assertThat( parse( page ), equalTo( Arrays.asList( "a&b%20c.jar -> a&b c.jar", "d.txt -> d &bogus; e" ) ) );
+    }
+
+    @Test
+    public void unclosedAnchorsEndAtNextAnchorOrEndOfPage()
+            throws Exception
+    {
+        final String page = "<a href=\"one\">one<a>two</a><a href=\"three\">three";
+
+        assertThat( parse( page ), equalTo( Arrays.asList( "one -> one", "null -> two", "three -> three" ) ) );
+    }
+
+    @Test
+    public void readsPagesLargerThanItsBuffer()
+            throws Exception
+    {
+        final StringBuilder page = new StringBuilder( "<html><body>" );
+        final List<String> expected = new ArrayList<>();
+        for ( int i = 0; i < 20000; i++ )
+        {
+            page.append( "<a href=\"artifact-" ).append( i ).append( "/\">artifact-" ).append( i ).append( "/</a>\n" );
+            expected.add( "artifact-" + i + "/ -> artifact-" + i + "/" );
+        }
+        page.append( "</body></html>" );
+
+        assertThat( parse( page.toString() ), equalTo( expected ) );
+    }
+
+    private List<String> parse( final String page )
+            throws Exception
+    {
+        final List<String> anchors = new ArrayList<>();
+        new HtmlAnchorParser( new StringReader( page ) ).parse( ( href, text ) -> anchors.add( href + " -> " + text ) );
+        return anchors;
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class IdempotentCloseOutputStreamTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void buffersPassThroughDecoratorsToFileChannel()
+            throws Exception
+    {
+        final File file = temp.newFile( "out.bin" );
+        final byte[] data = "some content to write through the decorators".getBytes();
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect( data.length );
+        direct.put( data ).flip();
+
+        try (IdempotentCloseOutputStream stream = new IdempotentCloseOutputStream(
+                new IdempotentCloseOutputStream( new FileOutputStream( file ) ) ))
+        {
+            assertThat( stream.isOpen(), equalTo( true ) );
+            assertThat( stream.write( direct ), equalTo( data.length ) );
+            stream.write( data, 0, 4 );
+        }
+
+        final byte[] expected = Arrays.copyOf( data, data.length + 4 );
+        System.arraycopy( data, 0, expected, data.length, 4 );
+        assertThat( Arrays.equals( FileUtils.readFileToByteArray( file ), expected ), equalTo( true ) );
+    }
+
+    @Test
+    public void arraysAreWrittenWholeNotByteByByte()
+            throws Exception
+    {
+        final AtomicInteger singleByteWrites = new AtomicInteger();
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final OutputStream counting = new OutputStream()
+        {
+            @Override
+            public void write( final int b )
+                    throws IOException
+            {
+                singleByteWrites.incrementAndGet();
+                sink.write( b );
+            }
+
+            @Override
+            public void write( final byte[] b, final int off, final int len )
+            {
+                sink.write( b, off, len );
+            }
+        };
+
+        final byte[] data = new byte[1024];
+        try (IdempotentCloseOutputStream stream = new IdempotentCloseOutputStream( counting ))
+        {
+            stream.write( data );
+            stream.write( ByteBuffer.wrap( data ) );
+        }
+
+        assertThat( singleByteWrites.get(), equalTo( 0 ) );
+        assertThat( sink.size(), equalTo( 2048 ) );
+    }
+}
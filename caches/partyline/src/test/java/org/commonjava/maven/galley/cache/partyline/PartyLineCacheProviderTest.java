@@ -58,4 +58,11 @@ public class PartyLineCacheProviderTest
     {
         return provider;
     }
+
+    @Override
+    protected boolean supportsExplicitLocking()
+    {
+        // lock/unlock calls are no-ops; JoinableFileManager handles locking when streams are opened.
+        return false;
+    }
 }
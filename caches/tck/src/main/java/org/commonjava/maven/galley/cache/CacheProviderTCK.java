@@ -33,10 +33,18 @@ import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.apache.commons.lang.StringUtils.join;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 public abstract class CacheProviderTCK
 {
@@ -44,6 +52,15 @@ public abstract class CacheProviderTCK
     protected abstract CacheProvider getCacheProvider()
         throws Exception;
 
+    /**
+     * Providers that leave locking to their storage layer (and implement lockRead() / lockWrite() as no-ops) can
+     * override this to skip the tests of explicit lock semantics.
+     */
+    protected boolean supportsExplicitLocking()
+    {
+        return true;
+    }
+
     @Test
     public void lockThenWaitForLockReturnsImmediatelyInSameThread()
         throws Exception
@@ -200,6 +217,81 @@ public abstract class CacheProviderTCK
         assertThat( result, equalTo( content ) );
     }
 
+    @Test
+    public void writeMoveAndReadNewFile()
+        throws Exception
+    {
+        final String content = "This is a test";
+
+        final Location loc = new SimpleLocation( "http://foo.com" );
+        final ConcreteResource from = new ConcreteResource( loc, "/path/to/my/file.txt.to-resume" );
+        final ConcreteResource to = new ConcreteResource( loc, "/path/to/my/file.txt" );
+
+        final CacheProvider provider = getCacheProvider();
+        final OutputStream out = provider.openOutputStream( from );
+        out.write( content.getBytes( "UTF-8" ) );
+        out.close();
+
+        provider.move( from, to );
+
+        assertThat( provider.exists( from ), equalTo( false ) );
+        try (InputStream in = provider.openInputStream( to ))
+        {
+            assertThat( IOUtils.toString( in, "UTF-8" ), equalTo( content ) );
+        }
+    }
+
+    @Test
+    public void moveOverFileWaitsForOpenReader()
+        throws Exception
+    {
+        final Location loc = new SimpleLocation( "http://foo.com" );
+        final ConcreteResource from = new ConcreteResource( loc, "/path/to/my/file.txt.to-resume" );
+        final ConcreteResource to = new ConcreteResource( loc, "/path/to/my/file.txt" );
+
+        final CacheProvider provider = getCacheProvider();
+        try (OutputStream out = provider.openOutputStream( to ))
+        {
+            out.write( "old content".getBytes( "UTF-8" ) );
+        }
+        try (OutputStream out = provider.openOutputStream( from ))
+        {
+            out.write( "new content".getBytes( "UTF-8" ) );
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            final Future<?> move;
+            try (InputStream in = provider.openInputStream( to ))
+            {
+                move = executor.submit( () -> {
+                    provider.move( from, to );
+                    return null;
+                } );
+
+                if ( supportsExplicitLocking() )
+                {
+                    assertBlocked( move );
+                }
+
+                assertThat( IOUtils.toString( in, "UTF-8" ), equalTo( "old content" ) );
+            }
+
+            move.get( 10, TimeUnit.SECONDS );
+
+            assertThat( provider.exists( from ), equalTo( false ) );
+            try (InputStream in = provider.openInputStream( to ))
+            {
+                assertThat( IOUtils.toString( in, "UTF-8" ), equalTo( "new content" ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void writeCopyAndReadNewFile()
         throws Exception
@@ -232,4 +324,141 @@ public abstract class CacheProviderTCK
         assertThat( result, equalTo( content ) );
     }
 
+
+    @Test
+    public void concurrentReadersShareResource()
+        throws Exception
+    {
+        final Location loc = new SimpleLocation( "http://foo.com" );
+        final ConcreteResource res = new ConcreteResource( loc, "/path/to/shared.txt" );
+
+        final CacheProvider provider = getCacheProvider();
+        final OutputStream out = provider.openOutputStream( res );
+        out.write( "This is a test".getBytes( "UTF-8" ) );
+        out.close();
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        final CountDownLatch opened = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        try
+        {
+            executor.submit( () -> {
+                try (InputStream in = provider.openInputStream( res ))
+                {
+                    opened.countDown();
+                    release.await();
+                }
+                return null;
+            } );
+
+            assertThat( opened.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+
+            // a second reader must not wait for the first one to close its stream.
+            final Future<String> second = executor.submit( () -> {
+                try (InputStream in = provider.openInputStream( res ))
+                {
+                    return IOUtils.toString( in, "UTF-8" );
+                }
+            } );
+
+            assertThat( second.get( 10, TimeUnit.SECONDS ), equalTo( "This is a test" ) );
+        }
+        finally
+        {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void readLocksAreSharedButExcludeWriters()
+        throws Exception
+    {
+        assumeTrue( supportsExplicitLocking() );
+
+        final ConcreteResource res = new ConcreteResource( new SimpleLocation( "http://foo.com" ), "my/path.txt" );
+        final CacheProvider cache = getCacheProvider();
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            cache.lockRead( res );
+
+            final Future<Boolean> reader = executor.submit( () -> {
+                cache.lockRead( res );
+                try
+                {
+                    return cache.isReadLocked( res );
+                }
+                finally
+                {
+                    cache.unlockRead( res );
+                }
+            } );
+
+            assertThat( reader.get( 10, TimeUnit.SECONDS ), equalTo( true ) );
+
+            final Future<?> writer = executor.submit( () -> cache.waitForWriteUnlock( res ) );
+            assertBlocked( writer );
+
+            cache.unlockRead( res );
+            writer.get( 10, TimeUnit.SECONDS );
+        }
+        finally
+        {
+            cache.unlockRead( res );
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void writeLockBlocksReadersInOtherThreads()
+        throws Exception
+    {
+        assumeTrue( supportsExplicitLocking() );
+
+        final ConcreteResource res = new ConcreteResource( new SimpleLocation( "http://foo.com" ), "my/path.txt" );
+        final CacheProvider cache = getCacheProvider();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            cache.lockWrite( res );
+
+            assertThat( executor.submit( () -> cache.isWriteLocked( res ) ).get( 10, TimeUnit.SECONDS ),
+                        equalTo( true ) );
+
+            final Future<?> reader = executor.submit( () -> {
+                cache.lockRead( res );
+                cache.unlockRead( res );
+            } );
+            assertBlocked( reader );
+
+            cache.unlockWrite( res );
+            reader.get( 10, TimeUnit.SECONDS );
+
+            assertThat( cache.isWriteLocked( res ), equalTo( false ) );
+            assertThat( cache.isReadLocked( res ), equalTo( false ) );
+        }
+        finally
+        {
+            cache.unlockWrite( res );
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertBlocked( final Future<?> future )
+        throws Exception
+    {
+        try
+        {
+            future.get( 250, TimeUnit.MILLISECONDS );
+            fail( "Should have been blocked by lock in another thread" );
+        }
+        catch ( final TimeoutException e )
+        {
+            // expected
+        }
+    }
+
 }
@@ -21,8 +21,10 @@ import org.commonjava.maven.galley.auth.MemoryPasswordManager;
 import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.config.TransportMetricConfig;
 import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.ChecksummingTransferDecorator;
 import org.commonjava.maven.galley.io.HashedLocationPathGenerator;
 import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.checksum.DigestIndex;
 import org.commonjava.maven.galley.maven.ArtifactManager;
 import org.commonjava.maven.galley.maven.internal.defaults.StandardMaven304PluginDefaults;
 import org.commonjava.maven.galley.maven.internal.defaults.StandardMaven350PluginDefaults;
@@ -34,6 +36,7 @@ import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
 import org.commonjava.maven.galley.spi.auth.PasswordManager;
 import org.commonjava.maven.galley.spi.event.FileEventManager;
 import org.commonjava.maven.galley.spi.io.PathGenerator;
+import org.commonjava.maven.galley.spi.io.SpecialPathManager;
 import org.commonjava.maven.galley.spi.io.TransferDecorator;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import org.commonjava.maven.galley.spi.transport.TransportManager;
@@ -43,6 +46,7 @@ import org.commonjava.maven.galley.transport.htcli.HttpImpl;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Default;
+import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 
@@ -59,6 +63,15 @@ public class EmbeddableCDIProducer
     @Inject
     private XMLInfrastructure xml;
 
+    @Inject
+    private SpecialPathManager specialPathManager;
+
+    /**
+     * If the application produces a {@link DigestIndex}, everything written to the cache is checksummed into it.
+     */
+    @Inject
+    private Instance<DigestIndex> digestIndex;
+
     private NotFoundCache nfc;
 
 //    private LocationExpander locationExpander;
@@ -89,7 +102,16 @@ public class EmbeddableCDIProducer
     public void postConstruct()
     {
         fileEventManager = new NoOpFileEventManager();
-        transferDecorator = new NoOpTransferDecorator();
+        if ( digestIndex.isUnsatisfied() )
+        {
+            transferDecorator = new NoOpTransferDecorator();
+        }
+        else
+        {
+            transferDecorator =
+                    ChecksummingTransferDecorator.forDigestIndex( specialPathManager, digestIndex.get(), null );
+        }
+
         pathGenerator = new HashedLocationPathGenerator();
         nfc = new MemoryNotFoundCache();
 //        locationExpander = new NoOpLocationExpander();
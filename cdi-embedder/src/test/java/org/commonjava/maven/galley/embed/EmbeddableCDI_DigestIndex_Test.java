@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.embed;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.io.checksum.DigestIndex;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.apache.commons.codec.digest.DigestUtils.shaHex;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * {@link TestCDIProvider} produces a {@link DigestIndex}, so the embedder checksums downloads into it.
+ */
+@RunWith(WeldJUnit4Runner.class)
+@ApplicationScoped
+public class EmbeddableCDI_DigestIndex_Test extends AbstractEmbeddableCDIProducerTest
+{
+    private ExpectationServer server = new ExpectationServer();
+
+    @Inject
+    private TransferManager transfers;
+
+    @Before
+    public void before()
+            throws IOException
+    {
+        server.start();
+    }
+
+    @After
+    public void after()
+    {
+        if ( server != null )
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void downloadChecksumsAreIndexed()
+            throws Exception
+    {
+        String path = "/path/to/file.txt";
+        String content = "this is a test.";
+
+        server.expect( path, 200, content );
+
+        Transfer transfer =
+                transfers.retrieve( new ConcreteResource( new SimpleLocation( server.getBaseUri() ), path ) );
+
+        assertThat( transfer, notNullValue() );
+
+        File dir = transfer.getDetachedFile().getParentFile();
+        assertThat( new File( dir, DigestIndex.DEFAULT_INDEX_FILE ).exists(), equalTo( true ) );
+        assertThat( new File( dir, "file.txt.sha1" ).exists(), equalTo( false ) );
+
+        InputStream stream = null;
+        try
+        {
+            stream = transfer.getSiblingMeta( ".sha1" ).openInputStream();
+            assertThat( stream, notNullValue() );
+            assertThat( IOUtils.toString( stream ), equalTo( shaHex( content ) ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( stream );
+        }
+    }
+
+}
@@ -22,6 +22,7 @@ import org.commonjava.maven.galley.cache.partyline.PartyLineCacheProvider;
 import org.commonjava.maven.galley.config.TransportMetricConfig;
 import org.commonjava.maven.galley.filearc.FileTransportConfig;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.DigestIndex;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.spi.event.FileEventManager;
 import org.commonjava.maven.galley.spi.io.PathGenerator;
@@ -66,6 +67,8 @@ public class TestCDIProvider
 
     private MetricRegistry metricRegistry;
 
+    private DigestIndex digestIndex = new DigestIndex();
+
     private TransportMetricConfig transportMetricConfig = new TransportMetricConfig()
     {
         public boolean isEnabled() {
@@ -178,6 +181,13 @@ public class TestCDIProvider
         return metricRegistry;
     }
 
+    @Produces
+    @Default
+    public DigestIndex getDigestIndex()
+    {
+        return digestIndex;
+    }
+
     @Produces
     @Default
     public TransportMetricConfig getTransportMetricConfig()
@@ -62,6 +62,9 @@ public class GalleyCore
     @Inject
     private TransferManager transferManager;
 
+    @Inject
+    private AsyncTransferManager asyncTransferManager;
+
     @Inject
     private Instance<Transport> injectedTransports;
 
@@ -90,6 +93,17 @@ public class GalleyCore
                        final TransferManager transferManager, final List<Transport> transports,
                        final ExecutorService handlerExecutor, final ExecutorService batchExecutor,
                        final PasswordManager passwordManager )
+    {
+        this( locationExpander, locationResolver, decorator, events, cache, nfc, transportManager, transferManager,
+              null, transports, handlerExecutor, batchExecutor, passwordManager );
+    }
+
+    public GalleyCore( final LocationExpander locationExpander, final LocationResolver locationResolver,
+                       final TransferDecoratorManager decorator, final FileEventManager events, final CacheProvider cache,
+                       final NotFoundCache nfc, final TransportManager transportManager,
+                       final TransferManager transferManager, final AsyncTransferManager asyncTransferManager,
+                       final List<Transport> transports, final ExecutorService handlerExecutor,
+                       final ExecutorService batchExecutor, final PasswordManager passwordManager )
     {
         this.locationExpander = locationExpander;
         this.locationResolver = locationResolver;
@@ -99,6 +113,7 @@ public class GalleyCore
         this.nfc = nfc;
         this.transportManager = transportManager;
         this.transferManager = transferManager;
+        this.asyncTransferManager = asyncTransferManager;
         this.transports = transports;
         this.handlerExecutor = handlerExecutor;
         this.batchExecutor = batchExecutor;
@@ -163,6 +178,11 @@ public class GalleyCore
         return transferManager;
     }
 
+    public AsyncTransferManager getAsyncTransferManager()
+    {
+        return asyncTransferManager;
+    }
+
     public List<Transport> getEnabledTransports()
     {
         return transports;
@@ -20,15 +20,18 @@ import org.commonjava.maven.galley.auth.MemoryPasswordManager;
 import org.commonjava.maven.galley.cache.CacheProviderFactory;
 import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.internal.AsyncTransferManagerImpl;
 import org.commonjava.maven.galley.internal.TransferManagerImpl;
 import org.commonjava.maven.galley.internal.xfer.DownloadHandler;
 import org.commonjava.maven.galley.internal.xfer.ExistenceHandler;
 import org.commonjava.maven.galley.internal.xfer.ListingHandler;
 import org.commonjava.maven.galley.internal.xfer.UploadHandler;
+import org.commonjava.maven.galley.io.ChecksummingTransferDecorator;
 import org.commonjava.maven.galley.io.HashedLocationPathGenerator;
 import org.commonjava.maven.galley.io.NoOpTransferDecorator;
 import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.DigestIndex;
 import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
 import org.commonjava.maven.galley.spi.auth.PasswordManager;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
@@ -49,6 +52,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -76,6 +80,8 @@ public class GalleyCoreBuilder
 
     private TransferManager transferManager;
 
+    private AsyncTransferManager asyncTransferManager;
+
     private List<Transport> transports;
 
     private SpecialPathManager specialPathManager;
@@ -84,12 +90,18 @@ public class GalleyCoreBuilder
 
     private ExecutorService batchExecutor;
 
+    private ExecutorService asyncExecutor;
+
     private PasswordManager passwordManager;
 
     private PathGenerator pathGenerator;
 
     private CacheProviderFactory cacheProviderFactory;
 
+    private DigestIndex digestIndex;
+
+    private Executor digestExecutor;
+
     public GalleyCoreBuilder(){}
 
     public GalleyCoreBuilder( CacheProviderFactory cacheProviderFactory )
@@ -109,7 +121,8 @@ public class GalleyCoreBuilder
         }
 
         return new GalleyCore( locationExpander, locationResolver, decorator, events, cache, nfc, transportManager,
-                               transferManager, transports, handlerExecutor, batchExecutor, passwordManager );
+                               transferManager, asyncTransferManager, transports, handlerExecutor, batchExecutor,
+                               passwordManager );
     }
 
     public void initMissingComponents()
@@ -123,9 +136,28 @@ public class GalleyCoreBuilder
         handlerExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory( "transfer-handlers", true, 4 ) );
         batchExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory( "transfer-batches", true, 4 ) );
 
+        if ( specialPathManager == null )
+        {
+            specialPathManager = new SpecialPathManagerImpl();
+        }
+
         if ( decorator == null )
         {
-            decorator = new TransferDecoratorManager( new NoOpTransferDecorator() );
+            if ( digestIndex != null )
+            {
+                decorator = new TransferDecoratorManager(
+                        ChecksummingTransferDecorator.forDigestIndex( specialPathManager, digestIndex,
+                                                                      digestExecutor ) );
+            }
+            else
+            {
+                decorator = new TransferDecoratorManager( new NoOpTransferDecorator() );
+            }
+        }
+        else if ( digestIndex != null )
+        {
+            throw new GalleyInitException( "A digest index can't be added to a supplied TransferDecoratorManager. "
+                                                   + "Give its ChecksummingTransferDecorator the index instead." );
         }
 
         if ( events == null )
@@ -148,11 +180,6 @@ public class GalleyCoreBuilder
         final ListingHandler lh = new ListingHandler( getNfc() );
         final ExistenceHandler eh = new ExistenceHandler( getNfc() );
 
-        if ( specialPathManager == null )
-        {
-            specialPathManager = new SpecialPathManagerImpl();
-        }
-
         if ( pathGenerator == null )
         {
             pathGenerator = new HashedLocationPathGenerator();
@@ -174,7 +201,17 @@ public class GalleyCoreBuilder
         {
             transferManager =
                     new TransferManagerImpl( transportManager, getCache(), getNfc(), getFileEvents(), dh, uh, lh, eh,
-                                             specialPathManager, batchExecutor );
+                                             specialPathManager, batchExecutor, transportManagerConfig );
+        }
+
+        if ( asyncTransferManager == null )
+        {
+            if ( asyncExecutor == null )
+            {
+                asyncExecutor = Executors.newFixedThreadPool( 4, new NamedThreadFactory( "transfer-async", true, 4 ) );
+            }
+
+            asyncTransferManager = new AsyncTransferManagerImpl( transferManager, asyncExecutor );
         }
 
         if ( locationExpander == null )
@@ -205,6 +242,39 @@ public class GalleyCoreBuilder
         return this;
     }
 
+    public DigestIndex getDigestIndex()
+    {
+        return digestIndex;
+    }
+
+    /**
+     * Checksum everything written to the cache, keeping the checksums in this index instead of in <code>.md5</code>,
+     * <code>.sha1</code>, ... sidecar files. Can't be combined with
+     * {@link #withTransferDecorator(TransferDecoratorManager)}.
+     *
+     * @see ChecksummingTransferDecorator#forDigestIndex(SpecialPathManager, DigestIndex, Executor)
+     */
+    public GalleyCoreBuilder withDigestIndex( final DigestIndex digestIndex )
+    {
+        this.digestIndex = digestIndex;
+        return this;
+    }
+
+    public Executor getDigestExecutor()
+    {
+        return digestExecutor;
+    }
+
+    /**
+     * Calculate the checksums set up by {@link #withDigestIndex(DigestIndex)} on this executor, concurrently with the
+     * I/O.
+     */
+    public GalleyCoreBuilder withDigestExecutor( final Executor digestExecutor )
+    {
+        this.digestExecutor = digestExecutor;
+        return this;
+    }
+
     public PasswordManager getPasswordManager()
     {
         return passwordManager;
@@ -305,6 +375,17 @@ public class GalleyCoreBuilder
         return this;
     }
 
+    public AsyncTransferManager getAsyncTransferManager()
+    {
+        return asyncTransferManager;
+    }
+
+    public GalleyCoreBuilder withAsyncTransferManager( final AsyncTransferManager asyncTransferManager )
+    {
+        this.asyncTransferManager = asyncTransferManager;
+        return this;
+    }
+
     public List<Transport> getEnabledTransports()
     {
         return transports;
@@ -344,6 +425,17 @@ public class GalleyCoreBuilder
         return this;
     }
 
+    public ExecutorService getAsyncExecutor()
+    {
+        return asyncExecutor;
+    }
+
+    public GalleyCoreBuilder withAsyncExecutor( final ExecutorService asyncExecutor )
+    {
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
     public LocationResolver getLocationResolver()
     {
         return locationResolver;
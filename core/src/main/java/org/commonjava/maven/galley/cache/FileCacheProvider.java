@@ -36,13 +36,14 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class FileCacheProvider
     implements CacheProvider, CacheProvider.AdminView
@@ -50,7 +51,7 @@ public class FileCacheProvider
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
-    private final Map<ConcreteResource, Transfer> transferCache = new ConcurrentHashMap<>( 10000 );
+    private final TransferCache transferCache;
 
     private FileCacheProviderConfig config;
 
@@ -60,7 +61,10 @@ public class FileCacheProvider
 
     private TransferDecoratorManager transferDecorator;
 
-    private final SimpleLockingSupport lockingSupport = new SimpleLockingSupport();
+    private final StripedLockingSupport lockingSupport = new StripedLockingSupport();
+
+    private final Function<ConcreteResource, Transfer> newTransfer =
+            r -> new Transfer( r, this, fileEventManager, transferDecorator );
 
     public FileCacheProvider( final File cacheBasedir, final PathGenerator pathGenerator, final FileEventManager fileEventManager,
                               final TransferDecoratorManager transferDecorator, final boolean aliasLinking )
@@ -69,6 +73,7 @@ public class FileCacheProvider
         this.fileEventManager = fileEventManager;
         this.transferDecorator = transferDecorator;
         this.config = new FileCacheProviderConfig( cacheBasedir ).withAliasLinking( aliasLinking );
+        this.transferCache = new TransferCache( config.getTransferCacheSize() );
     }
 
     public FileCacheProvider( final FileCacheProviderConfig config, final PathGenerator pathGenerator, final FileEventManager fileEventManager,
@@ -78,6 +83,7 @@ public class FileCacheProvider
         this.pathGenerator = pathGenerator;
         this.fileEventManager = fileEventManager;
         this.transferDecorator = transferDecorator;
+        this.transferCache = new TransferCache( config.getTransferCacheSize() );
     }
 
     public FileCacheProvider( final File cacheBasedir, final PathGenerator pathGenerator, final FileEventManager fileEventManager,
@@ -177,9 +183,20 @@ public class FileCacheProvider
         final File targetFile = getDetachedFile( resource );
         if ( !targetFile.exists() )
         {
+            // nothing will close a stream for us, so don't leave the read lock behind to block writers.
+            unlockRead( resource );
             return null;
         }
-        return new UnlockInputStream( resource, this, new FileInputStream( targetFile ) );
+
+        try
+        {
+            return new UnlockInputStream( resource, new FileInputStream( targetFile ) );
+        }
+        catch ( final IOException e )
+        {
+            unlockRead( resource );
+            throw e;
+        }
     }
 
     @Override
@@ -188,18 +205,42 @@ public class FileCacheProvider
     {
         waitForWriteUnlock( resource );
         lockWrite( resource );
-        final File targetFile = getDetachedFile( resource );
+        final Thread owner = Thread.currentThread();
 
-        final File dir = targetFile.getParentFile();
-        if ( !dir.isDirectory() && !dir.mkdirs() )
+        final File targetFile;
+        final File downloadFile;
+        final FileOutputStream stream;
+        try
         {
-            throw new IOException( "Cannot create directory: " + dir );
-        }
+            targetFile = getDetachedFile( resource );
 
-        final File downloadFile = new File( targetFile.getPath() + CacheProvider.SUFFIX_TO_WRITE );
-        final FileOutputStream stream = new FileOutputStream( downloadFile );
+            final File dir = targetFile.getParentFile();
+            // writers to sibling paths can race to create the same parent, so only fail if it's still missing afterward
+            if ( !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory() )
+            {
+                throw new IOException( "Cannot create directory: " + dir );
+            }
+
+            downloadFile = new File( targetFile.getPath() + CacheProvider.SUFFIX_TO_WRITE );
+            stream = new FileOutputStream( downloadFile );
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            // no stream will be closed to release it, and readers would wait on it forever.
+            lockingSupport.unlockWrite( resource, owner );
+            throw e;
+        }
 
-        return new AtomicFileOutputStreamWrapper( targetFile, downloadFile, stream );
+        return new AtomicFileOutputStreamWrapper( targetFile, downloadFile, stream,
+                                                  new AtomicFileOutputStreamWrapper.AtomicStreamCallbacks()
+                                                  {
+                                                      @Override
+                                                      public void afterClose()
+                                                      {
+                                                          // readers may share the file once it's renamed into place
+                                                          lockingSupport.unlockWrite( resource, owner );
+                                                      }
+                                                  } );
     }
 
     @Override
@@ -217,6 +258,41 @@ public class FileCacheProvider
         FileUtils.copyFile( getDetachedFile( from ), getDetachedFile( to ) );
     }
 
+    @Override
+    public void move( final ConcreteResource from, final ConcreteResource to )
+        throws IOException
+    {
+        final File source = getDetachedFile( from );
+        final File target = getDetachedFile( to );
+
+        // take both write locks in path order, so two moves between the same pair of files can't deadlock.
+        final boolean sourceFirst = source.getPath().compareTo( target.getPath() ) <= 0;
+        final ConcreteResource first = sourceFirst ? from : to;
+        final ConcreteResource second = sourceFirst ? to : from;
+
+        waitForWriteUnlock( first );
+        lockWrite( first );
+        try
+        {
+            waitForWriteUnlock( second );
+            lockWrite( second );
+            try
+            {
+                // a rename, rather than the copy-and-delete default, since this may move a large partial download.
+                target.getParentFile().mkdirs();
+                Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            finally
+            {
+                unlockWrite( second );
+            }
+        }
+        finally
+        {
+            unlockWrite( first );
+        }
+    }
+
     @SuppressWarnings( "RedundantThrows" )
     @Override
     public boolean delete( final ConcreteResource resource )
@@ -314,16 +390,9 @@ public class FileCacheProvider
     }
 
     @Override
-    public synchronized Transfer getTransfer( final ConcreteResource resource )
+    public Transfer getTransfer( final ConcreteResource resource )
     {
-        Transfer t = transferCache.get( resource );
-        if ( t == null )
-        {
-            t = new Transfer( resource, this, fileEventManager, transferDecorator );
-            transferCache.put( resource, t );
-        }
-
-        return t;
+        return transferCache.get( resource, newTransfer );
     }
 
     @Override
@@ -347,49 +416,49 @@ public class FileCacheProvider
     @Override
     public boolean isReadLocked( final ConcreteResource resource )
     {
-        return lockingSupport.isLocked( resource );
+        return lockingSupport.isReadLocked( resource );
     }
 
     @Override
     public boolean isWriteLocked( final ConcreteResource resource )
     {
-        return lockingSupport.isLocked( resource );
+        return lockingSupport.isWriteLocked( resource );
     }
 
     @Override
     public void unlockRead( final ConcreteResource resource )
     {
-        lockingSupport.unlock( resource );
+        lockingSupport.unlockRead( resource );
     }
 
     @Override
     public void unlockWrite( final ConcreteResource resource )
     {
-        lockingSupport.unlock( resource );
+        lockingSupport.unlockWrite( resource );
     }
 
     @Override
     public void lockRead( final ConcreteResource resource )
     {
-        lockingSupport.lock( resource );
+        lockingSupport.lockRead( resource );
     }
 
     @Override
     public void lockWrite( final ConcreteResource resource )
     {
-        lockingSupport.lock( resource );
+        lockingSupport.lockWrite( resource );
     }
 
     @Override
     public void waitForWriteUnlock( final ConcreteResource resource )
     {
-        lockingSupport.waitForUnlock( resource );
+        lockingSupport.waitForWriteUnlock( resource );
     }
 
     @Override
     public void waitForReadUnlock( final ConcreteResource resource )
     {
-        lockingSupport.waitForUnlock( resource );
+        lockingSupport.waitForReadUnlock( resource );
     }
 
     @Override
@@ -421,14 +490,13 @@ public class FileCacheProvider
     {
         private final ConcreteResource resource;
 
-        private final FileCacheProvider fileCacheProvider;
+        private final Thread owner;
 
-        public UnlockInputStream( ConcreteResource resource, FileCacheProvider fileCacheProvider,
-                                  FileInputStream fileInputStream )
+        public UnlockInputStream( ConcreteResource resource, FileInputStream fileInputStream )
         {
             super( fileInputStream );
             this.resource = resource;
-            this.fileCacheProvider = fileCacheProvider;
+            this.owner = Thread.currentThread();
         }
 
         @Override
@@ -441,7 +509,8 @@ public class FileCacheProvider
             }
             finally
             {
-                fileCacheProvider.unlockRead( resource );
+                // streams may be handed off and closed elsewhere; release the lock taken by the opening thread.
+                lockingSupport.unlockRead( resource, owner );
             }
         }
     }
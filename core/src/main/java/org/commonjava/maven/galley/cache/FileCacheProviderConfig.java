@@ -19,8 +19,12 @@ import java.io.File;
 
 public class FileCacheProviderConfig
 {
+    public static final int DEFAULT_TRANSFER_CACHE_SIZE = 10000;
+
     private Boolean aliasLinking;
 
+    private Integer transferCacheSize;
+
     private final File cacheBasedir;
 
     public FileCacheProviderConfig( final File cacheBasedir )
@@ -34,11 +38,22 @@ public class FileCacheProviderConfig
         return this;
     }
 
+    public FileCacheProviderConfig withTransferCacheSize( final int transferCacheSize )
+    {
+        this.transferCacheSize = transferCacheSize;
+        return this;
+    }
+
     public boolean isAliasLinking()
     {
         return aliasLinking == null ? true : aliasLinking;
     }
 
+    public int getTransferCacheSize()
+    {
+        return transferCacheSize == null ? DEFAULT_TRANSFER_CACHE_SIZE : transferCacheSize;
+    }
+
     public File getCacheBasedir()
     {
         return cacheBasedir;
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+
+/**
+ * Bounded, lock-free interning cache of {@link Transfer} instances, so that callers looking up the same resource share
+ * a Transfer (and the monitor {@link FileCacheProvider#getDetachedFile(ConcreteResource)} synchronizes on) while it's
+ * in use.
+ * <br/>
+ * Values are held through {@link SoftReference}s, so the GC can reclaim idle Transfers under memory pressure. Size is
+ * capped at maxSize entries using CLOCK (second-chance) eviction: a hit marks the entry as referenced, and the eviction
+ * sweep spares referenced entries once, clearing the mark. Lookups that hit never lock or allocate.
+ */
+public class TransferCache
+{
+
+    private final ConcurrentMap<ConcreteResource, TransferRef> transfers;
+
+    private final ReferenceQueue<Transfer> collected = new ReferenceQueue<>();
+
+    private final Queue<TransferRef> clock = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public TransferCache( final int maxSize )
+    {
+        if ( maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "Transfer cache size must be positive. Got: " + maxSize );
+        }
+
+        this.maxSize = maxSize;
+        this.transfers = new ConcurrentHashMap<>( Math.min( maxSize, 16384 ) );
+    }
+
+    /**
+     * Return the cached Transfer for this resource, or create and cache one using the given factory. If several
+     * threads race to create the same Transfer, all of them get the instance that was cached first.
+     */
+    public Transfer get( final ConcreteResource resource, final Function<ConcreteResource, Transfer> factory )
+    {
+        TransferRef ref = transfers.get( resource );
+        if ( ref != null )
+        {
+            final Transfer cached = ref.get();
+            if ( cached != null )
+            {
+                ref.touch();
+                hits.increment();
+                return cached;
+            }
+        }
+
+        misses.increment();
+
+        final Transfer created = factory.apply( resource );
+        final TransferRef fresh = new TransferRef( resource, created, collected );
+        while ( true )
+        {
+            if ( ref == null )
+            {
+                ref = transfers.putIfAbsent( resource, fresh );
+                if ( ref == null )
+                {
+                    break;
+                }
+            }
+
+            final Transfer existing = ref.get();
+            if ( existing != null )
+            {
+                ref.touch();
+                return existing;
+            }
+
+            // the cached one was collected; swap ours in, unless someone else already did.
+            if ( transfers.replace( resource, ref, fresh ) )
+            {
+                break;
+            }
+
+            ref = transfers.get( resource );
+        }
+
+        clock.offer( fresh );
+        queued.incrementAndGet();
+
+        expungeCollected();
+        evict();
+
+        return created;
+    }
+
+    public void clear()
+    {
+        transfers.clear();
+        clock.clear();
+        queued.set( 0 );
+    }
+
+    public int size()
+    {
+        return transfers.size();
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    private void expungeCollected()
+    {
+        Reference<? extends Transfer> r;
+        while ( ( r = collected.poll() ) != null )
+        {
+            final TransferRef ref = (TransferRef) r;
+            transfers.remove( ref.resource, ref );
+        }
+    }
+
+    /**
+     * Sweep the clock until it holds no more than maxSize entries. Entries that were collected or replaced are dropped
+     * as the sweep reaches them; live entries are only evicted while the map itself is over its bound. The sweep visits
+     * each queued entry at most once, so a sweep that only finds live entries within the bound can't spin.
+     */
+    private void evict()
+    {
+        int budget = queued.get();
+        while ( queued.get() > maxSize && budget-- > 0 )
+        {
+            final TransferRef ref = clock.poll();
+            if ( ref == null )
+            {
+                return;
+            }
+
+            queued.decrementAndGet();
+
+            if ( transfers.get( ref.resource ) != ref || ref.get() == null )
+            {
+                transfers.remove( ref.resource, ref );
+                continue;
+            }
+
+            if ( ref.referenced || transfers.size() <= maxSize )
+            {
+                ref.referenced = false;
+                clock.offer( ref );
+                queued.incrementAndGet();
+                continue;
+            }
+
+            if ( transfers.remove( ref.resource, ref ) )
+            {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static final class TransferRef
+        extends SoftReference<Transfer>
+    {
+        private final ConcreteResource resource;
+
+        // racy by design; a lost update only costs the entry its second chance.
+        private boolean referenced;
+
+        TransferRef( final ConcreteResource resource, final Transfer transfer, final ReferenceQueue<Transfer> queue )
+        {
+            super( transfer, queue );
+            this.resource = resource;
+        }
+
+        void touch()
+        {
+            if ( !referenced )
+            {
+                referenced = true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.maven.galley.AsyncTransferManager;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.ListingResult;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferBatch;
+import org.commonjava.maven.galley.model.VirtualResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs {@link TransferManager} operations on a worker pool and hands back futures. Operations queue for a worker
+ * instead of holding a caller thread each, so the number of threads blocked on I/O is set by the pool size rather
+ * than by the number of callers.
+ * <br/>
+ * The pool must not be the one that {@link TransferManager} uses for batches, since batch operations wait on it.
+ */
+@ApplicationScoped
+public class AsyncTransferManagerImpl
+    implements AsyncTransferManager
+{
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private TransferManager transferManager;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( threads = 12, named = "galley-async", priority = 8 )
+    private ExecutorService executor;
+
+    private ScheduledExecutorService timeouts;
+
+    private long timeoutMillis;
+
+    @SuppressWarnings( "unused" )
+    protected AsyncTransferManagerImpl()
+    {
+    }
+
+    public AsyncTransferManagerImpl( final TransferManager transferManager, final ExecutorService executor )
+    {
+        this.transferManager = transferManager;
+        this.executor = executor;
+        init();
+    }
+
+    private AsyncTransferManagerImpl( final AsyncTransferManagerImpl parent, final long timeoutMillis )
+    {
+        this.transferManager = parent.transferManager;
+        this.executor = parent.executor;
+        this.timeouts = parent.timeouts;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        timeouts = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "galley-async-timeouts", true, 8 ) );
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        timeouts.shutdownNow();
+    }
+
+    @Override
+    public AsyncTransferManager withTimeout( final long timeout, final TimeUnit unit )
+    {
+        return new AsyncTransferManagerImpl( this, unit.toMillis( timeout ) );
+    }
+
+    @Override
+    public CompletableFuture<Transfer> retrieve( final ConcreteResource resource )
+    {
+        return retrieve( resource, false, new EventMetadata() );
+    }
+
+    @Override
+    public CompletableFuture<Transfer> retrieve( final ConcreteResource resource, final boolean suppressFailures,
+                                                 final EventMetadata eventMetadata )
+    {
+        return submit( resource, resource,
+                       () -> transferManager.retrieve( resource, suppressFailures, eventMetadata ) );
+    }
+
+    @Override
+    public CompletableFuture<Transfer> retrieveFirst( final VirtualResource resource, final EventMetadata eventMetadata )
+    {
+        return submit( null, resource, () -> transferManager.retrieveFirst( resource, eventMetadata ) );
+    }
+
+    @Override
+    public CompletableFuture<List<Transfer>> retrieveAll( final VirtualResource resource,
+                                                          final EventMetadata eventMetadata )
+    {
+        return submit( null, resource, () -> transferManager.retrieveAll( resource, eventMetadata ) );
+    }
+
+    @Override
+    public <T extends TransferBatch> CompletableFuture<T> batchRetrieve( final T batch,
+                                                                         final EventMetadata eventMetadata )
+    {
+        return submit( null, batch, () -> transferManager.batchRetrieve( batch, eventMetadata ) );
+    }
+
+    @Override
+    public <T extends TransferBatch> CompletableFuture<T> batchRetrieveAll( final T batch,
+                                                                            final EventMetadata eventMetadata )
+    {
+        return submit( null, batch, () -> transferManager.batchRetrieveAll( batch, eventMetadata ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists( final ConcreteResource resource )
+    {
+        return submit( resource, resource, () -> transferManager.exists( resource ) );
+    }
+
+    @Override
+    public CompletableFuture<ListingResult> list( final ConcreteResource resource, final EventMetadata eventMetadata )
+    {
+        return submit( resource, resource, () -> transferManager.list( resource, eventMetadata ) );
+    }
+
+    @Override
+    public CompletableFuture<List<ListingResult>> listAll( final VirtualResource resource,
+                                                           final EventMetadata eventMetadata )
+    {
+        return submit( null, resource, () -> transferManager.listAll( resource, eventMetadata ) );
+    }
+
+    @Override
+    public CompletableFuture<Transfer> store( final ConcreteResource resource, final InputStream stream,
+                                              final EventMetadata eventMetadata )
+    {
+        return submit( resource, resource, () -> transferManager.store( resource, stream, eventMetadata ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> publish( final ConcreteResource resource, final InputStream stream,
+                                               final long length, final String contentType,
+                                               final EventMetadata eventMetadata )
+    {
+        return submit( resource, resource,
+                       () -> transferManager.publish( resource, stream, length, contentType, eventMetadata ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete( final ConcreteResource resource, final EventMetadata eventMetadata )
+    {
+        return submit( resource, resource, () -> transferManager.delete( resource, eventMetadata ) );
+    }
+
+    public long getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param resource used to build a {@link TransferTimeoutException} on timeout; if null, a plain
+     * {@link TimeoutException} is used
+     * @param target what the operation works on, for error messages
+     */
+    private <T> CompletableFuture<T> submit( final ConcreteResource resource, final Object target,
+                                             final Callable<T> operation )
+    {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final FutureTask<Void> task = new FutureTask<>( () -> {
+            try
+            {
+                result.complete( operation.call() );
+            }
+            catch ( final Throwable e )
+            {
+                result.completeExceptionally( e );
+            }
+        }, null );
+
+        // cancellation (by the caller or by a timeout) stops the worker, or keeps the task from starting.
+        result.whenComplete( ( value, error ) -> {
+            if ( result.isCompletedExceptionally() && !task.isDone() )
+            {
+                task.cancel( true );
+            }
+        } );
+
+        try
+        {
+            executor.execute( task );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            result.completeExceptionally( new TransferException( "Cannot schedule transfer operation for: %s", e,
+                                                                 target ) );
+            return result;
+        }
+
+        if ( timeoutMillis > 0 && !result.isDone() )
+        {
+            final ScheduledFuture<?> timeout = timeouts.schedule( () -> {
+                final Exception error;
+                if ( resource != null )
+                {
+                    error = new TransferTimeoutException( resource, "Timed out after %sms", timeoutMillis );
+                }
+                else
+                {
+                    error = new TimeoutException( "Timed out after " + timeoutMillis + "ms waiting for: " + target );
+                }
+
+                if ( result.completeExceptionally( error ) )
+                {
+                    logger.debug( "Cancelled transfer operation on: {} after {}ms", target, timeoutMillis );
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS );
+
+            result.whenComplete( ( value, error ) -> timeout.cancel( false ) );
+        }
+
+        return result;
+    }
+
+}
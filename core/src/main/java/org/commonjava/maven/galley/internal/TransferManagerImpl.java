@@ -20,15 +20,20 @@ import org.commonjava.atlas.maven.ident.util.JoinString;
 import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.maven.galley.TransferException;
-import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferBatchListener;
 import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileErrorEvent;
 import org.commonjava.maven.galley.event.FileNotFoundEvent;
+import org.commonjava.maven.galley.internal.xfer.BatchRetrievalPipeline;
 import org.commonjava.maven.galley.internal.xfer.BatchRetriever;
 import org.commonjava.maven.galley.internal.xfer.DownloadHandler;
 import org.commonjava.maven.galley.internal.xfer.ExistenceHandler;
+import org.commonjava.maven.galley.internal.xfer.HedgedRetriever;
 import org.commonjava.maven.galley.internal.xfer.ListingHandler;
+import org.commonjava.maven.galley.internal.xfer.LocationLatencyStats;
+import org.commonjava.maven.galley.internal.xfer.RemoteListingIndex;
 import org.commonjava.maven.galley.internal.xfer.UploadHandler;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
 import org.commonjava.maven.galley.model.ConcreteResource;
@@ -65,9 +70,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.apache.commons.io.IOUtils.copy;
@@ -109,12 +114,17 @@ public class TransferManagerImpl
     @Inject
     private SpecialPathManager specialPathManager;
 
+    @Inject
+    private TransportManagerConfig config;
+
     @Inject
     @WeftManaged
     @ExecutorConfig( threads = 12, named = "galley-batching", priority = 8 )
     private ExecutorService executorService;
 
-    private ExecutorCompletionService<BatchRetriever> batchExecutor;
+    private BatchRetrievalPipeline batchPipeline;
+
+    private RemoteListingIndex listingIndex;
 
     @SuppressWarnings( "unused" )
     protected TransferManagerImpl()
@@ -126,6 +136,17 @@ public class TransferManagerImpl
                                 final DownloadHandler downloader, final UploadHandler uploader,
                                 final ListingHandler lister, final ExistenceHandler exister,
                                 final SpecialPathManager specialPathManager, final ExecutorService executorService )
+    {
+        this( transportManager, cacheProvider, nfc, fileEventManager, downloader, uploader, lister, exister,
+              specialPathManager, executorService, new TransportManagerConfig() );
+    }
+
+    public TransferManagerImpl( final TransportManager transportManager, final CacheProvider cacheProvider,
+                                final NotFoundCache nfc, final FileEventManager fileEventManager,
+                                final DownloadHandler downloader, final UploadHandler uploader,
+                                final ListingHandler lister, final ExistenceHandler exister,
+                                final SpecialPathManager specialPathManager, final ExecutorService executorService,
+                                final TransportManagerConfig config )
     {
         this.transportManager = transportManager;
         this.cacheProvider = cacheProvider;
@@ -137,13 +158,37 @@ public class TransferManagerImpl
         this.exister = exister;
         this.specialPathManager = specialPathManager;
         this.executorService = executorService;
+        this.config = config;
         init();
     }
 
     @PostConstruct
     public void init()
     {
-        batchExecutor = new ExecutorCompletionService<>( executorService );
+        batchPipeline = new BatchRetrievalPipeline( executorService );
+        if ( config != null && config.isListingIndexEnabled() )
+        {
+            listingIndex = new RemoteListingIndex( config.getListingIndexMaxAgeSeconds(), TimeUnit.SECONDS,
+                                                   config.getMaxIndexedListings() );
+        }
+    }
+
+    /**
+     * Download latencies seen so far, per location. Hedged retrieveFirst() uses them to decide when to try the next
+     * location.
+     */
+    public LocationLatencyStats getLatencyStats()
+    {
+        return downloader.getLatencyStats();
+    }
+
+    /**
+     * Directory listings that existence checks are answered from, or null unless
+     * {@link TransportManagerConfig#withListingIndex(long)} turned it on.
+     */
+    public RemoteListingIndex getListingIndex()
+    {
+        return listingIndex;
     }
 
     @Override
@@ -188,9 +233,13 @@ public class TransferManagerImpl
         throws TransferException
     {
         final Transfer cached = getCacheReference( resource );
-        return cached.exists() || exister.exists( resource, cached, getTimeoutSeconds( resource ),
-                                                  getTransport( resource ), suppressFailures );
+        if ( cached.exists() )
+        {
+            return true;
+        }
 
+        return exister.exists( resource, cached, getTimeoutSeconds( resource ), getTransport( resource ),
+                               suppressFailures, listingIndex );
     }
 
     @Override
@@ -359,6 +408,13 @@ public class TransferManagerImpl
                 if ( remoteResult != null )
                 {
                     String[] remoteListing = remoteResult.getListing();
+                    if ( listingIndex != null )
+                    {
+                        // index the names as the server sent them, before decorators change them. The cached
+                        // .listing.txt is decorated, so it isn't indexed.
+                        listingIndex.record( resource, remoteListing, System.currentTimeMillis() );
+                    }
+
                     if ( remoteListing != null && remoteListing.length > 0 )
                     {
                         final TransferDecoratorManager decorator = cachedListing.getDecorator();
@@ -466,6 +522,27 @@ public class TransferManagerImpl
     public Transfer retrieveFirst( final VirtualResource virt, final EventMetadata eventMetadata )
         throws TransferException
     {
+        if ( config != null && config.isHedgingEnabled() )
+        {
+            final HedgedRetriever hedged =
+                    new HedgedRetriever( this, virt, eventMetadata, executorService, downloader.getLatencyStats(),
+                                         config.getHedgeFanout(), config.getHedgeDelayMillis() );
+
+            final Transfer target = hedged.call();
+            if ( target != null )
+            {
+                return target;
+            }
+
+            if ( hedged.getLastError() != null )
+            {
+                throw hedged.getLastError();
+            }
+
+            fileEventManager.fire( new FileNotFoundEvent( virt, eventMetadata ) );
+            return null;
+        }
+
         Transfer target;
 
         TransferException lastError = null;
@@ -565,7 +642,9 @@ public class TransferManagerImpl
             // TODO: (see above re:storing) Handle things like local archives that really don't need to be cached...
             target = getCacheReference( resource );
 
-            if ( target.exists() )
+            final boolean cached = target.exists();
+            final boolean revalidate = cached && Boolean.TRUE.equals( eventMetadata.get( REVALIDATE ) );
+            if ( cached && !revalidate )
             {
                 logger.debug( "Using cached copy of: {}", target );
                 return target;
@@ -574,13 +653,32 @@ public class TransferManagerImpl
             SpecialPathInfo specialPathInfo = specialPathManager.getSpecialPathInfo( resource, eventMetadata.getPackageType() );
             if ( !resource.allowsDownloading() || ( specialPathInfo != null && !specialPathInfo.isRetrievable() ) )
             {
+                if ( revalidate )
+                {
+                    logger.debug( "Download not allowed for: {}. Using cached copy.", resource );
+                    return target;
+                }
+
                 logger.debug( "Download not allowed for: {}. Returning null transfer.", resource );
                 return null;
             }
 
-            final Transfer retrieved =
-                downloader.download( resource, target, getTimeoutSeconds( resource ), getTransport( resource ),
-                                     suppressFailures, eventMetadata );
+            final Transfer retrieved;
+            try
+            {
+                retrieved = downloader.download( resource, target, getTimeoutSeconds( resource ),
+                                                 getTransport( resource ), suppressFailures, eventMetadata );
+            }
+            catch ( final TransferException e )
+            {
+                if ( revalidate && target.exists() )
+                {
+                    logger.warn( "Failed to revalidate: {}. Using cached copy. Reason: {}", resource, e.getMessage() );
+                    return target;
+                }
+
+                throw e;
+            }
 
             if ( retrieved != null && retrieved.exists() && !target.equals( retrieved ) )
             {
@@ -832,8 +930,14 @@ public class TransferManagerImpl
             throw new TransferException( "Publishing not allowed for: %s", resource );
         }
 
-        return uploader.upload( resource, stream, length, contentType, getTimeoutSeconds( resource ),
-                                getTransport( resource ) );
+        final boolean published = uploader.upload( resource, stream, length, contentType,
+                                                   getTimeoutSeconds( resource ), getTransport( resource ) );
+        if ( published && listingIndex != null )
+        {
+            listingIndex.forget( resource.getParent() );
+        }
+
+        return published;
     }
 
     @Override
@@ -847,7 +951,15 @@ public class TransferManagerImpl
     public <T extends TransferBatch> T batchRetrieve( final T batch , final EventMetadata eventMetadata  )
         throws TransferException
     {
-        return doBatch( batch.getResources(), batch, true, eventMetadata );
+        return batchRetrieve( batch, eventMetadata, null );
+    }
+
+    @Override
+    public <T extends TransferBatch> T batchRetrieve( final T batch, final EventMetadata eventMetadata,
+                                                      final TransferBatchListener listener )
+        throws TransferException
+    {
+        return doBatch( batch.getResources(), batch, true, eventMetadata, listener );
     }
 
     @Override
@@ -860,6 +972,14 @@ public class TransferManagerImpl
     @Override
     public <T extends TransferBatch> T batchRetrieveAll( final T batch , final EventMetadata eventMetadata  )
         throws TransferException
+    {
+        return batchRetrieveAll( batch, eventMetadata, null );
+    }
+
+    @Override
+    public <T extends TransferBatch> T batchRetrieveAll( final T batch, final EventMetadata eventMetadata,
+                                                         final TransferBatchListener listener )
+        throws TransferException
     {
         final Set<Resource> resources = batch.getResources();
         for ( final Resource resource : new HashSet<>( resources ) )
@@ -874,88 +994,28 @@ public class TransferManagerImpl
             }
         }
 
-        return doBatch( resources, batch, false, eventMetadata );
+        return doBatch( resources, batch, false, eventMetadata, listener );
     }
 
     @SuppressWarnings( "RedundantThrows" )
     private <T extends TransferBatch> T doBatch( final Set<Resource> resources, final T batch,
-                                                 final boolean suppressFailures, final EventMetadata eventMetadata )
+                                                 final boolean suppressFailures, final EventMetadata eventMetadata,
+                                                 final TransferBatchListener listener )
         throws TransferException
     {
         logger.info( "Attempting to batch-retrieve {} resources:\n  {}", resources.size(), new JoinString( "\n  ",
                                                                                                            resources ) );
 
-        final Set<BatchRetriever> retrievers = new HashSet<>( resources.size() );
+        final List<BatchRetriever> retrievers = new ArrayList<>( resources.size() );
         for ( final Resource resource : resources )
         {
             retrievers.add( new BatchRetriever( this, resource, suppressFailures, eventMetadata ) );
         }
 
-        final Map<ConcreteResource, TransferException> errors = new HashMap<>();
-        final Map<ConcreteResource, Transfer> transfers = new HashMap<>();
-
-        do
-        {
-            for ( final BatchRetriever retriever : retrievers )
-            {
-                batchExecutor.submit( retriever );
-            }
-
-            int count = retrievers.size();
-            for ( int i = 0; i < count; i++ )
-            {
-                try
-                {
-                    Future<BatchRetriever> pending = batchExecutor.take();
-                    BatchRetriever retriever = pending.get();
-
-                    final ConcreteResource resource = retriever.getLastTry();
-                    final TransferException error = retriever.getError();
-                    if ( error != null )
-                    {
-                        logger.warn( String.format( "ERROR: %s...%s", resource, error.getMessage() ), error );
-                        retrievers.remove( retriever );
-
-                        if ( !( error instanceof TransferLocationException ) )
-                        {
-                            errors.put( resource, error );
-                        }
-
-                        continue;
-                    }
-
-                    final Transfer transfer = retriever.getTransfer();
-                    if ( transfer != null && transfer.exists() )
-                    {
-                        transfers.put( resource, transfer );
-                        retrievers.remove( retriever );
-                        logger.debug( "Completed: {}", resource );
-                        continue;
-                    }
-
-                    if ( !retriever.hasMoreTries() )
-                    {
-                        logger.debug( "Not completed, but out of tries: {}", resource );
-                        retrievers.remove( retriever );
-                    }
-                }
-                catch ( final InterruptedException e )
-                {
-                    logger.error( String.format( "Failed to wait for batch retrieval attempts to complete: %s",
-                                                 e.getMessage() ), e );
-                    break;
-                }
-                catch ( ExecutionException e )
-                {
-                    logger.error( String.format( "Failed to retrieve next completed retrieval: %s", e.getMessage() ),
-                                  e );
-                }
-            }
-        }
-        while( !retrievers.isEmpty() );
+        final BatchRetrievalPipeline.Result result = batchPipeline.run( retrievers, listener );
 
-        batch.setErrors( errors );
-        batch.setTransfers( transfers );
+        batch.setErrors( result.getErrors() );
+        batch.setTransfers( result.getTransfers() );
 
         return batch;
     }
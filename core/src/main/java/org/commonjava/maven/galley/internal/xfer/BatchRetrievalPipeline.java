@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.commonjava.maven.galley.TransferBatchListener;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.commonjava.maven.galley.util.LocationUtils.getMaxConnections;
+
+/**
+ * Runs a batch of {@link BatchRetriever}s on an executor as one continuous pipeline. When an attempt finishes without
+ * a result, the retriever's next location is queued right away rather than in a later round, so a slow resource only
+ * holds up itself. Each location has its own queue, and at most {@link Location#MAX_CONNECTIONS} of its attempts run
+ * at once; locations take turns for free slots. Results go to the listener as they arrive.
+ * <br/>
+ * Scheduling and listener calls happen on the thread that calls {@link #run(Collection, TransferBatchListener)}, so
+ * no state is shared with the workers beyond the completion queue.
+ */
+public final class BatchRetrievalPipeline
+{
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ExecutorService executor;
+
+    public BatchRetrievalPipeline( final ExecutorService executor )
+    {
+        this.executor = executor;
+    }
+
+    public Result run( final Collection<BatchRetriever> retrievers, final TransferBatchListener listener )
+    {
+        return new Run( listener ).execute( retrievers );
+    }
+
+    public static final class Result
+    {
+        private final Map<ConcreteResource, Transfer> transfers = new HashMap<>();
+
+        private final Map<ConcreteResource, TransferException> errors = new HashMap<>();
+
+        public Map<ConcreteResource, Transfer> getTransfers()
+        {
+            return transfers;
+        }
+
+        public Map<ConcreteResource, TransferException> getErrors()
+        {
+            return errors;
+        }
+    }
+
+    private final class Run
+    {
+        private final TransferBatchListener listener;
+
+        private final Result result = new Result();
+
+        private final BlockingQueue<BatchRetriever> completions = new LinkedBlockingQueue<>();
+
+        // insertion-ordered, so locations take turns in a stable order
+        private final Map<Location, Queue<BatchRetriever>> waiting = new LinkedHashMap<>();
+
+        private final Map<Location, Integer> active = new HashMap<>();
+
+        private final Map<BatchRetriever, Future<?>> futures = new HashMap<>();
+
+        private int inFlight;
+
+        private Run( final TransferBatchListener listener )
+        {
+            this.listener = listener;
+        }
+
+        private Result execute( final Collection<BatchRetriever> retrievers )
+        {
+            for ( final BatchRetriever retriever : retrievers )
+            {
+                enqueue( retriever );
+            }
+
+            try
+            {
+                dispatch();
+                while ( inFlight > 0 )
+                {
+                    complete( completions.take() );
+                    dispatch();
+                }
+            }
+            catch ( final InterruptedException e )
+            {
+                logger.error( String.format( "Failed to wait for batch retrieval attempts to complete: %s",
+                                             e.getMessage() ), e );
+                Thread.currentThread().interrupt();
+                for ( final Future<?> future : futures.values() )
+                {
+                    future.cancel( true );
+                }
+            }
+
+            return result;
+        }
+
+        private void enqueue( final BatchRetriever retriever )
+        {
+            final ConcreteResource next = retriever.getNextTry();
+            if ( next == null )
+            {
+                logger.debug( "Not completed, but out of tries: {}", retriever );
+                return;
+            }
+
+            waiting.computeIfAbsent( next.getLocation(), l -> new ArrayDeque<>() ).add( retriever );
+        }
+
+        /**
+         * Hands out free slots one location at a time, so a location with a long queue can't take them all.
+         */
+        private void dispatch()
+        {
+            boolean started;
+            do
+            {
+                started = false;
+                final Iterator<Map.Entry<Location, Queue<BatchRetriever>>> it = waiting.entrySet().iterator();
+                while ( it.hasNext() )
+                {
+                    final Map.Entry<Location, Queue<BatchRetriever>> entry = it.next();
+                    final Location location = entry.getKey();
+                    final int count = active.getOrDefault( location, 0 );
+                    if ( count >= Math.max( 1, getMaxConnections( location ) ) )
+                    {
+                        continue;
+                    }
+
+                    final BatchRetriever retriever = entry.getValue().poll();
+                    if ( entry.getValue().isEmpty() )
+                    {
+                        it.remove();
+                    }
+
+                    if ( submit( retriever ) )
+                    {
+                        active.put( location, count + 1 );
+                        started = true;
+                    }
+                }
+            }
+            while ( started );
+        }
+
+        private boolean submit( final BatchRetriever retriever )
+        {
+            try
+            {
+                final Future<?> future = executor.submit( () -> {
+                    try
+                    {
+                        retriever.call();
+                    }
+                    catch ( final RuntimeException e )
+                    {
+                        logger.error( String.format( "Failed to retrieve: %s. Reason: %s", retriever,
+                                                     e.getMessage() ), e );
+                    }
+                    finally
+                    {
+                        completions.add( retriever );
+                    }
+                } );
+
+                futures.put( retriever, future );
+                inFlight++;
+                return true;
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                final ConcreteResource resource = retriever.getNextTry();
+                fail( resource, new TransferException( "Cannot schedule retrieval of: %s", e, resource ) );
+                return false;
+            }
+        }
+
+        private void complete( final BatchRetriever retriever )
+        {
+            inFlight--;
+            futures.remove( retriever );
+
+            final ConcreteResource resource = retriever.getLastTry();
+            active.computeIfPresent( resource.getLocation(), ( l, count ) -> count > 1 ? count - 1 : null );
+
+            final TransferException error = retriever.getError();
+            if ( error != null )
+            {
+                logger.warn( String.format( "ERROR: %s...%s", resource, error.getMessage() ), error );
+                if ( !( error instanceof TransferLocationException ) )
+                {
+                    fail( resource, error );
+                }
+
+                return;
+            }
+
+            final Transfer transfer = retriever.getTransfer();
+            if ( transfer != null && transfer.exists() )
+            {
+                logger.debug( "Completed: {}", resource );
+                result.transfers.put( resource, transfer );
+                if ( listener != null )
+                {
+                    try
+                    {
+                        listener.transferCompleted( resource, transfer );
+                    }
+                    catch ( final RuntimeException e )
+                    {
+                        logger.error( String.format( "Batch listener failed for: %s. Reason: %s", resource,
+                                                     e.getMessage() ), e );
+                    }
+                }
+
+                return;
+            }
+
+            enqueue( retriever );
+        }
+
+        private void fail( final ConcreteResource resource, final TransferException error )
+        {
+            result.errors.put( resource, error );
+            if ( listener != null )
+            {
+                try
+                {
+                    listener.transferFailed( resource, error );
+                }
+                catch ( final RuntimeException e )
+                {
+                    logger.error( String.format( "Batch listener failed for: %s. Reason: %s", resource,
+                                                 e.getMessage() ), e );
+                }
+            }
+        }
+    }
+}
@@ -108,6 +108,14 @@ public final class BatchRetriever
         return resources.size() > tries;
     }
 
+    /**
+     * @return the resource the next call will try, or null if there are no more tries
+     */
+    public ConcreteResource getNextTry()
+    {
+        return hasMoreTries() ? resources.get( tries ) : null;
+    }
+
     public ConcreteResource getLastTry()
     {
         return lastTry;
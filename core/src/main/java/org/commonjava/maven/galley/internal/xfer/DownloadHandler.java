@@ -20,6 +20,7 @@ import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.maven.galley.TransferContentException;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferManager;
 import org.commonjava.maven.galley.TransferTimeoutException;
 import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.event.EventMetadata;
@@ -31,14 +32,16 @@ import org.commonjava.maven.galley.spi.transport.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -56,13 +59,19 @@ public class DownloadHandler
 
     private final Map<Transfer, Long> transferSizes = new ConcurrentHashMap<>();
 
-    private final Map<Transfer, Future<DownloadJob>> pending = new HashMap<>();
+    private final ConcurrentMap<Transfer, PendingDownload> pending = new ConcurrentHashMap<>();
+
+    private static final int EXECUTOR_THREADS = 12;
 
     @Inject
     @WeftManaged
-    @ExecutorConfig( threads = 12, named = "galley-transfers", priority = 8 )
+    @ExecutorConfig( threads = EXECUTOR_THREADS, named = "galley-transfers", priority = 8 )
     private ExecutorService executor;
 
+    private DownloadScheduler scheduler;
+
+    private final LocationLatencyStats latencyStats = new LocationLatencyStats();
+
     @SuppressWarnings( "unused" )
     public DownloadHandler()
     {
@@ -73,6 +82,35 @@ public class DownloadHandler
         this.nfc = nfc;
         this.config = config;
         this.executor = executor;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        int maxRunning = config.getMaxRunningDownloads();
+        if ( maxRunning < 1 )
+        {
+            maxRunning = executor instanceof ThreadPoolExecutor ?
+                    ( (ThreadPoolExecutor) executor ).getMaximumPoolSize() :
+                    EXECUTOR_THREADS;
+        }
+
+        scheduler = new DownloadScheduler( executor, maxRunning, config.getMaxQueuedDownloadsPerLocation() );
+    }
+
+    public DownloadScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    /**
+     * How long download jobs took to run, per location. Only jobs that went to the transport are timed; cached
+     * content, NFC hits and callers joining another caller's job don't count.
+     */
+    public LocationLatencyStats getLatencyStats()
+    {
+        return latencyStats;
     }
 
     // FIXME: download batch
@@ -105,44 +143,78 @@ public class DownloadHandler
         return joinOrStart( resource, target, timeoutSeconds, transport, suppressFailures, eventMetadata );
     }
 
-    private final Object DOWNLOAD_MUTEX = new Object(); // to prevent duplicate downloads
-
+    /**
+     * Coalesce concurrent requests for the same target onto a single download. The first caller to register a future
+     * for the target starts the job; everyone else attaches to that future. No global lock is held, and the existence
+     * check on the target happens before / after registration rather than inside a shared monitor.
+     * <br/>
+     * Callers first wait for the job to get a worker, then give it the full timeout to run, so time spent queued behind
+     * other downloads doesn't eat into the transfer's own timeout. If every caller gives up while the job is still
+     * queued, the job is withdrawn instead of running for nobody.
+     */
     private Transfer joinOrStart( final ConcreteResource resource, final Transfer target, final int timeoutSeconds,
                                   final Transport transport, final boolean suppressFailures,
                                   final EventMetadata eventMetadata )
             throws TransferException
     {
-        Future<DownloadJob> future;
-        boolean created = false;
-        synchronized ( DOWNLOAD_MUTEX )
+        // when revalidating, a cached target is refreshed through the transport instead of being used as-is.
+        final boolean revalidate =
+                eventMetadata != null && Boolean.TRUE.equals( eventMetadata.get( TransferManager.REVALIDATE ) );
+
+        // if the target file already exists, skip joining.
+        if ( !revalidate && target.exists() )
+        {
+            return target;
+        }
+
+        final PendingDownload started = new PendingDownload();
+        PendingDownload download = pending.putIfAbsent( target, started );
+        if ( download == null )
         {
-            // if the target file already exists, skip joining.
-            if ( target.exists() )
+            download = started;
+
+            // another download may have completed (and deregistered) between our existence check and registration.
+            if ( !revalidate && target.exists() )
             {
+                pending.remove( target, started );
+                started.done.complete( null );
                 return target;
             }
 
-            future = pending.get( target );
-            if ( future == null )
-            {
-                if ( transport == null )
-                {
-                    return null;
-                }
-
-                final DownloadJob job = transport.createDownloadJob( resource, target, transferSizes, timeoutSeconds, eventMetadata );
-
-                created = true;
-                future = executor.submit( job );
-                logger.debug( "Created download job for path {}: {}", resource, future );
-                pending.put( target, future );
-            }
+            start( resource, target, timeoutSeconds, transport, eventMetadata, started );
+        }
+        else if ( download.join() )
+        {
+            logger.debug( "Joining download job for path {}: {}", resource, download.done );
+        }
+        else
+        {
+            // every caller of that job gave up and it was withdrawn before it ran.
+            pending.remove( target, download );
+            return joinOrStart( resource, target, timeoutSeconds, transport, suppressFailures, eventMetadata );
         }
 
+        final CompletableFuture<DownloadJob> future = download.done;
         int waitSeconds = (int) ( timeoutSeconds * config.getTimeoutOverextensionFactor() );
         int tries = 1;
+        boolean waiting = true;
         try
         {
+            if ( !awaitStart( download, target, waitSeconds, suppressFailures ) )
+            {
+                waiting = false;
+                download.leave();
+                withdraw( target, download );
+
+                if ( !suppressFailures )
+                {
+                    throw new TransferTimeoutException( target, "Timed out waiting for a download slot for: {}",
+                                                        target );
+                }
+
+                return null;
+            }
+
             while ( tries > 0 )
             {
                 tries--;
@@ -151,19 +223,27 @@ public class DownloadHandler
                 {
                     logger.debug( "Waiting for download job of path: {}: {}", resource, future );
                     final DownloadJob job = future.get( waitSeconds, TimeUnit.SECONDS );
-
-                    if ( created )
+                    if ( job == null )
                     {
-                        synchronized ( DOWNLOAD_MUTEX )
+                        if ( target.exists() )
                         {
-                            logger.debug( "Removing download job of path: {}: {}", resource, future );
-                            pending.remove( target );
+                            return target;
                         }
+
+                        logger.debug( "NFC: Download did not complete. Marking as missing: {}", resource );
+                        nfc.addMissing( resource );
+                        return null;
                     }
 
                     final Transfer downloaded = job.getTransfer();
 
-                    if ( job.getError() != null )
+                    if ( job.getError() != null && revalidate && target.exists() )
+                    {
+                        logger.warn( "Failed to revalidate: {}. Using cached copy. Reason: {}", resource,
+                                     job.getError().getMessage() );
+                        return target;
+                    }
+                    else if ( job.getError() != null )
                     {
                         logger.debug( "NFC: Download error. Marking as missing: {}\nError was: {}", job.getError(),
                                       resource, job.getError().getMessage() );
@@ -237,10 +317,175 @@ public class DownloadHandler
         }
         finally
         {
+            if ( waiting )
+            {
+                download.leave();
+            }
+
             transferSizes.remove( target );
         }
 
         return null;
     }
 
+    /**
+     * @return false if the job is still queued after <code>waitSeconds</code>
+     */
+    private boolean awaitStart( final PendingDownload download, final Transfer target, final int waitSeconds,
+                                final boolean suppressFailures )
+            throws TransferException
+    {
+        try
+        {
+            download.started.get( waitSeconds, TimeUnit.SECONDS );
+            return true;
+        }
+        catch ( final TimeoutException e )
+        {
+            logger.debug( "Download job of path: {} is still queued after {}s", target, waitSeconds );
+            return false;
+        }
+        catch ( final InterruptedException e )
+        {
+            if ( !suppressFailures )
+            {
+                throw new TransferException( "Download interrupted: {}", e, target );
+            }
+
+            return false;
+        }
+        catch ( final ExecutionException e )
+        {
+            // never completed exceptionally; the job's own result is reported by the caller.
+            return true;
+        }
+    }
+
+    private void withdraw( final Transfer target, final PendingDownload download )
+    {
+        if ( download.withdrawIfAbandoned() )
+        {
+            logger.debug( "Withdrew queued download job of path: {}; its callers gave up", target );
+            pending.remove( target, download );
+            download.done.complete( null );
+        }
+    }
+
+    private void start( final ConcreteResource resource, final Transfer target, final int timeoutSeconds,
+                        final Transport transport, final EventMetadata eventMetadata,
+                        final PendingDownload download )
+            throws TransferException
+    {
+        final CompletableFuture<DownloadJob> future = download.done;
+        try
+        {
+            final DownloadJob job =
+                    transport.createDownloadJob( resource, target, transferSizes, timeoutSeconds, eventMetadata );
+
+            download.ticket = scheduler.submit( resource.getLocation(), () -> {
+                download.started.complete( null );
+
+                // deregister before completing, so a caller woken by this job can't join it again with a later
+                // request (e.g. a revalidation) and be handed this job's result.
+                DownloadJob done = null;
+                Throwable error = null;
+                final long start = System.nanoTime();
+                try
+                {
+                    done = job.call();
+                }
+                catch ( final Throwable e )
+                {
+                    error = e;
+                }
+
+                if ( error == null && done != null && done.getError() == null )
+                {
+                    latencyStats.record( resource.getLocation(), System.nanoTime() - start, TimeUnit.NANOSECONDS );
+                }
+
+                logger.debug( "Removing download job of path: {}: {}", resource, future );
+                pending.remove( target, download );
+
+                if ( error == null )
+                {
+                    future.complete( done );
+                }
+                else
+                {
+                    future.completeExceptionally( error );
+                }
+            }, e -> {
+                pending.remove( target, download );
+                future.completeExceptionally( e );
+            } );
+
+            logger.debug( "Created download job for path {}: {}", resource, future );
+        }
+        catch ( final TransferException | RuntimeException e )
+        {
+            // don't leave joiners waiting on a job that will never run.
+            pending.remove( target, download );
+            future.completeExceptionally( e );
+            throw e;
+        }
+    }
+
+    /**
+     * A download that callers are waiting on. It counts as started once a worker picks up its job, or once it ends
+     * without running.
+     */
+    private static final class PendingDownload
+    {
+        private final CompletableFuture<DownloadJob> done = new CompletableFuture<>();
+
+        private final CompletableFuture<Void> started = new CompletableFuture<>();
+
+        private volatile DownloadScheduler.Ticket ticket;
+
+        // guarded by this. The caller that registers the download is its first waiter.
+        private int waiters = 1;
+
+        private boolean withdrawn;
+
+        private PendingDownload()
+        {
+            done.whenComplete( ( job, error ) -> started.complete( null ) );
+        }
+
+        /**
+         * @return false if the download was withdrawn, and the caller has to start a new one
+         */
+        private synchronized boolean join()
+        {
+            if ( withdrawn )
+            {
+                return false;
+            }
+
+            waiters++;
+            return true;
+        }
+
+        private synchronized void leave()
+        {
+            waiters--;
+        }
+
+        /**
+         * Take the job out of the scheduler's queue if nobody is waiting for it and it hasn't started. Joining and
+         * withdrawing are decided under the same lock, so no caller is left waiting on a withdrawn job.
+         */
+        private synchronized boolean withdrawIfAbandoned()
+        {
+            if ( waiters > 0 || withdrawn || ticket == null || !ticket.cancel() )
+            {
+                return false;
+            }
+
+            withdrawn = true;
+            return true;
+        }
+    }
+
 }
@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.model.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.commonjava.maven.galley.util.LocationUtils.getMaxConnections;
+
+/**
+ * Decides when download jobs get a worker. At most <code>maxRunning</code> jobs are handed to the executor at once, and
+ * at most {@link Location#MAX_CONNECTIONS} of them per location. Jobs beyond that wait in a queue per location, and
+ * locations take turns as workers free up, so a slow repository holds its own permits but can't take every worker.
+ * When a location's queue is full, new jobs for it are refused with a {@link TransferLocationException}. A job that is
+ * still waiting can be withdrawn through the {@link Ticket} it was queued under.
+ */
+public final class DownloadScheduler
+{
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ExecutorService executor;
+
+    private final int maxRunning;
+
+    private final int maxQueuedPerLocation;
+
+    // all guarded by this
+    private final Map<Location, LocationQueue> queues = new HashMap<>();
+
+    private final Queue<LocationQueue> ready = new ArrayDeque<>();
+
+    private int running;
+
+    public DownloadScheduler( final ExecutorService executor, final int maxRunning, final int maxQueuedPerLocation )
+    {
+        this.executor = executor;
+        this.maxRunning = Math.max( 1, maxRunning );
+        this.maxQueuedPerLocation = maxQueuedPerLocation;
+    }
+
+    /**
+     * Queue a job for the given location.
+     *
+     * @param rejected called with the error if the executor refuses the job once its turn comes
+     * @return the job's place in the queue, which can be given up while the job is still waiting
+     * @throws TransferLocationException if the location already has too many jobs waiting
+     */
+    public Ticket submit( final Location location, final Runnable job, final Consumer<Exception> rejected )
+            throws TransferLocationException
+    {
+        final Launch launch;
+        final List<Launch> launches;
+        synchronized ( this )
+        {
+            LocationQueue lq = queues.get( location );
+            if ( lq == null )
+            {
+                lq = new LocationQueue( location );
+                queues.put( location, lq );
+            }
+
+            if ( maxQueuedPerLocation > 0 && lq.jobs.size() >= maxQueuedPerLocation )
+            {
+                throw new TransferLocationException( location,
+                                                     "Too many downloads waiting for: %s (%s queued, %s running)",
+                                                     location, lq.jobs.size(), lq.active );
+            }
+
+            launch = new Launch( lq, job, rejected );
+            lq.jobs.add( launch );
+            markReady( lq );
+            launches = drain();
+        }
+
+        launch( launches );
+        return launch;
+    }
+
+    private synchronized boolean withdraw( final Launch launch )
+    {
+        final LocationQueue lq = launch.lq;
+        if ( !lq.jobs.remove( launch ) )
+        {
+            return false;
+        }
+
+        // an emptied queue may still sit in the ready rotation; drain() skips it.
+        if ( lq.active == 0 && lq.jobs.isEmpty() )
+        {
+            queues.remove( lq.location, lq );
+        }
+
+        return true;
+    }
+
+    public synchronized int getRunning()
+    {
+        return running;
+    }
+
+    public synchronized int getQueued( final Location location )
+    {
+        final LocationQueue lq = queues.get( location );
+        return lq == null ? 0 : lq.jobs.size();
+    }
+
+    private void markReady( final LocationQueue lq )
+    {
+        if ( !lq.ready && !lq.jobs.isEmpty() )
+        {
+            lq.ready = true;
+            ready.add( lq );
+        }
+    }
+
+    /**
+     * Takes one job at a time from each ready location, round-robin, while there are free workers. A location that is
+     * out of permits leaves the rotation until one of its jobs finishes.
+     */
+    private List<Launch> drain()
+    {
+        List<Launch> launches = null;
+        while ( running < maxRunning && !ready.isEmpty() )
+        {
+            final LocationQueue lq = ready.poll();
+            lq.ready = false;
+            if ( lq.active >= lq.permits || lq.jobs.isEmpty() )
+            {
+                continue;
+            }
+
+            final Launch launch = lq.jobs.poll();
+            lq.active++;
+            running++;
+            markReady( lq );
+
+            if ( launches == null )
+            {
+                launches = new ArrayList<>();
+            }
+            launches.add( launch );
+        }
+
+        return launches;
+    }
+
+    private void launch( final List<Launch> launches )
+    {
+        if ( launches == null )
+        {
+            return;
+        }
+
+        for ( final Launch launch : launches )
+        {
+            try
+            {
+                executor.execute( launch );
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                logger.error( "Cannot start download job for: {}. Reason: {}", launch.lq.location, e.getMessage() );
+                finished( launch.lq );
+                launch.rejected.accept( e );
+            }
+        }
+    }
+
+    private void finished( final LocationQueue lq )
+    {
+        final List<Launch> launches;
+        synchronized ( this )
+        {
+            lq.active--;
+            running--;
+            if ( lq.active == 0 && lq.jobs.isEmpty() )
+            {
+                queues.remove( lq.location );
+            }
+            else
+            {
+                markReady( lq );
+            }
+
+            launches = drain();
+        }
+
+        launch( launches );
+    }
+
+    /**
+     * A job's place in its location's queue.
+     */
+    public interface Ticket
+    {
+        /**
+         * Take the job out of the queue, if it hasn't been handed to a worker yet.
+         *
+         * @return true if the job was withdrawn and will never run
+         */
+        boolean cancel();
+    }
+
+    private static final class LocationQueue
+    {
+        private final Location location;
+
+        private final int permits;
+
+        private final Queue<Launch> jobs = new ArrayDeque<>();
+
+        private int active;
+
+        private boolean ready;
+
+        private LocationQueue( final Location location )
+        {
+            this.location = location;
+            this.permits =
+                    location == null ? Location.DEFAULT_MAX_CONNECTIONS : Math.max( 1, getMaxConnections( location ) );
+        }
+    }
+
+    private final class Launch
+            implements Runnable, Ticket
+    {
+        private final LocationQueue lq;
+
+        private final Runnable job;
+
+        private final Consumer<Exception> rejected;
+
+        private Launch( final LocationQueue lq, final Runnable job, final Consumer<Exception> rejected )
+        {
+            this.lq = lq;
+            this.job = job;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            return withdraw( this );
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                job.run();
+            }
+            finally
+            {
+                finished( lq );
+            }
+        }
+    }
+}
@@ -53,6 +53,18 @@ public class ExistenceHandler
     public boolean exists( final ConcreteResource resource, final Transfer transfer, final int timeoutSeconds,
                            final Transport transport, final boolean suppressFailures )
         throws TransferException
+    {
+        return exists( resource, transfer, timeoutSeconds, transport, suppressFailures, null );
+    }
+
+    /**
+     * @param listingIndex if it has a fresh listing of the resource's directory, that answers the check and no remote
+     * request is made. May be null.
+     */
+    public boolean exists( final ConcreteResource resource, final Transfer transfer, final int timeoutSeconds,
+                           final Transport transport, final boolean suppressFailures,
+                           final RemoteListingIndex listingIndex )
+        throws TransferException
     {
         if ( nfc.isMissing( resource ) )
         {
@@ -75,6 +87,16 @@ public class ExistenceHandler
             return false;
         }
 
+        if ( listingIndex != null )
+        {
+            final Boolean listed = listingIndex.contains( resource );
+            if ( listed != null )
+            {
+                logger.debug( "EXISTS {} (from directory listing): {}", resource, listed );
+                return listed;
+            }
+        }
+
         logger.debug( "EXISTS {}", resource );
 
         final ExistenceJob job = transport.createExistenceJob( resource, transfer, timeoutSeconds );
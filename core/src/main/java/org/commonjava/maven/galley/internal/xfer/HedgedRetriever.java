@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.VirtualResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hedged form of {@link TransferManager#retrieveFirst(VirtualResource, EventMetadata)}. Locations are still tried in
+ * order, but while the latest attempt is slow, the next location is started beside it, up to <code>fanout</code>
+ * extra attempts at a time. The earliest location with the file wins: when a later location has it first, attempts on
+ * earlier locations that are still running get a grace period, the same delay used for hedging, to come back with it.
+ * After that the later result is used. Attempts that can no longer win are cancelled.
+ * <br/>
+ * Cancelling an attempt stops its wait for the download. The transport job itself runs to completion in the
+ * background, and its result lands in the cache as usual.
+ */
+public final class HedgedRetriever
+{
+
+    /**
+     * Grace period for earlier locations when all attempts were started at once, and there is no hedge delay to go by.
+     */
+    public static final long PARALLEL_GRACE_MILLIS = 500;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final TransferManager xfer;
+
+    private final VirtualResource virt;
+
+    private final List<ConcreteResource> resources = new ArrayList<>();
+
+    private final EventMetadata eventMetadata;
+
+    private final ExecutorService executor;
+
+    private final LocationLatencyStats stats;
+
+    private final int fanout;
+
+    private final long maxDelayMillis;
+
+    private final List<Attempt> attempts = new ArrayList<>();
+
+    private final BlockingQueue<Attempt> completions = new LinkedBlockingQueue<>();
+
+    private int running;
+
+    private long candidateDeadline;
+
+    private TransferException lastError;
+
+    public HedgedRetriever( final TransferManager xfer, final VirtualResource virt, final EventMetadata eventMetadata,
+                            final ExecutorService executor, final LocationLatencyStats stats, final int fanout,
+                            final long maxDelayMillis )
+    {
+        this.xfer = xfer;
+        this.virt = virt;
+        this.eventMetadata = eventMetadata;
+        this.executor = executor;
+        this.stats = stats;
+        this.fanout = fanout;
+        this.maxDelayMillis = maxDelayMillis;
+
+        for ( final ConcreteResource res : virt )
+        {
+            if ( res != null )
+            {
+                resources.add( res );
+            }
+        }
+    }
+
+    /**
+     * @return the transfer from the earliest location that has it, or null if none does
+     * @throws TransferException if no location has it and the last location failed, as for a sequential search
+     */
+    public Transfer call()
+            throws TransferException
+    {
+        try
+        {
+            if ( resources.isEmpty() )
+            {
+                return null;
+            }
+
+            start();
+            if ( maxDelayMillis < 1 )
+            {
+                while ( canStart() )
+                {
+                    start();
+                }
+            }
+
+            while ( true )
+            {
+                final Transfer winner = findWinner();
+                if ( winner != null )
+                {
+                    return winner;
+                }
+
+                if ( running == 0 && attempts.size() == resources.size() )
+                {
+                    break;
+                }
+
+                final Attempt latest = attempts.get( attempts.size() - 1 );
+                if ( canStart() && ( latest.done || running == 0 ) )
+                {
+                    start();
+                    continue;
+                }
+
+                long waitNanos = Long.MAX_VALUE;
+                if ( candidateDeadline != 0 )
+                {
+                    waitNanos = candidateDeadline - System.nanoTime();
+                }
+
+                if ( canStart() )
+                {
+                    final long hedgeNanos = latest.startNanos + TimeUnit.MILLISECONDS.toNanos(
+                            stats.getHedgeDelayMillis( latest.resource.getLocation(), maxDelayMillis ) )
+                            - System.nanoTime();
+
+                    if ( hedgeNanos <= 0 )
+                    {
+                        logger.debug( "Hedging: {} is slow; also trying: {}", latest.resource,
+                                      resources.get( attempts.size() ) );
+                        start();
+                        continue;
+                    }
+
+                    waitNanos = Math.min( waitNanos, hedgeNanos );
+                }
+
+                final Attempt finished = completions.poll( waitNanos, TimeUnit.NANOSECONDS );
+                if ( finished != null )
+                {
+                    finish( finished );
+                    Attempt more;
+                    while ( ( more = completions.poll() ) != null )
+                    {
+                        finish( more );
+                    }
+                }
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new TransferException( "Interrupted while retrieving: %s", e, virt );
+        }
+        finally
+        {
+            cancelRunning();
+        }
+
+        return null;
+    }
+
+    private boolean canStart()
+    {
+        return attempts.size() < resources.size() && running <= fanout;
+    }
+
+    private void start()
+            throws TransferException
+    {
+        final Attempt attempt = new Attempt( resources.get( attempts.size() ) );
+        attempts.add( attempt );
+        try
+        {
+            attempt.future = executor.submit( attempt );
+            running++;
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            attempt.done = true;
+            throw new TransferException( "Cannot schedule retrieval of: %s", e, attempt.resource );
+        }
+    }
+
+    private void finish( final Attempt attempt )
+    {
+        attempt.done = true;
+        attempt.finishNanos = System.nanoTime();
+        running--;
+
+        if ( attempt.error != null )
+        {
+            logger.warn( "Failed to retrieve: {}. {} more tries. (Reason: {})", attempt.resource,
+                         resources.size() - attempts.indexOf( attempt ) - 1, attempt.error.getMessage() );
+        }
+    }
+
+    /**
+     * Walks attempts in location order. The first finished one with the file wins, unless an earlier one is still
+     * running and within its grace period.
+     */
+    private Transfer findWinner()
+    {
+        lastError = null;
+        candidateDeadline = 0;
+
+        Attempt pending = null;
+        for ( final Attempt attempt : attempts )
+        {
+            if ( !attempt.done )
+            {
+                if ( pending == null )
+                {
+                    pending = attempt;
+                }
+                continue;
+            }
+
+            if ( attempt.transfer != null && attempt.transfer.exists() )
+            {
+                if ( pending == null )
+                {
+                    return attempt.transfer;
+                }
+
+                final long graceMillis = stats.getHedgeDelayMillis( pending.resource.getLocation(),
+                                                                    maxDelayMillis > 0 ?
+                                                                            maxDelayMillis :
+                                                                            PARALLEL_GRACE_MILLIS );
+
+                final long deadline = attempt.finishNanos + TimeUnit.MILLISECONDS.toNanos( graceMillis );
+                if ( deadline - System.nanoTime() <= 0 )
+                {
+                    logger.debug( "Using: {}; gave up waiting on: {}", attempt.resource, pending.resource );
+                    return attempt.transfer;
+                }
+
+                candidateDeadline = deadline;
+                return null;
+            }
+
+            if ( pending == null )
+            {
+                lastError = attempt.error;
+            }
+        }
+
+        return null;
+    }
+
+    private void cancelRunning()
+    {
+        for ( final Attempt attempt : attempts )
+        {
+            if ( !attempt.done && attempt.future != null )
+            {
+                logger.debug( "Cancelling hedged retrieval of: {}", attempt.resource );
+                attempt.future.cancel( true );
+            }
+        }
+    }
+
+    public TransferException getLastError()
+    {
+        return lastError;
+    }
+
+    private final class Attempt
+            implements Runnable
+    {
+        private final ConcreteResource resource;
+
+        private final long startNanos = System.nanoTime();
+
+        // only touched by the calling thread
+        private long finishNanos;
+
+        private Future<?> future;
+
+        private volatile Transfer transfer;
+
+        private volatile TransferException error;
+
+        // only touched by the calling thread
+        private boolean done;
+
+        Attempt( final ConcreteResource resource )
+        {
+            this.resource = resource;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                transfer = xfer.retrieve( resource, true, eventMetadata );
+            }
+            catch ( final TransferException e )
+            {
+                error = e;
+            }
+            finally
+            {
+                completions.add( this );
+            }
+        }
+    }
+}
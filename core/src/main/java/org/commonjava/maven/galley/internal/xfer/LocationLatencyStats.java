@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.maven.galley.model.Location;
+
+/**
+ * Smoothed download latency for each {@link Location}. It uses the same estimator as TCP's retransmission timer
+ * (RFC 6298): a moving average of round trip times, plus four times their mean deviation. A location whose requests
+ * take longer than this is probably slower than usual, which makes it the point to start a hedged request.
+ */
+public final class LocationLatencyStats
+{
+
+    /**
+     * Below this many samples the estimate is too noisy, so callers get their fallback delay.
+     */
+    public static final int MIN_SAMPLES = 3;
+
+    /**
+     * Hedging sooner than this mostly duplicates requests that were about to finish.
+     */
+    public static final long MIN_DELAY_MILLIS = 10;
+
+    private final ConcurrentMap<Location, Estimate> estimates = new ConcurrentHashMap<>();
+
+    public void record( final Location location, final long elapsed, final TimeUnit unit )
+    {
+        if ( location == null )
+        {
+            return;
+        }
+
+        Estimate estimate = estimates.get( location );
+        if ( estimate == null )
+        {
+            estimate = new Estimate();
+            final Estimate existing = estimates.putIfAbsent( location, estimate );
+            if ( existing != null )
+            {
+                estimate = existing;
+            }
+        }
+
+        estimate.update( unit.toNanos( elapsed ) );
+    }
+
+    /**
+     * @return how long to wait on the given location before hedging, between {@link #MIN_DELAY_MILLIS} and
+     * <code>maxMillis</code>. If there aren't enough samples yet, <code>maxMillis</code>.
+     */
+    public long getHedgeDelayMillis( final Location location, final long maxMillis )
+    {
+        final Estimate estimate = location == null ? null : estimates.get( location );
+        if ( estimate == null )
+        {
+            return maxMillis;
+        }
+
+        final long millis = estimate.getTimeoutMillis();
+        if ( millis < 0 )
+        {
+            return maxMillis;
+        }
+
+        return Math.min( maxMillis, Math.max( MIN_DELAY_MILLIS, millis ) );
+    }
+
+    /**
+     * @return how many latencies have been recorded for the location
+     */
+    public long getSampleCount( final Location location )
+    {
+        final Estimate estimate = location == null ? null : estimates.get( location );
+        return estimate == null ? 0 : estimate.getSamples();
+    }
+
+    public void clear()
+    {
+        estimates.clear();
+    }
+
+    private static final class Estimate
+    {
+        private long samples;
+
+        private double srtt;
+
+        private double rttvar;
+
+        synchronized void update( final long nanos )
+        {
+            if ( samples == 0 )
+            {
+                srtt = nanos;
+                rttvar = nanos / 2.0;
+            }
+            else
+            {
+                rttvar = 0.75 * rttvar + 0.25 * Math.abs( srtt - nanos );
+                srtt = 0.875 * srtt + 0.125 * nanos;
+            }
+            samples++;
+        }
+
+        synchronized long getSamples()
+        {
+            return samples;
+        }
+
+        synchronized long getTimeoutMillis()
+        {
+            if ( samples < MIN_SAMPLES )
+            {
+                return -1;
+            }
+
+            return TimeUnit.NANOSECONDS.toMillis( (long) ( srtt + 4 * rttvar ) );
+        }
+    }
+}
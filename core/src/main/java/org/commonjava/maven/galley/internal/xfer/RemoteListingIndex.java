@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+
+/**
+ * Remote directory listings, per {@link Location}, kept so existence checks can be answered without asking the
+ * server. A listing is trusted until it is older than the maximum age; after that, or when the directory was never
+ * listed, callers get no answer and should fall back to their remote check. At most a fixed number of directories
+ * are kept, across all locations; the least recently used listing is dropped to make room for a new one.
+ */
+public final class RemoteListingIndex
+{
+
+    public static final int DEFAULT_MAX_LISTINGS = 10000;
+
+    private final Map<DirectoryKey, Listing> listings;
+
+    private final long maxAgeMillis;
+
+    private final LongAdder hits = new LongAdder();
+
+    public RemoteListingIndex( final long maxAge, final TimeUnit unit )
+    {
+        this( maxAge, unit, DEFAULT_MAX_LISTINGS );
+    }
+
+    public RemoteListingIndex( final long maxAge, final TimeUnit unit, final int maxListings )
+    {
+        this.maxAgeMillis = unit.toMillis( maxAge );
+        this.listings = new LinkedHashMap<DirectoryKey, Listing>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<DirectoryKey, Listing> eldest )
+            {
+                return size() > maxListings;
+            }
+        };
+    }
+
+    /**
+     * @param directory the directory that was listed
+     * @param names the listing, with directories optionally ending in '/'. Empty listings aren't recorded, since some
+     * transports return them when a listing can't be parsed.
+     * @param listedAt when the listing was taken, in milliseconds since the epoch
+     */
+    public void record( final ConcreteResource directory, final String[] names, final long listedAt )
+    {
+        if ( directory == null || directory.getLocation() == null || names == null || names.length < 1 )
+        {
+            return;
+        }
+
+        if ( isExpired( listedAt ) )
+        {
+            return;
+        }
+
+        final Set<String> entries = new HashSet<>( names.length );
+        for ( final String name : names )
+        {
+            final String entry = trimSlashes( name );
+            if ( !entry.isEmpty() )
+            {
+                entries.add( entry );
+            }
+        }
+
+        final DirectoryKey key = new DirectoryKey( directory.getLocation(), trimSlashes( directory.getPath() ) );
+        final Listing listing = new Listing( Collections.unmodifiableSet( entries ), listedAt );
+        synchronized ( listings )
+        {
+            listings.put( key, listing );
+        }
+    }
+
+    /**
+     * Drop the listing of a directory, e.g. after content was published into it.
+     */
+    public void forget( final ConcreteResource directory )
+    {
+        if ( directory == null || directory.getLocation() == null )
+        {
+            return;
+        }
+
+        synchronized ( listings )
+        {
+            listings.remove( new DirectoryKey( directory.getLocation(), trimSlashes( directory.getPath() ) ) );
+        }
+    }
+
+    /**
+     * @return true if there is a listing of the directory that is still fresh
+     */
+    public boolean isIndexed( final ConcreteResource directory )
+    {
+        return directory != null && getListing( directory.getLocation(), trimSlashes( directory.getPath() ) ) != null;
+    }
+
+    /**
+     * @return whether the resource appears in a fresh listing of its parent directory, or null if there is no such
+     * listing and the caller has to check for itself
+     */
+    public Boolean contains( final ConcreteResource resource )
+    {
+        if ( resource == null || resource.isRoot() )
+        {
+            return null;
+        }
+
+        final String path = trimSlashes( resource.getPath() );
+        final int idx = path.lastIndexOf( '/' );
+        final Listing listing = getListing( resource.getLocation(), idx < 0 ? "" : path.substring( 0, idx ) );
+        if ( listing == null )
+        {
+            return null;
+        }
+
+        hits.increment();
+        return listing.entries.contains( path.substring( idx + 1 ) );
+    }
+
+    /**
+     * @return how many existence checks were answered from a listing
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many directory listings are held, including expired ones that haven't been looked up since
+     */
+    public int size()
+    {
+        synchronized ( listings )
+        {
+            return listings.size();
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( listings )
+        {
+            listings.clear();
+        }
+    }
+
+    private Listing getListing( final Location location, final String dirPath )
+    {
+        if ( location == null )
+        {
+            return null;
+        }
+
+        final DirectoryKey key = new DirectoryKey( location, dirPath );
+        synchronized ( listings )
+        {
+            final Listing listing = listings.get( key );
+            if ( listing == null )
+            {
+                return null;
+            }
+
+            if ( isExpired( listing.listedAt ) )
+            {
+                listings.remove( key );
+                return null;
+            }
+
+            return listing;
+        }
+    }
+
+    private boolean isExpired( final long listedAt )
+    {
+        return System.currentTimeMillis() - listedAt > maxAgeMillis;
+    }
+
+    private static String trimSlashes( final String path )
+    {
+        if ( path == null )
+        {
+            return "";
+        }
+
+        int start = 0;
+        int end = path.length();
+        while ( start < end && path.charAt( start ) == '/' )
+        {
+            start++;
+        }
+        while ( end > start && path.charAt( end - 1 ) == '/' )
+        {
+            end--;
+        }
+
+        return path.substring( start, end );
+    }
+
+    private static final class DirectoryKey
+    {
+        private final Location location;
+
+        private final String path;
+
+        DirectoryKey( final Location location, final String path )
+        {
+            this.location = location;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof DirectoryKey ) )
+            {
+                return false;
+            }
+
+            final DirectoryKey other = (DirectoryKey) o;
+            return location.equals( other.location ) && path.equals( other.path );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( location, path );
+        }
+    }
+
+    private static final class Listing
+    {
+        private final Set<String> entries;
+
+        private final long listedAt;
+
+        Listing( final Set<String> entries, final long listedAt )
+        {
+            this.entries = entries;
+            this.listedAt = listedAt;
+        }
+    }
+}
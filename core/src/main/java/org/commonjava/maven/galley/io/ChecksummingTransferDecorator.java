@@ -19,9 +19,16 @@ import com.codahale.metrics.Timer;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.checksum.AbstractChecksumGenerator;
 import org.commonjava.maven.galley.io.checksum.AbstractChecksumGeneratorFactory;
+import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
 import org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor;
 import org.commonjava.maven.galley.io.checksum.ChecksummingInputStream;
 import org.commonjava.maven.galley.io.checksum.ChecksummingOutputStream;
+import org.commonjava.maven.galley.io.checksum.DigestIndex;
+import org.commonjava.maven.galley.io.checksum.DisabledChecksummingDecoratorAdvisor;
+import org.commonjava.maven.galley.io.checksum.Md5GeneratorFactory;
+import org.commonjava.maven.galley.io.checksum.Sha1GeneratorFactory;
+import org.commonjava.maven.galley.io.checksum.Sha256GeneratorFactory;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.io.checksum.TransferMetadataConsumer;
 import org.commonjava.maven.galley.model.SpecialPathInfo;
 import org.commonjava.maven.galley.model.Transfer;
@@ -32,15 +39,19 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.inject.Alternative;
 import javax.inject.Named;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.maven.galley.io.DeprecatedChecksummingFilter.calculateWriteOperations;
 import static org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice.CALCULATE_AND_WRITE;
 import static org.commonjava.maven.galley.io.checksum.ChecksummingDecoratorAdvisor.ChecksumAdvice.CALCULATE_NO_WRITE;
@@ -69,12 +80,48 @@ public final class ChecksummingTransferDecorator
 
     private Function<String, Timer.Context> timerProvider;
 
+    private final Executor digestExecutor;
+
+    private final DigestIndex digestIndex;
+
     public ChecksummingTransferDecorator( final ChecksummingDecoratorAdvisor readerFilter,
                                           final ChecksummingDecoratorAdvisor writerFilter,
                                           SpecialPathManager specialPathManager, Function<String, Timer.Context> timerProvider,
                                           TransferMetadataConsumer consumer,
                                           Set<AbstractChecksumGeneratorFactory<?>> checksumFactories )
     {
+        this( readerFilter, writerFilter, specialPathManager, timerProvider, consumer, checksumFactories, null );
+    }
+
+    /**
+     * @param digestExecutor if not null, streams larger than a buffer or two calculate each checksum algorithm on this
+     * executor, concurrently with the I/O. A small pool (one thread per algorithm) is enough.
+     */
+    public ChecksummingTransferDecorator( final ChecksummingDecoratorAdvisor readerFilter,
+                                          final ChecksummingDecoratorAdvisor writerFilter,
+                                          SpecialPathManager specialPathManager, Function<String, Timer.Context> timerProvider,
+                                          TransferMetadataConsumer consumer,
+                                          Set<AbstractChecksumGeneratorFactory<?>> checksumFactories,
+                                          Executor digestExecutor )
+    {
+        this( readerFilter, writerFilter, specialPathManager, timerProvider, consumer, checksumFactories,
+              digestExecutor, null );
+    }
+
+    /**
+     * @param digestIndex if not null, checksums that would be written to sidecar files (<code>.md5</code>,
+     * <code>.sha1</code>, ...) are recorded in this index instead. Reads, existence checks and listings of the sidecars
+     * are answered from it, without locking or creating the sidecar files.
+     */
+    public ChecksummingTransferDecorator( final ChecksummingDecoratorAdvisor readerFilter,
+                                          final ChecksummingDecoratorAdvisor writerFilter,
+                                          SpecialPathManager specialPathManager, Function<String, Timer.Context> timerProvider,
+                                          TransferMetadataConsumer consumer,
+                                          Set<AbstractChecksumGeneratorFactory<?>> checksumFactories,
+                                          Executor digestExecutor, DigestIndex digestIndex )
+    {
+        this.digestExecutor = digestExecutor;
+        this.digestIndex = digestIndex;
         this.readerFilter = readerFilter;
         this.writerFilter = writerFilter;
         this.specialPathManager = specialPathManager;
@@ -123,6 +170,27 @@ public final class ChecksummingTransferDecorator
               toSet( checksumFactories ) );
     }
 
+    /**
+     * Creates a decorator that checksums everything written to the cache (MD5, SHA-1 and SHA-256) and keeps the
+     * checksums in the given index. Reads are not checksummed again. This is what
+     * {@link org.commonjava.maven.galley.GalleyCoreBuilder#withDigestIndex(DigestIndex)} installs.
+     *
+     * @param digestExecutor may be null; see {@link #ChecksummingTransferDecorator(ChecksummingDecoratorAdvisor,
+     * ChecksummingDecoratorAdvisor, SpecialPathManager, Function, TransferMetadataConsumer, Set, Executor)}
+     */
+    public static ChecksummingTransferDecorator forDigestIndex( final SpecialPathManager specialPathManager,
+                                                                final DigestIndex digestIndex,
+                                                                final Executor digestExecutor )
+    {
+        return new ChecksummingTransferDecorator( new DisabledChecksummingDecoratorAdvisor(),
+                                                  ( transfer, op, eventMetadata ) -> CALCULATE_AND_WRITE,
+                                                  specialPathManager, null, null,
+                                                  new HashSet<>( Arrays.asList( new Md5GeneratorFactory(),
+                                                                                new Sha1GeneratorFactory(),
+                                                                                new Sha256GeneratorFactory() ) ),
+                                                  digestExecutor, digestIndex );
+    }
+
     private static Set<AbstractChecksumGeneratorFactory<?>> toSet(
             final Collection<AbstractChecksumGeneratorFactory<?>> checksumFactories )
     {
@@ -143,6 +211,11 @@ public final class ChecksummingTransferDecorator
                                        final EventMetadata eventMetadata )
             throws IOException
     {
+        if ( digestIndex != null && digestIndex.isIndexFile( transfer ) )
+        {
+            return stream;
+        }
+
         Object forceObj = eventMetadata.get( FORCE_CHECKSUM );
         boolean force = Boolean.TRUE.equals( forceObj ) || Boolean.parseBoolean( String.valueOf( forceObj ) );
 
@@ -171,8 +244,8 @@ public final class ChecksummingTransferDecorator
             if ( advice != NO_DECORATE && ( consumer == null || consumer.needsMetadataFor( transfer ) ) )
             {
                 logger.trace( "Wrapping output stream to: {} for checksum generation.", transfer );
-                return new ChecksummingOutputStream( checksumFactories, stream, transfer, consumer,
-                                                     advice == CALCULATE_AND_WRITE, timerProvider );
+                return new ChecksummingOutputStream( checksumFactories, stream, transfer, getConsumer( advice ),
+                                                     writesSidecars( advice ), timerProvider, digestExecutor );
             }
         }
 
@@ -185,6 +258,22 @@ public final class ChecksummingTransferDecorator
                                      final EventMetadata eventMetadata )
             throws IOException
     {
+        if ( digestIndex != null )
+        {
+            if ( digestIndex.isIndexFile( transfer ) )
+            {
+                return stream;
+            }
+
+            final String digest = digestIndex.getSidecarDigest( transfer );
+            if ( digest != null )
+            {
+                logger.trace( "Reading: {} from digest index", transfer );
+                stream.close();
+                return new ByteArrayInputStream( digest.getBytes( UTF_8 ) );
+            }
+        }
+
         Object forceObj = eventMetadata.get( FORCE_CHECKSUM );
         boolean force = Boolean.TRUE.equals( forceObj ) || Boolean.parseBoolean( String.valueOf( forceObj ) );
 
@@ -212,8 +301,8 @@ public final class ChecksummingTransferDecorator
             // 2. if we have a metadata consumer AND the consumer needs metadata for this transfer
             if ( advice != NO_DECORATE && ( consumer == null || consumer.needsMetadataFor( transfer ) ) )
             {
-                return new ChecksummingInputStream( checksumFactories, stream, transfer, consumer,
-                                                    advice == CALCULATE_AND_WRITE, timerProvider );
+                return new ChecksummingInputStream( checksumFactories, stream, transfer, getConsumer( advice ),
+                                                    writesSidecars( advice ), timerProvider, digestExecutor );
             }
         }
 
@@ -224,13 +313,29 @@ public final class ChecksummingTransferDecorator
     public void decorateDelete( final Transfer transfer, final EventMetadata eventMetadata )
             throws IOException
     {
-        if ( transfer.isDirectory() )
+        if ( transfer.isDirectory() || ( digestIndex != null && digestIndex.isIndexFile( transfer ) ) )
         {
             return;
         }
 
         SpecialPathInfo specialPathInfo = specialPathManager.getSpecialPathInfo( transfer, eventMetadata.getPackageType() );
-        if ( specialPathInfo == null || specialPathInfo.isDeletable() )
+        if ( digestIndex != null )
+        {
+            digestIndex.remove( transfer );
+            if ( specialPathInfo == null || specialPathInfo.isDeletable() )
+            {
+                // sidecars written before the index was in use
+                for ( final ChecksumAlgorithm algorithm : ChecksumAlgorithm.values() )
+                {
+                    final Transfer sidecar = transfer.getSiblingMeta( algorithm.getExtension() );
+                    if ( sidecar != null && sidecar.exists() )
+                    {
+                        sidecar.delete( false );
+                    }
+                }
+            }
+        }
+        else if ( specialPathInfo == null || specialPathInfo.isDeletable() )
         {
             for ( final AbstractChecksumGeneratorFactory<?> factory : checksumFactories )
             {
@@ -244,4 +349,111 @@ public final class ChecksummingTransferDecorator
             consumer.removeMetadata( transfer );
         }
     }
+
+    @Override
+    public OverriddenBooleanValue decorateExists( final Transfer transfer, final EventMetadata eventMetadata )
+    {
+        if ( digestIndex != null )
+        {
+            try
+            {
+                if ( digestIndex.getSidecarDigest( transfer ) != null )
+                {
+                    return OverriddenBooleanValue.OVERRIDE_TRUE;
+                }
+            }
+            catch ( final IOException e )
+            {
+                logger.warn( "Cannot read digest index for: {}. Reason: {}", transfer, e.getMessage() );
+            }
+        }
+
+        return OverriddenBooleanValue.DEFER;
+    }
+
+    @Override
+    public String[] decorateListing( final Transfer transfer, final String[] listing, final EventMetadata eventMetadata )
+            throws IOException
+    {
+        if ( digestIndex == null )
+        {
+            return listing;
+        }
+
+        final Set<String> result = new LinkedHashSet<>( Arrays.asList( listing ) );
+        result.remove( digestIndex.getIndexFile() );
+        result.remove( digestIndex.getJournalFile() );
+        result.addAll( digestIndex.getSidecarNames( transfer ) );
+
+        return result.toArray( new String[result.size()] );
+    }
+
+    private boolean writesSidecars( final ChecksummingDecoratorAdvisor.ChecksumAdvice advice )
+    {
+        return advice == CALCULATE_AND_WRITE && digestIndex == null;
+    }
+
+    private TransferMetadataConsumer getConsumer( final ChecksummingDecoratorAdvisor.ChecksumAdvice advice )
+    {
+        if ( advice == CALCULATE_AND_WRITE && digestIndex != null )
+        {
+            return new DigestIndexingConsumer( digestIndex, consumer );
+        }
+
+        return consumer;
+    }
+
+    /**
+     * Records the digests calculated by a checksumming stream in the index, then hands them on to the configured
+     * consumer, if any.
+     */
+    private static final class DigestIndexingConsumer
+            implements TransferMetadataConsumer
+    {
+        private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+        private final DigestIndex digestIndex;
+
+        private final TransferMetadataConsumer delegate;
+
+        DigestIndexingConsumer( final DigestIndex digestIndex, final TransferMetadataConsumer delegate )
+        {
+            this.digestIndex = digestIndex;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean needsMetadataFor( final Transfer transfer )
+        {
+            return true;
+        }
+
+        @Override
+        public void addMetadata( final Transfer transfer, final TransferMetadata transferData )
+        {
+            try
+            {
+                digestIndex.record( transfer, transferData.getDigests() );
+            }
+            catch ( final IOException e )
+            {
+                // the checksums are derived data; they're calculated again the next time the file is read.
+                logger.warn( "Cannot record checksums of: {} in digest index. Reason: {}", transfer, e.getMessage() );
+            }
+
+            if ( delegate != null )
+            {
+                delegate.addMetadata( transfer, transferData );
+            }
+        }
+
+        @Override
+        public void removeMetadata( final Transfer transfer )
+        {
+            if ( delegate != null )
+            {
+                delegate.removeMetadata( transfer );
+            }
+        }
+    }
 }
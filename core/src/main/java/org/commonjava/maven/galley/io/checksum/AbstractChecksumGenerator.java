@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.function.Function;
@@ -92,6 +93,19 @@ public abstract class AbstractChecksumGenerator
         digester.update( data );
     }
 
+    public final void update( final byte[] data, final int off, final int len )
+    {
+        digester.update( data, off, len );
+    }
+
+    /**
+     * Digests the remaining bytes of the buffer, leaving its position at its limit.
+     */
+    public final void update( final ByteBuffer data )
+    {
+        digester.update( data );
+    }
+
     public final void write()
             throws IOException
     {
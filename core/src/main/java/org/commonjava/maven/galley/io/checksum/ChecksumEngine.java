@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.io.checksum;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feeds stream data to a set of {@link AbstractChecksumGenerator}s, a whole buffer at a time.
+ * <br/>
+ * Without an executor, every digest is updated on the caller's thread. With one, once the stream passes
+ * {@link #CHUNK_SIZE} bytes, data is copied into a small ring of chunks, and each algorithm digests them in order on
+ * its own lane of the executor. The caller goes back to I/O while that happens. It only waits when all
+ * {@link #RING_SIZE} chunks are still being digested, and in {@link #finish()}. Small files never leave the caller's
+ * thread.
+ * <br/>
+ * Not thread-safe; it belongs to one stream.
+ */
+final class ChecksumEngine
+{
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    static final int RING_SIZE = 4;
+
+    private final List<AbstractChecksumGenerator> checksums;
+
+    private final Executor executor;
+
+    private long size;
+
+    private boolean parallel;
+
+    private List<CompletableFuture<Void>> lanes;
+
+    private BlockingQueue<byte[]> free;
+
+    private int allocated;
+
+    private byte[] staging;
+
+    private int staged;
+
+    private boolean finished;
+
+    ChecksumEngine( final Set<AbstractChecksumGenerator> checksums, final Executor executor )
+    {
+        this.checksums = new ArrayList<>( checksums );
+        if ( executor == null || checksums.size() < 2 )
+        {
+            this.executor = null;
+        }
+        else
+        {
+            // a chunk only goes back to the ring once every lane has run on it, so rejected work runs here instead.
+            this.executor = task -> {
+                try
+                {
+                    executor.execute( task );
+                }
+                catch ( final RejectedExecutionException e )
+                {
+                    task.run();
+                }
+            };
+        }
+    }
+
+    long getSize()
+    {
+        return size;
+    }
+
+    void update( final byte data )
+            throws IOException
+    {
+        size++;
+        if ( parallel )
+        {
+            nextStaging()[staged++] = data;
+            dispatchIfFull();
+            return;
+        }
+
+        for ( final AbstractChecksumGenerator checksum : checksums )
+        {
+            checksum.update( data );
+        }
+    }
+
+    void update( final byte[] data, final int off, final int len )
+            throws IOException
+    {
+        if ( len <= 0 )
+        {
+            return;
+        }
+
+        size += len;
+        if ( goParallel() )
+        {
+            stage( data, off, len );
+            return;
+        }
+
+        for ( final AbstractChecksumGenerator checksum : checksums )
+        {
+            checksum.update( data, off, len );
+        }
+    }
+
+    /**
+     * Digests the remaining bytes of the buffer, leaving its position at its limit.
+     */
+    void update( final ByteBuffer data )
+            throws IOException
+    {
+        final int len = data.remaining();
+        if ( len <= 0 )
+        {
+            return;
+        }
+
+        size += len;
+        if ( goParallel() )
+        {
+            while ( data.hasRemaining() )
+            {
+                final int n = Math.min( data.remaining(), CHUNK_SIZE - staged );
+                data.get( nextStaging(), staged, n );
+                staged += n;
+                dispatchIfFull();
+            }
+            return;
+        }
+
+        final int start = data.position();
+        for ( final AbstractChecksumGenerator checksum : checksums )
+        {
+            data.position( start );
+            checksum.update( data );
+        }
+    }
+
+    /**
+     * Waits for all queued digest work. Call before reading the generators' results.
+     */
+    void finish()
+            throws IOException
+    {
+        if ( finished )
+        {
+            return;
+        }
+
+        finished = true;
+        if ( !parallel )
+        {
+            return;
+        }
+
+        if ( staged > 0 )
+        {
+            dispatch();
+        }
+
+        try
+        {
+            CompletableFuture.allOf( lanes.toArray( new CompletableFuture[lanes.size()] ) ).join();
+        }
+        catch ( final CompletionException e )
+        {
+            throw new IOException( "Failed to calculate checksums: " + e.getCause().getMessage(), e.getCause() );
+        }
+    }
+
+    /**
+     * Switch to the executor once the stream is big enough to be worth it. All earlier updates ran synchronously, so
+     * the lanes start from the right state.
+     */
+    private boolean goParallel()
+    {
+        if ( !parallel && executor != null && size > CHUNK_SIZE )
+        {
+            parallel = true;
+            lanes = new ArrayList<>( checksums.size() );
+            for ( int i = 0; i < checksums.size(); i++ )
+            {
+                lanes.add( CompletableFuture.completedFuture( null ) );
+            }
+            free = new ArrayBlockingQueue<>( RING_SIZE );
+        }
+
+        return parallel;
+    }
+
+    private void stage( final byte[] data, int off, int len )
+            throws IOException
+    {
+        while ( len > 0 )
+        {
+            final int n = Math.min( len, CHUNK_SIZE - staged );
+            System.arraycopy( data, off, nextStaging(), staged, n );
+            staged += n;
+            off += n;
+            len -= n;
+            dispatchIfFull();
+        }
+    }
+
+    /**
+     * @throws InterruptedIOException if the thread is interrupted while every buffer is still being digested. The
+     * interrupt flag is set again, and the checksums are incomplete from then on.
+     */
+    private byte[] nextStaging()
+            throws InterruptedIOException
+    {
+        if ( staging == null )
+        {
+            if ( allocated < RING_SIZE )
+            {
+                final byte[] buf = free.poll();
+                if ( buf != null )
+                {
+                    staging = buf;
+                }
+                else
+                {
+                    staging = new byte[CHUNK_SIZE];
+                    allocated++;
+                }
+            }
+            else
+            {
+                try
+                {
+                    staging = free.take();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    final InterruptedIOException iioe =
+                            new InterruptedIOException( "Interrupted waiting for checksum calculation" );
+                    iioe.initCause( e );
+                    throw iioe;
+                }
+            }
+        }
+
+        return staging;
+    }
+
+    private void dispatchIfFull()
+    {
+        if ( staged == CHUNK_SIZE )
+        {
+            dispatch();
+        }
+    }
+
+    private void dispatch()
+    {
+        final byte[] chunk = staging;
+        final int len = staged;
+        final AtomicInteger remaining = new AtomicInteger( checksums.size() );
+
+        for ( int i = 0; i < checksums.size(); i++ )
+        {
+            final AbstractChecksumGenerator checksum = checksums.get( i );
+            lanes.set( i, lanes.get( i ).handleAsync( ( ignored, error ) -> {
+                try
+                {
+                    if ( error != null )
+                    {
+                        throw error instanceof CompletionException ?
+                                (CompletionException) error :
+                                new CompletionException( error );
+                    }
+
+                    checksum.update( chunk, 0, len );
+                    return null;
+                }
+                finally
+                {
+                    if ( remaining.decrementAndGet() == 0 )
+                    {
+                        free.offer( chunk );
+                    }
+                }
+            }, executor ) );
+        }
+
+        staging = null;
+        staged = 0;
+    }
+}
@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 public final class ChecksummingInputStream
@@ -40,7 +41,7 @@ public final class ChecksummingInputStream
 
     private final Set<AbstractChecksumGenerator> checksums;
 
-    private long size = 0;
+    private final ChecksumEngine engine;
 
     private final Transfer transfer;
 
@@ -55,6 +56,19 @@ public final class ChecksummingInputStream
                                     final TransferMetadataConsumer metadataConsumer, final boolean writeChecksumFiles,
                                     final Function<String, Timer.Context> timerProvider )
             throws IOException
+    {
+        this( checksumFactories, stream, transfer, metadataConsumer, writeChecksumFiles, timerProvider, null );
+    }
+
+    /**
+     * @param digestExecutor if not null, digests of larger streams are calculated here, off the I/O thread
+     */
+    public ChecksummingInputStream( final Set<AbstractChecksumGeneratorFactory<?>> checksumFactories,
+                                    final InputStream stream, final Transfer transfer,
+                                    final TransferMetadataConsumer metadataConsumer, final boolean writeChecksumFiles,
+                                    final Function<String, Timer.Context> timerProvider,
+                                    final Executor digestExecutor )
+            throws IOException
     {
         super( stream );
         this.transfer = transfer;
@@ -66,6 +80,7 @@ public final class ChecksummingInputStream
         {
             checksums.add( factory.createGenerator( transfer, writeChecksumFiles, timerProvider ) );
         }
+        engine = new ChecksumEngine( checksums, digestExecutor );
     }
 
     @Override
@@ -78,6 +93,7 @@ public final class ChecksummingInputStream
             logger.trace( "START CLOSE: {}", transfer );
             logger.trace( "Read done: {} in: {}. Now, creating checksums.", transfer.getPath(),
                           transfer.getLocation() );
+            engine.finish();
             Map<ContentDigest, String> hexDigests = new HashMap<>();
             for ( final AbstractChecksumGenerator checksum : checksums )
             {
@@ -92,7 +108,7 @@ public final class ChecksummingInputStream
             if ( metadataConsumer != null )
             {
                 logger.trace( "Adding metadata for: {} to: {}", transfer, metadataConsumer );
-                metadataConsumer.addMetadata( transfer, new TransferMetadata( hexDigests, size ) );
+                metadataConsumer.addMetadata( transfer, new TransferMetadata( hexDigests, engine.getSize() ) );
             }
             else
             {
@@ -129,12 +145,8 @@ public final class ChecksummingInputStream
         logger.trace( "{} input", data );
         if ( data > -1 )
         {
-            size++;
             //            logger.trace( "Updating with: {} (raw: {})", ( (byte) data & 0xff ), data );
-            for ( final AbstractChecksumGenerator checksum : checksums )
-            {
-                checksum.update( (byte) data );
-            }
+            engine.update( (byte) data );
         }
         //        else
         //        {
@@ -156,25 +168,7 @@ public final class ChecksummingInputStream
             throws IOException
     {
         int read = super.read( b, off, len );
-        updateDigests( b, off, read );
+        engine.update( b, off, read );
         return read;
     }
-
-    private void updateDigests( final byte[] b, final int off, final int read )
-    {
-        if ( read < 0 )
-        {
-            return;
-        }
-
-        size += read;
-        //        logger.trace( "Updating with [buffer of size: {}]", read );
-        for ( final AbstractChecksumGenerator checksum : checksums )
-        {
-            for ( int i = off; i < off + read; i++ )
-            {
-                checksum.update( (byte) ( b[i] & 0xff ) );
-            }
-        }
-    }
 }
\ No newline at end of file
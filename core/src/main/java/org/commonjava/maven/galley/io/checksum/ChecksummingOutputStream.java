@@ -24,10 +24,12 @@ import org.slf4j.LoggerFactory;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 public final class ChecksummingOutputStream
@@ -40,7 +42,7 @@ public final class ChecksummingOutputStream
 
     private final Set<AbstractChecksumGenerator> checksums;
 
-    private long size = 0;
+    private final ChecksumEngine engine;
 
     private final Transfer transfer;
 
@@ -55,6 +57,19 @@ public final class ChecksummingOutputStream
                                      final TransferMetadataConsumer metadataConsumer, final boolean writeChecksumFiles,
                                      final Function<String, Timer.Context> timerProvider )
             throws IOException
+    {
+        this( checksumFactories, stream, transfer, metadataConsumer, writeChecksumFiles, timerProvider, null );
+    }
+
+    /**
+     * @param digestExecutor if not null, digests of larger streams are calculated here, off the I/O thread
+     */
+    public ChecksummingOutputStream( final Set<AbstractChecksumGeneratorFactory<?>> checksumFactories,
+                                     final OutputStream stream, final Transfer transfer,
+                                     final TransferMetadataConsumer metadataConsumer, final boolean writeChecksumFiles,
+                                     final Function<String, Timer.Context> timerProvider,
+                                     final Executor digestExecutor )
+            throws IOException
     {
         super( stream );
         this.transfer = transfer;
@@ -66,6 +81,7 @@ public final class ChecksummingOutputStream
         {
             checksums.add( factory.createGenerator( transfer, writeChecksumFiles, timerProvider ) );
         }
+        engine = new ChecksumEngine( checksums, digestExecutor );
     }
 
     @Override
@@ -77,8 +93,9 @@ public final class ChecksummingOutputStream
         {
             logger.trace( "START CLOSE: {}", transfer );
             super.flush();
-            logger.trace( "Wrote: {} (size: {}) in: {}. Now, writing checksums.", transfer.getPath(), size,
-                          transfer.getLocation() );
+            engine.finish();
+            logger.trace( "Wrote: {} (size: {}) in: {}. Now, writing checksums.", transfer.getPath(),
+                          engine.getSize(), transfer.getLocation() );
             Map<ContentDigest, String> hexDigests = new HashMap<>();
             for ( final AbstractChecksumGenerator checksum : checksums )
             {
@@ -91,7 +108,7 @@ public final class ChecksummingOutputStream
 
             if ( metadataConsumer != null )
             {
-                metadataConsumer.addMetadata( transfer, new TransferMetadata( hexDigests, size ) );
+                metadataConsumer.addMetadata( transfer, new TransferMetadata( hexDigests, engine.getSize() ) );
             }
             else
             {
@@ -120,15 +137,33 @@ public final class ChecksummingOutputStream
         //        logger.trace( "WRITE: {}", transfer );
         super.write( data );
 
-        size++;
         byte b = (byte) ( data & 0xff );
 
         //        logger.trace( "Updating with: {} (raw: {})", b, data );
 
-        for ( final AbstractChecksumGenerator checksum : checksums )
-        {
-            checksum.update( b );
-        }
+        engine.update( b );
+    }
+
+    @Override
+    public void write( final byte[] data, final int off, final int len )
+            throws IOException
+    {
+        super.write( data, off, len );
+        engine.update( data, off, len );
+    }
+
+    @Override
+    public int write( final ByteBuffer src )
+            throws IOException
+    {
+        final int start = src.position();
+        final int written = super.write( src );
+
+        final ByteBuffer view = src.duplicate();
+        view.limit( start + written ).position( start );
+        engine.update( view );
+
+        return written;
     }
 
 }
\ No newline at end of file
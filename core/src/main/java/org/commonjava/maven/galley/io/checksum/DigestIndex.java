@@ -0,0 +1,463 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.io.checksum;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps the checksums of the files in a directory in one small index file in that directory, instead of one sidecar
+ * file (<code>.md5</code>, <code>.sha1</code>, ...) per algorithm per file.
+ * {@link org.commonjava.maven.galley.io.ChecksummingTransferDecorator} uses it, when configured with one, to answer
+ * reads, existence checks and listings of the sidecars without them being stored.
+ * <br/>
+ * Each line of the index holds a file name followed by its digests, tab-separated, e.g.
+ * <code>foo-1.0.pom&#9;MD5=...&#9;SHA_1=...</code>. Changes are written through before {@link #record(Transfer, Map)}
+ * or {@link #remove(Transfer)} returns, to a journal next to the index that holds only the lines changed since the
+ * index was last written (a line with just a name drops that file). Once the journal grows past about the square root
+ * of the index, it is folded into the index. That keeps the cost of a write well below rewriting the whole index for
+ * large directories. Recording digests that are already held writes nothing.
+ * <br/>
+ * Indexes of recently used directories are kept in memory, up to a fixed number of directories. All access to a
+ * directory's index holds a lock chosen by the index file, not by the copy in memory, so callers working on a copy
+ * that was dropped meanwhile can't overwrite each other's changes.
+ */
+public final class DigestIndex
+{
+
+    public static final String DEFAULT_INDEX_FILE = ".galley-digests";
+
+    public static final int DEFAULT_MAX_DIRECTORIES = 1024;
+
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    private static final int MIN_JOURNAL_ENTRIES = 32;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private static final Map<ContentDigest, String> EXTENSIONS = new EnumMap<>( ContentDigest.class );
+
+    static
+    {
+        EXTENSIONS.put( ContentDigest.MD5, ChecksumAlgorithm.MD5.getExtension() );
+        EXTENSIONS.put( ContentDigest.SHA_1, ChecksumAlgorithm.SHA1.getExtension() );
+        EXTENSIONS.put( ContentDigest.SHA_256, ChecksumAlgorithm.SHA256.getExtension() );
+        EXTENSIONS.put( ContentDigest.SHA_384, ChecksumAlgorithm.SHA384.getExtension() );
+        EXTENSIONS.put( ContentDigest.SHA_512, ChecksumAlgorithm.SHA512.getExtension() );
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String indexFile;
+
+    private final Map<ConcreteResource, Directory> directories;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public DigestIndex()
+    {
+        this( DEFAULT_INDEX_FILE, DEFAULT_MAX_DIRECTORIES );
+    }
+
+    /**
+     * @param indexFile name of the index file kept in each directory
+     * @param maxDirectories how many directory indexes to keep in memory
+     */
+    public DigestIndex( final String indexFile, final int maxDirectories )
+    {
+        if ( maxDirectories < 1 )
+        {
+            throw new IllegalArgumentException( "Digest index must hold at least one directory. Got: " + maxDirectories );
+        }
+
+        this.indexFile = indexFile;
+        this.directories = new LinkedHashMap<ConcreteResource, Directory>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<ConcreteResource, Directory> eldest )
+            {
+                return size() > maxDirectories;
+            }
+        };
+
+        for ( int i = 0; i < locks.length; i++ )
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    public String getIndexFile()
+    {
+        return indexFile;
+    }
+
+    public String getJournalFile()
+    {
+        return indexFile + JOURNAL_SUFFIX;
+    }
+
+    /**
+     * @return true for the index file and its journal
+     */
+    public boolean isIndexFile( final Transfer transfer )
+    {
+        final String name = getName( transfer.getPath() );
+        return indexFile.equals( name ) || getJournalFile().equals( name );
+    }
+
+    /**
+     * Replaces the digests held for a file.
+     */
+    public void record( final Transfer transfer, final Map<ContentDigest, String> digests )
+            throws IOException
+    {
+        final Transfer index = transfer.getSibling( indexFile );
+        if ( index == null || isIndexFile( transfer ) )
+        {
+            return;
+        }
+
+        final Map<ContentDigest, String> updated = new EnumMap<>( ContentDigest.class );
+        updated.putAll( digests );
+
+        final String name = getName( transfer.getPath() );
+        synchronized ( lockFor( index ) )
+        {
+            final Directory directory = load( index );
+            if ( updated.equals( directory.entries.get( name ) ) )
+            {
+                return;
+            }
+
+            update( index, directory, name, updated );
+        }
+    }
+
+    /**
+     * @return the digest held for a file, or null if there isn't one
+     */
+    public String getDigest( final Transfer transfer, final ContentDigest type )
+            throws IOException
+    {
+        final Transfer index = transfer.getSibling( indexFile );
+        if ( index == null )
+        {
+            return null;
+        }
+
+        synchronized ( lockFor( index ) )
+        {
+            final Map<ContentDigest, String> digests = load( index ).entries.get( getName( transfer.getPath() ) );
+            return digests == null ? null : digests.get( type );
+        }
+    }
+
+    /**
+     * @return the content of a checksum sidecar (such as <code>foo.pom.sha1</code>) taken from the index, or null if
+     * the transfer isn't a sidecar or its digest isn't indexed
+     */
+    public String getSidecarDigest( final Transfer sidecar )
+            throws IOException
+    {
+        final ContentDigest type = getSidecarType( sidecar.getPath() );
+        if ( type == null )
+        {
+            return null;
+        }
+
+        final Transfer index = sidecar.getSibling( indexFile );
+        if ( index == null )
+        {
+            return null;
+        }
+
+        final String path = sidecar.getPath();
+        final String name = getName( path.substring( 0, path.length() - EXTENSIONS.get( type ).length() ) );
+        synchronized ( lockFor( index ) )
+        {
+            final Map<ContentDigest, String> digests = load( index ).entries.get( name );
+            return digests == null ? null : digests.get( type );
+        }
+    }
+
+    /**
+     * @return names of the sidecars that can be synthesized for files in the given directory
+     */
+    public List<String> getSidecarNames( final Transfer directory )
+            throws IOException
+    {
+        final Transfer index = directory.getChild( indexFile );
+        final List<String> names = new ArrayList<>();
+        synchronized ( lockFor( index ) )
+        {
+            load( index ).entries.forEach( ( name, digests ) -> digests.keySet()
+                                                                       .forEach( type -> names.add(
+                                                                               name + EXTENSIONS.get( type ) ) ) );
+        }
+
+        return names;
+    }
+
+    /**
+     * Drops the digests held for a file, or a single digest if the transfer is one of its sidecars.
+     */
+    public void remove( final Transfer transfer )
+            throws IOException
+    {
+        final Transfer index = transfer.getSibling( indexFile );
+        if ( index == null || isIndexFile( transfer ) )
+        {
+            return;
+        }
+
+        final String path = transfer.getPath();
+        final ContentDigest type = getSidecarType( path );
+        synchronized ( lockFor( index ) )
+        {
+            final Directory directory = load( index );
+            if ( type == null )
+            {
+                final String name = getName( path );
+                if ( directory.entries.containsKey( name ) )
+                {
+                    update( index, directory, name, null );
+                }
+            }
+            else
+            {
+                final String name = getName( path.substring( 0, path.length() - EXTENSIONS.get( type ).length() ) );
+                final Map<ContentDigest, String> digests = directory.entries.get( name );
+                if ( digests != null && digests.containsKey( type ) )
+                {
+                    final Map<ContentDigest, String> remaining = new EnumMap<>( digests );
+                    remaining.remove( type );
+                    update( index, directory, name, remaining.isEmpty() ? null : remaining );
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the indexes held in memory. They are read again from storage when next needed.
+     */
+    public void clear()
+    {
+        synchronized ( directories )
+        {
+            directories.clear();
+        }
+    }
+
+    private Object lockFor( final Transfer index )
+    {
+        return locks[( index.getResource().hashCode() & Integer.MAX_VALUE ) % locks.length];
+    }
+
+    /**
+     * Callers must hold the directory's lock.
+     */
+    private Directory load( final Transfer index )
+            throws IOException
+    {
+        final ConcreteResource key = index.getResource();
+        synchronized ( directories )
+        {
+            final Directory directory = directories.get( key );
+            if ( directory != null )
+            {
+                return directory;
+            }
+        }
+
+        // read outside the map's lock, so a slow disk only holds up callers that need this directory.
+        final Directory directory = new Directory();
+        read( index, directory.entries );
+        directory.entries.values().removeIf( Objects::isNull );
+
+        read( index.getSibling( getJournalFile() ), directory.journal );
+        directory.journal.forEach( ( name, digests ) -> {
+            if ( digests == null )
+            {
+                directory.entries.remove( name );
+            }
+            else
+            {
+                directory.entries.put( name, digests );
+            }
+        } );
+
+        synchronized ( directories )
+        {
+            directories.put( key, directory );
+        }
+
+        return directory;
+    }
+
+    /**
+     * Replaces (or, given null digests, drops) a file's line. Callers must hold the directory's lock.
+     */
+    private void update( final Transfer index, final Directory directory, final String name,
+                         final Map<ContentDigest, String> digests )
+            throws IOException
+    {
+        if ( digests == null )
+        {
+            directory.entries.remove( name );
+        }
+        else
+        {
+            directory.entries.put( name, digests );
+        }
+        directory.journal.put( name, digests );
+
+        final Transfer journal = index.getSibling( getJournalFile() );
+        final int maxJournal = Math.max( MIN_JOURNAL_ENTRIES, (int) Math.sqrt( directory.entries.size() ) );
+        if ( directory.journal.size() > maxJournal || !index.exists() )
+        {
+            // the index is written first; if the journal outlives it, replaying it again changes nothing.
+            store( index, directory.entries );
+            directory.journal.clear();
+            if ( journal.exists() )
+            {
+                journal.delete( false );
+            }
+        }
+        else
+        {
+            store( journal, directory.journal );
+        }
+    }
+
+    /**
+     * Reads index lines into the given map. A line with no digests maps its name to null.
+     */
+    private void read( final Transfer index, final Map<String, Map<ContentDigest, String>> entries )
+            throws IOException
+    {
+        if ( index == null || !index.exists() )
+        {
+            return;
+        }
+
+        try (InputStream in = index.openInputStream( false ))
+        {
+            if ( in == null )
+            {
+                return;
+            }
+
+            final BufferedReader reader = new BufferedReader( new InputStreamReader( in, UTF_8 ) );
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                final String[] fields = line.split( "\t" );
+                if ( fields[0].isEmpty() )
+                {
+                    continue;
+                }
+
+                final Map<ContentDigest, String> digests = new EnumMap<>( ContentDigest.class );
+                for ( int i = 1; i < fields.length; i++ )
+                {
+                    final int idx = fields[i].indexOf( '=' );
+                    try
+                    {
+                        digests.put( ContentDigest.valueOf( fields[i].substring( 0, idx ) ),
+                                     fields[i].substring( idx + 1 ) );
+                    }
+                    catch ( final IllegalArgumentException | IndexOutOfBoundsException e )
+                    {
+                        logger.warn( "Ignoring unreadable digest: '{}' for: {} in: {}", fields[i], fields[0], index );
+                    }
+                }
+
+                entries.put( fields[0], digests.isEmpty() ? null : digests );
+            }
+        }
+    }
+
+    private void store( final Transfer index, final Map<String, Map<ContentDigest, String>> entries )
+            throws IOException
+    {
+        logger.debug( "Writing {} digest entries to: {}", entries.size(), index );
+        try (Writer writer = new OutputStreamWriter( index.openOutputStream( TransferOperation.GENERATE, false ),
+                                                     UTF_8 ))
+        {
+            for ( final Map.Entry<String, Map<ContentDigest, String>> entry : entries.entrySet() )
+            {
+                writer.write( entry.getKey() );
+                if ( entry.getValue() != null )
+                {
+                    for ( final Map.Entry<ContentDigest, String> digest : entry.getValue().entrySet() )
+                    {
+                        writer.write( '\t' );
+                        writer.write( digest.getKey().name() );
+                        writer.write( '=' );
+                        writer.write( digest.getValue() );
+                    }
+                }
+                writer.write( '\n' );
+            }
+        }
+    }
+
+    private static ContentDigest getSidecarType( final String path )
+    {
+        for ( final Map.Entry<ContentDigest, String> entry : EXTENSIONS.entrySet() )
+        {
+            if ( path.endsWith( entry.getValue() ) && path.length() > entry.getValue().length() )
+            {
+                return entry.getKey();
+            }
+        }
+
+        return null;
+    }
+
+    private static String getName( final String path )
+    {
+        return path.substring( path.lastIndexOf( '/' ) + 1 );
+    }
+
+    /**
+     * A directory's index as held in memory: every file's digests, and the changes in the journal.
+     */
+    private static final class Directory
+    {
+        private final Map<String, Map<ContentDigest, String>> entries = new LinkedHashMap<>();
+
+        private final Map<String, Map<ContentDigest, String>> journal = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,399 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.nfc;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link NotFoundCache} decorator that keeps a fixed-size Bloom filter in front of another NFC implementation. Most
+ * lookups are for paths that were never marked missing; the filter answers those without touching the delegate, and
+ * without allocating. Only a filter hit (which may be a false positive) is passed through to the delegate.
+ * <br/>
+ * Bloom filters cannot forget individual entries. Clearing a single resource simply leaves a stale bit pattern behind,
+ * which at worst costs one delegate lookup. Clearing a whole location counts its entries as stale (the filter keeps a
+ * count per location, so the delegate isn't asked); once the stale share of the filter passes
+ * {@link #DEFAULT_REBUILD_THRESHOLD}, the filter is rebuilt from {@link #getAllMissing()} of the delegate and swapped in.
+ */
+public class BloomFilteredNotFoundCache
+    implements NotFoundCache
+{
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    public static final double DEFAULT_REBUILD_THRESHOLD = 0.25;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final NotFoundCache delegate;
+
+    private final int numBits;
+
+    private final int numHashes;
+
+    private final double rebuildThreshold;
+
+    private volatile Filter filter;
+
+    private volatile Filter building;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean( false );
+
+    // adds share the read side; starting a rebuild and swapping the filter take the write side, so no add can straddle
+    // either step.
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong stale = new AtomicLong();
+
+    private final LongAdder filtered = new LongAdder();
+
+    private final LongAdder passed = new LongAdder();
+
+    private final LongAdder rebuilds = new LongAdder();
+
+    public BloomFilteredNotFoundCache( final NotFoundCache delegate, final int expectedEntries )
+    {
+        this( delegate, expectedEntries, DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_REBUILD_THRESHOLD );
+    }
+
+    /**
+     * @param expectedEntries number of missing paths (across all locations) the filter is sized for. Memory use is fixed
+     * at roughly <code>-expectedEntries * ln(falsePositiveRate) / (ln 2)^2</code> bits, regardless of how many entries
+     * are actually added.
+     */
+    public BloomFilteredNotFoundCache( final NotFoundCache delegate, final int expectedEntries,
+                                       final double falsePositiveRate, final double rebuildThreshold )
+    {
+        if ( expectedEntries < 1 )
+        {
+            throw new IllegalArgumentException( "Expected entries must be positive. Got: " + expectedEntries );
+        }
+        if ( falsePositiveRate <= 0 || falsePositiveRate >= 1 )
+        {
+            throw new IllegalArgumentException( "False-positive rate must be in (0, 1). Got: " + falsePositiveRate );
+        }
+
+        this.delegate = delegate;
+        this.rebuildThreshold = rebuildThreshold;
+
+        final double ln2 = Math.log( 2 );
+        final long bits = (long) Math.ceil( -expectedEntries * Math.log( falsePositiveRate ) / ( ln2 * ln2 ) );
+
+        // round up to a whole number of words
+        this.numBits = (int) Math.min( Integer.MAX_VALUE - 63, ( bits + 63 ) & ~63L );
+        this.numHashes = Math.max( 1, (int) Math.round( (double) numBits / expectedEntries * ln2 ) );
+
+        this.filter = new Filter( numBits );
+
+        final Map<Location, Set<String>> existing = delegate.getAllMissing();
+        if ( existing != null )
+        {
+            existing.forEach( ( location, paths ) -> paths.forEach( path -> put( filter, location, path ) ) );
+        }
+    }
+
+    @Override
+    public void addMissing( final ConcreteResource resource )
+    {
+        swapLock.readLock().lock();
+        try
+        {
+            delegate.addMissing( resource );
+
+            put( filter, resource.getLocation(), resource.getPath() );
+
+            final Filter next = building;
+            if ( next != null )
+            {
+                put( next, resource.getLocation(), resource.getPath() );
+            }
+        }
+        finally
+        {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isMissing( final ConcreteResource resource )
+    {
+        if ( !mightContain( filter, resource.getLocation(), resource.getPath() ) )
+        {
+            filtered.increment();
+            return false;
+        }
+
+        passed.increment();
+        return delegate.isMissing( resource );
+    }
+
+    @Override
+    public void clearMissing( final Location location )
+    {
+        delegate.clearMissing( location );
+
+        final Filter current = filter;
+        final LongAdder entries = current.locationCounts.remove( location );
+        if ( entries != null && entries.sum() > 0 )
+        {
+            final long staleEntries = stale.addAndGet( entries.sum() );
+            if ( staleEntries > current.count.get() * rebuildThreshold )
+            {
+                rebuild();
+            }
+        }
+    }
+
+    @Override
+    public void clearMissing( final ConcreteResource resource )
+    {
+        delegate.clearMissing( resource );
+    }
+
+    @Override
+    public void clearAllMissing()
+    {
+        swapLock.writeLock().lock();
+        try
+        {
+            delegate.clearAllMissing();
+            filter = new Filter( numBits );
+            stale.set( 0 );
+        }
+        finally
+        {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing()
+    {
+        return delegate.getAllMissing();
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location )
+    {
+        return delegate.getMissing( location );
+    }
+
+    /**
+     * Repopulate the filter from the delegate's current contents, dropping bits left behind by cleared entries. Entries
+     * added while the rebuild is running are written to both the old and the new filter, so none are lost in the swap.
+     * Adds only wait for the two short steps that publish the new filter, not for the delegate to be read.
+     */
+    public void rebuild()
+    {
+        if ( !rebuilding.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        try
+        {
+            final Filter next = new Filter( numBits );
+
+            // any add that finished before this point is in the delegate snapshot below; any later one goes to both.
+            swapLock.writeLock().lock();
+            try
+            {
+                building = next;
+                stale.set( 0 );
+            }
+            finally
+            {
+                swapLock.writeLock().unlock();
+            }
+
+            final Map<Location, Set<String>> all = delegate.getAllMissing();
+            if ( all != null )
+            {
+                all.forEach( ( location, paths ) -> paths.forEach( path -> put( next, location, path ) ) );
+            }
+
+            swapLock.writeLock().lock();
+            try
+            {
+                filter = next;
+                building = null;
+            }
+            finally
+            {
+                swapLock.writeLock().unlock();
+            }
+
+            rebuilds.increment();
+            logger.debug( "Rebuilt NFC filter with {} entries", next.count.get() );
+        }
+        finally
+        {
+            building = null;
+            rebuilding.set( false );
+        }
+    }
+
+    public NotFoundCache getDelegate()
+    {
+        return delegate;
+    }
+
+    public int getNumBits()
+    {
+        return numBits;
+    }
+
+    public int getNumHashes()
+    {
+        return numHashes;
+    }
+
+    /**
+     * @return lookups answered by the filter alone
+     */
+    public long getFilteredCount()
+    {
+        return filtered.sum();
+    }
+
+    /**
+     * @return lookups passed through to the delegate (true entries plus false positives)
+     */
+    public long getPassedCount()
+    {
+        return passed.sum();
+    }
+
+    public long getRebuildCount()
+    {
+        return rebuilds.sum();
+    }
+
+    private void put( final Filter f, final Location location, final String path )
+    {
+        final long hash = hash( location, path );
+        final int h1 = (int) hash;
+        final int h2 = (int) ( hash >>> 32 );
+
+        boolean changed = false;
+        for ( int i = 1; i <= numHashes; i++ )
+        {
+            changed |= f.set( index( h1 + i * h2 ) );
+        }
+
+        if ( changed )
+        {
+            f.count.incrementAndGet();
+            f.locationCounts.computeIfAbsent( location, l -> new LongAdder() ).increment();
+        }
+    }
+
+    private boolean mightContain( final Filter f, final Location location, final String path )
+    {
+        final long hash = hash( location, path );
+        final int h1 = (int) hash;
+        final int h2 = (int) ( hash >>> 32 );
+
+        for ( int i = 1; i <= numHashes; i++ )
+        {
+            if ( !f.get( index( h1 + i * h2 ) ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int index( final int combined )
+    {
+        return ( combined & Integer.MAX_VALUE ) % numBits;
+    }
+
+    /**
+     * 64-bit FNV-1a over the path characters, seeded with the location hash, finished with a murmur3 mix. Reads the
+     * path in place, so no byte[] is allocated per lookup.
+     */
+    private static long hash( final Location location, final String path )
+    {
+        long h = 0xcbf29ce484222325L ^ location.hashCode();
+        for ( int i = 0; i < path.length(); i++ )
+        {
+            h ^= path.charAt( i );
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Filter
+    {
+        private final AtomicLongArray words;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final ConcurrentMap<Location, LongAdder> locationCounts = new ConcurrentHashMap<>();
+
+        Filter( final int numBits )
+        {
+            this.words = new AtomicLongArray( numBits >>> 6 );
+        }
+
+        boolean set( final int bit )
+        {
+            final int word = bit >>> 6;
+            final long mask = 1L << bit;
+
+            long old;
+            do
+            {
+                old = words.get( word );
+                if ( ( old & mask ) != 0 )
+                {
+                    return false;
+                }
+            }
+            while ( !words.compareAndSet( word, old, old | mask ) );
+
+            return true;
+        }
+
+        boolean get( final int bit )
+        {
+            return ( words.get( bit >>> 6 ) & ( 1L << bit ) ) != 0;
+        }
+    }
+
+}
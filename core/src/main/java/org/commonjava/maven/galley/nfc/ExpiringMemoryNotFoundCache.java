@@ -0,0 +1,335 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.nfc;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.inject.Alternative;
+import javax.inject.Named;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.maven.galley.util.LocationUtils;
+
+/**
+ * Thread-safe, bounded {@link NotFoundCache}. Entries expire after the number of seconds given by the
+ * {@link Location#NFC_TIMEOUT_SECONDS} attribute of their location (or the configured default; a value &lt;= 0 means
+ * never expire). When the global entry cap is exceeded, entries are evicted using a CLOCK (second-chance)
+ * approximation of LRU, so lookups never need to take a lock to record access order.
+ * <br/>
+ * Entries are keyed on the resource's own path string, so a lookup allocates nothing. Each location keeps its map
+ * once created, even when cleared; the entry count is only changed by the map operation that added or removed the
+ * entry, so it can't drift from the maps' contents.
+ */
+@Named
+@Alternative
+public class ExpiringMemoryNotFoundCache
+    implements NotFoundCache
+{
+
+    public static final int DEFAULT_MAX_ENTRIES = 500000;
+
+    public static final int DEFAULT_TIMEOUT_SECONDS = 86400;
+
+    private final ConcurrentMap<Location, ConcurrentMap<String, Entry>> missing = new ConcurrentHashMap<>();
+
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicInteger stale = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final int maxEntries;
+
+    private final int defaultTimeoutSeconds;
+
+    public ExpiringMemoryNotFoundCache()
+    {
+        this( DEFAULT_MAX_ENTRIES, DEFAULT_TIMEOUT_SECONDS );
+    }
+
+    public ExpiringMemoryNotFoundCache( final int maxEntries, final int defaultTimeoutSeconds )
+    {
+        if ( maxEntries < 1 )
+        {
+            throw new IllegalArgumentException( "NFC must allow at least one entry. Got: " + maxEntries );
+        }
+
+        this.maxEntries = maxEntries;
+        this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+    }
+
+    @Override
+    public void addMissing( final ConcreteResource resource )
+    {
+        final Location location = resource.getLocation();
+        final int timeout = LocationUtils.getNfcTimeoutSeconds( location, defaultTimeoutSeconds );
+        final long expires =
+                timeout > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( timeout ) : Long.MAX_VALUE;
+
+        final ConcurrentMap<String, Entry> entries = missing.computeIfAbsent( location, l -> new ConcurrentHashMap<>() );
+
+        final Entry[] added = new Entry[1];
+        entries.compute( resource.getPath(), ( path, existing ) -> {
+            if ( existing != null )
+            {
+                existing.expires = expires;
+                existing.referenced = true;
+                return existing;
+            }
+
+            added[0] = new Entry( location, path, expires );
+            size.incrementAndGet();
+            return added[0];
+        } );
+
+        if ( added[0] != null )
+        {
+            clock.offer( added[0] );
+            if ( size.get() > maxEntries )
+            {
+                evict();
+            }
+        }
+    }
+
+    @Override
+    public boolean isMissing( final ConcreteResource resource )
+    {
+        final ConcurrentMap<String, Entry> entries = missing.get( resource.getLocation() );
+        if ( entries != null )
+        {
+            final Entry entry = entries.get( resource.getPath() );
+            if ( entry != null )
+            {
+                if ( entry.isExpired( System.currentTimeMillis() ) )
+                {
+                    if ( remove( entries, entry ) )
+                    {
+                        expirations.increment();
+                    }
+                }
+                else
+                {
+                    entry.referenced = true;
+                    hits.increment();
+                    return true;
+                }
+            }
+        }
+
+        misses.increment();
+        return false;
+    }
+
+    @Override
+    public void clearMissing( final Location location )
+    {
+        final ConcurrentMap<String, Entry> entries = missing.get( location );
+        if ( entries != null )
+        {
+            entries.values().forEach( entry -> remove( entries, entry ) );
+        }
+    }
+
+    @Override
+    public void clearMissing( final ConcreteResource resource )
+    {
+        final ConcurrentMap<String, Entry> entries = missing.get( resource.getLocation() );
+        if ( entries != null )
+        {
+            final Entry entry = entries.get( resource.getPath() );
+            if ( entry != null )
+            {
+                remove( entries, entry );
+            }
+        }
+    }
+
+    @Override
+    public void clearAllMissing()
+    {
+        missing.keySet().forEach( this::clearMissing );
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing()
+    {
+        final long now = System.currentTimeMillis();
+        final Map<Location, Set<String>> result = new HashMap<>();
+        missing.forEach( ( location, entries ) -> {
+            final Set<String> paths = toPaths( entries, now );
+            if ( !paths.isEmpty() )
+            {
+                result.put( location, paths );
+            }
+        } );
+
+        return result;
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location )
+    {
+        final ConcurrentMap<String, Entry> entries = missing.get( location );
+        return entries == null ? null : toPaths( entries, System.currentTimeMillis() );
+    }
+
+    public int getSize()
+    {
+        return size.get();
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    public long getExpirationCount()
+    {
+        return expirations.sum();
+    }
+
+    private Set<String> toPaths( final ConcurrentMap<String, Entry> entries, final long now )
+    {
+        final Set<String> paths = new HashSet<>();
+        entries.values().forEach( entry -> {
+            if ( !entry.isExpired( now ) )
+            {
+                paths.add( entry.path );
+            }
+        } );
+
+        return paths;
+    }
+
+    /**
+     * Only the thread whose remove() takes the entry out of the map accounts for it. Its clock slot is reclaimed
+     * lazily, either when the clock hand reaches it or when enough removed slots have built up to be worth a sweep.
+     */
+    private boolean remove( final ConcurrentMap<String, Entry> entries, final Entry entry )
+    {
+        if ( !entries.remove( entry.path, entry ) )
+        {
+            return false;
+        }
+
+        entry.removed = true;
+        size.decrementAndGet();
+        if ( stale.incrementAndGet() > maxEntries )
+        {
+            stale.set( 0 );
+            clock.removeIf( e -> e.removed );
+        }
+
+        return true;
+    }
+
+    /**
+     * Advance the clock hand until the cache is back under its cap. Referenced entries get a second chance and are
+     * re-queued; expired entries are dropped first without counting as evictions.
+     */
+    private void evict()
+    {
+        final long now = System.currentTimeMillis();
+        Entry entry;
+        while ( size.get() > maxEntries && ( entry = clock.poll() ) != null )
+        {
+            if ( entry.removed )
+            {
+                continue;
+            }
+
+            final ConcurrentMap<String, Entry> entries = missing.get( entry.location );
+            if ( entry.isExpired( now ) )
+            {
+                if ( remove( entries, entry ) )
+                {
+                    expirations.increment();
+                }
+            }
+            else if ( entry.referenced )
+            {
+                entry.referenced = false;
+                clock.offer( entry );
+            }
+            else if ( remove( entries, entry ) )
+            {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Location location;
+
+        private final String path;
+
+        private volatile long expires;
+
+        private volatile boolean referenced;
+
+        private volatile boolean removed;
+
+        Entry( final Location location, final String path, final long expires )
+        {
+            this.location = location;
+            this.path = path;
+            this.expires = expires;
+        }
+
+        boolean isExpired( final long now )
+        {
+            return expires <= now;
+        }
+    }
+
+}
@@ -0,0 +1,911 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.nfc;
+
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.maven.galley.util.LocationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link NotFoundCache} that survives restarts. Every change is appended as a record to a memory-mapped log file under
+ * the cache basedir; lookups are served from an in-memory index and never touch the disk.
+ * <br/>
+ * Opening the cache only reads the fixed-size file header, so startup cost does not depend on how many entries were
+ * recorded. The existing log is replayed into the index on a background thread; until that finishes, lookups only see
+ * entries added since startup, and changes made in the meantime take precedence over the replayed ones.
+ * <br/>
+ * Each entry carries an expiry timestamp, taken from the {@link Location#NFC_TIMEOUT_SECONDS} attribute of its location.
+ * A background task periodically rewrites the log with only live, unexpired entries once superseded records dominate.
+ * <br/>
+ * Use it via {@link org.commonjava.maven.galley.GalleyCoreBuilder#withNfc(NotFoundCache)}, and {@link #close()} it on
+ * shutdown.
+ */
+public class MappedFileNotFoundCache
+        implements NotFoundCache, Closeable
+{
+
+    public static final String NFC_FILE = ".galley-nfc.log";
+
+    public static final int DEFAULT_TIMEOUT_SECONDS = 86400;
+
+    public static final long DEFAULT_COMPACTION_INTERVAL_SECONDS = 300;
+
+    private static final int MAGIC = 0x47_4e_46_43; // "GNFC"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int COMMITTED_OFFSET = 8;
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    // op, expiry and three field lengths
+    private static final int RECORD_OVERHEAD = 1 + 8 + 12;
+
+    private static final byte OP_ADD = 1;
+
+    private static final byte OP_CLEAR_RESOURCE = 2;
+
+    private static final byte OP_CLEAR_LOCATION = 3;
+
+    private static final byte OP_CLEAR_ALL = 4;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final File file;
+
+    private final int defaultTimeoutSeconds;
+
+    private final ConcurrentMap<String, LocationMissing> index = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService maintenance;
+
+    // appends share this lock; compaction and close take it exclusively, to swap or release the log file
+    private final ReentrantReadWriteLock logLock = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+
+    private MappedByteBuffer header;
+
+    // CHUNK_SIZE-aligned windows onto the log, by chunk number, mapped as appends reach them
+    private final ConcurrentMap<Long, MappedByteBuffer> chunks = new ConcurrentHashMap<>();
+
+    // end of the log space handed out to appends so far
+    private final AtomicLong reservedEnd = new AtomicLong();
+
+    // end of the records written and applied, in log order. An append whose space starts here is next to commit.
+    private final AtomicLong committedEnd = new AtomicLong();
+
+    // first chunk still mapped; only changed by the committing append, or under the exclusive lock
+    private long firstMappedChunk;
+
+    private volatile boolean closed;
+
+    private final AtomicLong records = new AtomicLong();
+
+    // guards the hand-off from background replay to the live index
+    private final Object loadLock = new Object();
+
+    private volatile boolean loaded;
+
+    // set once loading is over, including the rewrite of a damaged log
+    private volatile boolean settled;
+
+    private Set<String> touched = new HashSet<>();
+
+    private Set<String> clearedLocations = new HashSet<>();
+
+    private boolean clearedAll;
+
+    public MappedFileNotFoundCache( final File cacheBasedir )
+            throws IOException
+    {
+        this( cacheBasedir, DEFAULT_TIMEOUT_SECONDS, DEFAULT_COMPACTION_INTERVAL_SECONDS );
+    }
+
+    public MappedFileNotFoundCache( final File cacheBasedir, final int defaultTimeoutSeconds,
+                                    final long compactionIntervalSeconds )
+            throws IOException
+    {
+        this.file = new File( cacheBasedir, NFC_FILE );
+        this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+
+        cacheBasedir.mkdirs();
+        final long committed = open();
+
+        maintenance = Executors.newSingleThreadScheduledExecutor( new NamedThreadFactory( "galley-nfc", true, 2 ) );
+        maintenance.execute( () -> load( committed ) );
+        if ( compactionIntervalSeconds > 0 )
+        {
+            maintenance.scheduleWithFixedDelay( this::compactIfNeeded, compactionIntervalSeconds,
+                                                compactionIntervalSeconds, TimeUnit.SECONDS );
+        }
+    }
+
+    @Override
+    public void addMissing( final ConcreteResource resource )
+    {
+        final Location location = resource.getLocation();
+        final String path = resource.getPath();
+        final String key = key( location );
+
+        final int timeout = LocationUtils.getNfcTimeoutSeconds( location, defaultTimeoutSeconds );
+        final long expires =
+                timeout > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( timeout ) : Long.MAX_VALUE;
+
+        record( OP_ADD, location, path, expires, () -> touched.add( key + '\0' + path ),
+                () -> locationMissing( key, location ).paths.put( path, expires ) );
+    }
+
+    @Override
+    public boolean isMissing( final ConcreteResource resource )
+    {
+        final LocationMissing missing = index.get( key( resource.getLocation() ) );
+        if ( missing == null )
+        {
+            return false;
+        }
+
+        final Long expires = missing.paths.get( resource.getPath() );
+        if ( expires == null )
+        {
+            return false;
+        }
+
+        if ( expires <= System.currentTimeMillis() )
+        {
+            missing.paths.remove( resource.getPath(), expires );
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public void clearMissing( final Location location )
+    {
+        final String key = key( location );
+
+        record( OP_CLEAR_LOCATION, location, "", 0, () -> clearedLocations.add( key ), () -> index.remove( key ) );
+    }
+
+    @Override
+    public void clearMissing( final ConcreteResource resource )
+    {
+        final Location location = resource.getLocation();
+        final String path = resource.getPath();
+        final String key = key( location );
+
+        record( OP_CLEAR_RESOURCE, location, path, 0, () -> touched.add( key + '\0' + path ), () -> {
+            final LocationMissing missing = index.get( key );
+            if ( missing != null )
+            {
+                missing.paths.remove( path );
+            }
+        } );
+    }
+
+    @Override
+    public void clearAllMissing()
+    {
+        record( OP_CLEAR_ALL, null, "", 0, () -> clearedAll = true, index::clear );
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing()
+    {
+        final long now = System.currentTimeMillis();
+        final Map<Location, Set<String>> result = new HashMap<>();
+        index.values().forEach( missing -> {
+            final Set<String> paths = missing.livePaths( now );
+            if ( !paths.isEmpty() )
+            {
+                result.put( missing.location, paths );
+            }
+        } );
+
+        return result;
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location )
+    {
+        final LocationMissing missing = index.get( key( location ) );
+        return missing == null ? null : missing.livePaths( System.currentTimeMillis() );
+    }
+
+    /**
+     * @return true once the on-disk log from the previous run has been replayed into memory, and rewritten if it was
+     * damaged.
+     */
+    public boolean isLoaded()
+    {
+        return settled;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    @Override
+    @PreDestroy
+    public void close()
+    {
+        maintenance.shutdownNow();
+        logLock.writeLock().lock();
+        try
+        {
+            if ( closed )
+            {
+                return;
+            }
+
+            closed = true;
+            closeChannel();
+        }
+        finally
+        {
+            logLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the log with one record per live, unexpired entry, then swap it in place of the current log. Does nothing
+     * until the previous log has been fully replayed, since only then is the index complete.
+     */
+    public void compact()
+            throws IOException
+    {
+        if ( !loaded )
+        {
+            return;
+        }
+
+        logLock.writeLock().lock();
+        try
+        {
+            if ( closed )
+            {
+                return;
+            }
+
+            final long now = System.currentTimeMillis();
+            final File tmp = new File( file.getPath() + ".compact" );
+            long written = 0;
+            long length = HEADER_SIZE;
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream( new FileOutputStream( tmp ) ) ))
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                out.writeLong( 0 );
+
+                for ( final LocationMissing missing : index.values() )
+                {
+                    for ( final Map.Entry<String, Long> entry : missing.paths.entrySet() )
+                    {
+                        if ( entry.getValue() <= now )
+                        {
+                            missing.paths.remove( entry.getKey(), entry.getValue() );
+                            continue;
+                        }
+
+                        final byte[] record = encode( OP_ADD, missing.location, entry.getKey(), entry.getValue() );
+                        out.write( record );
+                        length += record.length;
+                        written++;
+                    }
+                }
+            }
+
+            try (FileChannel tmpChannel = FileChannel.open( tmp.toPath(), StandardOpenOption.WRITE ))
+            {
+                final ByteBuffer committed = ByteBuffer.allocate( 8 );
+                committed.putLong( 0, length );
+                tmpChannel.write( committed, COMMITTED_OFFSET );
+                tmpChannel.force( true );
+            }
+
+            // the log has to be closed (and unmapped) to be replaced; whatever happens, reopen the one left in place.
+            closeChannel();
+            try
+            {
+                Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch ( final IOException e )
+            {
+                tmp.delete();
+                throw e;
+            }
+            finally
+            {
+                reopen();
+            }
+
+            records.set( written );
+
+            logger.debug( "Compacted NFC log {} to {} entries ({} bytes)", file, written, length );
+        }
+        finally
+        {
+            logLock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfNeeded()
+    {
+        if ( !loaded )
+        {
+            return;
+        }
+
+        long live = 0;
+        for ( final LocationMissing missing : index.values() )
+        {
+            live += missing.paths.size();
+        }
+
+        final long total = records.get();
+        if ( total > MIN_COMPACTION_RECORDS && total > 2 * live )
+        {
+            try
+            {
+                compact();
+            }
+            catch ( final IOException e )
+            {
+                logger.warn( "Failed to compact NFC log: " + file, e );
+            }
+        }
+    }
+
+    /**
+     * Open (or create) the log and map its header. Only the header is read.
+     *
+     * @return the committed length of the log, up to which records are complete.
+     */
+    private long open()
+            throws IOException
+    {
+        channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE );
+        header = channel.map( FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE );
+
+        long committed = header.getLong( COMMITTED_OFFSET );
+        if ( header.getInt( 0 ) != MAGIC || header.getInt( 4 ) != VERSION || committed < HEADER_SIZE )
+        {
+            if ( header.getInt( 0 ) != 0 )
+            {
+                logger.warn( "NFC log {} has an unrecognized header. Starting a new one.", file );
+            }
+
+            header.putInt( 0, MAGIC );
+            header.putInt( 4, VERSION );
+            committed = HEADER_SIZE;
+            header.putLong( COMMITTED_OFFSET, committed );
+        }
+
+        reservedEnd.set( committed );
+        committedEnd.set( committed );
+        firstMappedChunk = committed / CHUNK_SIZE;
+        return committed;
+    }
+
+    /**
+     * Reopen the log after it was closed for compaction. If that fails, changes are kept in memory only from then on.
+     */
+    private void reopen()
+    {
+        try
+        {
+            open();
+        }
+        catch ( final IOException e )
+        {
+            logger.error( "Failed to reopen NFC log: " + file + ". New entries will not survive a restart.", e );
+            closed = true;
+            closeChannel();
+        }
+    }
+
+    private void closeChannel()
+    {
+        try
+        {
+            if ( header != null )
+            {
+                header.force();
+            }
+            for ( final MappedByteBuffer chunk : chunks.values() )
+            {
+                chunk.force();
+            }
+            if ( channel != null )
+            {
+                channel.close();
+            }
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to close NFC log: " + file, e );
+        }
+        finally
+        {
+            unmap( header );
+            chunks.values().forEach( this::unmap );
+            header = null;
+            chunks.clear();
+            channel = null;
+        }
+    }
+
+    /**
+     * Release a mapping now rather than whenever the buffer is garbage collected, which keeps the file open (and, on
+     * some platforms, undeletable) until then. Only called once the buffer is no longer used: under the exclusive log
+     * lock, or by the append that commits the last record in it.
+     */
+    private void unmap( final MappedByteBuffer buffer )
+    {
+        if ( buffer == null )
+        {
+            return;
+        }
+
+        try
+        {
+            // Java 9+
+            final Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+            final Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+            theUnsafe.setAccessible( true );
+            unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class ).invoke( theUnsafe.get( null ), buffer );
+            return;
+        }
+        catch ( final NoSuchMethodException e )
+        {
+            // Java 8; see below
+        }
+        catch ( final ReflectiveOperationException | RuntimeException e )
+        {
+            logger.debug( "Cannot unmap NFC log buffer. It will be released when collected.", e );
+            return;
+        }
+
+        try
+        {
+            final Method cleanerMethod = buffer.getClass().getMethod( "cleaner" );
+            cleanerMethod.setAccessible( true );
+            final Object cleaner = cleanerMethod.invoke( buffer );
+            if ( cleaner != null )
+            {
+                cleaner.getClass().getMethod( "clean" ).invoke( cleaner );
+            }
+        }
+        catch ( final ReflectiveOperationException | RuntimeException e )
+        {
+            logger.debug( "Cannot unmap NFC log buffer. It will be released when collected.", e );
+        }
+    }
+
+    /**
+     * Append a change to the log, then apply it to the live index. Appends reserve their space in the log up front and
+     * copy their records in parallel. They then commit one at a time, in log order: apply the change to the index, and
+     * advance the committed length in the header. So the index and the log agree on ordering, and replay never reads
+     * past a record that is still being written. Appends share the log lock, so a compaction never snapshots the
+     * index between an append and its commit.
+     */
+    private void record( final byte op, final Location location, final String path, final long expires,
+                         final Runnable mark, final Runnable apply )
+    {
+        final byte[] record = encode( op, location, path, expires );
+        logLock.readLock().lock();
+        try
+        {
+            if ( closed )
+            {
+                mutate( mark, apply );
+                return;
+            }
+
+            final long start = reservedEnd.getAndAdd( record.length );
+            final long end = start + record.length;
+            final boolean written = write( record, start );
+
+            while ( committedEnd.get() != start )
+            {
+                Thread.yield();
+            }
+
+            try
+            {
+                mutate( mark, apply );
+                if ( !written )
+                {
+                    // the header can't be advanced past the gap this record leaves, so stop logging.
+                    closed = true;
+                }
+                else if ( !closed )
+                {
+                    header.putLong( COMMITTED_OFFSET, end );
+                    records.incrementAndGet();
+                    releaseChunksBefore( end );
+                }
+            }
+            finally
+            {
+                committedEnd.set( end );
+            }
+        }
+        finally
+        {
+            logLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copy a record into its reserved space, which may span chunks.
+     */
+    private boolean write( final byte[] record, final long start )
+    {
+        try
+        {
+            int off = 0;
+            while ( off < record.length )
+            {
+                final long pos = start + off;
+                final int within = (int) ( pos % CHUNK_SIZE );
+                final int n = Math.min( record.length - off, CHUNK_SIZE - within );
+
+                final ByteBuffer target = chunk( pos / CHUNK_SIZE ).duplicate();
+                target.position( within );
+                target.put( record, off, n );
+                off += n;
+            }
+
+            return true;
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            logger.error( "Failed to append to NFC log: " + file + ". New entries will not survive a restart.", e );
+            return false;
+        }
+    }
+
+    private MappedByteBuffer chunk( final long number )
+            throws IOException
+    {
+        MappedByteBuffer chunk = chunks.get( number );
+        if ( chunk == null )
+        {
+            synchronized ( chunks )
+            {
+                chunk = chunks.get( number );
+                if ( chunk == null )
+                {
+                    chunk = channel.map( FileChannel.MapMode.READ_WRITE, number * CHUNK_SIZE, CHUNK_SIZE );
+                    chunks.put( number, chunk );
+                }
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Every record before the committed end is written, so nothing will touch the chunks that end before it again.
+     */
+    private void releaseChunksBefore( final long end )
+    {
+        while ( firstMappedChunk < end / CHUNK_SIZE )
+        {
+            final MappedByteBuffer done = chunks.remove( firstMappedChunk );
+            if ( done != null )
+            {
+                done.force();
+                unmap( done );
+            }
+            firstMappedChunk++;
+        }
+    }
+
+    /**
+     * Apply a change to the live index. Until the previous log has been replayed, also mark what the change touched
+     * (under the load lock) so the replay won't resurrect or override it.
+     */
+    private void mutate( final Runnable mark, final Runnable apply )
+    {
+        if ( !loaded )
+        {
+            synchronized ( loadLock )
+            {
+                if ( !loaded )
+                {
+                    mark.run();
+                    apply.run();
+                    return;
+                }
+            }
+        }
+
+        apply.run();
+    }
+
+    private void load( final long committed )
+    {
+        final long start = System.currentTimeMillis();
+        final Map<String, LocationMissing> replayed = new HashMap<>();
+        long count = 0;
+        long pos = HEADER_SIZE;
+        boolean damaged = false;
+
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ))
+        {
+            in.readFully( new byte[HEADER_SIZE] );
+
+            // a damaged header may claim more than the file holds.
+            final long end = Math.min( committed, file.length() );
+            damaged = end < committed;
+            while ( pos < end )
+            {
+                long left = end - pos - RECORD_OVERHEAD;
+                final byte op = in.readByte();
+                if ( left < 0 || op < OP_ADD || op > OP_CLEAR_ALL )
+                {
+                    throw new IOException( "Bad NFC record type: " + op + " at offset: " + pos );
+                }
+
+                final long expires = in.readLong();
+                final byte[] nameBytes = readBytes( in, left, pos );
+                left -= nameBytes.length;
+                final byte[] uriBytes = readBytes( in, left, pos );
+                left -= uriBytes.length;
+                final byte[] pathBytes = readBytes( in, left, pos );
+                pos += RECORD_OVERHEAD + nameBytes.length + uriBytes.length + pathBytes.length;
+                count++;
+
+                final String name = new String( nameBytes, StandardCharsets.UTF_8 );
+                final String uri = new String( uriBytes, StandardCharsets.UTF_8 );
+                final String path = new String( pathBytes, StandardCharsets.UTF_8 );
+
+                final String key = name + '\n' + uri;
+                switch ( op )
+                {
+                    case OP_ADD:
+                    {
+                        replayed.computeIfAbsent( key, k -> new LocationMissing( new SimpleLocation( name, uri ) ) )
+                                .paths.put( path, expires );
+                        break;
+                    }
+                    case OP_CLEAR_RESOURCE:
+                    {
+                        final LocationMissing missing = replayed.get( key );
+                        if ( missing != null )
+                        {
+                            missing.paths.remove( path );
+                        }
+                        break;
+                    }
+                    case OP_CLEAR_LOCATION:
+                    {
+                        replayed.remove( key );
+                        break;
+                    }
+                    case OP_CLEAR_ALL:
+                    {
+                        replayed.clear();
+                        break;
+                    }
+                    default:
+                    {
+                        throw new IOException( "Unknown NFC record type: " + op + " at offset: " + pos );
+                    }
+                }
+            }
+        }
+        catch ( final EOFException e )
+        {
+            damaged = true;
+        }
+        catch ( final IOException e )
+        {
+            logger.debug( "Bad NFC record in: " + file, e );
+            damaged = true;
+        }
+
+        if ( damaged )
+        {
+            logger.warn( "NFC log {} is damaged at offset: {}. Using the {} records before it.", file, pos, count );
+        }
+
+        final long now = System.currentTimeMillis();
+        synchronized ( loadLock )
+        {
+            if ( !clearedAll )
+            {
+                replayed.forEach( ( key, fromDisk ) -> {
+                    if ( clearedLocations.contains( key ) )
+                    {
+                        return;
+                    }
+
+                    fromDisk.paths.entrySet()
+                                  .removeIf( e -> e.getValue() <= now || touched.contains( key + '\0' + e.getKey() ) );
+                    if ( fromDisk.paths.isEmpty() )
+                    {
+                        return;
+                    }
+
+                    final LocationMissing missing = index.putIfAbsent( key, fromDisk );
+                    if ( missing != null )
+                    {
+                        fromDisk.paths.forEach( missing.paths::putIfAbsent );
+                    }
+                } );
+            }
+
+            loaded = true;
+            touched = null;
+            clearedLocations = null;
+        }
+
+        records.addAndGet( count );
+        logger.info( "Loaded {} NFC records from {} in {}ms", count, file, System.currentTimeMillis() - start );
+
+        if ( damaged )
+        {
+            // new records were appended after the damage, where the next replay would never reach them. Rewriting the
+            // log drops the damaged tail and keeps everything that is live.
+            try
+            {
+                compact();
+            }
+            catch ( final IOException e )
+            {
+                logger.warn( "Failed to rewrite damaged NFC log: " + file, e );
+            }
+        }
+
+        settled = true;
+    }
+
+    private LocationMissing locationMissing( final String key, final Location location )
+    {
+        final LocationMissing missing = index.computeIfAbsent( key, k -> new LocationMissing( location ) );
+        if ( missing.location != location )
+        {
+            // prefer the caller's own Location over one reconstructed from the log
+            missing.location = location;
+        }
+
+        return missing;
+    }
+
+    private static String key( final Location location )
+    {
+        return nullToEmpty( location.getName() ) + '\n' + nullToEmpty( location.getUri() );
+    }
+
+    private static String nullToEmpty( final String value )
+    {
+        return value == null ? "" : value;
+    }
+
+    private static byte[] encode( final byte op, final Location location, final String path, final long expires )
+    {
+        final byte[] name = bytes( location == null ? null : location.getName() );
+        final byte[] uri = bytes( location == null ? null : location.getUri() );
+        final byte[] pathBytes = bytes( path );
+
+        final ByteBuffer buf = ByteBuffer.allocate( RECORD_OVERHEAD + name.length + uri.length + pathBytes.length );
+        buf.put( op );
+        buf.putLong( expires );
+        buf.putInt( name.length ).put( name );
+        buf.putInt( uri.length ).put( uri );
+        buf.putInt( pathBytes.length ).put( pathBytes );
+
+        return buf.array();
+    }
+
+    private static byte[] bytes( final String value )
+    {
+        return nullToEmpty( value ).getBytes( StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * @param left how many bytes of the log are left for this field, so a damaged length is caught before it is used to
+     * allocate
+     */
+    private static byte[] readBytes( final DataInputStream in, final long left, final long recordStart )
+            throws IOException
+    {
+        final int length = in.readInt();
+        if ( length < 0 || length > left )
+        {
+            throw new IOException( "Bad NFC record field length: " + length + " at offset: " + recordStart );
+        }
+
+        final byte[] bytes = new byte[length];
+        in.readFully( bytes );
+        return bytes;
+    }
+
+    private static final class LocationMissing
+    {
+        private volatile Location location;
+
+        private final ConcurrentMap<String, Long> paths = new ConcurrentHashMap<>();
+
+        LocationMissing( final Location location )
+        {
+            this.location = location;
+        }
+
+        Set<String> livePaths( final long now )
+        {
+            final Set<String> result = new HashSet<>();
+            paths.forEach( ( path, expires ) -> {
+                if ( expires > now )
+                {
+                    result.add( path );
+                }
+            } );
+
+            return result;
+        }
+    }
+
+}
@@ -25,6 +25,7 @@ import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferBatch;
 import org.commonjava.maven.galley.model.VirtualResource;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
 import org.commonjava.maven.galley.testing.core.transport.TestTransport;
 import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
 import org.junit.Test;
@@ -139,6 +140,52 @@ public abstract class AbstractTransferManagerTest
         assertTransferContent( transfer, testContent );
     }
 
+    /**
+     * Test that a cached copy is refreshed through the transport when revalidation is requested.
+     */
+    @Test
+    public void retrieve_revalidateCachedCopy()
+        throws Exception
+    {
+        final Location loc = new SimpleLocation( "file:///test-repo" );
+        final ConcreteResource resource = new ConcreteResource( loc, "/path/to/revalidated.txt" );
+
+        getTransport().registerDownload( resource, new TestDownload( "old".getBytes() ) );
+        assertTransferContent( getTransferManagerImpl().retrieve( resource ), "old" );
+
+        getTransport().registerDownload( resource, new TestDownload( "new".getBytes() ) );
+        assertTransferContent( getTransferManagerImpl().retrieve( resource ), "old" );
+
+        final EventMetadata metadata = new EventMetadata().set( TransferManager.REVALIDATE, Boolean.TRUE );
+        assertTransferContent( getTransferManagerImpl().retrieve( resource, false, metadata ), "new" );
+    }
+
+    /**
+     * Test that a cached copy is still used when revalidating it fails.
+     */
+    @Test
+    public void retrieve_revalidateFailureUsesCachedCopy()
+        throws Exception
+    {
+        final Location loc = new SimpleLocation( "file:///test-repo" );
+        final ConcreteResource resource = new ConcreteResource( loc, "/path/to/stale.txt" );
+
+        getTransport().registerDownload( resource, new TestDownload( "cached".getBytes() ) );
+        assertTransferContent( getTransferManagerImpl().retrieve( resource ), "cached" );
+
+        getTransport().registerDownload( resource, new TestDownload( new TransferException( "Remote is down" ) )
+        {
+            @Override
+            public DownloadJob call()
+            {
+                return this;
+            }
+        } );
+
+        final EventMetadata metadata = new EventMetadata().set( TransferManager.REVALIDATE, Boolean.TRUE );
+        assertTransferContent( getTransferManagerImpl().retrieve( resource, false, metadata ), "cached" );
+    }
+
     @Test( expected = TransferException.class )
     public void resourceDeletionNotAllowed() throws Exception
     {
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.DigestIndex;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.apache.commons.codec.digest.DigestUtils.shaHex;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class GalleyCoreBuilderTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void digestIndexKeepsChecksumsOfStoredFiles()
+            throws Exception
+    {
+        final GalleyCore core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) )
+                .withDigestIndex( new DigestIndex() )
+                .build();
+
+        final Transfer txfr = core.getCache()
+                                  .getTransfer( new ConcreteResource( new SimpleLocation( "test:uri" ),
+                                                                      "org/foo/bar/1/bar-1.pom" ) );
+
+        final byte[] data = "<project/>".getBytes();
+        try (OutputStream stream = txfr.openOutputStream( TransferOperation.UPLOAD, false ))
+        {
+            stream.write( data );
+        }
+
+        final File dir = txfr.getDetachedFile().getParentFile();
+        assertThat( new File( dir, DigestIndex.DEFAULT_INDEX_FILE ).exists(), equalTo( true ) );
+        assertThat( new File( dir, "bar-1.pom.sha1" ).exists(), equalTo( false ) );
+
+        final Transfer sha1 = txfr.getSiblingMeta( ".sha1" );
+        assertThat( sha1.exists(), equalTo( true ) );
+        try (InputStream stream = sha1.openInputStream( false ))
+        {
+            assertThat( IOUtils.toString( stream ), equalTo( shaHex( data ) ) );
+        }
+    }
+
+    @Test( expected = GalleyInitException.class )
+    public void digestIndexIsRejectedWithSuppliedDecorator()
+            throws Exception
+    {
+        new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) )
+                .withTransferDecorator( new TransferDecoratorManager( new NoOpTransferDecorator() ) )
+                .withDigestIndex( new DigestIndex() )
+                .build();
+    }
+}
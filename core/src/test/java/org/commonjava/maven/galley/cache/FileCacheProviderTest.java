@@ -27,11 +27,18 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FileCacheProviderTest
     extends CacheProviderTCK
@@ -69,4 +76,40 @@ public class FileCacheProviderTest
         assertThat( provider.exists( resource ), equalTo( true ) );
         assertTrue( file.exists() );
     }
+
+    @Test
+    public void failedOpenReleasesWriteLock()
+                    throws Exception
+    {
+        final ConcreteResource resource = new ConcreteResource( new SimpleLocation( "http://foo.com" ), "/blocked/file.txt" );
+        final CacheProvider provider = getCacheProvider();
+
+        // a file where the parent directory should be, so the directory can't be created.
+        final File parent = provider.asAdminView().getDetachedFile( resource ).getParentFile();
+        parent.getParentFile().mkdirs();
+        assertTrue( parent.createNewFile() );
+
+        try
+        {
+            provider.openOutputStream( resource );
+            fail( "Opened a stream under a file" );
+        }
+        catch ( final IOException expected )
+        {
+        }
+
+        assertThat( provider.isWriteLocked( resource ), equalTo( false ) );
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            final InputStream in = executor.submit( () -> provider.openInputStream( resource ) )
+                                           .get( 5, TimeUnit.SECONDS );
+            assertThat( in, nullValue() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Lock/unlock throughput of {@link SimpleLockingSupport} against {@link StripedLockingSupport}, with many threads
+ * spread over a set of resources. Most operations are reads, as they are for a cache serving artifacts; the legacy
+ * implementation has no shared mode, so every operation takes its exclusive lock.
+ * <br/>
+ * Not run as part of the build. Run {@link #main(String[])} from the test classpath, or pass options straight to
+ * <code>org.openjdk.jmh.Main</code>.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@Threads( 16 )
+@State( Scope.Benchmark )
+@SuppressWarnings( "deprecation" )
+public class LockingSupportBenchmark
+{
+
+    @Param( { "simple", "striped" } )
+    public String impl;
+
+    @Param( { "16", "1024" } )
+    public int resourceCount;
+
+    /**
+     * Percentage of operations that take the write lock.
+     */
+    @Param( { "10" } )
+    public int writePercent;
+
+    private ConcreteResource[] resources;
+
+    private SimpleLockingSupport simple;
+
+    private StripedLockingSupport striped;
+
+    @Setup
+    public void setup()
+    {
+        // logback-test.xml logs at DEBUG, which would measure the console rather than the locks
+        ( (Logger) LoggerFactory.getLogger( "org.commonjava" ) ).setLevel( Level.INFO );
+
+        final Location location = new SimpleLocation( "bench", "http://127.0.0.1/repo" );
+        resources = new ConcreteResource[resourceCount];
+        for ( int i = 0; i < resourceCount; i++ )
+        {
+            resources[i] = new ConcreteResource( location, "org/foo/bar/" + i + "/bar-" + i + ".pom" );
+        }
+
+        simple = new SimpleLockingSupport();
+        striped = new StripedLockingSupport();
+    }
+
+    @Benchmark
+    public void lockUnlock( final Blackhole bh )
+    {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final ConcreteResource resource = resources[random.nextInt( resources.length )];
+        final boolean write = random.nextInt( 100 ) < writePercent;
+
+        if ( "simple".equals( impl ) )
+        {
+            simple.waitForUnlock( resource );
+            simple.lock( resource );
+            try
+            {
+                bh.consume( resource );
+                Blackhole.consumeCPU( 64 );
+            }
+            finally
+            {
+                simple.unlock( resource );
+            }
+        }
+        else if ( write )
+        {
+            striped.lockWrite( resource );
+            try
+            {
+                bh.consume( resource );
+                Blackhole.consumeCPU( 64 );
+            }
+            finally
+            {
+                striped.unlockWrite( resource );
+            }
+        }
+        else
+        {
+            striped.lockRead( resource );
+            try
+            {
+                bh.consume( resource );
+                Blackhole.consumeCPU( 64 );
+            }
+            finally
+            {
+                striped.unlockRead( resource );
+            }
+        }
+    }
+
+    public static void main( final String[] args )
+            throws Exception
+    {
+        new Runner( new OptionsBuilder().include( LockingSupportBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * getTransfer() throughput of the old provider-wide synchronized map lookup against {@link TransferCache}. Lookups are
+ * spread over more resources than the cache holds, so the benchmark includes misses and eviction. Run with different
+ * thread counts (<code>-t 1</code>, <code>-t 4</code>, ...) to compare how each scales across cores.
+ * <br/>
+ * Not run as part of the build. Run {@link #main(String[])} from the test classpath, or pass options straight to
+ * <code>org.openjdk.jmh.Main</code>.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@Threads( Threads.MAX )
+@State( Scope.Benchmark )
+public class TransferCacheBenchmark
+{
+
+    @Param( { "10000" } )
+    public int cacheSize;
+
+    /**
+     * Distinct resources looked up, as a percentage of cacheSize.
+     */
+    @Param( { "50", "150" } )
+    public int workingSetPercent;
+
+    private ConcreteResource[] resources;
+
+    private final Map<ConcreteResource, Transfer> legacy = new ConcurrentHashMap<>( 10000 );
+
+    private TransferCache cache;
+
+    private final Function<ConcreteResource, Transfer> factory = r -> new Transfer( r, null, null, null );
+
+    @Setup
+    public void setup()
+    {
+        final Location location = new SimpleLocation( "bench", "http://127.0.0.1/repo" );
+        resources = new ConcreteResource[cacheSize * workingSetPercent / 100];
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            resources[i] = new ConcreteResource( location, "org/foo/bar/" + i + "/bar-" + i + ".pom" );
+        }
+
+        cache = new TransferCache( cacheSize );
+    }
+
+    @Benchmark
+    public Transfer synchronizedMap()
+    {
+        return legacyGet( next() );
+    }
+
+    @Benchmark
+    public Transfer transferCache()
+    {
+        return cache.get( next(), factory );
+    }
+
+    private synchronized Transfer legacyGet( final ConcreteResource resource )
+    {
+        Transfer t = legacy.get( resource );
+        if ( t == null )
+        {
+            t = factory.apply( resource );
+            legacy.put( resource, t );
+        }
+
+        return t;
+    }
+
+    private ConcreteResource next()
+    {
+        return resources[ThreadLocalRandom.current().nextInt( resources.length )];
+    }
+
+    public static void main( final String[] args )
+            throws Exception
+    {
+        new Runner( new OptionsBuilder().include( TransferCacheBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
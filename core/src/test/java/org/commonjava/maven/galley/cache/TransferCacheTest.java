@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TransferCacheTest
+{
+
+    private final Location location = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final Function<ConcreteResource, Transfer> factory = r -> {
+        created.incrementAndGet();
+        return new Transfer( r, null, null, null );
+    };
+
+    @Test
+    public void concurrentLookupsShareOneInstance()
+            throws Exception
+    {
+        final TransferCache cache = new TransferCache( 100 );
+        final ConcreteResource resource = resource( 0 );
+
+        final int threads = 16;
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch go = new CountDownLatch( 1 );
+        try
+        {
+            final List<Future<Transfer>> results = new ArrayList<>();
+            for ( int i = 0; i < threads; i++ )
+            {
+                results.add( executor.submit( () -> {
+                    go.await();
+                    return cache.get( new ConcreteResource( location, resource.getPath() ), factory );
+                } ) );
+            }
+
+            go.countDown();
+
+            final Transfer first = results.get( 0 ).get( 10, TimeUnit.SECONDS );
+            for ( final Future<Transfer> result : results )
+            {
+                assertThat( result.get( 10, TimeUnit.SECONDS ), sameInstance( first ) );
+            }
+
+            assertThat( cache.size(), equalTo( 1 ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sizeIsBoundedAndRecentlyUsedEntriesSurvive()
+    {
+        final TransferCache cache = new TransferCache( 10 );
+
+        final Transfer hot = cache.get( resource( 0 ), factory );
+        for ( int i = 1; i < 100; i++ )
+        {
+            // keep the first entry referenced as the clock sweeps past it
+            assertThat( cache.get( resource( 0 ), factory ), sameInstance( hot ) );
+            cache.get( resource( i ), factory );
+
+            assertThat( cache.size() <= 10, equalTo( true ) );
+        }
+
+        assertThat( cache.get( resource( 0 ), factory ), sameInstance( hot ) );
+        assertThat( cache.getEvictionCount() >= 89, equalTo( true ) );
+    }
+
+    @Test
+    public void clearDropsCachedInstances()
+    {
+        final TransferCache cache = new TransferCache( 10 );
+
+        final Transfer first = cache.get( resource( 0 ), factory );
+        cache.clear();
+
+        assertThat( cache.size(), equalTo( 0 ) );
+        assertThat( cache.get( resource( 0 ), factory ) == first, equalTo( false ) );
+        assertThat( created.get(), equalTo( 2 ) );
+        assertThat( cache.getHitCount(), equalTo( 0L ) );
+        assertThat( cache.getMissCount(), equalTo( 2L ) );
+    }
+
+    private ConcreteResource resource( final int idx )
+    {
+        return new ConcreteResource( location, "org/foo/bar/" + idx + "/bar-" + idx + ".pom" );
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.maven.galley.testutil.TransferManagerFixture.newTransferManager;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncTransferManagerImplTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Location location = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+    private TestTransport transport;
+
+    private ExecutorService asyncExecutor;
+
+    private AsyncTransferManagerImpl async;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        transport = new TestTransport();
+
+        final TransferManagerImpl mgr =
+                newTransferManager( temp.newFolder( "cache" ), transport, new MemoryNotFoundCache(),
+                                    new TransportManagerConfig(), Executors.newFixedThreadPool( 2 ),
+                                    Executors.newFixedThreadPool( 2 ) );
+
+        // one worker, so tests can hold it busy and queue operations behind it.
+        asyncExecutor = Executors.newSingleThreadExecutor();
+        async = new AsyncTransferManagerImpl( mgr, asyncExecutor );
+    }
+
+    @After
+    public void teardown()
+    {
+        async.shutdown();
+        asyncExecutor.shutdownNow();
+    }
+
+    @Test
+    public void retrieveCompletesWithTransfer()
+            throws Exception
+    {
+        final ConcreteResource resource = new ConcreteResource( location, "org/foo/foo.pom" );
+        transport.registerDownload( resource, new TestDownload( "<project/>".getBytes() ) );
+
+        final CompletableFuture<String> content = async.retrieve( resource ).thenApply( transfer -> {
+            try (InputStream in = transfer.openInputStream())
+            {
+                return IOUtils.toString( in );
+            }
+            catch ( final Exception e )
+            {
+                throw new IllegalStateException( e );
+            }
+        } );
+
+        assertThat( content.get( 10, TimeUnit.SECONDS ), equalTo( "<project/>" ) );
+    }
+
+    @Test
+    public void failureCompletesExceptionallyWithTransferException()
+            throws Exception
+    {
+        final ConcreteResource resource = new ConcreteResource( location, "org/foo/broken.pom" );
+        transport.registerDownload( resource, new FailingDownload() );
+
+        try
+        {
+            async.retrieve( resource ).get( 10, TimeUnit.SECONDS );
+            fail( "Retrieval should have failed" );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertThat( e.getCause(), instanceOf( TransferException.class ) );
+        }
+    }
+
+    @Test
+    public void timedOutOperationFailsAndFreesWorker()
+            throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final ConcreteResource slow = new ConcreteResource( location, "org/foo/slow.pom" );
+        transport.registerDownload( slow, new BlockingDownload( release, new AtomicInteger() ) );
+
+        final CompletableFuture<Transfer> result =
+                async.withTimeout( 200, TimeUnit.MILLISECONDS ).retrieve( slow, false, new EventMetadata() );
+
+        try
+        {
+            result.get( 10, TimeUnit.SECONDS );
+            fail( "Retrieval should have timed out" );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertThat( e.getCause(), instanceOf( TransferTimeoutException.class ) );
+        }
+        finally
+        {
+            release.countDown();
+        }
+
+        // the single worker must be available for the next operation.
+        final ConcreteResource next = new ConcreteResource( location, "org/foo/next.pom" );
+        transport.registerDownload( next, new TestDownload( "next".getBytes() ) );
+        assertThat( async.retrieve( next ).get( 10, TimeUnit.SECONDS ).exists(), equalTo( true ) );
+    }
+
+    @Test
+    public void cancelledOperationNeverStarts()
+            throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger started = new AtomicInteger();
+
+        final ConcreteResource busy = new ConcreteResource( location, "org/foo/busy.pom" );
+        transport.registerDownload( busy, new BlockingDownload( release, started ) );
+
+        final ConcreteResource queued = new ConcreteResource( location, "org/foo/queued.pom" );
+        transport.registerDownload( queued, new BlockingDownload( release, started ) );
+
+        final CompletableFuture<Transfer> first = async.retrieve( busy );
+        final CompletableFuture<Transfer> second = async.retrieve( queued );
+
+        assertThat( second.cancel( true ), equalTo( true ) );
+        release.countDown();
+
+        assertThat( first.get( 10, TimeUnit.SECONDS ).exists(), equalTo( true ) );
+        assertThat( second.isCancelled(), equalTo( true ) );
+        assertThat( started.get(), equalTo( 1 ) );
+    }
+
+    private static final class BlockingDownload
+            extends TestDownload
+    {
+        private final CountDownLatch release;
+
+        private final AtomicInteger started;
+
+        BlockingDownload( final CountDownLatch release, final AtomicInteger started )
+        {
+            super( "content".getBytes() );
+            this.release = release;
+            this.started = started;
+        }
+
+        @Override
+        public DownloadJob call()
+                throws Exception
+        {
+            started.incrementAndGet();
+            release.await();
+            return super.call();
+        }
+    }
+
+    private static final class FailingDownload
+            extends TestDownload
+    {
+        FailingDownload()
+        {
+            super( "unused".getBytes() );
+        }
+
+        @Override
+        public DownloadJob call()
+                throws Exception
+        {
+            throw new TransferException( "Simulated failure" );
+        }
+    }
+}
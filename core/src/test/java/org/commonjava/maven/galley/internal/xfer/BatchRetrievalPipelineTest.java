@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferBatchListener;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.internal.TransferManagerImpl;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferBatch;
+import org.commonjava.maven.galley.model.VirtualResource;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.maven.galley.testutil.TransferManagerFixture.newTransferManager;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class BatchRetrievalPipelineTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final SimpleLocation first = new SimpleLocation( "first", "http://127.0.0.1/first" );
+
+    private final SimpleLocation second = new SimpleLocation( "second", "http://127.0.0.1/second" );
+
+    private final TestTransport transport = new TestTransport();
+
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    private final ExecutorService handlerExecutor = Executors.newFixedThreadPool( 8 );
+
+    private final ExecutorService batchExecutor = Executors.newFixedThreadPool( 8 );
+
+    private TransferManagerImpl mgr;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        mgr = newTransferManager( temp.newFolder( "cache" ), transport, new MemoryNotFoundCache(),
+                                  new TransportManagerConfig(), handlerExecutor, batchExecutor );
+    }
+
+    @After
+    public void teardown()
+    {
+        release.countDown();
+        handlerExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void resultsAreStreamedAndMissingResourcesMoveToNextLocation()
+            throws Exception
+    {
+        registerMissing( first, "org/foo/a.pom" );
+        register( second, "org/foo/a.pom", new TestDownload( "a".getBytes() ) );
+        register( first, "org/foo/b.pom", new TestDownload( "b".getBytes() ) );
+
+        final Map<ConcreteResource, Transfer> seen = new ConcurrentHashMap<>();
+        final TransferBatch batch = mgr.batchRetrieve(
+                new TransferBatch( Arrays.asList( virtual( "org/foo/a.pom" ), virtual( "org/foo/b.pom" ) ) ),
+                new EventMetadata(), seen::put );
+
+        assertThat( batch.getTransfers().size(), equalTo( 2 ) );
+        assertThat( seen, equalTo( batch.getTransfers() ) );
+        assertThat( seen.containsKey( new ConcreteResource( second, "org/foo/a.pom" ) ), equalTo( true ) );
+        assertThat( seen.containsKey( new ConcreteResource( first, "org/foo/b.pom" ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void slowResourceDoesNotHoldUpOthers()
+            throws Exception
+    {
+        register( first, "org/foo/slow.pom", new BlockingDownload( release, new AtomicInteger(), new AtomicInteger() ) );
+        registerMissing( first, "org/foo/fast.pom" );
+        register( second, "org/foo/fast.pom", new TestDownload( "fast".getBytes() ) );
+
+        final CountDownLatch fastDone = new CountDownLatch( 1 );
+        final TransferBatchListener listener = ( resource, transfer ) -> {
+            if ( resource.getPath().endsWith( "fast.pom" ) )
+            {
+                fastDone.countDown();
+            }
+        };
+
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try
+        {
+            final Future<TransferBatch> result = caller.submit( () -> mgr.batchRetrieve(
+                    new TransferBatch( Arrays.asList( virtual( "org/foo/slow.pom" ), virtual( "org/foo/fast.pom" ) ) ),
+                    new EventMetadata(), listener ) );
+
+            // the second try for fast.pom must not wait for slow.pom's first try to finish
+            assertThat( fastDone.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+            assertThat( result.isDone(), equalTo( false ) );
+
+            release.countDown();
+            assertThat( result.get( 10, TimeUnit.SECONDS ).getTransfers().size(), equalTo( 2 ) );
+        }
+        finally
+        {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrencyPerLocationIsBounded()
+            throws Exception
+    {
+        first.setAttribute( Location.MAX_CONNECTIONS, 2 );
+
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final List<ConcreteResource> resources = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            final String path = "org/foo/" + i + ".pom";
+            register( first, path, new BlockingDownload( null, current, max ) );
+            resources.add( new ConcreteResource( first, path ) );
+        }
+
+        final TransferBatch batch =
+                mgr.batchRetrieve( new TransferBatch( resources ), new EventMetadata(), ( resource, transfer ) -> {
+                } );
+
+        assertThat( batch.getTransfers().size(), equalTo( 8 ) );
+        assertThat( max.get(), equalTo( 2 ) );
+    }
+
+    private VirtualResource virtual( final String path )
+    {
+        return new VirtualResource( Arrays.asList( first, second ), path );
+    }
+
+    private void register( final Location location, final String path, final TestDownload download )
+    {
+        transport.registerDownload( new ConcreteResource( location, path ), download );
+    }
+
+    private void registerMissing( final Location location, final String path )
+    {
+        register( location, path, new TestDownload( (byte[]) null ) );
+    }
+
+    /**
+     * Tracks how many downloads run at once. Without a latch, it holds each download briefly so they overlap.
+     */
+    private static final class BlockingDownload
+            extends TestDownload
+    {
+        private final CountDownLatch release;
+
+        private final AtomicInteger current;
+
+        private final AtomicInteger max;
+
+        BlockingDownload( final CountDownLatch release, final AtomicInteger current, final AtomicInteger max )
+        {
+            super( "content".getBytes() );
+            this.release = release;
+            this.current = current;
+            this.max = max;
+        }
+
+        @Override
+        public DownloadJob call()
+                throws Exception
+        {
+            final int now = current.incrementAndGet();
+            max.accumulateAndGet( now, Math::max );
+            try
+            {
+                if ( release != null )
+                {
+                    release.await();
+                }
+                else
+                {
+                    Thread.sleep( 100 );
+                }
+            }
+            finally
+            {
+                current.decrementAndGet();
+            }
+
+            return super.call();
+        }
+    }
+}
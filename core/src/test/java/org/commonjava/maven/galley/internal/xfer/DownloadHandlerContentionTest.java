@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Contention benchmark for {@link DownloadHandler}: many threads retrieving a mix of distinct and overlapping paths.
+ * Every path must be downloaded exactly once, and every caller must see the content.
+ */
+public class DownloadHandlerContentionTest
+{
+    private static final int THREADS = 64;
+
+    private static final int ROUNDS = 8;
+
+    // each group of (THREADS / OVERLAP) callers shares a path in every round.
+    private static final int OVERLAP = 4;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private FileCacheProvider cacheProvider;
+
+    private TestTransport transport;
+
+    private ExecutorService transferExecutor;
+
+    private ExecutorService callerExecutor;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider =
+                new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ), false );
+
+        transport = new TestTransport();
+        transferExecutor = Executors.newFixedThreadPool( 12 );
+        callerExecutor = Executors.newFixedThreadPool( THREADS );
+    }
+
+    @After
+    public void teardown()
+    {
+        transferExecutor.shutdownNow();
+        callerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void distinctAndOverlappingPathsDownloadOncePerTarget()
+            throws Exception
+    {
+        final DownloadHandler handler =
+                new DownloadHandler( new MemoryNotFoundCache(), new TransportManagerConfig(), transferExecutor );
+
+        final Location location = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+        final AtomicInteger calls = new AtomicInteger( 0 );
+
+        final List<ConcreteResource[]> rounds = new ArrayList<>();
+        int distinctPaths = 0;
+        for ( int r = 0; r < ROUNDS; r++ )
+        {
+            final ConcreteResource[] resources = new ConcreteResource[THREADS];
+            for ( int t = 0; t < THREADS; t++ )
+            {
+                // odd rounds: every thread gets its own path; even rounds: OVERLAP threads share each path.
+                final int idx = r % 2 == 0 ? t / OVERLAP : t;
+                final ConcreteResource resource =
+                        new ConcreteResource( location, String.format( "round-%d/path-%d.txt", r, idx ) );
+
+                if ( t == 0 || !resource.equals( resources[t - 1] ) )
+                {
+                    transport.registerDownload( resource, new CountingDownload( resource.getPath().getBytes(), calls ) );
+                    distinctPaths++;
+                }
+
+                resources[t] = resource;
+            }
+            rounds.add( resources );
+        }
+
+        final AtomicInteger successes = new AtomicInteger( 0 );
+        final long start = System.nanoTime();
+        for ( final ConcreteResource[] resources : rounds )
+        {
+            final CountDownLatch ready = new CountDownLatch( THREADS );
+            final CountDownLatch go = new CountDownLatch( 1 );
+            final CountDownLatch done = new CountDownLatch( THREADS );
+            for ( final ConcreteResource resource : resources )
+            {
+                callerExecutor.execute( () -> {
+                    try
+                    {
+                        ready.countDown();
+                        go.await();
+
+                        final Transfer target = cacheProvider.getTransfer( resource );
+                        final Transfer result =
+                                handler.download( resource, target, 10, transport, false, new EventMetadata() );
+
+                        if ( result != null && result.exists() )
+                        {
+                            successes.incrementAndGet();
+                        }
+                    }
+                    catch ( final Exception e )
+                    {
+                        logger.error( "Failed to retrieve: " + resource, e );
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                } );
+            }
+
+            ready.await();
+            go.countDown();
+            done.await( 30, TimeUnit.SECONDS );
+        }
+
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        logger.info( "{} retrievals by {} threads over {} distinct paths completed in {}ms", THREADS * ROUNDS, THREADS,
+                     distinctPaths, elapsed );
+
+        assertThat( successes.get(), equalTo( THREADS * ROUNDS ) );
+        assertThat( calls.get(), equalTo( distinctPaths ) );
+    }
+
+    private static final class CountingDownload
+            extends TestDownload
+    {
+        private final AtomicInteger calls;
+
+        CountingDownload( final byte[] data, final AtomicInteger calls )
+        {
+            super( data );
+            this.calls = calls;
+        }
+
+        @Override
+        public DownloadJob call()
+                throws Exception
+        {
+            calls.incrementAndGet();
+
+            // widen the window for joiners to attach to the in-flight download.
+            Thread.sleep( 20 );
+            return super.call();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Callers of a download that has to wait for a worker: the wait for a worker doesn't count against the transfer's
+ * timeout, and a job whose callers all gave up before it started never runs.
+ */
+public class DownloadHandlerQueueTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Location location = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+    private final ConcreteResource first = new ConcreteResource( location, "first.txt" );
+
+    private final ConcreteResource second = new ConcreteResource( location, "second.txt" );
+
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    private final MemoryNotFoundCache nfc = new MemoryNotFoundCache();
+
+    private FileCacheProvider cacheProvider;
+
+    private TestTransport transport;
+
+    private ExecutorService transferExecutor;
+
+    private ExecutorService callerExecutor;
+
+    private DownloadHandler handler;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider =
+                new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ), false );
+
+        transport = new TestTransport();
+        transferExecutor = Executors.newFixedThreadPool( 2 );
+        callerExecutor = Executors.newFixedThreadPool( 2 );
+
+        // one download at a time, so the second waits for the first.
+        handler = new DownloadHandler( nfc, new TransportManagerConfig().withDownloadLimits( 1, 0 ), transferExecutor );
+    }
+
+    @After
+    public void teardown()
+    {
+        release.countDown();
+        transferExecutor.shutdownNow();
+        callerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void timeQueuedDoesNotCountAgainstTimeout()
+            throws Exception
+    {
+        transport.registerDownload( first, new SlowDownload( 1500, new AtomicInteger() ) );
+        transport.registerDownload( second, new SlowDownload( 1500, new AtomicInteger() ) );
+
+        final Future<Transfer> firstResult = callerExecutor.submit( () -> download( first, 2 ) );
+        waitForRunning();
+        final Future<Transfer> secondResult = callerExecutor.submit( () -> download( second, 2 ) );
+
+        // the second job finishes about 3s after it was queued, more than its 2s timeout, but only 1.5s after it
+        // started.
+        assertThat( firstResult.get( 10, TimeUnit.SECONDS ).exists(), equalTo( true ) );
+        assertThat( secondResult.get( 10, TimeUnit.SECONDS ).exists(), equalTo( true ) );
+    }
+
+    @Test
+    public void abandonedQueuedJobIsWithdrawn()
+            throws Exception
+    {
+        final AtomicInteger secondCalls = new AtomicInteger();
+        transport.registerDownload( first, new BlockedDownload() );
+        transport.registerDownload( second, new SlowDownload( 0, secondCalls ) );
+
+        final Future<Transfer> firstResult = callerExecutor.submit( () -> download( first, 10 ) );
+        waitForRunning();
+
+        try
+        {
+            download( second, 1 );
+            fail( "Queued download should have timed out" );
+        }
+        catch ( final TransferTimeoutException expected )
+        {
+        }
+
+        assertThat( handler.getScheduler().getQueued( location ), equalTo( 0 ) );
+
+        release.countDown();
+        assertThat( firstResult.get( 10, TimeUnit.SECONDS ).exists(), equalTo( true ) );
+
+        assertThat( secondCalls.get(), equalTo( 0 ) );
+        assertThat( nfc.isMissing( second ), equalTo( false ) );
+
+        // a later request starts a fresh job.
+        assertThat( download( second, 10 ).exists(), equalTo( true ) );
+        assertThat( secondCalls.get(), equalTo( 1 ) );
+    }
+
+    private Transfer download( final ConcreteResource resource, final int timeoutSeconds )
+            throws Exception
+    {
+        return handler.download( resource, cacheProvider.getTransfer( resource ), timeoutSeconds, transport, false,
+                                 new EventMetadata() );
+    }
+
+    private void waitForRunning()
+            throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 10000;
+        while ( handler.getScheduler().getRunning() < 1 && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertThat( handler.getScheduler().getRunning(), equalTo( 1 ) );
+    }
+
+    private static final class SlowDownload
+            extends TestDownload
+    {
+        private final long millis;
+
+        private final AtomicInteger calls;
+
+        SlowDownload( final long millis, final AtomicInteger calls )
+        {
+            super( "content".getBytes() );
+            this.millis = millis;
+            this.calls = calls;
+        }
+
+        @Override
+        public DownloadJob call()
+                throws Exception
+        {
+            calls.incrementAndGet();
+            Thread.sleep( millis );
+            return super.call();
+        }
+    }
+
+    private final class BlockedDownload
+            extends TestDownload
+    {
+        BlockedDownload()
+        {
+            super( "content".getBytes() );
+        }
+
+        @Override
+        public DownloadJob call()
+                throws Exception
+        {
+            release.await();
+            return super.call();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DownloadSchedulerTest
+{
+
+    private final SimpleLocation slow = new SimpleLocation( "slow", "http://127.0.0.1/slow" );
+
+    private final SimpleLocation healthy = new SimpleLocation( "healthy", "http://127.0.0.1/healthy" );
+
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+    @After
+    public void teardown()
+    {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void slowLocationCannotTakeEveryWorker()
+            throws Exception
+    {
+        slow.setAttribute( Location.MAX_CONNECTIONS, 2 );
+        final DownloadScheduler scheduler = new DownloadScheduler( executor, 4, 0 );
+
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        for ( int i = 0; i < 10; i++ )
+        {
+            scheduler.submit( slow, () -> {
+                max.accumulateAndGet( current.incrementAndGet(), Math::max );
+                try
+                {
+                    release.await();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    current.decrementAndGet();
+                }
+            }, e -> fail( e.getMessage() ) );
+        }
+
+        final CountDownLatch healthyDone = new CountDownLatch( 10 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            scheduler.submit( healthy, healthyDone::countDown, e -> fail( e.getMessage() ) );
+        }
+
+        assertThat( healthyDone.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        waitFor( () -> current.get() == 2 );
+        assertThat( scheduler.getQueued( slow ), equalTo( 8 ) );
+
+        release.countDown();
+        waitFor( () -> scheduler.getRunning() == 0 );
+        assertThat( scheduler.getQueued( slow ), equalTo( 0 ) );
+        assertThat( max.get(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void fullQueueShedsLoadForThatLocationOnly()
+            throws Exception
+    {
+        slow.setAttribute( Location.MAX_CONNECTIONS, 1 );
+        final DownloadScheduler scheduler = new DownloadScheduler( executor, 4, 2 );
+
+        final Runnable blocked = () -> {
+            try
+            {
+                release.await();
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        // one running, two waiting
+        for ( int i = 0; i < 3; i++ )
+        {
+            scheduler.submit( slow, blocked, e -> fail( e.getMessage() ) );
+        }
+
+        try
+        {
+            scheduler.submit( slow, blocked, e -> fail( e.getMessage() ) );
+            fail( "Job should have been refused" );
+        }
+        catch ( final TransferLocationException e )
+        {
+            assertThat( e.getLocation(), equalTo( (Location) slow ) );
+        }
+
+        final CountDownLatch healthyDone = new CountDownLatch( 1 );
+        scheduler.submit( healthy, healthyDone::countDown, e -> fail( e.getMessage() ) );
+        assertThat( healthyDone.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+    }
+
+    @Test
+    public void withdrawnJobNeverRuns()
+            throws Exception
+    {
+        slow.setAttribute( Location.MAX_CONNECTIONS, 1 );
+        final DownloadScheduler scheduler = new DownloadScheduler( executor, 4, 0 );
+
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final DownloadScheduler.Ticket running = scheduler.submit( slow, () -> {
+            started.countDown();
+            try
+            {
+                release.await();
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, e -> fail( e.getMessage() ) );
+
+        final AtomicInteger runs = new AtomicInteger();
+        final DownloadScheduler.Ticket queued = scheduler.submit( slow, runs::incrementAndGet, e -> fail( e.getMessage() ) );
+
+        assertThat( started.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( running.cancel(), equalTo( false ) );
+        assertThat( queued.cancel(), equalTo( true ) );
+        assertThat( queued.cancel(), equalTo( false ) );
+        assertThat( scheduler.getQueued( slow ), equalTo( 0 ) );
+
+        final CountDownLatch after = new CountDownLatch( 1 );
+        scheduler.submit( slow, after::countDown, e -> fail( e.getMessage() ) );
+
+        release.countDown();
+        assertThat( after.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        waitFor( () -> scheduler.getRunning() == 0 );
+        assertThat( runs.get(), equalTo( 0 ) );
+    }
+
+    private void waitFor( final Condition condition )
+            throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + 10000;
+        while ( !condition.met() && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertThat( condition.met(), equalTo( true ) );
+    }
+
+    private interface Condition
+    {
+        boolean met();
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.internal.TransferManagerImpl;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.VirtualResource;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.maven.galley.testutil.TransferManagerFixture.newTransferManager;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class HedgedRetrieverTest
+{
+
+    private static final String PATH = "org/foo/foo.pom";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Location first = new SimpleLocation( "first", "http://127.0.0.1/first" );
+
+    private final Location second = new SimpleLocation( "second", "http://127.0.0.1/second" );
+
+    private final VirtualResource virt = new VirtualResource( Arrays.asList( first, second ), PATH );
+
+    private final TestTransport transport = new TestTransport();
+
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    private final ExecutorService handlerExecutor = Executors.newFixedThreadPool( 4 );
+
+    private final ExecutorService batchExecutor = Executors.newFixedThreadPool( 4 );
+
+    private final MemoryNotFoundCache nfc = new MemoryNotFoundCache();
+
+    @After
+    public void teardown()
+    {
+        release.countDown();
+        handlerExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void slowFirstLocationIsHedged()
+            throws Exception
+    {
+        transport.registerDownload( new ConcreteResource( first, PATH ), new DelayedDownload( "first", release, 0 ) );
+        transport.registerDownload( new ConcreteResource( second, PATH ), new TestDownload( "second".getBytes() ) );
+
+        final TransferManagerImpl mgr = manager( new TransportManagerConfig().withHedging( 1, 100 ) );
+
+        final long start = System.currentTimeMillis();
+        final Transfer result = mgr.retrieveFirst( virt );
+
+        assertThat( result.getLocation(), equalTo( second ) );
+        assertThat( System.currentTimeMillis() - start < 5000, equalTo( true ) );
+    }
+
+    @Test
+    public void earlierLocationWinsWhenBothHaveIt()
+            throws Exception
+    {
+        transport.registerDownload( new ConcreteResource( first, PATH ), new DelayedDownload( "first", null, 100 ) );
+        transport.registerDownload( new ConcreteResource( second, PATH ), new TestDownload( "second".getBytes() ) );
+
+        final TransferManagerImpl mgr = manager( new TransportManagerConfig().withHedging( 1, 0 ) );
+
+        assertThat( mgr.retrieveFirst( virt ).getLocation(), equalTo( first ) );
+    }
+
+    @Test
+    public void laterLocationIsUsedWhenEarlierOneFails()
+            throws Exception
+    {
+        // nothing registered for the first location, so its download fails
+        transport.registerDownload( new ConcreteResource( second, PATH ), new TestDownload( "second".getBytes() ) );
+
+        final TransferManagerImpl mgr = manager( new TransportManagerConfig().withHedging( 1, 10000 ) );
+
+        final long start = System.currentTimeMillis();
+        assertThat( mgr.retrieveFirst( virt ).getLocation(), equalTo( second ) );
+
+        // the failure starts the next location at once, without waiting out the hedge delay
+        assertThat( System.currentTimeMillis() - start < 5000, equalTo( true ) );
+    }
+
+    @Test
+    public void hedgeDelayFollowsRecordedLatency()
+    {
+        final LocationLatencyStats stats = new LocationLatencyStats();
+        assertThat( stats.getHedgeDelayMillis( first, 1000 ), equalTo( 1000L ) );
+
+        for ( int i = 0; i < LocationLatencyStats.MIN_SAMPLES; i++ )
+        {
+            stats.record( first, 50, TimeUnit.MILLISECONDS );
+        }
+
+        final long delay = stats.getHedgeDelayMillis( first, 1000 );
+        assertThat( delay >= 50 && delay < 1000, equalTo( true ) );
+        assertThat( stats.getHedgeDelayMillis( second, 1000 ), equalTo( 1000L ) );
+        assertThat( stats.getHedgeDelayMillis( first, 20 ), equalTo( 20L ) );
+    }
+
+    @Test
+    public void onlyTransportRoundTripsCountAsLatency()
+            throws Exception
+    {
+        final ConcreteResource resource = new ConcreteResource( first, PATH );
+        final ConcreteResource missing = new ConcreteResource( first, "org/foo/missing.pom" );
+        transport.registerDownload( resource, new TestDownload( "first".getBytes() ) );
+        transport.registerDownload( missing, new TestDownload( "missing".getBytes() ) );
+
+        final TransferManagerImpl mgr = manager( new TransportManagerConfig() );
+        final LocationLatencyStats stats = mgr.getLatencyStats();
+
+        mgr.retrieve( resource );
+        assertThat( stats.getSampleCount( first ), equalTo( 1L ) );
+
+        // served from the cache
+        mgr.retrieve( resource );
+        assertThat( stats.getSampleCount( first ), equalTo( 1L ) );
+
+        // served from the NFC
+        nfc.addMissing( missing );
+        assertThat( mgr.retrieve( missing ), nullValue() );
+        assertThat( stats.getSampleCount( first ), equalTo( 1L ) );
+    }
+
+    private TransferManagerImpl manager( final TransportManagerConfig config )
+            throws Exception
+    {
+        return newTransferManager( temp.newFolder( "cache" ), transport, nfc, config, handlerExecutor,
+                                   batchExecutor );
+    }
+
+    private static final class DelayedDownload
+            extends TestDownload
+    {
+        private final CountDownLatch release;
+
+        private final long delayMillis;
+
+        DelayedDownload( final String content, final CountDownLatch release, final long delayMillis )
+        {
+            super( content.getBytes() );
+            this.release = release;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public DownloadJob call()
+                throws Exception
+        {
+            if ( release != null )
+            {
+                release.await();
+            }
+            Thread.sleep( delayMillis );
+            return super.call();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.internal.TransferManagerImpl;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.ListingResult;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestExistence;
+import org.commonjava.maven.galley.testing.core.transport.job.TestListing;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.maven.galley.testutil.TransferManagerFixture.newTransferManager;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RemoteListingIndexTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Location location = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+    private final ConcreteResource dir = new ConcreteResource( location, "org/foo/" );
+
+    private final TestTransport transport = new TestTransport();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+    @After
+    public void teardown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void existenceIsAnsweredFromListing()
+            throws Exception
+    {
+        // no existence jobs are registered, so any remote check would fail
+        transport.registerListing( dir, new TestListing(
+                new ListingResult( dir, new String[] { "foo.pom", "bar/" } ) ) );
+
+        final TransferManagerImpl mgr = manager( new TransportManagerConfig().withListingIndex( 60 ) );
+        mgr.list( dir );
+
+        assertThat( mgr.exists( dir.getChild( "foo.pom" ) ), equalTo( true ) );
+        assertThat( mgr.exists( dir.getChild( "bar" ) ), equalTo( true ) );
+        assertThat( mgr.exists( dir.getChild( "foo.jar" ) ), equalTo( false ) );
+        assertThat( mgr.getListingIndex().getHitCount(), equalTo( 3L ) );
+    }
+
+    @Test
+    public void cachedListingFileIsNotIndexed()
+            throws Exception
+    {
+        // the cached listing has been through the decorators, so it may not match what the server has
+        transport.registerExistence( dir.getChild( "foo.jar" ), new TestExistence( false ) );
+
+        final TransferManagerImpl mgr = manager( new TransportManagerConfig().withListingIndex( 60 ) );
+        try (OutputStream out = mgr.getCacheReference( dir.getChild( ".listing.txt" ) )
+                                   .openOutputStream( TransferOperation.DOWNLOAD ))
+        {
+            out.write( "foo.pom\nfoo.jar".getBytes() );
+        }
+
+        assertThat( mgr.exists( dir.getChild( "foo.jar" ) ), equalTo( false ) );
+        assertThat( mgr.getListingIndex().getHitCount(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void unlistedDirectoryFallsBackToRemoteCheck()
+            throws Exception
+    {
+        transport.registerExistence( dir.getChild( "foo.pom" ), new TestExistence( true ) );
+
+        final TransferManagerImpl mgr = manager( new TransportManagerConfig().withListingIndex( 60 ) );
+
+        assertThat( mgr.exists( dir.getChild( "foo.pom" ) ), equalTo( true ) );
+        assertThat( mgr.getListingIndex().getHitCount(), equalTo( 0L ) );
+        assertThat( manager( new TransportManagerConfig() ).getListingIndex(), nullValue() );
+    }
+
+    @Test
+    public void staleOrForgottenListingsGiveNoAnswer()
+    {
+        final RemoteListingIndex index = new RemoteListingIndex( 1, TimeUnit.MINUTES );
+        final ConcreteResource pom = dir.getChild( "foo.pom" );
+
+        index.record( dir, new String[] { "foo.pom" }, System.currentTimeMillis() - TimeUnit.MINUTES.toMillis( 2 ) );
+        assertThat( index.contains( pom ), nullValue() );
+
+        index.record( dir, new String[] { "foo.pom" }, System.currentTimeMillis() );
+        assertThat( index.contains( pom ), equalTo( true ) );
+        assertThat( index.contains( new ConcreteResource( location, "/org/foo/foo.pom" ) ), equalTo( true ) );
+
+        index.forget( new ConcreteResource( location, "org/foo" ) );
+        assertThat( index.contains( pom ), nullValue() );
+    }
+
+    @Test
+    public void leastRecentlyUsedListingIsDroppedWhenFull()
+    {
+        final RemoteListingIndex index = new RemoteListingIndex( 1, TimeUnit.MINUTES, 2 );
+        final ConcreteResource other = new ConcreteResource( location, "org/bar/" );
+        final ConcreteResource third = new ConcreteResource( new SimpleLocation( "other", "http://127.0.0.2/repo" ),
+                                                             "org/foo/" );
+        final long now = System.currentTimeMillis();
+
+        index.record( dir, new String[] { "foo.pom" }, now );
+        index.record( other, new String[] { "bar.pom" }, now );
+        assertThat( index.contains( dir.getChild( "foo.pom" ) ), equalTo( true ) );
+
+        index.record( third, new String[] { "foo.pom" }, now );
+        assertThat( index.size(), equalTo( 2 ) );
+        assertThat( index.isIndexed( dir ), equalTo( true ) );
+        assertThat( index.isIndexed( other ), equalTo( false ) );
+        assertThat( index.isIndexed( third ), equalTo( true ) );
+    }
+
+    private TransferManagerImpl manager( final TransportManagerConfig config )
+            throws Exception
+    {
+        return newTransferManager( temp.newFolder(), transport, new MemoryNotFoundCache(), config, executor,
+                                   executor );
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.io;
+
+import org.commonjava.maven.galley.model.SpecialPathInfo;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SpecialPathManagerImplTest
+{
+
+    @Test
+    public void keptPartialDownloadIsLocalStateNotMetadata()
+    {
+        final SpecialPathInfo info =
+                new SpecialPathManagerImpl().getSpecialPathInfo( "org/foo/1.0/foo-1.0.jar.to-resume" );
+
+        assertThat( info.isMetadata(), equalTo( false ) );
+        assertThat( info.isListable(), equalTo( false ) );
+        assertThat( info.isRetrievable(), equalTo( false ) );
+        assertThat( info.isPublishable(), equalTo( false ) );
+        assertThat( info.isStorable(), equalTo( true ) );
+    }
+
+    @Test
+    public void remoteMetadataIsRetrievableMetadata()
+    {
+        final SpecialPathInfo info = new SpecialPathManagerImpl().getSpecialPathInfo( "org/foo/maven-metadata.xml",
+                                                                                      SpecialPathConstants.PKG_TYPE_MAVEN );
+
+        assertThat( info.isMetadata(), equalTo( true ) );
+        assertThat( info.isRetrievable(), equalTo( true ) );
+    }
+
+    @Test
+    public void localBookkeepingIsNotRetrievable()
+    {
+        final SpecialPathManagerImpl manager = new SpecialPathManagerImpl();
+
+        assertThat( manager.getSpecialPathInfo( "org/foo/1.0/foo-1.0.jar.http-metadata.json" ).isRetrievable(),
+                    equalTo( false ) );
+        assertThat( manager.getSpecialPathInfo( "org/foo/.listing.txt" ).isRetrievable(), equalTo( false ) );
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.io.checksum;
+
+import org.apache.commons.codec.binary.Hex;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ChecksumEngineTest
+{
+
+    private final Transfer transfer =
+            new Transfer( new ConcreteResource( new SimpleLocation( "test", "http://127.0.0.1/repo" ), "foo.jar" ),
+                          null, null, null );
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( 3 );
+
+    @After
+    public void teardown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void parallelDigestsMatchSequentialOnes()
+            throws Exception
+    {
+        final byte[] data = new byte[ChecksumEngine.CHUNK_SIZE * ChecksumEngine.RING_SIZE * 3 + 12345];
+        new Random( 7 ).nextBytes( data );
+
+        final AtomicInteger tasks = new AtomicInteger();
+        final Set<AbstractChecksumGenerator> generators = generators();
+        final ChecksumEngine engine = new ChecksumEngine( generators, task -> {
+            tasks.incrementAndGet();
+            executor.execute( task );
+        } );
+
+        feed( engine, data );
+        engine.finish();
+
+        assertThat( engine.getSize(), equalTo( (long) data.length ) );
+        assertThat( tasks.get() > 0, equalTo( true ) );
+        for ( final AbstractChecksumGenerator generator : generators )
+        {
+            final String expected = Hex.encodeHexString(
+                    MessageDigest.getInstance( generator.getDigestType().digestName() ).digest( data ) );
+            assertThat( generator.getDigestType() + " digest", generator.getDigestHex(), equalTo( expected ) );
+        }
+    }
+
+    @Test
+    public void smallStreamsStayOnCallerThread()
+            throws Exception
+    {
+        final byte[] data = new byte[1000];
+        new Random( 7 ).nextBytes( data );
+
+        final AtomicInteger tasks = new AtomicInteger();
+        final Set<AbstractChecksumGenerator> generators = generators();
+        final ChecksumEngine engine = new ChecksumEngine( generators, task -> {
+            tasks.incrementAndGet();
+            executor.execute( task );
+        } );
+
+        feed( engine, data );
+        engine.finish();
+
+        assertThat( tasks.get(), equalTo( 0 ) );
+        final AbstractChecksumGenerator any = generators.iterator().next();
+        assertThat( any.getDigestHex(), equalTo( Hex.encodeHexString(
+                MessageDigest.getInstance( any.getDigestType().digestName() ).digest( data ) ) ) );
+    }
+
+    @Test
+    public void rejectedWorkRunsOnCallerThread()
+            throws Exception
+    {
+        final byte[] data = new byte[ChecksumEngine.CHUNK_SIZE * ChecksumEngine.RING_SIZE * 2];
+        new Random( 7 ).nextBytes( data );
+
+        executor.shutdown();
+        final Set<AbstractChecksumGenerator> generators = generators();
+        final ChecksumEngine engine = new ChecksumEngine( generators, executor );
+
+        feed( engine, data );
+        engine.finish();
+
+        for ( final AbstractChecksumGenerator generator : generators )
+        {
+            final String expected = Hex.encodeHexString(
+                    MessageDigest.getInstance( generator.getDigestType().digestName() ).digest( data ) );
+            assertThat( generator.getDigestHex(), equalTo( expected ) );
+        }
+    }
+
+    @Test
+    public void interruptWhileWaitingForBufferIsAnIOError()
+            throws Exception
+    {
+        final byte[] data = new byte[ChecksumEngine.CHUNK_SIZE * ( ChecksumEngine.RING_SIZE + 2 )];
+
+        // work is accepted but never run, so no staging buffer is ever handed back.
+        final ChecksumEngine engine = new ChecksumEngine( generators(), task -> {
+        } );
+
+        Thread.currentThread().interrupt();
+        try
+        {
+            engine.update( data, 0, data.length );
+            fail( "Should have been interrupted waiting for a staging buffer" );
+        }
+        catch ( final InterruptedIOException e )
+        {
+            assertThat( Thread.currentThread().isInterrupted(), equalTo( true ) );
+        }
+        finally
+        {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Mixes every kind of update the streams make.
+     */
+    private void feed( final ChecksumEngine engine, final byte[] data )
+            throws IOException
+    {
+        int pos = 0;
+        engine.update( data[pos++] );
+
+        final Random random = new Random( 3 );
+        while ( pos < data.length )
+        {
+            final int len = Math.min( data.length - pos, 1 + random.nextInt( 20000 ) );
+            switch ( random.nextInt( 3 ) )
+            {
+                case 0:
+                    engine.update( data, pos, len );
+                    break;
+                case 1:
+                    final ByteBuffer direct = ByteBuffer.allocateDirect( len );
+                    direct.put( data, pos, len ).flip();
+                    engine.update( direct );
+                    break;
+                default:
+                    engine.update( data[pos] );
+                    engine.update( ByteBuffer.wrap( data, pos + 1, len - 1 ) );
+            }
+            pos += len;
+        }
+    }
+
+    private Set<AbstractChecksumGenerator> generators()
+            throws Exception
+    {
+        final Set<AbstractChecksumGenerator> generators = new HashSet<>();
+        generators.add( new Md5GeneratorFactory().createGenerator( transfer, false, null ) );
+        generators.add( new Sha1GeneratorFactory().createGenerator( transfer, false, null ) );
+        generators.add( new Sha256GeneratorFactory().createGenerator( transfer, false, null ) );
+        generators.add( new Sha384GeneratorFactory().createGenerator( transfer, false, null ) );
+        generators.add( new Sha512GeneratorFactory().createGenerator( transfer, false, null ) );
+        return generators;
+    }
+}
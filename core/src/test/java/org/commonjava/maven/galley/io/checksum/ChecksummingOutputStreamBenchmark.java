@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.io.checksum;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput into the cache through {@link ChecksummingOutputStream} with MD5, SHA-1 and SHA-256 enabled, down
+ * to a file. Each operation writes one 1 MiB chunk, so the score in ops/s is MB/s. A new artifact (stream and file) is
+ * started every <code>artifactMb</code> chunks, so the closing digest work is included.
+ * <br/>
+ * <code>perByte</code> is the old path, where {@link java.io.FilterOutputStream} split every buffer into single-byte
+ * writes. <code>byteArray</code> and <code>byteBuffer</code> are the bulk paths. With <code>parallelDigests</code>, each
+ * algorithm runs on its own worker thread, which only pays off with spare cores.
+ * <br/>
+ * Not run as part of the build. Run {@link #main(String[])} from the test classpath, or pass options straight to
+ * <code>org.openjdk.jmh.Main</code>.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 2, time = 5 )
+@Measurement( iterations = 5, time = 10 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class ChecksummingOutputStreamBenchmark
+{
+
+    private static final int CHUNK = 1024 * 1024;
+
+    @Param( { "500" } )
+    public int artifactMb;
+
+    @Param( { "false", "true" } )
+    public boolean parallelDigests;
+
+    private ExecutorService digestExecutor;
+
+    private final byte[] chunk = new byte[CHUNK];
+
+    private final ByteBuffer direct = ByteBuffer.allocateDirect( CHUNK );
+
+    private final Transfer transfer =
+            new Transfer( new ConcreteResource( new SimpleLocation( "bench", "http://127.0.0.1/repo" ), "bench.jar" ),
+                          null, null, null );
+
+    private File file;
+
+    private ChecksummingOutputStream stream;
+
+    private int written;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        ( (ch.qos.logback.classic.Logger) LoggerFactory.getLogger( "org.commonjava" ) ).setLevel(
+                ch.qos.logback.classic.Level.INFO );
+
+        new Random( 1 ).nextBytes( chunk );
+        direct.put( chunk ).flip();
+
+        file = File.createTempFile( "checksum-bench", ".jar" );
+        file.deleteOnExit();
+
+        if ( parallelDigests )
+        {
+            digestExecutor = Executors.newFixedThreadPool( 3 );
+        }
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        if ( digestExecutor != null )
+        {
+            digestExecutor.shutdownNow();
+        }
+    }
+
+    @Setup( Level.Iteration )
+    public void openArtifact()
+            throws IOException
+    {
+        stream = new ChecksummingOutputStream( new HashSet<AbstractChecksumGeneratorFactory<?>>(
+                Arrays.asList( new Md5GeneratorFactory(), new Sha1GeneratorFactory(),
+                               new Sha256GeneratorFactory() ) ), new FileOutputStream( file ), transfer, null, false,
+                                               null, digestExecutor );
+        written = 0;
+    }
+
+    @TearDown( Level.Iteration )
+    public void closeArtifact()
+            throws IOException
+    {
+        stream.close();
+    }
+
+    @Benchmark
+    public void perByte()
+            throws IOException
+    {
+        for ( final byte b : chunk )
+        {
+            stream.write( b );
+        }
+        next();
+    }
+
+    @Benchmark
+    public void byteArray()
+            throws IOException
+    {
+        stream.write( chunk, 0, CHUNK );
+        next();
+    }
+
+    @Benchmark
+    public void byteBuffer()
+            throws IOException
+    {
+        direct.rewind();
+        stream.write( direct );
+        next();
+    }
+
+    private void next()
+            throws IOException
+    {
+        if ( ++written == artifactMb )
+        {
+            closeArtifact();
+            openArtifact();
+        }
+    }
+
+    public static void main( final String[] args )
+            throws Exception
+    {
+        new Runner( new OptionsBuilder().include( ChecksummingOutputStreamBenchmark.class.getSimpleName() )
+                                        .build() ).run();
+    }
+}
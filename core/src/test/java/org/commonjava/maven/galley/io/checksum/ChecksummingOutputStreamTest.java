@@ -31,10 +31,12 @@ import org.junit.rules.TemporaryFolder;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
 
 import static org.commonjava.maven.galley.io.checksum.ContentDigest.MD5;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -113,4 +115,42 @@ public class ChecksummingOutputStreamTest
         assertThat( digests.get( MD5 ), equalTo( digestHex ) );
     }
 
+    @Test
+    public void bulkAndBufferWritesMatchDigest()
+            throws Exception
+    {
+        final Transfer txfr = fixture.getCache()
+                                     .getTransfer( new ConcreteResource( new SimpleLocation( "test:uri" ),
+                                                                         "my-bulk-path.txt" ) );
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        final byte[] data = new byte[100000];
+        new Random( 42 ).nextBytes( data );
+
+        final TestMetadataConsumer testConsumer = new TestMetadataConsumer();
+        try (ChecksummingOutputStream stream = new ChecksummingOutputStream(
+                new HashSet<AbstractChecksumGeneratorFactory<?>>(
+                        Arrays.asList( new Md5GeneratorFactory(), new Sha256GeneratorFactory() ) ), os, txfr,
+                testConsumer, false, null ))
+        {
+            stream.write( data[0] );
+            stream.write( data, 1, 29999 );
+            stream.write( ByteBuffer.wrap( data, 30000, 30000 ) );
+
+            final ByteBuffer direct = ByteBuffer.allocateDirect( 40000 );
+            direct.put( data, 60000, 40000 ).flip();
+            assertThat( stream.write( direct ), equalTo( 40000 ) );
+            assertThat( direct.hasRemaining(), equalTo( false ) );
+        }
+
+        assertThat( Arrays.equals( os.toByteArray(), data ), equalTo( true ) );
+
+        final TransferMetadata metadata = testConsumer.getMetadata( txfr );
+        assertThat( metadata.getSize(), equalTo( (long) data.length ) );
+        assertThat( metadata.getDigests().get( MD5 ),
+                    equalTo( Hex.encodeHexString( MessageDigest.getInstance( "MD5" ).digest( data ) ) ) );
+        assertThat( metadata.getDigests().get( ContentDigest.SHA_256 ),
+                    equalTo( Hex.encodeHexString( MessageDigest.getInstance( "SHA-256" ).digest( data ) ) ) );
+    }
+
 }
@@ -18,7 +18,10 @@ package org.commonjava.maven.galley.io.checksum;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
 import org.commonjava.maven.galley.io.ChecksummingTransferDecorator;
 import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
@@ -39,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Collections;
@@ -218,6 +222,56 @@ public class ChecksummingTransferDecoratorTest
 
     }
 
+    @Test
+    public void digestIndexReplacesSidecarFiles()
+            throws Exception
+    {
+        String path = "my-path.txt";
+
+        final ChecksummingTransferDecorator decorator =
+                new ChecksummingTransferDecorator( new DisabledChecksummingDecoratorAdvisor(), new TestDecoratorAdvisor(),
+                                                   new SpecialPathManagerImpl(), null, metadataConsumer,
+                                                   Collections.singleton( new Md5GeneratorFactory() ), null,
+                                                   new DigestIndex() );
+
+        // this cache, like the production ones, opens nothing for a missing file instead of failing.
+        final FileCacheProvider cache =
+                new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( decorator ), true );
+
+        final Transfer txfr = cache.getTransfer( new ConcreteResource( new SimpleLocation( "test:uri" ), path ) );
+
+        byte[] data =
+                "This is a test with a bunch of data and some other stuff, in a big box sealed with chewing gum".getBytes();
+
+        EventMetadata em = new EventMetadata().set( DO_CHECKSUMS,
+                                                    ChecksummingDecoratorAdvisor.ChecksumAdvice.CALCULATE_AND_WRITE );
+        try (OutputStream stream = txfr.openOutputStream( TransferOperation.UPLOAD, false, em ))
+        {
+            stream.write( data );
+        }
+
+        File dir = txfr.getDetachedFile().getParentFile();
+        assertThat( new File( dir, path + ".md5" ).exists(), equalTo( false ) );
+        assertThat( new File( dir, DigestIndex.DEFAULT_INDEX_FILE ).exists(), equalTo( true ) );
+        assertThat( metadataConsumer.getMetadata( txfr ), notNullValue() );
+
+        final Transfer md5Txfr = txfr.getSiblingMeta( ".md5" );
+        assertThat( md5Txfr.exists(), equalTo( true ) );
+        try (InputStream stream = md5Txfr.openInputStream( false ))
+        {
+            assertThat( IOUtils.toString( stream ), equalTo( md5Hex( data ) ) );
+        }
+
+        String[] listing = txfr.getParent().list();
+        Arrays.sort( listing );
+        assertThat( Arrays.asList( listing ), equalTo( Arrays.asList( path, path + ".md5" ) ) );
+
+        txfr.delete( false );
+        assertThat( md5Txfr.exists(), equalTo( false ) );
+        assertThat( md5Txfr.openInputStream( false ), nullValue() );
+    }
+
     private void assertRead( final Transfer txfr, final byte[] data, final EventMetadata em,
                              final boolean checksumFileExists, final boolean metadataConsumerContains )
             throws IOException
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.io.checksum;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.commonjava.maven.galley.io.checksum.ContentDigest.MD5;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DigestIndexTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cache;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cache = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+    }
+
+    @Test
+    public void concurrentRecordsSurviveDirectoriesDroppedFromMemory()
+            throws Exception
+    {
+        // holding one directory, recording into two keeps dropping the copy other threads are working on.
+        final DigestIndex index = new DigestIndex( DigestIndex.DEFAULT_INDEX_FILE, 1 );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        final List<Future<?>> futures = new ArrayList<>();
+        for ( int t = 0; t < 8; t++ )
+        {
+            final int thread = t;
+            futures.add( executor.submit( () -> {
+                for ( int i = 0; i < 50; i++ )
+                {
+                    final String name = ( i % 2 == 0 ? "a/" : "b/" ) + thread + "-" + i + ".jar";
+                    index.record( transfer( name ), Collections.singletonMap( MD5, name ) );
+                }
+                return null;
+            } ) );
+        }
+
+        for ( final Future<?> future : futures )
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        final DigestIndex reread = new DigestIndex();
+        for ( int t = 0; t < 8; t++ )
+        {
+            for ( int i = 0; i < 50; i++ )
+            {
+                final String name = ( i % 2 == 0 ? "a/" : "b/" ) + t + "-" + i + ".jar";
+                assertThat( name, reread.getDigest( transfer( name ), MD5 ), equalTo( name ) );
+            }
+        }
+    }
+
+    @Test
+    public void changesGoToTheJournalUntilItIsFolded()
+            throws Exception
+    {
+        final DigestIndex index = new DigestIndex();
+        final File dir = transfer( "dir/0.jar" ).getDetachedFile().getParentFile();
+        final File indexFile = new File( dir, index.getIndexFile() );
+        final File journalFile = new File( dir, index.getJournalFile() );
+
+        index.record( transfer( "dir/0.jar" ), Collections.singletonMap( MD5, "0" ) );
+        for ( int i = 1; i <= 10; i++ )
+        {
+            index.record( transfer( "dir/" + i + ".jar" ), Collections.singletonMap( MD5, "" + i ) );
+        }
+        index.remove( transfer( "dir/3.jar" ) );
+
+        // the index was written once, when it was created.
+        assertThat( FileUtils.readLines( indexFile, UTF_8 ).size(), equalTo( 1 ) );
+        assertThat( FileUtils.readLines( journalFile, UTF_8 ).size(), equalTo( 10 ) );
+
+        DigestIndex reread = new DigestIndex();
+        assertThat( reread.getDigest( transfer( "dir/10.jar" ), MD5 ), equalTo( "10" ) );
+        assertThat( reread.getDigest( transfer( "dir/3.jar" ), MD5 ), nullValue() );
+
+        // the journal's 33rd entry passes its limit, folding it into the index.
+        for ( int i = 11; i <= 33; i++ )
+        {
+            index.record( transfer( "dir/" + i + ".jar" ), Collections.singletonMap( MD5, "" + i ) );
+        }
+
+        assertThat( journalFile.exists(), equalTo( false ) );
+        assertThat( FileUtils.readLines( indexFile, UTF_8 ).size(), equalTo( 33 ) );
+
+        reread = new DigestIndex();
+        assertThat( reread.getDigest( transfer( "dir/33.jar" ), MD5 ), equalTo( "33" ) );
+        assertThat( reread.getDigest( transfer( "dir/3.jar" ), MD5 ), nullValue() );
+    }
+
+    private Transfer transfer( final String path )
+    {
+        return cache.getTransfer( new ConcreteResource( new SimpleLocation( "test:uri" ), path ) );
+    }
+}
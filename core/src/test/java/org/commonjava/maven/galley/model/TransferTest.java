@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.model;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.OverriddenBooleanValue;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TransferTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void missingFileOpensWhenDecoratorVouchesForIt()
+            throws Exception
+    {
+        final VouchingDecorator decorator = new VouchingDecorator( OverriddenBooleanValue.OVERRIDE_TRUE );
+        final Transfer txfr = transfer( decorator );
+
+        try (InputStream stream = txfr.openInputStream( false ))
+        {
+            assertThat( stream, notNullValue() );
+            assertThat( IOUtils.toString( stream ), equalTo( VouchingDecorator.CONTENT ) );
+        }
+
+        // the decorator is handed an empty stream to replace, not the (missing) stored file.
+        assertThat( decorator.readFrom, equalTo( "" ) );
+    }
+
+    @Test
+    public void missingFileDoesNotOpenWhenDecoratorDefers()
+            throws Exception
+    {
+        final VouchingDecorator decorator = new VouchingDecorator( OverriddenBooleanValue.DEFER );
+
+        assertThat( transfer( decorator ).openInputStream( false ), nullValue() );
+        assertThat( decorator.readFrom, nullValue() );
+    }
+
+    @Test
+    public void missingFileDoesNotOpenWhenDecoratorDenies()
+            throws Exception
+    {
+        final VouchingDecorator decorator = new VouchingDecorator( OverriddenBooleanValue.OVERRIDE_FALSE );
+
+        assertThat( transfer( decorator ).openInputStream( false ), nullValue() );
+        assertThat( decorator.readFrom, nullValue() );
+    }
+
+    @Test
+    public void storedFileOpensWithoutAskingDecorator()
+            throws Exception
+    {
+        final VouchingDecorator decorator = new VouchingDecorator( OverriddenBooleanValue.OVERRIDE_FALSE );
+        final Transfer txfr = transfer( decorator );
+        try (OutputStream stream = txfr.openOutputStream( TransferOperation.UPLOAD, false ))
+        {
+            stream.write( "stored".getBytes() );
+        }
+
+        try (InputStream stream = txfr.openInputStream( false ))
+        {
+            assertThat( IOUtils.toString( stream ), equalTo( VouchingDecorator.CONTENT ) );
+        }
+
+        assertThat( decorator.readFrom, equalTo( "stored" ) );
+        assertThat( decorator.existsCalls, equalTo( 0 ) );
+    }
+
+    private Transfer transfer( final VouchingDecorator decorator )
+            throws IOException
+    {
+        final FileCacheProvider cache =
+                new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( decorator ), true );
+
+        return cache.getTransfer( new ConcreteResource( new SimpleLocation( "test:uri" ), "path/to/file.txt" ) );
+    }
+
+    /**
+     * Answers existence checks with a fixed value and replaces whatever is read with fixed content, recording what it
+     * was handed.
+     */
+    private static final class VouchingDecorator
+            extends AbstractTransferDecorator
+    {
+        static final String CONTENT = "supplied by decorator";
+
+        private final OverriddenBooleanValue exists;
+
+        private String readFrom;
+
+        private int existsCalls;
+
+        VouchingDecorator( final OverriddenBooleanValue exists )
+        {
+            this.exists = exists;
+        }
+
+        @Override
+        public OverriddenBooleanValue decorateExists( final Transfer transfer, final EventMetadata metadata )
+        {
+            existsCalls++;
+            return exists;
+        }
+
+        @Override
+        public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                         final EventMetadata metadata )
+                throws IOException
+        {
+            readFrom = IOUtils.toString( stream );
+            stream.close();
+            return new ByteArrayInputStream( CONTENT.getBytes() );
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.nfc;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class BloomFilteredNotFoundCacheTest
+{
+
+    @Test
+    public void unrecordedPathsAreFilteredBeforeDelegate()
+    {
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( new MemoryNotFoundCache(), 10000 );
+        final Location loc = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( loc, "missing/path-" + i + ".pom" ) );
+        }
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertThat( nfc.isMissing( new ConcreteResource( loc, "missing/path-" + i + ".pom" ) ), equalTo( true ) );
+        }
+
+        for ( int i = 0; i < 10000; i++ )
+        {
+            assertThat( nfc.isMissing( new ConcreteResource( loc, "present/path-" + i + ".pom" ) ), equalTo( false ) );
+        }
+
+        // 1000 true entries plus a small number of false positives reach the delegate.
+        assertThat( nfc.getPassedCount() < 1000 + 200, equalTo( true ) );
+        assertThat( nfc.getFilteredCount() > 10000 - 200, equalTo( true ) );
+    }
+
+    @Test
+    public void sameLocationPathsAreDistinctAcrossLocations()
+    {
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( new MemoryNotFoundCache(), 100 );
+        final Location first = new SimpleLocation( "first", "http://127.0.0.1/first" );
+        final Location second = new SimpleLocation( "second", "http://127.0.0.1/second" );
+
+        nfc.addMissing( new ConcreteResource( first, "org/foo/1/foo-1.pom" ) );
+
+        assertThat( nfc.isMissing( new ConcreteResource( first, "org/foo/1/foo-1.pom" ) ), equalTo( true ) );
+        assertThat( nfc.isMissing( new ConcreteResource( second, "org/foo/1/foo-1.pom" ) ), equalTo( false ) );
+    }
+
+    @Test
+    public void clearingLocationTriggersRebuild()
+    {
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( new MemoryNotFoundCache(), 1000 );
+        final Location cleared = new SimpleLocation( "cleared", "http://127.0.0.1/cleared" );
+        final Location kept = new SimpleLocation( "kept", "http://127.0.0.1/kept" );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( cleared, "path-" + i ) );
+            nfc.addMissing( new ConcreteResource( kept, "path-" + i ) );
+        }
+
+        nfc.clearMissing( cleared );
+        assertThat( nfc.getRebuildCount(), equalTo( 1L ) );
+
+        final long passed = nfc.getPassedCount();
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertThat( nfc.isMissing( new ConcreteResource( cleared, "path-" + i ) ), equalTo( false ) );
+            assertThat( nfc.isMissing( new ConcreteResource( kept, "path-" + i ) ), equalTo( true ) );
+        }
+
+        // after the rebuild, cleared entries are answered by the filter again.
+        assertThat( nfc.getPassedCount() - passed < 100 + 10, equalTo( true ) );
+    }
+
+    @Test
+    public void clearAllResetsFilter()
+    {
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( new MemoryNotFoundCache(), 100 );
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "test", "http://127.0.0.1/repo" ), "path.pom" );
+
+        nfc.addMissing( resource );
+        nfc.clearAllMissing();
+
+        assertThat( nfc.isMissing( resource ), equalTo( false ) );
+        assertThat( nfc.getPassedCount(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void addsDuringRebuildSurviveTheSwap()
+    {
+        final Location loc = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+        final ConcreteResource late = new ConcreteResource( loc, "late.pom" );
+        final BloomFilteredNotFoundCache[] holder = new BloomFilteredNotFoundCache[1];
+
+        // the add lands after the rebuild has read the delegate, so only the filter being built can catch it.
+        final MemoryNotFoundCache delegate = new MemoryNotFoundCache()
+        {
+            @Override
+            public Map<Location, Set<String>> getAllMissing()
+            {
+                final Map<Location, Set<String>> snapshot = new HashMap<>();
+                super.getAllMissing().forEach( ( l, paths ) -> snapshot.put( l, new HashSet<>( paths ) ) );
+                if ( holder[0] != null && !super.isMissing( late ) )
+                {
+                    holder[0].addMissing( late );
+                }
+
+                return snapshot;
+            }
+        };
+
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( delegate, 100 );
+        holder[0] = nfc;
+
+        nfc.addMissing( new ConcreteResource( loc, "early.pom" ) );
+        nfc.rebuild();
+
+        assertThat( nfc.getRebuildCount(), equalTo( 1L ) );
+        assertThat( nfc.isMissing( late ), equalTo( true ) );
+        assertThat( nfc.isMissing( new ConcreteResource( loc, "early.pom" ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void clearingLocationDoesNotListItsEntries()
+    {
+        final MemoryNotFoundCache delegate = new MemoryNotFoundCache()
+        {
+            @Override
+            public Set<String> getMissing( final Location location )
+            {
+                throw new AssertionError( "Listed missing entries of: " + location );
+            }
+        };
+
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( delegate, 1000 );
+        final Location cleared = new SimpleLocation( "cleared", "http://127.0.0.1/cleared" );
+        for ( int i = 0; i < 10; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( cleared, "path-" + i ) );
+        }
+
+        nfc.clearMissing( cleared );
+        assertThat( nfc.getRebuildCount(), equalTo( 1L ) );
+        assertThat( nfc.isMissing( new ConcreteResource( cleared, "path-0" ) ), equalTo( false ) );
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.nfc;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ExpiringMemoryNotFoundCacheTest
+{
+
+    @Test
+    public void addCheckAndClear()
+    {
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( 100, 0 );
+        final Location loc = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+        final ConcreteResource resource = new ConcreteResource( loc, "org/foo/bar/1/bar-1.pom" );
+
+        assertThat( nfc.isMissing( resource ), equalTo( false ) );
+
+        nfc.addMissing( resource );
+        assertThat( nfc.isMissing( resource ), equalTo( true ) );
+        assertThat( nfc.isMissing( new ConcreteResource( loc, "org/foo/bar/1/bar-1.pom" ) ), equalTo( true ) );
+
+        final Set<String> paths = nfc.getMissing( loc );
+        assertThat( paths.size(), equalTo( 1 ) );
+        assertThat( paths.contains( resource.getPath() ), equalTo( true ) );
+
+        nfc.clearMissing( resource );
+        assertThat( nfc.isMissing( resource ), equalTo( false ) );
+        assertThat( nfc.getSize(), equalTo( 0 ) );
+
+        nfc.addMissing( resource );
+        nfc.clearMissing( loc );
+        assertThat( nfc.isMissing( resource ), equalTo( false ) );
+        assertThat( nfc.getSize(), equalTo( 0 ) );
+
+        assertThat( nfc.getHitCount(), equalTo( 2L ) );
+        assertThat( nfc.getMissCount(), equalTo( 3L ) );
+    }
+
+    @Test
+    public void entryExpiresUsingLocationTimeout()
+            throws Exception
+    {
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( 100, 0 );
+        final SimpleLocation loc = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+        loc.setAttribute( Location.NFC_TIMEOUT_SECONDS, 1 );
+
+        final ConcreteResource resource = new ConcreteResource( loc, "org/foo/bar/maven-metadata.xml" );
+        nfc.addMissing( resource );
+        assertThat( nfc.isMissing( resource ), equalTo( true ) );
+
+        Thread.sleep( 1100 );
+
+        assertThat( nfc.isMissing( resource ), equalTo( false ) );
+        assertThat( nfc.getExpirationCount(), equalTo( 1L ) );
+        assertThat( nfc.getSize(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void evictsUnreferencedEntriesBeyondCap()
+    {
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( 10, 0 );
+        final Location loc = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+        final ConcreteResource hot = new ConcreteResource( loc, "hot/path.pom" );
+        nfc.addMissing( hot );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( loc, "cold/path-" + i + ".pom" ) );
+
+            // keep the first entry referenced so the clock gives it a second chance every time around.
+            assertThat( nfc.isMissing( hot ), equalTo( true ) );
+        }
+
+        assertThat( nfc.getSize(), equalTo( 10 ) );
+        assertThat( nfc.getEvictionCount(), equalTo( 91L ) );
+        assertThat( nfc.isMissing( new ConcreteResource( loc, "cold/path-0.pom" ) ), equalTo( false ) );
+        assertThat( nfc.isMissing( new ConcreteResource( loc, "cold/path-99.pom" ) ), equalTo( true ) );
+    }
+
+    @Test
+    public void concurrentAddsStayWithinCap()
+            throws Exception
+    {
+        final int max = 1000;
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( max, 0 );
+        final Location loc = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+        final int threads = 16;
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch latch = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int thread = t;
+            executor.execute( () -> {
+                try
+                {
+                    for ( int i = 0; i < 5000; i++ )
+                    {
+                        final ConcreteResource resource =
+                                new ConcreteResource( loc, String.format( "t%d/path-%d.pom", thread, i ) );
+                        nfc.addMissing( resource );
+                        nfc.isMissing( resource );
+                    }
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            } );
+        }
+
+        latch.await( 30, TimeUnit.SECONDS );
+        executor.shutdown();
+
+        assertThat( nfc.getSize() <= max, equalTo( true ) );
+        assertThat( nfc.getMissing( loc ).size(), equalTo( nfc.getSize() ) );
+    }
+
+    @Test
+    public void sizeMatchesContentsWhenClearsRaceWithAdds()
+            throws Exception
+    {
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( 100000, 0 );
+        final Location loc = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch latch = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int thread = t;
+            executor.execute( () -> {
+                try
+                {
+                    for ( int i = 0; i < 5000; i++ )
+                    {
+                        // overlapping paths, so threads add, re-add and clear the same entries.
+                        final ConcreteResource resource =
+                                new ConcreteResource( loc, String.format( "path-%d.pom", i % 500 ) );
+                        nfc.addMissing( resource );
+                        if ( thread == 0 && i % 100 == 0 )
+                        {
+                            nfc.clearMissing( loc );
+                        }
+                        else if ( i % 3 == thread % 3 )
+                        {
+                            nfc.clearMissing( resource );
+                        }
+                    }
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            } );
+        }
+
+        assertThat( latch.await( 30, TimeUnit.SECONDS ), equalTo( true ) );
+        executor.shutdown();
+
+        assertThat( nfc.getSize(), equalTo( nfc.getMissing( loc ).size() ) );
+
+        nfc.clearAllMissing();
+        assertThat( nfc.getSize(), equalTo( 0 ) );
+    }
+}
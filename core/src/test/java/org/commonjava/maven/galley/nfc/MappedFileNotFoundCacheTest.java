@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.nfc;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MappedFileNotFoundCacheTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Location location = new SimpleLocation( "test", "http://127.0.0.1/repo" );
+
+    @Test
+    public void entriesSurviveRestart()
+            throws Exception
+    {
+        final File dir = temp.newFolder( "cache" );
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                nfc.addMissing( resource( i ) );
+            }
+            nfc.clearMissing( resource( 7 ) );
+        }
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+
+            assertThat( nfc.isMissing( resource( 0 ) ), equalTo( true ) );
+            assertThat( nfc.isMissing( resource( 7 ) ), equalTo( false ) );
+            assertThat( nfc.isMissing( resource( 99 ) ), equalTo( true ) );
+
+            final Map<Location, Set<String>> all = nfc.getAllMissing();
+            assertThat( all.get( location ).size(), equalTo( 99 ) );
+        }
+    }
+
+    @Test
+    public void changesMadeBeforeLoadWinOverReplayedEntries()
+            throws Exception
+    {
+        final File dir = temp.newFolder( "cache" );
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            nfc.addMissing( resource( 1 ) );
+            nfc.addMissing( resource( 2 ) );
+        }
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            // may or may not run before the replay; either way the clear must stick.
+            nfc.clearMissing( resource( 1 ) );
+            awaitLoaded( nfc );
+
+            assertThat( nfc.isMissing( resource( 1 ) ), equalTo( false ) );
+            assertThat( nfc.isMissing( resource( 2 ) ), equalTo( true ) );
+        }
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+
+            assertThat( nfc.isMissing( resource( 1 ) ), equalTo( false ) );
+            assertThat( nfc.isMissing( resource( 2 ) ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void expiredEntriesAreNotReported()
+            throws Exception
+    {
+        final File dir = temp.newFolder( "cache" );
+        final SimpleLocation expiring = new SimpleLocation( "expiring", "http://127.0.0.1/expiring" );
+        expiring.setAttribute( Location.NFC_TIMEOUT_SECONDS, 1 );
+
+        final ConcreteResource resource = new ConcreteResource( expiring, "org/foo/maven-metadata.xml" );
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            nfc.addMissing( resource );
+            assertThat( nfc.isMissing( resource ), equalTo( true ) );
+
+            Thread.sleep( 1100 );
+            assertThat( nfc.isMissing( resource ), equalTo( false ) );
+        }
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+            assertThat( nfc.getMissing( expiring ), equalTo( null ) );
+        }
+    }
+
+    @Test
+    public void compactionKeepsLiveEntriesAndShrinksLog()
+            throws Exception
+    {
+        final File dir = temp.newFolder( "cache" );
+
+        final long before;
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+            for ( int round = 0; round < 10; round++ )
+            {
+                for ( int i = 0; i < 100; i++ )
+                {
+                    nfc.addMissing( resource( i ) );
+                }
+                nfc.clearMissing( location );
+            }
+            nfc.addMissing( resource( 42 ) );
+
+            nfc.compact();
+            before = nfc.getFile().length();
+
+            assertThat( nfc.isMissing( resource( 42 ) ), equalTo( true ) );
+
+            // log must still accept appends after being swapped.
+            nfc.addMissing( resource( 43 ) );
+        }
+
+        assertThat( before < 1024, equalTo( true ) );
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+
+            assertThat( nfc.getMissing( location ).size(), equalTo( 2 ) );
+            assertThat( nfc.isMissing( resource( 42 ) ), equalTo( true ) );
+            assertThat( nfc.isMissing( resource( 43 ) ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void damagedRecordEndsReplayAndIsDropped()
+            throws Exception
+    {
+        final File dir = temp.newFolder( "cache" );
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            for ( int i = 0; i < 10; i++ )
+            {
+                nfc.addMissing( resource( i ) );
+            }
+        }
+
+        // give the name of the sixth record an absurd length; every record here has the same size.
+        final long recordSize = 1 + 8 + 12 + location.getName().length() + location.getUri().length()
+                + resource( 0 ).getPath().length();
+        try (RandomAccessFile raf = new RandomAccessFile( new File( dir, MappedFileNotFoundCache.NFC_FILE ), "rw" ))
+        {
+            raf.seek( 16 + 5 * recordSize + 1 + 8 );
+            raf.writeInt( Integer.MAX_VALUE );
+        }
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+
+            assertThat( nfc.isMissing( resource( 4 ) ), equalTo( true ) );
+            assertThat( nfc.isMissing( resource( 5 ) ), equalTo( false ) );
+            assertThat( nfc.isMissing( resource( 9 ) ), equalTo( false ) );
+
+            nfc.addMissing( resource( 10 ) );
+        }
+
+        // the damaged tail was dropped, so records added after it are replayed.
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+
+            assertThat( nfc.getMissing( location ).size(), equalTo( 6 ) );
+            assertThat( nfc.isMissing( resource( 10 ) ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void concurrentAddsAreAllReplayed()
+            throws Exception
+    {
+        final File dir = temp.newFolder( "cache" );
+        final int threads = 8;
+        final int perThread = 4000;
+
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+
+            final ExecutorService exec = Executors.newFixedThreadPool( threads );
+            final List<Future<?>> futures = new ArrayList<>();
+            for ( int t = 0; t < threads; t++ )
+            {
+                final int base = t * perThread;
+                futures.add( exec.submit( () -> {
+                    for ( int i = base; i < base + perThread; i++ )
+                    {
+                        nfc.addMissing( resource( i ) );
+                    }
+                } ) );
+            }
+
+            for ( final Future<?> future : futures )
+            {
+                future.get();
+            }
+            exec.shutdown();
+        }
+
+        // enough records to cross several log chunks, written from all threads at once.
+        try (MappedFileNotFoundCache nfc = open( dir ))
+        {
+            awaitLoaded( nfc );
+
+            assertThat( nfc.getMissing( location ).size(), equalTo( threads * perThread ) );
+        }
+    }
+
+    private MappedFileNotFoundCache open( final File dir )
+            throws Exception
+    {
+        return new MappedFileNotFoundCache( dir, 0, 0 );
+    }
+
+    private ConcreteResource resource( final int idx )
+    {
+        return new ConcreteResource( location, "org/foo/bar/" + idx + "/bar-" + idx + ".pom" );
+    }
+
+    private void awaitLoaded( final MappedFileNotFoundCache nfc )
+            throws InterruptedException
+    {
+        for ( int i = 0; i < 100 && !nfc.isLoaded(); i++ )
+        {
+            Thread.sleep( 50 );
+        }
+
+        assertThat( nfc.isLoaded(), equalTo( true ) );
+    }
+}
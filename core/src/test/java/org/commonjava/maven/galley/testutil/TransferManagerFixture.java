@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.testutil;
+
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.internal.TransferManagerImpl;
+import org.commonjava.maven.galley.internal.xfer.DownloadHandler;
+import org.commonjava.maven.galley.internal.xfer.ExistenceHandler;
+import org.commonjava.maven.galley.internal.xfer.ListingHandler;
+import org.commonjava.maven.galley.internal.xfer.UploadHandler;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.maven.galley.spi.transport.Transport;
+import org.commonjava.maven.galley.transport.TransportManagerImpl;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Builds a {@link TransferManagerImpl} over a plain file cache and a single transport, for tests that drive the
+ * transfer manager itself rather than one of its handlers.
+ */
+public final class TransferManagerFixture
+{
+
+    private TransferManagerFixture()
+    {
+    }
+
+    /**
+     * @param handlerExecutor runs the download and upload jobs
+     * @param batchExecutor runs batch and hedged retrievals
+     */
+    public static TransferManagerImpl newTransferManager( final File cacheDir, final Transport transport,
+                                                          final NotFoundCache nfc,
+                                                          final TransportManagerConfig config,
+                                                          final ExecutorService handlerExecutor,
+                                                          final ExecutorService batchExecutor )
+    {
+        final FileCacheProvider cacheProvider =
+                new FileCacheProvider( cacheDir, new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+
+        return new TransferManagerImpl( new TransportManagerImpl( transport ), cacheProvider, nfc,
+                                        new NoOpFileEventManager(), new DownloadHandler( nfc, config, handlerExecutor ),
+                                        new UploadHandler( nfc, config, handlerExecutor ), new ListingHandler( nfc ),
+                                        new ExistenceHandler( nfc ), new SpecialPathManagerImpl(), batchExecutor,
+                                        config );
+    }
+}
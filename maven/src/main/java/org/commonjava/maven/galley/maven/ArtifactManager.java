@@ -18,6 +18,7 @@ package org.commonjava.maven.galley.maven;
 import org.commonjava.atlas.maven.ident.ref.ArtifactRef;
 import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
 import org.commonjava.atlas.maven.ident.ref.TypeAndClassifier;
+import org.commonjava.maven.galley.TransferBatchListener;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.maven.model.ArtifactBatch;
@@ -57,6 +58,20 @@ public interface ArtifactManager
     ArtifactBatch batchRetrieveAll( ArtifactBatch batch, EventMetadata eventMetadata )
         throws TransferException;
 
+    /**
+     * Same as {@link #batchRetrieve(ArtifactBatch, EventMetadata)}, but also hands each artifact's transfer to the
+     * listener as soon as it is available.
+     */
+    ArtifactBatch batchRetrieve( ArtifactBatch batch, EventMetadata eventMetadata, TransferBatchListener listener )
+        throws TransferException;
+
+    /**
+     * Same as {@link #batchRetrieveAll(ArtifactBatch, EventMetadata)}, but also hands each transfer to the listener as
+     * soon as it is available.
+     */
+    ArtifactBatch batchRetrieveAll( ArtifactBatch batch, EventMetadata eventMetadata, TransferBatchListener listener )
+        throws TransferException;
+
     Transfer retrieve( Location location, ArtifactRef ref )
         throws TransferException;
 
@@ -19,6 +19,7 @@ import org.commonjava.maven.galley.GalleyCoreBuilder;
 import org.commonjava.maven.galley.GalleyInitException;
 import org.commonjava.maven.galley.TransferManager;
 import org.commonjava.maven.galley.cache.CacheProviderFactory;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
 import org.commonjava.maven.galley.maven.internal.ArtifactManagerImpl;
 import org.commonjava.maven.galley.maven.internal.ArtifactMetadataManagerImpl;
@@ -27,6 +28,8 @@ import org.commonjava.maven.galley.maven.internal.defaults.StandardMavenPluginIm
 import org.commonjava.maven.galley.maven.internal.type.StandardTypeMapper;
 import org.commonjava.maven.galley.maven.internal.version.VersionResolverImpl;
 import org.commonjava.maven.galley.maven.model.view.XPathManager;
+import org.commonjava.maven.galley.maven.parse.DocRefCache;
+import org.commonjava.maven.galley.maven.parse.DocRefCacheInvalidator;
 import org.commonjava.maven.galley.maven.parse.MavenMetadataReader;
 import org.commonjava.maven.galley.maven.parse.MavenPomReader;
 import org.commonjava.maven.galley.maven.parse.XMLInfrastructure;
@@ -73,6 +76,8 @@ public class GalleyMavenBuilder
 
     private VersionResolver versionResolver;
 
+    private long docCacheMaxWeight = DocRefCache.DEFAULT_MAX_WEIGHT;
+
     public GalleyMavenBuilder()
     {
         this.coreBuilder = new GalleyCoreBuilder();
@@ -99,6 +104,19 @@ public class GalleyMavenBuilder
     public void initMissingComponents()
             throws GalleyInitException
     {
+        // wrapped before the core components are built, so the transfers they create report to it.
+        final DocRefCacheInvalidator invalidator;
+        if ( coreBuilder.getFileEvents() instanceof DocRefCacheInvalidator )
+        {
+            invalidator = (DocRefCacheInvalidator) coreBuilder.getFileEvents();
+        }
+        else
+        {
+            invalidator = new DocRefCacheInvalidator(
+                    coreBuilder.getFileEvents() == null ? new NoOpFileEventManager() : coreBuilder.getFileEvents() );
+            coreBuilder.withFileEvents( invalidator );
+        }
+
         coreBuilder.initMissingComponents();
 
         if ( mapper == null )
@@ -119,7 +137,8 @@ public class GalleyMavenBuilder
 
         if ( metaReader == null )
         {
-            metaReader = new MavenMetadataReader( xmlInfra, coreBuilder.getLocationExpander(), metadata, xpathManager );
+            metaReader = new MavenMetadataReader( xmlInfra, coreBuilder.getLocationExpander(), metadata, xpathManager,
+                                                  docCacheMaxWeight );
         }
 
         if ( versionResolver == null )
@@ -152,7 +171,13 @@ public class GalleyMavenBuilder
         if ( pomReader == null && artifactManager != null )
         {
             pomReader = new MavenPomReader( xmlInfra, coreBuilder.getLocationExpander(), artifactManager, xpathManager,
-                                            pluginDefaults, pluginImplications );
+                                            pluginDefaults, pluginImplications, docCacheMaxWeight );
+        }
+
+        invalidator.register( metaReader.getDocRefCache() );
+        if ( pomReader != null )
+        {
+            invalidator.register( pomReader.getDocRefCache() );
         }
     }
 
@@ -266,6 +291,22 @@ public class GalleyMavenBuilder
         return this;
     }
 
+    public long getDocCacheMaxWeight()
+    {
+        return docCacheMaxWeight;
+    }
+
+    /**
+     * Limits the parsed-document cache of each reader this builder creates. Readers given to it keep their own limit.
+     *
+     * @param docCacheMaxWeight how many elements of parsed documents each reader keeps; see {@link DocRefCache}
+     */
+    public GalleyMavenBuilder withDocCacheMaxWeight( final long docCacheMaxWeight )
+    {
+        this.docCacheMaxWeight = docCacheMaxWeight;
+        return this;
+    }
+
     public LocationExpander getLocationExpander()
     {
         return coreBuilder.getLocationExpander();
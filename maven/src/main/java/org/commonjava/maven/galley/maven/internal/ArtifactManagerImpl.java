@@ -29,6 +29,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.commonjava.atlas.maven.ident.ref.*;
+import org.commonjava.maven.galley.TransferBatchListener;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.TransferManager;
 import org.commonjava.maven.galley.event.EventMetadata;
@@ -404,9 +405,17 @@ public class ArtifactManagerImpl
     @Override
     public ArtifactBatch batchRetrieve( final ArtifactBatch batch, final EventMetadata eventMetadata )
         throws TransferException
+    {
+        return batchRetrieve( batch, eventMetadata, null );
+    }
+
+    @Override
+    public ArtifactBatch batchRetrieve( final ArtifactBatch batch, final EventMetadata eventMetadata,
+                                        final TransferBatchListener listener )
+        throws TransferException
     {
         resolveArtifactMappings( batch, eventMetadata );
-        return transferManager.batchRetrieve( batch, eventMetadata );
+        return transferManager.batchRetrieve( batch, eventMetadata, listener );
     }
 
     @Override
@@ -419,9 +428,17 @@ public class ArtifactManagerImpl
     @Override
     public ArtifactBatch batchRetrieveAll( final ArtifactBatch batch, final EventMetadata eventMetadata )
         throws TransferException
+    {
+        return batchRetrieveAll( batch, eventMetadata, null );
+    }
+
+    @Override
+    public ArtifactBatch batchRetrieveAll( final ArtifactBatch batch, final EventMetadata eventMetadata,
+                                           final TransferBatchListener listener )
+        throws TransferException
     {
         resolveArtifactMappings( batch, eventMetadata );
-        return transferManager.batchRetrieveAll( batch, eventMetadata );
+        return transferManager.batchRetrieveAll( batch, eventMetadata, listener );
     }
 
     private void resolveArtifactMappings( final ArtifactBatch batch, final EventMetadata eventMetadata )
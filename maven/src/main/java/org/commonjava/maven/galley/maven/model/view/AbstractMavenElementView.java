@@ -67,6 +67,12 @@ public abstract class AbstractMavenElementView<T extends MavenXmlView<?>>
             return collapsed;
         }
 
+        if ( collapsed == element )
+        {
+            // the element belongs to a DocRef that other views (and threads) read; merge into a copy of it instead.
+            collapsed = (Element) element.cloneNode( true );
+        }
+
         addElementToStack( elementsAwaitingCollapse );
         String textContent = getFirstValueInOverlappingElements( collapsed, elementsAwaitingCollapse );
         if ( null != textContent )
@@ -75,10 +81,8 @@ public abstract class AbstractMavenElementView<T extends MavenXmlView<?>>
         }
         else
         {
-            NodeList nodeList = collapsed.getChildNodes();
-            for ( int i = 0; i <= nodeList.getLength(); i++ )
+            for ( Node node = collapsed.getFirstChild(); node != null; node = node.getNextSibling() )
             {
-                Node node = nodeList.item( i );
                 if ( !(node instanceof Element) )
                 {
                     continue;
@@ -164,11 +168,9 @@ public abstract class AbstractMavenElementView<T extends MavenXmlView<?>>
         }
         else
         {
-            final NodeList nl = getCollapsedElement().getChildNodes();
             final List<Element> elements = new ArrayList<>();
-            for ( int i = 0; i < nl.getLength(); i++ )
+            for ( Node node = getCollapsedElement().getFirstChild(); node != null; node = node.getNextSibling() )
             {
-                final Node node = nl.item( i );
                 if ( node.getNodeType() == Node.ELEMENT_NODE )
                 {
                     final Element e = (Element) node;
@@ -254,10 +256,8 @@ public abstract class AbstractMavenElementView<T extends MavenXmlView<?>>
         String childTextContent = child.getTextContent();
         for ( Element e : overlappingElements )
         {
-            NodeList nodeList = e.getChildNodes();
-            for ( int i = 0; i <= nodeList.getLength(); i++ )
+            for ( Node node = e.getFirstChild(); node != null; node = node.getNextSibling() )
             {
-                Node node = nodeList.item( i );
                 if ( !(node instanceof Element) )
                 {
                     continue;
@@ -287,11 +287,9 @@ public abstract class AbstractMavenElementView<T extends MavenXmlView<?>>
         List<Element> parents = elementsAwaitingCollapse;
         while ( !isElementStackEmpty( parents ) && step < parents.size() )
         {
-            NodeList originalElementChildNodeList = current.getChildNodes();
             List<String> originalElementChildNameList = new ArrayList<>();
-            for ( int i = 0; i <= originalElementChildNodeList.getLength(); i++ )
+            for ( Node node = current.getFirstChild(); node != null; node = node.getNextSibling() )
             {
-                Node node = originalElementChildNodeList.item( i );
                 if ( !(node instanceof Element) )
                 {
                     continue;
@@ -299,10 +297,8 @@ public abstract class AbstractMavenElementView<T extends MavenXmlView<?>>
                 originalElementChildNameList.add( node.getNodeName() );
             }
 
-            NodeList nodeList = parents.get( step ).getChildNodes();
-            for ( int i = 0; i <= nodeList.getLength(); i++ )
+            for ( Node node = parents.get( step ).getFirstChild(); node != null; node = node.getNextSibling() )
             {
-                Node node = nodeList.item( i );
                 if ( !(node instanceof Element) )
                 {
                     continue;
@@ -35,6 +35,8 @@ public final class DocRef<T>
 
     private final Map<String, Object> attributes = new HashMap<>();
 
+    private volatile PomElementIndex elementIndex;
+
     public DocRef( final T ref, final Object source, final Document doc )
     {
         this.ref = ref;
@@ -46,6 +48,11 @@ public final class DocRef<T>
                 .removeAttribute( "xmlns" );
     }
 
+    /**
+     * The parsed document. Views read it, but never change it once the constructor has run: element views merge
+     * inherited values into copies of their elements. That lets DocRefs be cached and read from several threads at
+     * once. Callers must not modify the document either.
+     */
     public Document getDoc()
     {
         return doc;
@@ -61,6 +68,30 @@ public final class DocRef<T>
         return docContext;
     }
 
+    /**
+     * The document's POM model elements, indexed on first use. DocRefs are shared between views, so this is only built
+     * once per document. The document isn't changed after that (see {@link #getDoc()}), so the index stays accurate
+     * and can be read without locking.
+     */
+    PomElementIndex getElementIndex()
+    {
+        PomElementIndex index = elementIndex;
+        if ( index == null )
+        {
+            synchronized ( this )
+            {
+                index = elementIndex;
+                if ( index == null )
+                {
+                    index = new PomElementIndex( doc );
+                    elementIndex = index;
+                }
+            }
+        }
+
+        return index;
+    }
+
     public T getRef()
     {
         return ref;
@@ -25,7 +25,6 @@ import org.codehaus.plexus.interpolation.ValueSource;
 import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
 import org.commonjava.maven.galley.maven.GalleyMavenException;
 import org.commonjava.maven.galley.maven.GalleyMavenRuntimeException;
-import org.commonjava.maven.galley.maven.parse.JXPathUtils;
 import org.commonjava.maven.galley.maven.parse.MavenPomReader;
 import org.commonjava.maven.galley.maven.parse.ResolveFunctions;
 import org.commonjava.maven.galley.maven.parse.XMLInfrastructure;
@@ -37,8 +36,13 @@ import org.w3c.dom.Node;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import static org.commonjava.maven.galley.maven.model.view.XPathManager.V;
 
@@ -57,7 +61,7 @@ public class MavenPomView
     public static final String ALL_PROFILES = "*";
 
     @SuppressWarnings( "RegExpRedundantEscape" )
-    private static final String EXPRESSION_PATTERN = ".*\\$\\{.+\\}.*";
+    private static final Pattern EXPRESSION = Pattern.compile( ".*\\$\\{.+\\}.*" );
 
     private static final String TEXT_SUFFIX = "/text()";
 
@@ -69,6 +73,14 @@ public class MavenPomView
 
     private final Set<String> activeProfileIds;
 
+    /**
+     * Values resolved by {@link #resolveExpressions(String, String...)}, keyed by value and active profiles. The
+     * documents don't change, so these only need clearing when mix-ins do.
+     */
+    private final Map<String, String> resolvedExpressions = new ConcurrentHashMap<>();
+
+    private final Map<String, Optional<String>> rawModelValues = new ConcurrentHashMap<>();
+
     /**
      * Not really designed for direct construction. See {@link MavenPomReader}.
      *
@@ -119,7 +131,16 @@ public class MavenPomView
      */
     public Set<String> getProfileIds()
     {
-        return new HashSet<>( resolveXPathExpressionToAggregatedList( "/profiles/profile/id/text()", false, -1 ) );
+        final Set<String> ids = new HashSet<>();
+        for ( final DocRef<ProjectVersionRef> dr : stack )
+        {
+            for ( final String id : dr.getElementIndex().getProfiles().keySet() )
+            {
+                ids.add( resolveExpressions( id.trim() ) );
+            }
+        }
+
+        return ids;
     }
 
     public String resolveMavenExpression( final String expression, final String... activeProfileIds )
@@ -148,33 +169,67 @@ public class MavenPomView
             expr = "/project" + expr;
         }
 
-        String value = resolveXPathExpression( expr, true, -1, ri );
+        final String raw = getRawModelValue( trimTextSuffix( expr ) );
+        String value = raw == null ? null : resolveExpressions( raw, ri );
 
         for ( int i = 0; value == null && activeProfileIds != null && i < activeProfileIds.length; i++ )
         {
             final String profileId = activeProfileIds[i];
-            value =
-                resolveXPathExpression( "//profile[id/text()=\"" + profileId + "\"]/properties/" + expression, true, -1,
-                                        ri, activeProfileIds );
-        }
-
-        if ( value == null )
-        {
-            final List<Node> propertyNodes = resolveXPathToAggregatedNodeList( "/project/properties/*", true, -1 );
-            for ( final Node propertyNode : propertyNodes )
+            for ( final DocRef<ProjectVersionRef> dr : stack )
             {
-                if ( expression.equals( propertyNode.getNodeName() ) )
+                final String prop = dr.getElementIndex().getProfileProperty( profileId, expression );
+                if ( prop != null )
                 {
-                    value = propertyNode.getTextContent()
-                                        .trim();
+                    value = resolveExpressions( prop, ri, activeProfileIds );
                     break;
                 }
             }
         }
 
+        for ( int i = 0; value == null && i < stack.size(); i++ )
+        {
+            value = stack.get( i ).getElementIndex().getProperty( expression );
+        }
+
         return value;
     }
 
+    /**
+     * Memoized {@link #resolveXPathToRawString(String, boolean, int)} across the whole stack, for the model fields
+     * that expressions refer to. Most expressions are properties, which miss here, so the misses are remembered too.
+     */
+    private String getRawModelValue( final String path )
+    {
+        Optional<String> raw = rawModelValues.get( path );
+        if ( raw == null )
+        {
+            raw = Optional.ofNullable( resolveXPathToRawString( path, true, -1 ) );
+            rawModelValues.put( path, raw );
+        }
+
+        return raw.orElse( null );
+    }
+
+    @Override
+    public void addMixin( final MavenXmlMixin<ProjectVersionRef> mixin )
+    {
+        super.addMixin( mixin );
+        clearResolvedExpressions();
+    }
+
+    @Override
+    public void removeMixin( final MavenXmlMixin<ProjectVersionRef> mixin )
+    {
+        super.removeMixin( mixin );
+        clearResolvedExpressions();
+    }
+
+    private void clearResolvedExpressions()
+    {
+        resolvedExpressions.clear();
+        rawModelValues.clear();
+    }
+
     /**
      * Return the GAV for this POM view
      */
@@ -228,8 +283,8 @@ public class MavenPomView
             return null;
         }
 
-        return (String) JXPathUtils.newContext( parent )
-                                   .getValue( "id" );
+        final Element id = PomElementIndex.firstChild( (Element) parent, "id" );
+        return id == null ? null : id.getTextContent();
     }
 
     /**
@@ -243,24 +298,19 @@ public class MavenPomView
             "//dependency[not(ancestor::dependencyManagement) and not(ancestor::build) and not(ancestor::reporting)]";
         //        final String xp = "./project/dependencies/dependency";
         final List<MavenPomElementView> depNodes = resolveXPathToAggregatedElementViewList( xp, true, -1 );
-        final List<DependencyView> depViews = new ArrayList<>( depNodes.size() );
-        final Set<DependencyView> seen = new HashSet<>();
+        final Map<DependencyView, DependencyView> seen = new LinkedHashMap<>( depNodes.size() );
         for ( final MavenPomElementView node : depNodes )
         {
             DependencyView dv = new DependencyView( node.getPomView(), node.getCollapsedElement(), node.getOriginInfo() );
 
-            if ( seen.add( dv ) )
-            {
-                depViews.add( dv );
-            }
-            else
+            final DependencyView original = seen.putIfAbsent( dv, dv );
+            if ( original != null )
             {
-                DependencyView original = depViews.get( depViews.indexOf( dv ));
                 original.addOverlappingElements( dv );
             }
         }
 
-        return depViews;
+        return new ArrayList<>( seen.values() );
     }
 
     /**
@@ -293,22 +343,17 @@ public class MavenPomView
         throws GalleyMavenException
     {
         final List<DependencyView> raw = getAllManagedDependenciesUnfiltered();
-        final List<DependencyView> depViews = new ArrayList<>( raw.size() );
-        final Set<DependencyView> seen = new HashSet<>();
+        final Map<DependencyView, DependencyView> seen = new LinkedHashMap<>( raw.size() );
         for ( final DependencyView dv : raw )
         {
-            if ( seen.add( dv ) )
-            {
-                depViews.add( dv );
-            }
-            else
+            final DependencyView original = seen.putIfAbsent( dv, dv );
+            if ( original != null )
             {
-                DependencyView original = depViews.get( depViews.indexOf( dv ));
                 original.addOverlappingElements( dv );
             }
         }
 
-        return depViews;
+        return new ArrayList<>( seen.values() );
     }
 
     /**
@@ -877,11 +922,82 @@ public class MavenPomView
      *   depth
      * @param includeMixins Whether to include mix-ins (eg. BOMs) when searching for matches
      */
-    public synchronized List<MavenPomElementView> resolveXPathToAggregatedElementViewList( final String path,
-                                                                                           final boolean cachePath,
-                                                                                           final int maxDepth,
-                                                                                           final boolean includeMixins )
+    public List<MavenPomElementView> resolveXPathToAggregatedElementViewList( final String path,
+                                                                              final boolean cachePath,
+                                                                              final int maxDepth,
+                                                                              final boolean includeMixins )
         throws GalleyMavenRuntimeException
+    {
+        final PomElementIndex.Kind kind = PomElementIndex.Kind.forXPath( path );
+        if ( kind != null )
+        {
+            return resolveIndexedElementViewList( kind, maxDepth, includeMixins );
+        }
+
+        return resolveXPathToAggregatedElementViewListFromDocs( path, cachePath, maxDepth, includeMixins );
+    }
+
+    /**
+     * Same as {@link #resolveXPathToAggregatedElementViewList(String, boolean, int, boolean)} for the expressions
+     * {@link PomElementIndex} knows, reading the elements from each document's index. Indexes are immutable once
+     * built, so this doesn't need the view's lock.
+     */
+    private List<MavenPomElementView> resolveIndexedElementViewList( final PomElementIndex.Kind kind,
+                                                                     final int maxDepth, final boolean includeMixins )
+    {
+        int maxAncestry = maxDepth;
+        for ( final String pathPrefix : localOnlyPaths )
+        {
+            if ( kind.getXPath().startsWith( pathPrefix ) )
+            {
+                maxAncestry = 0;
+                break;
+            }
+        }
+
+        int ancestryDepth = 0;
+        final List<MavenPomElementView> result = new ArrayList<>();
+        for ( final DocRef<ProjectVersionRef> dr : stack )
+        {
+            if ( maxAncestry > -1 && ancestryDepth > maxAncestry )
+            {
+                break;
+            }
+
+            for ( final Element element : dr.getElementIndex().get( kind ) )
+            {
+                result.add( new MavenPomElementView( this, element, new OriginInfo( ancestryDepth != 0 ) ) );
+            }
+
+            ancestryDepth++;
+        }
+
+        if ( includeMixins )
+        {
+            for ( final MavenXmlMixin<ProjectVersionRef> mixin : mixins )
+            {
+                if ( !mixin.matches( kind.getXPath() ) )
+                {
+                    continue;
+                }
+
+                final MavenPomView mixinView = (MavenPomView) mixin.getMixin();
+                for ( final MavenPomElementView node : mixinView.resolveIndexedElementViewList( kind, maxAncestry,
+                                                                                               true ) )
+                {
+                    node.getOriginInfo().setMixin( true );
+                    result.add( node );
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private synchronized List<MavenPomElementView> resolveXPathToAggregatedElementViewListFromDocs( final String path,
+                                                                                                    final boolean cachePath,
+                                                                                                    final int maxDepth,
+                                                                                                    final boolean includeMixins )
     {
         int maxAncestry = maxDepth;
         for ( final String pathPrefix : localOnlyPaths )
@@ -1041,7 +1157,7 @@ public class MavenPomView
      */
     protected boolean containsExpression( final String value )
     {
-        return value != null && value.matches( EXPRESSION_PATTERN );
+        return value != null && value.contains( "${" ) && EXPRESSION.matcher( value ).matches();
     }
 
     /**
@@ -1059,7 +1175,18 @@ public class MavenPomView
             return value;
         }
 
-        return resolveExpressions( value, null, activeProfileIds );
+        final String key = activeProfileIds == null || activeProfileIds.length == 0 ?
+                value :
+                value + '\u0000' + String.join( "\u0000", activeProfileIds );
+
+        String resolved = resolvedExpressions.get( key );
+        if ( resolved == null )
+        {
+            resolved = resolveExpressions( value, null, activeProfileIds );
+            resolvedExpressions.put( key, resolved );
+        }
+
+        return resolved;
     }
 
     public String resolveExpressions( final String value, RecursionInterceptor ri,
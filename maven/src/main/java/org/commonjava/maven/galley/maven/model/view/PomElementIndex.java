@@ -0,0 +1,379 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.model.view;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The model elements of one POM document, collected in a single walk over its DOM. {@link MavenPomView} answers its
+ * dependency, plugin, repository and property queries from these lists instead of evaluating the same XPath
+ * expressions against every document in the inheritance stack on each call.
+ * <br/>
+ * Each {@link Kind} lists exactly the elements its XPath expression selects, in document order.
+ */
+final class PomElementIndex
+{
+
+    enum Kind
+    {
+        DIRECT_DEPENDENCIES(
+                "//dependency[not(ancestor::dependencyManagement) and not(ancestor::build) and not(ancestor::reporting)]" ),
+        MANAGED_DEPENDENCIES( "//dependencyManagement/dependencies/dependency[not(scope/text()=\"import\")]" ),
+        BOMS( "//dependencyManagement/dependencies/dependency[type/text()=\"pom\" and scope/text()=\"import\"]" ),
+        BUILD_PLUGINS( "/project//build/plugins/plugin" ),
+        MANAGED_PLUGINS( "/project//pluginManagement/plugins/plugin" ),
+        BUILD_EXTENSIONS( "/project//build/extensions/extension" ),
+        REPOSITORIES( "/project//repositories/repository" ),
+        PLUGIN_REPOSITORIES( "/project//pluginRepositories/pluginRepository" ),
+        PROPERTIES( "/project//properties" );
+
+        private static final Map<String, Kind> BY_XPATH = new HashMap<>();
+
+        static
+        {
+            for ( final Kind kind : values() )
+            {
+                BY_XPATH.put( kind.xpath, kind );
+            }
+        }
+
+        private final String xpath;
+
+        Kind( final String xpath )
+        {
+            this.xpath = xpath;
+        }
+
+        String getXPath()
+        {
+            return xpath;
+        }
+
+        /**
+         * @return the kind whose elements the given expression selects, or null if it isn't one that is indexed
+         */
+        static Kind forXPath( final String xpath )
+        {
+            return BY_XPATH.get( xpath );
+        }
+    }
+
+    private static final String PROJECT = "project";
+
+    private final Map<Kind, List<Element>> elements = new EnumMap<>( Kind.class );
+
+    private final Map<String, Element> profiles = new LinkedHashMap<>();
+
+    private final Map<String, String> properties = new HashMap<>();
+
+    private final Map<String, Map<String, String>> profileProperties = new HashMap<>();
+
+    PomElementIndex( final Document doc )
+    {
+        for ( final Kind kind : Kind.values() )
+        {
+            elements.put( kind, new ArrayList<Element>() );
+        }
+
+        final Element root = doc.getDocumentElement();
+        if ( root != null )
+        {
+            final boolean project = PROJECT.equals( root.getNodeName() );
+            walk( root, project, 0 );
+
+            if ( project )
+            {
+                for ( Node n = root.getFirstChild(); n != null; n = n.getNextSibling() )
+                {
+                    if ( isElement( n, "properties" ) )
+                    {
+                        addProperties( (Element) n, properties, true );
+                    }
+                    else if ( isElement( n, "profiles" ) )
+                    {
+                        addProfiles( (Element) n );
+                    }
+                }
+            }
+        }
+
+        for ( final Map.Entry<Kind, List<Element>> entry : elements.entrySet() )
+        {
+            entry.setValue( Collections.unmodifiableList( entry.getValue() ) );
+        }
+    }
+
+    List<Element> get( final Kind kind )
+    {
+        return elements.get( kind );
+    }
+
+    /**
+     * @return the profiles declared in /project/profiles, keyed by their raw (untrimmed, unresolved) id
+     */
+    Map<String, Element> getProfiles()
+    {
+        return profiles;
+    }
+
+    /**
+     * @return the trimmed value of a property in /project/properties, or null if it isn't declared there. Where a
+     * property is declared more than once, the first declaration wins, as with the XPath lookup
+     * <code>/project/properties/*</code>.
+     */
+    String getProperty( final String name )
+    {
+        return properties.get( name );
+    }
+
+    /**
+     * @return the raw (untrimmed) value of a property in the properties of the profile with the given id, or null if
+     * that profile doesn't declare it
+     */
+    String getProfileProperty( final String profileId, final String name )
+    {
+        final Map<String, String> props = profileProperties.get( profileId );
+        return props == null ? null : props.get( name );
+    }
+
+    private void addProfiles( final Element profilesEl )
+    {
+        for ( Node n = profilesEl.getFirstChild(); n != null; n = n.getNextSibling() )
+        {
+            if ( !isElement( n, "profile" ) )
+            {
+                continue;
+            }
+
+            final Element idEl = firstChild( (Element) n, "id" );
+            if ( idEl == null )
+            {
+                continue;
+            }
+
+            final String id = idEl.getTextContent();
+            if ( !profiles.containsKey( id ) )
+            {
+                profiles.put( id, (Element) n );
+            }
+
+            Map<String, String> props = profileProperties.get( id );
+            for ( Node c = n.getFirstChild(); c != null; c = c.getNextSibling() )
+            {
+                if ( isElement( c, "properties" ) )
+                {
+                    if ( props == null )
+                    {
+                        props = new HashMap<>();
+                        profileProperties.put( id, props );
+                    }
+
+                    addProperties( (Element) c, props, false );
+                }
+            }
+        }
+    }
+
+    private static void addProperties( final Element propertiesEl, final Map<String, String> props, final boolean trim )
+    {
+        for ( Node n = propertiesEl.getFirstChild(); n != null; n = n.getNextSibling() )
+        {
+            if ( n.getNodeType() == Node.ELEMENT_NODE && !props.containsKey( n.getNodeName() ) )
+            {
+                final String value = n.getTextContent();
+                props.put( n.getNodeName(), trim ? value.trim() : value );
+            }
+        }
+    }
+
+    /**
+     * @param fenced bit set of the enclosing elements that rule out direct dependencies (dependencyManagement, build
+     * or reporting)
+     */
+    private void walk( final Element element, final boolean inProject, final int fenced )
+    {
+        final String name = element.getNodeName();
+        final Node parent = element.getParentNode();
+        final boolean notRoot = parent != null && parent.getNodeType() == Node.ELEMENT_NODE;
+
+        switch ( name )
+        {
+            case "dependency":
+            {
+                if ( fenced == 0 )
+                {
+                    elements.get( Kind.DIRECT_DEPENDENCIES ).add( element );
+                }
+
+                if ( hasParents( element, "dependencies", "dependencyManagement" ) )
+                {
+                    final boolean importScope = hasChildText( element, "scope", "import" );
+                    if ( !importScope )
+                    {
+                        elements.get( Kind.MANAGED_DEPENDENCIES ).add( element );
+                    }
+                    else if ( hasChildText( element, "type", "pom" ) )
+                    {
+                        elements.get( Kind.BOMS ).add( element );
+                    }
+                }
+                break;
+            }
+            case "plugin":
+            {
+                if ( inProject && hasParents( element, "plugins", "build" ) )
+                {
+                    elements.get( Kind.BUILD_PLUGINS ).add( element );
+                }
+                if ( inProject && hasParents( element, "plugins", "pluginManagement" ) )
+                {
+                    elements.get( Kind.MANAGED_PLUGINS ).add( element );
+                }
+                break;
+            }
+            case "extension":
+            {
+                if ( inProject && hasParents( element, "extensions", "build" ) )
+                {
+                    elements.get( Kind.BUILD_EXTENSIONS ).add( element );
+                }
+                break;
+            }
+            case "repository":
+            {
+                if ( inProject && hasParents( element, "repositories", null ) )
+                {
+                    elements.get( Kind.REPOSITORIES ).add( element );
+                }
+                break;
+            }
+            case "pluginRepository":
+            {
+                if ( inProject && hasParents( element, "pluginRepositories", null ) )
+                {
+                    elements.get( Kind.PLUGIN_REPOSITORIES ).add( element );
+                }
+                break;
+            }
+            case "properties":
+            {
+                if ( inProject && notRoot )
+                {
+                    elements.get( Kind.PROPERTIES ).add( element );
+                }
+                break;
+            }
+            default:
+                break;
+        }
+
+        int childFenced = fenced;
+        switch ( name )
+        {
+            case "dependencyManagement":
+                childFenced |= 1;
+                break;
+            case "build":
+                childFenced |= 2;
+                break;
+            case "reporting":
+                childFenced |= 4;
+                break;
+            default:
+                break;
+        }
+
+        for ( Node n = element.getFirstChild(); n != null; n = n.getNextSibling() )
+        {
+            if ( n.getNodeType() == Node.ELEMENT_NODE )
+            {
+                walk( (Element) n, inProject, childFenced );
+            }
+        }
+    }
+
+    /**
+     * @param grandparent name of the grandparent element, or null if any grandparent (or none) will do
+     */
+    private static boolean hasParents( final Element element, final String parent, final String grandparent )
+    {
+        final Node p = element.getParentNode();
+        if ( !isElement( p, parent ) )
+        {
+            return false;
+        }
+
+        if ( grandparent == null )
+        {
+            // "/project//x/y" requires x to be below the project element, not the project element itself.
+            final Node gp = p.getParentNode();
+            return gp != null && gp.getNodeType() == Node.ELEMENT_NODE;
+        }
+
+        return isElement( p.getParentNode(), grandparent );
+    }
+
+    /**
+     * Same as the XPath predicate <code>child/text()="value"</code>: true if any text node of any such child equals the
+     * value exactly.
+     */
+    private static boolean hasChildText( final Element element, final String child, final String value )
+    {
+        for ( Node c = element.getFirstChild(); c != null; c = c.getNextSibling() )
+        {
+            if ( isElement( c, child ) )
+            {
+                for ( Node t = c.getFirstChild(); t != null; t = t.getNextSibling() )
+                {
+                    if ( t.getNodeType() == Node.TEXT_NODE && value.equals( t.getNodeValue() ) )
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    static Element firstChild( final Element element, final String name )
+    {
+        for ( Node n = element.getFirstChild(); n != null; n = n.getNextSibling() )
+        {
+            if ( isElement( n, name ) )
+            {
+                return (Element) n;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isElement( final Node node, final String name )
+    {
+        return node != null && node.getNodeType() == Node.ELEMENT_NODE && name.equals( node.getNodeName() );
+    }
+}
@@ -15,24 +15,22 @@
  */
 package org.commonjava.maven.galley.maven.parse;
 
-import java.lang.ref.WeakReference;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.maven.model.view.DocRef;
 import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.spi.transport.LocationExpander;
 
 public abstract class AbstractMavenXmlReader<T>
 {
 
-    private final Map<DocCacheKey<T>, WeakReference<DocRef<T>>> cache = new ConcurrentHashMap<>();
+    private final DocRefCache<T> cache;
 
     @Inject
     protected XMLInfrastructure xml;
@@ -42,131 +40,61 @@ public abstract class AbstractMavenXmlReader<T>
 
     protected AbstractMavenXmlReader()
     {
+        this.cache = new DocRefCache<>();
     }
 
     protected AbstractMavenXmlReader( final XMLInfrastructure xml, final LocationExpander locationExpander )
+    {
+        this( xml, locationExpander, DocRefCache.DEFAULT_MAX_WEIGHT );
+    }
+
+    /**
+     * @param docCacheMaxWeight how many elements of parsed documents to keep cached, across all documents
+     */
+    protected AbstractMavenXmlReader( final XMLInfrastructure xml, final LocationExpander locationExpander,
+                                      final long docCacheMaxWeight )
     {
         this.xml = xml;
         this.locationExpander = locationExpander;
+        this.cache = new DocRefCache<>( docCacheMaxWeight );
+    }
+
+    /**
+     * Parsed documents kept by this reader. A document whose file changed is dropped on its next lookup; registering
+     * the cache with a {@link DocRefCacheInvalidator} frees it as soon as the file is stored or deleted.
+     */
+    public DocRefCache<T> getDocRefCache()
+    {
+        return cache;
     }
 
-    protected synchronized void cache( final DocRef<T> dr )
+    protected void cache( final DocRef<T> dr )
     {
-        cache.put( new DocCacheKey<>( dr ), new WeakReference<>( dr ) );
+        cache.put( dr );
     }
 
-    protected synchronized DocRef<T> getFirstCached( final T ref, final Collection<? extends Location> locations )
+    protected void cache( final DocRef<T> dr, final Transfer transfer )
+    {
+        cache.put( dr, transfer );
+    }
+
+    protected DocRef<T> getFirstCached( final T ref, final Collection<? extends Location> locations )
         throws TransferException
     {
-        for ( final Location location : locationExpander.expand( locations ) )
-        {
-            final DocCacheKey<T> key = new DocCacheKey<>( ref, location );
-            final WeakReference<DocRef<T>> reference = cache.get( key );
-            if ( reference != null )
-            {
-                final DocRef<T> dr = reference.get();
-                if ( dr == null )
-                {
-                    cache.remove( key );
-                }
-                else
-                {
-                    return dr;
-                }
-            }
-        }
-
-        return null;
+        return cache.getFirst( ref, locationExpander.expand( locations ) );
     }
 
-    protected synchronized Map<Location, DocRef<T>> getAllCached( final T ref, final List<? extends Location> locations )
+    /**
+     * @return the document parsed from this transfer, if it is cached and the transfer hasn't changed since
+     */
+    protected DocRef<T> getCached( final T ref, final Transfer transfer )
     {
-        final Map<Location, DocRef<T>> result = new HashMap<>();
-        for ( final Location location : locations )
-        {
-            final DocCacheKey<T> key = new DocCacheKey<>( ref, location );
-            final WeakReference<DocRef<T>> reference = cache.get( key );
-            if ( reference != null )
-            {
-                final DocRef<T> dr = reference.get();
-                if ( dr == null )
-                {
-                    cache.remove( key );
-                }
-                else
-                {
-                    result.put( location, dr );
-                }
-            }
-        }
-
-        return result;
+        return cache.get( ref, transfer );
     }
 
-    private static final class DocCacheKey<T>
+    protected Map<Location, DocRef<T>> getAllCached( final T ref, final List<? extends Location> locations )
     {
-        private final T ref;
-
-        private final Object source;
-
-        private DocCacheKey( final T ref, final Location location )
-        {
-            this.ref = ref;
-            this.source = location;
-        }
-
-        public DocCacheKey( final DocRef<T> dr )
-        {
-            this.ref = dr.getRef();
-            this.source = dr.getSource();
-        }
-
-        @Override
-        public int hashCode()
-        {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ( ( source == null ) ? 0 : source.hashCode() );
-            result = prime * result + ( ( ref == null ) ? 0 : ref.hashCode() );
-            return result;
-        }
-
-        @Override
-        public boolean equals( final Object obj )
-        {
-            if ( this == obj )
-            {
-                return true;
-            }
-            if ( obj == null )
-            {
-                return false;
-            }
-            if ( getClass() != obj.getClass() )
-            {
-                return false;
-            }
-            @SuppressWarnings( "unchecked" )
-            final DocCacheKey<T> other = (DocCacheKey<T>) obj;
-            if ( source == null )
-            {
-                if ( other.source != null )
-                {
-                    return false;
-                }
-            }
-            else if ( !source.equals( other.source ) )
-            {
-                return false;
-            }
-            if ( ref == null )
-            {
-                return other.ref == null;
-            }
-            else
-            {
-                return ref.equals( other.ref );
-            }
-        }
+        return cache.getAll( ref, locations );
     }
+
 }
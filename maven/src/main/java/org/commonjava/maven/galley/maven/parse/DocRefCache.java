@@ -0,0 +1,475 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.parse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.commonjava.maven.galley.maven.model.view.DocRef;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parsed documents, by the ref they were read for and the location they came from. Each document is weighed by the
+ * number of elements in it. Once the total passes the maximum weight, the least recently used documents are dropped
+ * until it is back under {@link #LOW_WATER_MARK} of the maximum.
+ * <br/>
+ * Lookups don't lock. Documents cached with the {@link Transfer} they were parsed from are checked against that
+ * transfer's length and last-modified time on every hit, and dropped if either changed or the file is gone. So a
+ * rewritten or deleted file is never served from the cache, however the cache was wired. {@link #invalidate(Transfer)}
+ * drops them as soon as the content changes; {@link DocRefCacheInvalidator} does this for storage and deletion events.
+ */
+public final class DocRefCache<T>
+{
+
+    /**
+     * Room for about 1,000 POMs of typical size (a couple of hundred elements each), enough for the parent and BOM
+     * chains of a large build. A DOM element with its attributes and text costs a few hundred bytes, so a full cache
+     * holds tens of megabytes.
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 200000;
+
+    public static final double LOW_WATER_MARK = 0.9;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ConcurrentMap<DocCacheKey<T>, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ConcreteResource, DocCacheKey<T>> keysByResource = new ConcurrentHashMap<>();
+
+    private final long maxWeight;
+
+    private final AtomicLong weight = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    public DocRefCache()
+    {
+        this( DEFAULT_MAX_WEIGHT );
+    }
+
+    /**
+     * @param maxWeight how many document elements to hold, across all documents
+     */
+    public DocRefCache( final long maxWeight )
+    {
+        if ( maxWeight < 1 )
+        {
+            throw new IllegalArgumentException( "Document cache must hold at least one element. Got: " + maxWeight );
+        }
+
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Caches a document under its source, which can't be invalidated.
+     */
+    public void put( final DocRef<T> dr )
+    {
+        put( new DocCacheKey<>( dr.getRef(), dr.getSource() ), dr, null );
+    }
+
+    /**
+     * Caches a document under the location of the transfer it was parsed from, until that transfer is stored again or
+     * deleted.
+     */
+    public void put( final DocRef<T> dr, final Transfer transfer )
+    {
+        put( new DocCacheKey<>( dr.getRef(), transfer.getLocation() ), dr, transfer );
+    }
+
+    /**
+     * @return the document for the ref parsed from this transfer, if it is cached and the transfer hasn't changed since
+     */
+    public DocRef<T> get( final T ref, final Transfer transfer )
+    {
+        final DocCacheKey<T> key = new DocCacheKey<>( ref, transfer.getLocation() );
+        final Entry<T> entry = entries.get( key );
+        if ( entry == null || !transfer.getResource().equals( entry.resource ) )
+        {
+            misses.increment();
+            return null;
+        }
+
+        final DocRef<T> dr = get( key, entry );
+        if ( dr == null )
+        {
+            misses.increment();
+        }
+        else
+        {
+            hits.increment();
+        }
+
+        return dr;
+    }
+
+    /**
+     * @return the document for the ref from the first of the locations that has one cached, or null
+     */
+    public DocRef<T> getFirst( final T ref, final Collection<? extends Location> locations )
+    {
+        for ( final Location location : locations )
+        {
+            final DocRef<T> dr = get( ref, location );
+            if ( dr != null )
+            {
+                hits.increment();
+                return dr;
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @return the documents for the ref from each of the locations that has one cached
+     */
+    public Map<Location, DocRef<T>> getAll( final T ref, final Collection<? extends Location> locations )
+    {
+        final Map<Location, DocRef<T>> result = new HashMap<>();
+        for ( final Location location : locations )
+        {
+            final DocRef<T> dr = get( ref, location );
+            if ( dr != null )
+            {
+                hits.increment();
+                result.put( location, dr );
+            }
+            else
+            {
+                misses.increment();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the document parsed from the transfer, if there is one.
+     */
+    public void invalidate( final Transfer transfer )
+    {
+        final ConcreteResource resource = transfer.getResource();
+        final DocCacheKey<T> key = keysByResource.remove( resource );
+        if ( key == null )
+        {
+            return;
+        }
+
+        final Entry<T> entry = entries.get( key );
+        if ( entry != null && resource.equals( entry.resource ) && remove( key, entry ) )
+        {
+            invalidations.increment();
+            logger.debug( "Dropped cached document for: {}", resource );
+        }
+    }
+
+    public void clear()
+    {
+        for ( final Map.Entry<DocCacheKey<T>, Entry<T>> e : entries.entrySet() )
+        {
+            remove( e.getKey(), e.getValue() );
+        }
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return elements held, across all cached documents
+     */
+    public long getWeight()
+    {
+        return weight.get();
+    }
+
+    public long getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, or 0 before any lookup
+     */
+    public double getHitRate()
+    {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount()
+    {
+        return invalidations.sum();
+    }
+
+    private DocRef<T> get( final T ref, final Location location )
+    {
+        final DocCacheKey<T> key = new DocCacheKey<>( ref, location );
+        final Entry<T> entry = entries.get( key );
+        if ( entry == null )
+        {
+            return null;
+        }
+
+        return get( key, entry );
+    }
+
+    private DocRef<T> get( final DocCacheKey<T> key, final Entry<T> entry )
+    {
+        if ( !entry.isCurrent() )
+        {
+            if ( remove( key, entry ) )
+            {
+                invalidations.increment();
+                logger.debug( "Dropped cached document for changed: {}", entry.resource );
+            }
+
+            return null;
+        }
+
+        entry.lastUsed = System.nanoTime();
+        return entry.docRef;
+    }
+
+    private void put( final DocCacheKey<T> key, final DocRef<T> dr, final Transfer transfer )
+    {
+        final Entry<T> entry = new Entry<>( dr, transfer, weigh( dr ) );
+        final ConcreteResource resource = entry.resource;
+        final Entry<T> old = entries.put( key, entry );
+        weight.addAndGet( entry.weight );
+        if ( old != null )
+        {
+            released( key, old );
+        }
+
+        if ( resource != null )
+        {
+            final DocCacheKey<T> previous = keysByResource.put( resource, key );
+            if ( previous != null && !previous.equals( key ) )
+            {
+                // the same content was cached for another ref; it would never be invalidated now.
+                final Entry<T> stale = entries.get( previous );
+                if ( stale != null && resource.equals( stale.resource ) )
+                {
+                    remove( previous, stale );
+                }
+            }
+        }
+
+        if ( weight.get() > maxWeight )
+        {
+            evict();
+        }
+    }
+
+    private boolean remove( final DocCacheKey<T> key, final Entry<T> entry )
+    {
+        if ( entries.remove( key, entry ) )
+        {
+            released( key, entry );
+            return true;
+        }
+
+        return false;
+    }
+
+    private void released( final DocCacheKey<T> key, final Entry<T> entry )
+    {
+        weight.addAndGet( -entry.weight );
+        if ( entry.resource != null )
+        {
+            keysByResource.remove( entry.resource, key );
+        }
+    }
+
+    /**
+     * Drops the least recently used documents until the cache is back under its low water mark. This sorts every
+     * entry, so it drops a batch at a time rather than running on every put.
+     */
+    private void evict()
+    {
+        synchronized ( evictionLock )
+        {
+            if ( weight.get() <= maxWeight )
+            {
+                return;
+            }
+
+            final List<Map.Entry<DocCacheKey<T>, Entry<T>>> candidates = new ArrayList<>( entries.entrySet() );
+            candidates.sort( Comparator.comparingLong( e -> e.getValue().lastUsed ) );
+
+            final long target = (long) ( maxWeight * LOW_WATER_MARK );
+            for ( final Map.Entry<DocCacheKey<T>, Entry<T>> candidate : candidates )
+            {
+                if ( weight.get() <= target )
+                {
+                    break;
+                }
+
+                if ( remove( candidate.getKey(), candidate.getValue() ) )
+                {
+                    evictions.increment();
+                }
+            }
+
+            logger.debug( "Evicted least recently used documents. Now holding {} documents of {} elements.",
+                          entries.size(), weight.get() );
+        }
+    }
+
+    private static long weigh( final DocRef<?> dr )
+    {
+        return Math.max( 1, dr.getDoc()
+                              .getElementsByTagName( "*" )
+                              .getLength() );
+    }
+
+    private static final class Entry<T>
+    {
+        private final DocRef<T> docRef;
+
+        private final Transfer transfer;
+
+        private final ConcreteResource resource;
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final long weight;
+
+        private volatile long lastUsed = System.nanoTime();
+
+        private Entry( final DocRef<T> docRef, final Transfer transfer, final long weight )
+        {
+            this.docRef = docRef;
+            this.transfer = transfer;
+            this.resource = transfer == null ? null : transfer.getResource();
+            this.length = transfer == null ? 0 : transfer.length();
+            this.lastModified = transfer == null ? 0 : transfer.lastModified();
+            this.weight = weight;
+        }
+
+        /**
+         * @return false if the transfer this was parsed from has been rewritten or deleted since
+         */
+        private boolean isCurrent()
+        {
+            // a missing file reports zero for both, which no parsed file matches.
+            return transfer == null || ( transfer.length() == length && transfer.lastModified() == lastModified );
+        }
+    }
+
+    private static final class DocCacheKey<T>
+    {
+        private final T ref;
+
+        private final Object source;
+
+        private DocCacheKey( final T ref, final Object source )
+        {
+            this.ref = ref;
+            this.source = source;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ( ( source == null ) ? 0 : source.hashCode() );
+            result = prime * result + ( ( ref == null ) ? 0 : ref.hashCode() );
+            return result;
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( obj == null )
+            {
+                return false;
+            }
+            if ( getClass() != obj.getClass() )
+            {
+                return false;
+            }
+            @SuppressWarnings( "unchecked" )
+            final DocCacheKey<T> other = (DocCacheKey<T>) obj;
+            if ( source == null )
+            {
+                if ( other.source != null )
+                {
+                    return false;
+                }
+            }
+            else if ( !source.equals( other.source ) )
+            {
+                return false;
+            }
+            if ( ref == null )
+            {
+                return other.ref == null;
+            }
+            else
+            {
+                return ref.equals( other.ref );
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.parse;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.commonjava.maven.galley.event.FileAccessEvent;
+import org.commonjava.maven.galley.event.FileDeletionEvent;
+import org.commonjava.maven.galley.event.FileErrorEvent;
+import org.commonjava.maven.galley.event.FileNotFoundEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.spi.event.FileEventManager;
+
+/**
+ * Passes file events on to another {@link FileEventManager}, first dropping documents parsed from a transfer that is
+ * stored or deleted from the registered {@link DocRefCache}s. Events only reach it from transfers built with it, so
+ * the cache provider must be given this manager rather than the one it wraps.
+ */
+public class DocRefCacheInvalidator
+    implements FileEventManager
+{
+
+    private final FileEventManager delegate;
+
+    private final CopyOnWriteArrayList<DocRefCache<?>> caches = new CopyOnWriteArrayList<>();
+
+    public DocRefCacheInvalidator( final FileEventManager delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    public DocRefCacheInvalidator register( final DocRefCache<?> cache )
+    {
+        caches.addIfAbsent( cache );
+        return this;
+    }
+
+    public FileEventManager getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public void fire( final FileNotFoundEvent evt )
+    {
+        delegate.fire( evt );
+    }
+
+    @Override
+    public void fire( final FileStorageEvent evt )
+    {
+        for ( final DocRefCache<?> cache : caches )
+        {
+            cache.invalidate( evt.getTransfer() );
+        }
+
+        delegate.fire( evt );
+    }
+
+    @Override
+    public void fire( final FileAccessEvent evt )
+    {
+        delegate.fire( evt );
+    }
+
+    @Override
+    public void fire( final FileDeletionEvent evt )
+    {
+        for ( final DocRefCache<?> cache : caches )
+        {
+            cache.invalidate( evt.getTransfer() );
+        }
+
+        delegate.fire( evt );
+    }
+
+    @Override
+    public void fire( final FileErrorEvent evt )
+    {
+        delegate.fire( evt );
+    }
+
+}
@@ -18,7 +18,6 @@ package org.commonjava.maven.galley.maven.parse;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -58,7 +57,17 @@ public class MavenMetadataReader
     public MavenMetadataReader( final XMLInfrastructure xml, final LocationExpander locationExpander,
                                 final ArtifactMetadataManager metadataManager, final XPathManager xpath )
     {
-        super( xml, locationExpander );
+        this( xml, locationExpander, metadataManager, xpath, DocRefCache.DEFAULT_MAX_WEIGHT );
+    }
+
+    /**
+     * @param docCacheMaxWeight how many elements of parsed metadata files to keep cached; see {@link DocRefCache}
+     */
+    public MavenMetadataReader( final XMLInfrastructure xml, final LocationExpander locationExpander,
+                                final ArtifactMetadataManager metadataManager, final XPathManager xpath,
+                                final long docCacheMaxWeight )
+    {
+        super( xml, locationExpander, docCacheMaxWeight );
         this.metadataManager = metadataManager;
         this.xpath = xpath;
     }
@@ -73,27 +82,16 @@ public class MavenMetadataReader
         throws GalleyMavenException
     {
         final List<DocRef<ProjectRef>> docs = new ArrayList<>( locations.size() );
-        final Map<Location, DocRef<ProjectRef>> cached = getAllCached( ref, locations );
-
-        final List<? extends Location> toRetrieve = new ArrayList<>( locations );
-        for ( final Location loc : locations )
+        for ( int i = 0; i < locations.size(); i++ )
         {
-            final DocRef<ProjectRef> dr = cached.get( loc );
-            if ( dr != null )
-            {
-                docs.add( dr );
-                toRetrieve.remove( loc );
-            }
-            else
-            {
-                docs.add( null );
-            }
+            docs.add( null );
         }
 
+        // metadata changes upstream, so it is always retrieved; only the parse of an unchanged file is reused.
         List<Transfer> transfers;
         try
         {
-            transfers = metadataManager.retrieveAll( toRetrieve, ref, eventMetadata );
+            transfers = metadataManager.retrieveAll( locations, ref, eventMetadata );
         }
         catch ( final TransferException e )
         {
@@ -108,8 +106,7 @@ public class MavenMetadataReader
         {
             for ( final Transfer transfer : transfers )
             {
-                final DocRef<ProjectRef> dr =
-                    new DocRef<>( ref, transfer.getLocation(), xml.parse( transfer, eventMetadata ) );
+                final DocRef<ProjectRef> dr = parse( ref, transfer, eventMetadata );
                 final int idx = locations.indexOf( transfer.getLocation() );
 
                 // FIXME: This is too clever by half...the if/then here is probably wrong.
@@ -177,10 +174,7 @@ public class MavenMetadataReader
                     continue;
                 }
 
-                final DocRef<ProjectRef> dr =
-                    new DocRef<>( ref, transfer.getLocation(), xml.parse( transfer, eventMetadata ) );
-
-                docs.add( dr );
+                docs.add( parse( ref, transfer, eventMetadata ) );
             }
         }
 
@@ -192,4 +186,17 @@ public class MavenMetadataReader
         return new MavenMetadataView( docs, xpath, xml );
     }
 
+    private DocRef<ProjectRef> parse( final ProjectRef ref, final Transfer transfer, final EventMetadata eventMetadata )
+        throws GalleyMavenException
+    {
+        DocRef<ProjectRef> dr = getCached( ref, transfer );
+        if ( dr == null )
+        {
+            dr = new DocRef<>( ref, transfer.getLocation(), xml.parse( transfer, eventMetadata ) );
+            cache( dr, transfer );
+        }
+
+        return dr;
+    }
+
 }
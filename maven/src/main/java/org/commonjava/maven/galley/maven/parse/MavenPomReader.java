@@ -67,7 +67,18 @@ public class MavenPomReader
     public MavenPomReader( final XMLInfrastructure xml, final LocationExpander locationExpander, final ArtifactManager artifactManager,
                            final XPathManager xpath, final MavenPluginDefaults pluginDefaults, final MavenPluginImplications pluginImplications )
     {
-        super( xml, locationExpander );
+        this( xml, locationExpander, artifactManager, xpath, pluginDefaults, pluginImplications,
+              DocRefCache.DEFAULT_MAX_WEIGHT );
+    }
+
+    /**
+     * @param docCacheMaxWeight how many elements of parsed POMs to keep cached; see {@link DocRefCache}
+     */
+    public MavenPomReader( final XMLInfrastructure xml, final LocationExpander locationExpander, final ArtifactManager artifactManager,
+                           final XPathManager xpath, final MavenPluginDefaults pluginDefaults, final MavenPluginImplications pluginImplications,
+                           final long docCacheMaxWeight )
+    {
+        super( xml, locationExpander, docCacheMaxWeight );
         this.artifacts = artifactManager;
         this.xpath = xpath;
         this.pluginDefaults = pluginDefaults;
@@ -208,7 +219,7 @@ public class MavenPomReader
 
             if ( cache )
             {
-                cache( dr );
+                cache( dr, transfer );
             }
         }
 
@@ -225,11 +236,11 @@ public class MavenPomReader
         {
             final Document doc = xml.parse( pom, eventMetadata );
             dr = new DocRef<>( ref, pom.getLocation(), doc );
-        }
 
-        if ( cache )
-        {
-            cache( dr );
+            if ( cache )
+            {
+                cache( dr, pom );
+            }
         }
 
         return dr;
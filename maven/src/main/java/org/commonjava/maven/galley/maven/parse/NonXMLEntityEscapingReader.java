@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.parse;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Escapes the ampersand of entity references XML doesn't predefine (like &amp;oslash; in the plexus POMs), so they are
+ * read as text instead of failing the parse. A reference is an ampersand followed by anything up to the next
+ * semicolon, unless whitespace or the end of the document comes first. Text is escaped as it is read, so the document
+ * is never held in memory as a whole.
+ */
+final class NonXMLEntityEscapingReader
+    extends FilterReader
+{
+
+    private static final Set<String> XML_ENTITIES = new HashSet<String>()
+    {
+        {
+            add( "&quot;" );
+            add( "&amp;" );
+            add( "&apos;" );
+            add( "&lt;" );
+            add( "&gt;" );
+        }
+
+        private static final long serialVersionUID = 1L;
+    };
+
+    private static final int CHUNK_SIZE = 4096;
+
+    // entity names are short; a longer run is taken as a stray ampersand.
+    private static final int MAX_REFERENCE_LENGTH = 64;
+
+    private final PushbackReader reader;
+
+    private final char[] chunk = new char[CHUNK_SIZE];
+
+    private final StringBuilder pending = new StringBuilder();
+
+    private int pendingPos;
+
+    NonXMLEntityEscapingReader( final Reader in )
+    {
+        this( new PushbackReader( in, CHUNK_SIZE ) );
+    }
+
+    private NonXMLEntityEscapingReader( final PushbackReader reader )
+    {
+        super( reader );
+        this.reader = reader;
+    }
+
+    @Override
+    public int read()
+        throws IOException
+    {
+        final char[] c = new char[1];
+        return read( c, 0, 1 ) < 0 ? -1 : c[0];
+    }
+
+    @Override
+    public int read( final char[] cbuf, final int off, final int len )
+        throws IOException
+    {
+        if ( len < 1 )
+        {
+            return 0;
+        }
+
+        if ( pendingPos >= pending.length() )
+        {
+            pending.setLength( 0 );
+            pendingPos = 0;
+            if ( !fill() )
+            {
+                return -1;
+            }
+        }
+
+        final int n = Math.min( len, pending.length() - pendingPos );
+        pending.getChars( pendingPos, pendingPos + n, cbuf, off );
+        pendingPos += n;
+
+        return n;
+    }
+
+    @Override
+    public long skip( final long n )
+        throws IOException
+    {
+        final char[] skipped = new char[(int) Math.min( n, CHUNK_SIZE )];
+        final int read = read( skipped, 0, skipped.length );
+        return read < 0 ? 0 : read;
+    }
+
+    /**
+     * Reads the text up to the next ampersand, or the reference starting at it.
+     */
+    private boolean fill()
+        throws IOException
+    {
+        final int read = reader.read( chunk, 0, chunk.length );
+        if ( read < 0 )
+        {
+            return false;
+        }
+
+        int amp = 0;
+        while ( amp < read && chunk[amp] != '&' )
+        {
+            amp++;
+        }
+
+        if ( amp > 0 )
+        {
+            pending.append( chunk, 0, amp );
+            reader.unread( chunk, amp, read - amp );
+        }
+        else
+        {
+            reader.unread( chunk, 1, read - 1 );
+            appendReference();
+        }
+
+        return true;
+    }
+
+    private void appendReference()
+        throws IOException
+    {
+        final StringBuilder ref = new StringBuilder( "&" );
+        while ( ref.length() <= MAX_REFERENCE_LENGTH )
+        {
+            final int c = reader.read();
+            if ( c < 0 || isWhitespace( c ) )
+            {
+                // not a reference.
+                if ( c > -1 )
+                {
+                    ref.append( (char) c );
+                }
+
+                pending.append( ref );
+                return;
+            }
+
+            ref.append( (char) c );
+            if ( c == ';' )
+            {
+                if ( ref.length() > 2 && !XML_ENTITIES.contains( ref.toString() ) )
+                {
+                    pending.append( "&amp;" ).append( ref, 1, ref.length() );
+                }
+                else
+                {
+                    pending.append( ref );
+                }
+
+                return;
+            }
+        }
+
+        // too long to be a reference; pass the ampersand and read what follows it as text.
+        pending.append( '&' );
+        reader.unread( ref.substring( 1 ).toCharArray() );
+    }
+
+    // same as \s in a regular expression.
+    private static boolean isWhitespace( final int c )
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+}
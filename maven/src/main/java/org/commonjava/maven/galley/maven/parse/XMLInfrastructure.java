@@ -18,19 +18,17 @@ package org.commonjava.maven.galley.maven.parse;
 import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.apache.commons.lang.StringUtils.isEmpty;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.xml.parsers.DocumentBuilder;
@@ -51,7 +49,8 @@ import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stax.StAXSource;
 import javax.xml.transform.stream.StreamResult;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.XmlStreamReader;
 import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
 import org.commonjava.atlas.maven.ident.ref.SimpleProjectVersionRef;
 import org.commonjava.maven.galley.event.EventMetadata;
@@ -73,18 +72,19 @@ import org.xml.sax.helpers.XMLReaderFactory;
 public class XMLInfrastructure
 {
 
-    private static final Set<String> XML_ENTITIES = new HashSet<String>()
-    {
-        {
-            add( "&quot;" );
-            add( "&amp;" );
-            add( "&apos;" );
-            add( "&lt;" );
-            add( "&gt;" );
-        }
+    private static final String XML_DECLARATION_START = "<?xml";
 
-        private static final long serialVersionUID = 1L;
-    };
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    /**
+     * Opens the document again, for a second parse.
+     */
+    @FunctionalInterface
+    private interface DocumentSource
+    {
+        InputStream open()
+            throws IOException;
+    }
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
@@ -290,57 +290,76 @@ public class XMLInfrastructure
             throw new GalleyMavenXMLException( "Cannot parse null input stream from: %s.", docSource );
         }
 
-        String xml;
-        try
-        {
-            xml = IOUtils.toString( stream );
-        }
-        catch ( final IOException e )
-        {
-            throw new GalleyMavenXMLException( "Failed to read raw data from XML stream: %s", e, e.getMessage() );
-        }
+        // the stream can't be reopened, so hold on to what the first pass reads in case the fallback needs it again.
+        final BufferedInputStream buffered = new BufferedInputStream( stream );
+        buffered.mark( Integer.MAX_VALUE );
 
-        logger.debug( "Parsing:\n\n{}\n\n", xml );
+        return parseDocument( docSource, new CloseShieldInputStream( buffered ), () -> {
+            buffered.reset();
+            return new CloseShieldInputStream( buffered );
+        } );
+    }
+
+    /**
+     * Parses straight from the stream, so the parser sees the raw bytes (and the encoding they declare) and nothing is
+     * buffered on the way. Only if that fails is the source opened again for the lenient parse.
+     */
+    private Document parseDocument( final Object docSource, final InputStream stream, final DocumentSource reopen )
+        throws GalleyMavenXMLException
+    {
+        logger.debug( "Parsing: {}", docSource );
 
-        Document doc;
         try
         {
-            doc = newDocumentBuilder().parse( new InputSource( new StringReader( xml ) ) );
+            return newDocumentBuilder().parse( stream );
         }
         catch ( final GalleyMavenXMLException | SAXException | IOException e )
         {
             closeQuietly( stream );
-            doc = fallbackParseDocument( xml, docSource, e );
-        }
 
-        return doc;
+            InputStream retry = null;
+            try
+            {
+                retry = reopen.open();
+                return fallbackParseDocument( retry, docSource, e );
+            }
+            catch ( final IOException e1 )
+            {
+                throw new GalleyMavenXMLException( "Failed to parse: %s. Read error: %s.\nOriginal DOM error: %s", e1,
+                                                   docSource, e1.getMessage(), e.getMessage() );
+            }
+            finally
+            {
+                closeQuietly( retry );
+            }
+        }
     }
 
-    private Document fallbackParseDocument( String xml, final Object docSource, final Exception e )
-        throws GalleyMavenXMLException
+    private Document fallbackParseDocument( final InputStream stream, final Object docSource, final Exception e )
+        throws GalleyMavenXMLException, IOException
     {
         logger.debug( "Failed to parse: {}. DOM error: {}. Trying STaX parse with IS_REPLACING_ENTITY_REFERENCES == false...",
-                      e, docSource, e.getMessage() );
+                      docSource, e.getMessage() );
+
+        // lenient, so content that isn't valid in the encoding it declares is still read.
+        final Reader xml = new XmlStreamReader( stream, true );
         try
         {
             Source source;
 
             if ( safeInputFactory != null )
             {
-                xml = repairXmlDeclaration( xml );
-
-                final XMLEventReader eventReader = safeInputFactory.createXMLEventReader( new StringReader( xml ) );
+                final XMLEventReader eventReader =
+                    safeInputFactory.createXMLEventReader( repairXmlDeclaration( xml ) );
                 source = new StAXSource( eventReader );
             }
             else
             {
                 // Deal with &oslash; and other undeclared entities...
-                xml = escapeNonXMLEntityRefs( xml );
-
                 final XMLReader reader = XMLReaderFactory.createXMLReader();
                 reader.setFeature( "http://xml.org/sax/features/validation", false );
 
-                source = new SAXSource( reader, new InputSource( new StringReader( xml ) ) );
+                source = new SAXSource( reader, new InputSource( new NonXMLEntityEscapingReader( xml ) ) );
             }
 
             final DOMResult result = new DOMResult();
@@ -367,36 +386,26 @@ public class XMLInfrastructure
         }
     }
 
-    private String repairXmlDeclaration( final String xml )
+    private Reader repairXmlDeclaration( final Reader xml )
+        throws IOException
     {
-        if ( !xml.startsWith( "<?xml" ) )
+        final PushbackReader reader = new PushbackReader( xml, XML_DECLARATION.length() + XML_DECLARATION_START.length() );
+
+        final char[] start = new char[XML_DECLARATION_START.length()];
+        int read = 0;
+        int n;
+        while ( read < start.length && ( n = reader.read( start, read, start.length - read ) ) > -1 )
         {
-            return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xml;
+            read += n;
         }
 
-        return xml;
-    }
-
-    private String escapeNonXMLEntityRefs( final String xml )
-    {
-        final Matcher m = Pattern.compile( "&([^\\s;]+;)" )
-                                 .matcher( xml );
-
-        final StringBuffer sb = new StringBuffer();
-        while ( m.find() )
+        reader.unread( start, 0, read );
+        if ( !XML_DECLARATION_START.equals( new String( start, 0, read ) ) )
         {
-            String value = m.group();
-            if ( !XML_ENTITIES.contains( value ) )
-            {
-                value = "&amp;" + m.group( 1 );
-            }
-
-            m.appendReplacement( sb, value );
+            reader.unread( XML_DECLARATION.toCharArray() );
         }
 
-        m.appendTail( sb );
-
-        return sb.toString();
+        return reader;
     }
 
     public Document parse( final File file )
@@ -409,7 +418,7 @@ public class XMLInfrastructure
             try
             {
                 stream = new FileInputStream( file );
-                doc = parseDocument( file, stream );
+                doc = parseDocument( file, stream, () -> new FileInputStream( file ) );
             }
             catch ( final GalleyMavenXMLException ignored )
             {
@@ -441,7 +450,7 @@ public class XMLInfrastructure
         try
         {
             stream = transfer.openInputStream( false );
-            doc = parseDocument( transfer.toString(), stream );
+            doc = parseDocument( transfer.toString(), stream, () -> transfer.openInputStream( false ) );
         }
         catch ( final IOException e )
         {
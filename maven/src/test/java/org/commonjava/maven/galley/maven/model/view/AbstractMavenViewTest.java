@@ -151,7 +151,15 @@ public abstract class AbstractMavenViewTest
             stack.add( dr );
         }
 
-        return new MavenPomView( pvr, stack, xpath, new StandardMaven350PluginDefaults(),
+        return newPomView( stack, activeProfileIds );
+    }
+
+    /**
+     * Build a view over documents that are already loaded, eg. to share them between views.
+     */
+    protected MavenPomView newPomView( final List<DocRef<ProjectVersionRef>> stack, final String... activeProfileIds )
+    {
+        return new MavenPomView( stack.get( 0 ).getRef(), stack, xpath, new StandardMaven350PluginDefaults(),
                                  new StandardMavenPluginImplications( xml ), xml, activeProfileIds );
     }
 
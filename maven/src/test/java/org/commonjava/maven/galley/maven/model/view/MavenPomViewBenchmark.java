@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.model.view;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
+import org.commonjava.atlas.maven.ident.ref.SimpleProjectVersionRef;
+import org.commonjava.maven.galley.maven.internal.defaults.StandardMaven350PluginDefaults;
+import org.commonjava.maven.galley.maven.internal.defaults.StandardMavenPluginImplications;
+import org.commonjava.maven.galley.maven.parse.XMLInfrastructure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Element lookups of {@link MavenPomView} answered from each document's {@link PomElementIndex}, against the JXPath
+ * evaluation over every document in the stack and every mix-in that the view used before. The POM has a parent chain
+ * of the given depth and imports one BOM of the given size.
+ * <br/>
+ * Not run as part of the build. Run {@link #main(String[])} from the test classpath, or pass options straight to
+ * <code>org.openjdk.jmh.Main</code>.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class MavenPomViewBenchmark
+{
+
+    private static final String DIRECT_DEPS = PomElementIndex.Kind.DIRECT_DEPENDENCIES.getXPath();
+
+    private static final String MANAGED_DEPS = PomElementIndex.Kind.MANAGED_DEPENDENCIES.getXPath();
+
+    private static final String BUILD_PLUGINS = PomElementIndex.Kind.BUILD_PLUGINS.getXPath();
+
+    @Param( { "1", "10" } )
+    public int parentDepth;
+
+    @Param( { "100", "2000" } )
+    public int bomSize;
+
+    private MavenPomView view;
+
+    @Setup
+    public void setup()
+        throws Exception
+    {
+        final XMLInfrastructure xml = new XMLInfrastructure();
+
+        final List<DocRef<ProjectVersionRef>> bomStack = new ArrayList<>();
+        bomStack.add( docRef( "bom", null, 0, bomSize ) );
+        final MavenPomView bom = newView( xml, bomStack );
+
+        final List<DocRef<ProjectVersionRef>> stack = new ArrayList<>();
+        for ( int i = 0; i <= parentDepth; i++ )
+        {
+            stack.add( docRef( "pom-" + i, i < parentDepth ? "pom-" + ( i + 1 ) : null, 20, 20 ) );
+        }
+
+        view = newView( xml, stack );
+        view.addMixin( new MavenXmlMixin<>( bom, MavenXmlMixin.DEPENDENCY_MIXIN ) );
+    }
+
+    @Benchmark
+    public int indexedDirectDependencies()
+    {
+        return view.resolveXPathToAggregatedElementViewList( DIRECT_DEPS, true, -1 ).size();
+    }
+
+    @Benchmark
+    public int xpathDirectDependencies()
+    {
+        return xpathElements( view, DIRECT_DEPS ).size();
+    }
+
+    @Benchmark
+    public int indexedManagedDependencies()
+    {
+        return view.resolveXPathToAggregatedElementViewList( MANAGED_DEPS, true, -1 ).size();
+    }
+
+    @Benchmark
+    public int xpathManagedDependencies()
+    {
+        return xpathElements( view, MANAGED_DEPS ).size();
+    }
+
+    @Benchmark
+    public int indexedBuildPlugins()
+    {
+        return view.resolveXPathToAggregatedElementViewList( BUILD_PLUGINS, true, -1 ).size();
+    }
+
+    @Benchmark
+    public int xpathBuildPlugins()
+    {
+        return xpathElements( view, BUILD_PLUGINS ).size();
+    }
+
+    private static List<Node> xpathElements( final MavenPomView view, final String path )
+    {
+        final List<Node> result = new ArrayList<>();
+        for ( final DocRef<ProjectVersionRef> dr : view.getDocRefStack() )
+        {
+            result.addAll( view.getLocalNodeList( dr.getDocContext(), path ) );
+        }
+
+        for ( final MavenXmlMixin<ProjectVersionRef> mixin : view.getMixins() )
+        {
+            if ( mixin.matches( path ) )
+            {
+                result.addAll( xpathElements( (MavenPomView) mixin.getMixin(), path ) );
+            }
+        }
+
+        return result;
+    }
+
+    private static MavenPomView newView( final XMLInfrastructure xml, final List<DocRef<ProjectVersionRef>> stack )
+    {
+        return new MavenPomView( stack.get( 0 ).getRef(), stack, new XPathManager(),
+                                 new StandardMaven350PluginDefaults(), new StandardMavenPluginImplications( xml ),
+                                 xml );
+    }
+
+    private static DocRef<ProjectVersionRef> docRef( final String artifactId, final String parent, final int deps,
+                                                     final int managed )
+        throws Exception
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "<project xmlns=\"http://maven.apache.org/POM/4.0.0\"><modelVersion>4.0.0</modelVersion>" );
+        if ( parent != null )
+        {
+            sb.append( "<parent><groupId>org.bench</groupId><artifactId>" )
+              .append( parent )
+              .append( "</artifactId><version>1</version></parent>" );
+        }
+
+        sb.append( "<groupId>org.bench</groupId><artifactId>" ).append( artifactId ).append( "</artifactId>" );
+        sb.append( "<version>1</version><properties><bench.version>1</bench.version></properties>" );
+
+        sb.append( "<dependencyManagement><dependencies>" );
+        for ( int i = 0; i < managed; i++ )
+        {
+            dependency( sb, artifactId + "-managed-" + i );
+        }
+        sb.append( "</dependencies></dependencyManagement><dependencies>" );
+        for ( int i = 0; i < deps; i++ )
+        {
+            dependency( sb, artifactId + "-dep-" + i );
+        }
+
+        sb.append( "</dependencies><build><plugins>" );
+        for ( int i = 0; i < 5; i++ )
+        {
+            sb.append( "<plugin><artifactId>" )
+              .append( artifactId )
+              .append( "-plugin-" )
+              .append( i )
+              .append( "</artifactId><version>1</version><dependencies>" );
+            dependency( sb, artifactId + "-plugin-dep-" + i );
+            sb.append( "</dependencies></plugin>" );
+        }
+        sb.append( "</plugins></build></project>" );
+
+        final Document doc = DocumentBuilderFactory.newInstance()
+                                                   .newDocumentBuilder()
+                                                   .parse( new ByteArrayInputStream(
+                                                           sb.toString().getBytes( StandardCharsets.UTF_8 ) ) );
+
+        return new DocRef<>( new SimpleProjectVersionRef( "org.bench", artifactId, "1" ), artifactId, doc );
+    }
+
+    private static void dependency( final StringBuilder sb, final String artifactId )
+    {
+        sb.append( "<dependency><groupId>org.bench</groupId><artifactId>" )
+          .append( artifactId )
+          .append( "</artifactId><version>${bench.version}</version></dependency>" );
+    }
+
+    public static void main( final String[] args )
+        throws Exception
+    {
+        new Runner( new OptionsBuilder().include( MavenPomViewBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
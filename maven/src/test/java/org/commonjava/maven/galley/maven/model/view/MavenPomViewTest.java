@@ -22,9 +22,15 @@ import org.commonjava.maven.galley.maven.parse.GalleyMavenXMLException;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -419,4 +425,93 @@ public class MavenPomViewTest
         String version = pomView.resolveExpressions( "${commons.lang.value}" );
         assertThat( version, equalTo( "2.5" ) );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void propertiesResolveThroughChainsAndInheritance()
+            throws Exception
+    {
+        final MavenPomView pomView = loadPoms( "pom-with-property.xml", "simple-parent-pom.xml" );
+
+        // the child's another-property hides the parent's, at every step of the chain
+        assertThat( pomView.resolveExpressions( "${resolve-fourth-property}" ), equalTo( "2.1" ) );
+        assertThat( pomView.resolveExpressions( "v${resolve-fourth-property}-${project.version}" ),
+                    equalTo( "v2.1-1" ) );
+        assertThat( pomView.resolveExpressions( "${resolve-no-property}" ), equalTo( "${i-dont-exist}" ) );
+
+        // memoized answers are the same as fresh ones
+        assertThat( pomView.resolveExpressions( "${resolve-fourth-property}" ), equalTo( "2.1" ) );
+    }
+
+    @Test
+    public void activeProfilePropertiesHideMainProperties()
+            throws Exception
+    {
+        final MavenPomView pomView = loadPoms( "pom-with-repo-property-in-profile.xml" );
+
+        assertThat( pomView.resolveExpressions( "${commons.lang.value}" ), equalTo( "2.5" ) );
+        assertThat( pomView.resolveExpressions( "${commons.lang.value}", "test.oracle" ), equalTo( "2.6" ) );
+        assertThat( pomView.resolveExpressions( "${commons.lang.value}" ), equalTo( "2.5" ) );
+    }
+
+    @Test
+    public void allProfilesResolvesToTheDeclaredProfiles()
+            throws Exception
+    {
+        final Set<String> declared =
+                new HashSet<>( Arrays.asList( "test-profile-without-repo", "test-profile-with-repo" ) );
+
+        final MavenPomView pomView = loadPoms( new String[] { MavenPomView.ALL_PROFILES }, "pom-with-profiles-repos.xml" );
+
+        // the query getProfileIds() used to run is rooted above <project>, so it never matched anything
+        assertThat( pomView.resolveXPathExpressionToAggregatedList( "/profiles/profile/id/text()", false, -1 ).isEmpty(),
+                    equalTo( true ) );
+
+        assertThat( pomView.getProfileIds(), equalTo( declared ) );
+        assertThat( pomView.getActiveProfileIds(), equalTo( declared ) );
+    }
+
+    @Test
+    public void concurrentViewsShareDocumentsWithoutChangingThem()
+            throws Exception
+    {
+        final List<DocRef<ProjectVersionRef>> stack =
+                loadPoms( "pom-with-parent-and-incomplete-managed-dep.xml", "simple-parent-with-managed-dep.xml" )
+                        .getDocRefStack();
+
+        final MavenPomView first = newPomView( stack );
+        final List<String> before = new ArrayList<>();
+        for ( final DocRef<ProjectVersionRef> dr : stack )
+        {
+            before.add( first.toXML( dr.getDoc().getDocumentElement() ) );
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            final List<Future<String>> results = new ArrayList<>();
+            for ( int i = 0; i < 64; i++ )
+            {
+                results.add( executor.submit( () -> {
+                    // merging the parent's managed dependency into the child's is what used to write to the DOM
+                    final List<DependencyView> deps = newPomView( stack ).getAllManagedDependencies();
+                    final DependencyView dep = deps.get( 0 );
+                    return deps.size() + ":" + dep.getScope() + ":" + dep.getVersion() + ":" + dep.isOptional();
+                } ) );
+            }
+
+            for ( final Future<String> result : results )
+            {
+                assertThat( result.get( 30, TimeUnit.SECONDS ), equalTo( "1:test:2.5:false" ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        for ( int i = 0; i < stack.size(); i++ )
+        {
+            assertThat( first.toXML( stack.get( i ).getDoc().getDocumentElement() ), equalTo( before.get( i ) ) );
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.model.view;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PomElementIndexTest
+    extends AbstractMavenViewTest
+{
+
+    @Override
+    protected String getBaseResource()
+    {
+        return "view/pom/";
+    }
+
+    @Test
+    public void indexSelectsTheSameElementsAsXPath()
+        throws Exception
+    {
+        for ( final String dir : new String[] { "view/pom", "view/dep" } )
+        {
+            final URL url = Thread.currentThread().getContextClassLoader().getResource( dir );
+            final String[] names = new File( url.toURI() ).list();
+            for ( final String name : names )
+            {
+                final Document doc;
+                try (InputStream in = Thread.currentThread()
+                                            .getContextClassLoader()
+                                            .getResourceAsStream( dir + "/" + name ))
+                {
+                    doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( in );
+                }
+
+                // DocRef strips the default namespace, the same as when views are built
+                final DocRef<String> dr = new DocRef<>( name, dir, doc );
+                final PomElementIndex index = dr.getElementIndex();
+                for ( final PomElementIndex.Kind kind : PomElementIndex.Kind.values() )
+                {
+                    final List<Object> expected =
+                            new ArrayList<Object>( dr.getDocContext().selectNodes( kind.getXPath() ) );
+
+                    assertThat( name + ": " + kind, new ArrayList<Object>( index.get( kind ) ), equalTo( expected ) );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.parse;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.commonjava.atlas.maven.ident.ref.ProjectRef;
+import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
+import org.commonjava.atlas.maven.ident.ref.SimpleProjectRef;
+import org.commonjava.atlas.maven.ident.ref.SimpleProjectVersionRef;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.maven.model.view.DocRef;
+import org.commonjava.maven.galley.maven.model.view.XPathManager;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.testing.core.cache.TestCacheProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DocRefCacheTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Location first = new SimpleLocation( "first", "http://first/repo" );
+
+    private final Location second = new SimpleLocation( "second", "http://second/repo" );
+
+    @Test
+    public void lookupsReportHitRate()
+        throws Exception
+    {
+        final DocRefCache<ProjectVersionRef> cache = new DocRefCache<>();
+        final DocRef<ProjectVersionRef> dr = docRef( "a", 3 );
+        cache.put( dr, transfer( second, "a.pom" ) );
+
+        final List<Location> locations = Arrays.asList( first, second );
+        assertThat( cache.getFirst( dr.getRef(), locations ), sameInstance( dr ) );
+        assertThat( cache.getFirst( ref( "b" ), locations ), nullValue() );
+        assertThat( cache.getAll( dr.getRef(), locations ), equalTo( Collections.singletonMap( second, dr ) ) );
+
+        assertThat( cache.getHitCount(), equalTo( 2L ) );
+        assertThat( cache.getMissCount(), equalTo( 2L ) );
+        assertThat( cache.getHitRate(), equalTo( 0.5 ) );
+    }
+
+    @Test
+    public void readersTakeTheirCacheLimit()
+    {
+        assertThat( new MavenMetadataReader( null, null, null, null, 500 ).getDocRefCache().getMaxWeight(),
+                    equalTo( 500L ) );
+        assertThat( new MavenPomReader( null, null, null, null, null, null ).getDocRefCache().getMaxWeight(),
+                    equalTo( DocRefCache.DEFAULT_MAX_WEIGHT ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedDocumentsAreEvictedPastMaxWeight()
+        throws Exception
+    {
+        // each document weighs its 5 elements.
+        final DocRefCache<ProjectVersionRef> cache = new DocRefCache<>( 12 );
+        final DocRef<ProjectVersionRef> a = docRef( "a", 3 );
+        final DocRef<ProjectVersionRef> b = docRef( "b", 3 );
+        cache.put( a, transfer( first, "a.pom" ) );
+        cache.put( b, transfer( first, "b.pom" ) );
+        assertThat( cache.getWeight(), equalTo( 10L ) );
+
+        Thread.sleep( 1 );
+        cache.getFirst( a.getRef(), Collections.singletonList( first ) );
+        cache.put( docRef( "c", 3 ), transfer( first, "c.pom" ) );
+
+        assertThat( cache.getFirst( a.getRef(), Collections.singletonList( first ) ), sameInstance( a ) );
+        assertThat( cache.getFirst( b.getRef(), Collections.singletonList( first ) ), nullValue() );
+        assertThat( cache.getEvictionCount(), equalTo( 1L ) );
+        assertThat( cache.getWeight(), equalTo( 10L ) );
+    }
+
+    @Test
+    public void storingOrDeletingTheTransferDropsItsDocument()
+        throws Exception
+    {
+        final DocRefCache<ProjectVersionRef> cache = new DocRefCache<>();
+        final DocRefCacheInvalidator events =
+            new DocRefCacheInvalidator( new NoOpFileEventManager() ).register( cache );
+        final TestCacheProvider provider = new TestCacheProvider( temp.newFolder(), events, decorator() );
+
+        final Transfer a = new Transfer( first, provider, events, decorator(), "a.pom" );
+        final Transfer b = new Transfer( first, provider, events, decorator(), "b.pom" );
+        write( a );
+        write( b );
+
+        cache.put( docRef( "a", 1 ), a );
+        cache.put( docRef( "b", 1 ), b );
+
+        write( a );
+        b.delete();
+
+        assertThat( cache.getFirst( ref( "a" ), Collections.singletonList( first ) ), nullValue() );
+        assertThat( cache.getFirst( ref( "b" ), Collections.singletonList( first ) ), nullValue() );
+        assertThat( cache.getInvalidationCount(), equalTo( 2L ) );
+        assertThat( cache.getWeight(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void changedFileIsNotServedWithoutInvalidator()
+        throws Exception
+    {
+        final DocRefCache<ProjectVersionRef> cache = new DocRefCache<>();
+        final Transfer a = transfer( first, "a.pom" );
+        final Transfer b = transfer( first, "b.pom" );
+        final DocRef<ProjectVersionRef> bDoc = docRef( "b", 1 );
+
+        cache.put( docRef( "a", 1 ), a );
+        cache.put( bDoc, b );
+        assertThat( cache.get( ref( "b" ), b ), sameInstance( bDoc ) );
+
+        write( a, "<project><modelVersion>4.0.0</modelVersion></project>" );
+        b.delete();
+
+        assertThat( cache.getFirst( ref( "a" ), Collections.singletonList( first ) ), nullValue() );
+        assertThat( cache.get( ref( "b" ), b ), nullValue() );
+        assertThat( cache.getInvalidationCount(), equalTo( 2L ) );
+        assertThat( cache.getWeight(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void metadataReaderReusesParseOfUnchangedFile()
+        throws Exception
+    {
+        final MavenMetadataReader reader =
+            new MavenMetadataReader( new XMLInfrastructure(), null, null, new XPathManager() );
+        final Transfer transfer = transfer( first, "maven-metadata.xml" );
+        write( transfer, "<metadata><versioning><latest>1</latest></versioning></metadata>" );
+
+        final ProjectRef ref = new SimpleProjectRef( "org.test", "a" );
+        final List<Transfer> transfers = Collections.singletonList( transfer );
+        final DocRef<ProjectRef> parsed = reader.readMetadata( ref, transfers ).getDocRefStack().get( 0 );
+
+        assertThat( reader.readMetadata( ref, transfers ).getDocRefStack().get( 0 ), sameInstance( parsed ) );
+
+        write( transfer, "<metadata><versioning><latest>1.1</latest></versioning></metadata>" );
+        assertThat( reader.readMetadata( ref, transfers ).getDocRefStack().get( 0 ) == parsed, equalTo( false ) );
+    }
+
+    private static void write( final Transfer transfer )
+        throws Exception
+    {
+        write( transfer, "<project/>" );
+    }
+
+    private static void write( final Transfer transfer, final String content )
+        throws Exception
+    {
+        try (OutputStream out = transfer.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( content.getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+    private Transfer transfer( final Location location, final String path )
+        throws Exception
+    {
+        final TestCacheProvider provider =
+            new TestCacheProvider( temp.newFolder(), new NoOpFileEventManager(), decorator() );
+        final Transfer transfer = new Transfer( location, provider, new NoOpFileEventManager(), decorator(), path );
+        write( transfer );
+        return transfer;
+    }
+
+    private static TransferDecoratorManager decorator()
+    {
+        return new TransferDecoratorManager( new NoOpTransferDecorator() );
+    }
+
+    private static ProjectVersionRef ref( final String artifactId )
+    {
+        return new SimpleProjectVersionRef( "org.test", artifactId, "1" );
+    }
+
+    /**
+     * @return a document of the given number of dependencies, with two more elements around them
+     */
+    private static DocRef<ProjectVersionRef> docRef( final String artifactId, final int dependencies )
+        throws Exception
+    {
+        final StringBuilder sb = new StringBuilder( "<project><dependencies>" );
+        for ( int i = 0; i < dependencies; i++ )
+        {
+            sb.append( "<dependency/>" );
+        }
+        sb.append( "</dependencies></project>" );
+
+        final byte[] xml = sb.toString().getBytes( StandardCharsets.UTF_8 );
+        return new DocRef<>( ref( artifactId ), artifactId, DocumentBuilderFactory.newInstance()
+                                                                                  .newDocumentBuilder()
+                                                                                  .parse( new ByteArrayInputStream( xml ) ) );
+    }
+
+}
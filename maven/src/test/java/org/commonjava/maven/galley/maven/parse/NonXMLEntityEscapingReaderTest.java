@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.maven.parse;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class NonXMLEntityEscapingReaderTest
+{
+
+    @Test
+    public void undeclaredEntitiesAreEscaped()
+        throws Exception
+    {
+        assertThat( escape( "<name>Trygve Laugst&oslash;l &amp; &lt;co&gt; &#169;</name>" ),
+                    equalTo( "<name>Trygve Laugst&amp;oslash;l &amp; &lt;co&gt; &amp;#169;</name>" ) );
+    }
+
+    @Test
+    public void strayAmpersandsAreLeftAlone()
+        throws Exception
+    {
+        assertThat( escape( "a & b &; c &d e&f" ), equalTo( "a & b &; c &d e&f" ) );
+    }
+
+    @Test
+    public void referencesAcrossChunksAreEscaped()
+        throws Exception
+    {
+        final StringBuilder in = new StringBuilder();
+        final StringBuilder out = new StringBuilder();
+        for ( int i = 0; i < 2000; i++ )
+        {
+            in.append( "x&oslash;" );
+            out.append( "x&amp;oslash;" );
+        }
+
+        assertThat( escape( in.toString() ), equalTo( out.toString() ) );
+    }
+
+    private String escape( final String xml )
+        throws Exception
+    {
+        return IOUtils.toString( new NonXMLEntityEscapingReader( new StringReader( xml ) ) );
+    }
+
+}
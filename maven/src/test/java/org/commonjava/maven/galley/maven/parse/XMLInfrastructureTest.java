@@ -15,9 +15,12 @@
  */
 package org.commonjava.maven.galley.maven.parse;
 
+import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
 
 import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
@@ -75,6 +78,37 @@ public class XMLInfrastructureTest
         assertThat( doc, notNullValue() );
     }
 
+    @Test
+    public void parsePOMFileWithUndeclaredEntity()
+        throws Exception
+    {
+        // the fallback parse opens the file again, instead of keeping a copy of it from the first attempt.
+        final File pom = new File( Thread.currentThread()
+                                         .getContextClassLoader()
+                                         .getResource( getBaseResource() + "pom-with-undeclared-entity.xml" )
+                                         .toURI() );
+
+        final Document doc = new XMLInfrastructure().parse( pom );
+
+        assertThat( doc, notNullValue() );
+        assertThat( new XMLInfrastructure().getProjectVersionRef( doc )
+                                           .getArtifactId(), equalTo( "plexus" ) );
+    }
+
+    @Test
+    public void parseStreamInDeclaredEncoding()
+        throws Exception
+    {
+        final byte[] xml = ( "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+            + "<project><name>Trygve Laugst\u00f8l</name></project>" ).getBytes( "ISO-8859-1" );
+
+        final Document doc = new XMLInfrastructure().parseDocument( "latin-1", new ByteArrayInputStream( xml ) );
+
+        assertThat( doc.getElementsByTagName( "name" )
+                       .item( 0 )
+                       .getTextContent(), equalTo( "Trygve Laugst\u00f8l" ) );
+    }
+
     private Document loadDocument( final String resource )
         throws Exception
     {
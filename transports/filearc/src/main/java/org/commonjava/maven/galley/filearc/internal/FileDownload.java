@@ -22,6 +22,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.event.EventMetadata;
@@ -71,7 +73,26 @@ public class FileDownload
             {
                 in = new FileInputStream( src );
                 out = txfr.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata );
-                copy( in, out );
+                if ( out instanceof WritableByteChannel )
+                {
+                    // hand the file to the decorator chain as whole buffers, without copying through a byte[].
+                    final FileChannel channel = in.getChannel();
+                    final long size = channel.size();
+                    long position = 0;
+                    while ( position < size )
+                    {
+                        final long n = channel.transferTo( position, size - position, (WritableByteChannel) out );
+                        if ( n <= 0 )
+                        {
+                            break;
+                        }
+                        position += n;
+                    }
+                }
+                else
+                {
+                    copy( in, out );
+                }
             }
 
             return this;
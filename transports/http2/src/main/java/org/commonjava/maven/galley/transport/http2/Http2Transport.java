@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2;
+
+import static org.commonjava.maven.galley.util.UrlUtils.buildUrl;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Named;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+import org.commonjava.maven.galley.spi.transport.ListingJob;
+import org.commonjava.maven.galley.spi.transport.PublishJob;
+import org.commonjava.maven.galley.spi.transport.Transport;
+import org.commonjava.maven.galley.transport.http2.internal.Http2Download;
+import org.commonjava.maven.galley.transport.http2.internal.Http2Existence;
+import org.commonjava.maven.galley.transport.http2.internal.Http2Listing;
+import org.commonjava.maven.galley.transport.http2.internal.Http2Publish;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Transport for http:// and https:// locations over HTTP/2, built on the JDK's {@link HttpClient}. Requests to the
+ * same server are multiplexed as streams over a shared connection (negotiated with ALPN for https://, or upgraded
+ * from HTTP/1.1 for http://), and the client does its I/O asynchronously, so many small fetches of POMs and
+ * checksums from one repository don't each need a connection of their own. Servers that don't speak HTTP/2 are
+ * talked to over HTTP/1.1.
+ * <br/>
+ * This is an alternative to the httpclient transport; register one or the other, since both handle the same URLs.
+ * Downloads keep their HTTP exchange metadata in the same format as the httpclient transport, and use it to revalidate
+ * and resume the same way.
+ * <br/>
+ * Locations are accessed anonymously and directly. Locations that carry credentials, a proxy or certificates (such as
+ * the httpclient transport's <code>HttpLocation</code>) are not handled, rather than being sent requests without them.
+ */
+@ApplicationScoped
+@Named
+public class Http2Transport
+    implements Transport
+{
+
+    /**
+     * Getters of connection settings this transport can't honour, on the location types that have them. They are
+     * looked up by name, so this module doesn't depend on the httpclient transport.
+     */
+    private static final String[] CONNECTION_SETTINGS =
+            { "getUser", "getProxyHost", "getKeyCertPem", "getServerCertPem" };
+
+    private static final ClassValue<List<Method>> CONNECTION_SETTING_GETTERS = new ClassValue<List<Method>>()
+    {
+        @Override
+        protected List<Method> computeValue( final Class<?> type )
+        {
+            final List<Method> getters = new ArrayList<>();
+            for ( final String name : CONNECTION_SETTINGS )
+            {
+                try
+                {
+                    getters.add( type.getMethod( name ) );
+                }
+                catch ( final NoSuchMethodException e )
+                {
+                    // this location type doesn't have the setting.
+                }
+            }
+
+            return getters;
+        }
+    };
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final HttpClient client;
+
+    private final ObjectMapper mapper;
+
+    public Http2Transport()
+    {
+        this( HttpClient.newBuilder()
+                        .version( HttpClient.Version.HTTP_2 )
+                        .followRedirects( HttpClient.Redirect.NORMAL )
+                        .connectTimeout( Duration.ofSeconds( Location.DEFAULT_CONNECTION_TIMEOUT_SECONDS ) )
+                        .build() );
+    }
+
+    /**
+     * @param client shared by every request this transport makes. It should prefer
+     * {@link HttpClient.Version#HTTP_2}, or requests won't be multiplexed.
+     */
+    public Http2Transport( final HttpClient client )
+    {
+        this( client, new ObjectMapper() );
+    }
+
+    /**
+     * @param mapper reads and writes the HTTP exchange metadata kept next to downloaded files
+     */
+    public Http2Transport( final HttpClient client, final ObjectMapper mapper )
+    {
+        this.client = client;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public DownloadJob createDownloadJob( final ConcreteResource resource, final Transfer target,
+                                          final Map<Transfer, Long> transferSizes, final int timeoutSeconds,
+                                          final EventMetadata eventMetadata )
+        throws TransferException
+    {
+        return new Http2Download( getUrl( resource ), resource.getLocation(), client, timeoutSeconds, target,
+                                  transferSizes, eventMetadata, mapper );
+    }
+
+    @Override
+    public PublishJob createPublishJob( final ConcreteResource resource, final InputStream stream, final long length,
+                                        final int timeoutSeconds )
+        throws TransferException
+    {
+        return createPublishJob( resource, stream, length, null, timeoutSeconds );
+    }
+
+    @Override
+    public PublishJob createPublishJob( final ConcreteResource resource, final InputStream stream, final long length,
+                                        final String contentType, final int timeoutSeconds )
+        throws TransferException
+    {
+        return new Http2Publish( getUrl( resource ), resource.getLocation(), client, timeoutSeconds, stream, length,
+                                 contentType );
+    }
+
+    @Override
+    public ListingJob createListingJob( final ConcreteResource resource, final Transfer target, final int timeoutSeconds )
+        throws TransferException
+    {
+        return new Http2Listing( getUrl( resource ), resource, client, timeoutSeconds );
+    }
+
+    @Override
+    public ExistenceJob createExistenceJob( final ConcreteResource resource, final Transfer target,
+                                            final int timeoutSeconds )
+        throws TransferException
+    {
+        return new Http2Existence( getUrl( resource ), resource.getLocation(), client, timeoutSeconds );
+    }
+
+    @Override
+    public boolean handles( final Location location )
+    {
+        final String uri = location.getUri();
+        return uri != null && ( uri.startsWith( "http:" ) || uri.startsWith( "https:" ) )
+                && !needsConnectionSettings( location );
+    }
+
+    private boolean needsConnectionSettings( final Location location )
+    {
+        try
+        {
+            if ( URI.create( location.getUri() ).getRawUserInfo() != null )
+            {
+                return true;
+            }
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            // malformed; reported when a job builds its URL.
+            return false;
+        }
+
+        for ( final Method getter : CONNECTION_SETTING_GETTERS.get( location.getClass() ) )
+        {
+            try
+            {
+                if ( getter.invoke( location ) != null )
+                {
+                    logger.debug( "Not handling: {}. It needs a setting this transport doesn't support: {}", location,
+                                  getter.getName() );
+                    return true;
+                }
+            }
+            catch ( final ReflectiveOperationException | RuntimeException e )
+            {
+                // can't tell, so leave it to a transport that knows the type.
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean allowsCaching()
+    {
+        return true;
+    }
+
+    private String getUrl( final ConcreteResource resource )
+        throws TransferException
+    {
+        try
+        {
+            return buildUrl( resource );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new TransferLocationException( resource.getLocation(), "Failed to build URL for resource: %s. Reason: %s",
+                                                 e, resource, e.getMessage() );
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.BadGatewayException;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.model.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends one request through the shared {@link HttpClient}, and sorts its response into success, missing content (not
+ * an error) or failure, the same way the httpclient transport does.
+ */
+public abstract class AbstractHttp2Job
+{
+
+    protected final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    protected final String url;
+
+    protected final Location location;
+
+    private final HttpClient client;
+
+    private final int timeoutSeconds;
+
+    private final Set<Integer> successStatuses;
+
+    protected TransferException error;
+
+    protected AbstractHttp2Job( final String url, final Location location, final HttpClient client,
+                                final int timeoutSeconds, final Integer... successStatuses )
+    {
+        this.url = url;
+        this.location = location;
+        this.client = client;
+        this.timeoutSeconds = timeoutSeconds;
+        this.successStatuses = new HashSet<>( Arrays.asList( successStatuses ) );
+    }
+
+    public TransferException getError()
+    {
+        return error;
+    }
+
+    protected HttpRequest.Builder newRequest()
+    {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder( URI.create( url ) );
+        if ( timeoutSeconds > 0 )
+        {
+            // covers waiting for the response headers; bodies are streamed for as long as they take.
+            builder.timeout( Duration.ofSeconds( timeoutSeconds ) );
+        }
+
+        return builder;
+    }
+
+    /**
+     * @return the response, with a body the caller must consume or close if it is a stream
+     */
+    protected <T> HttpResponse<T> send( final HttpRequest request, final HttpResponse.BodyHandler<T> bodyHandler )
+        throws TransferException
+    {
+        try
+        {
+            final HttpResponse<T> response = client.send( request, bodyHandler );
+            logger.trace( "{} {} ({}) : {}", request.method(), response.statusCode(), response.version(), url );
+            return response;
+        }
+        catch ( final HttpTimeoutException e )
+        {
+            throw new TransferTimeoutException( location, url, "Repository remote request failed for: %s. Reason: %s",
+                                                e, url, e.getMessage() );
+        }
+        catch ( final IOException e )
+        {
+            throw new TransferLocationException( location, "Repository remote request failed for: %s. Reason: %s", e,
+                                                 url, e.getMessage() );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new TransferException( "Interrupted while waiting for: %s", e, url );
+        }
+    }
+
+    /**
+     * @return true if the response carries the content; false if the content is missing upstream
+     * @throws TransferException if the request failed. The response body is closed first.
+     */
+    protected boolean isSuccessful( final HttpResponse<?> response )
+        throws TransferException
+    {
+        final int sc = response.statusCode();
+        if ( successStatuses.contains( sc ) )
+        {
+            return true;
+        }
+
+        discard( response );
+        if ( sc > 399 && sc != 404 && sc != 408 && sc != 502 && sc != 503 && sc != 504 )
+        {
+            throw new TransferLocationException( location,
+                                                 "Server misconfigured or not responding normally for url %s: '%s'",
+                                                 url, sc );
+        }
+        else if ( sc == 404 )
+        {
+            return false;
+        }
+        else if ( sc > 499 )
+        {
+            throw new BadGatewayException( location, url, sc, "HTTP request failed: %s", sc );
+        }
+
+        throw new TransferLocationException( location, "HTTP request failed: %s", sc );
+    }
+
+    protected static void discard( final HttpResponse<?> response )
+    {
+        if ( response.body() instanceof InputStream )
+        {
+            // closing the body resets its stream, without tearing down the connection it shares.
+            IOUtils.closeQuietly( (InputStream) response.body() );
+        }
+    }
+
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.TransferContentException;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Downloads a file the way the httpclient transport's <code>HttpDownload</code> does: it keeps the HTTP exchange
+ * metadata of the download, revalidates a cached file with a conditional GET when
+ * {@link TransferManager#REVALIDATE} is set, and resumes an interrupted download with a ranged GET.
+ */
+public final class Http2Download
+    extends AbstractHttp2Job
+    implements DownloadJob
+{
+
+    // smaller interrupted downloads are simply restarted.
+    private static final long MIN_RESUME_BYTES = 1024 * 1024;
+
+    private final Transfer target;
+
+    private final Map<Transfer, Long> transferSizes;
+
+    private final EventMetadata eventMetadata;
+
+    private final ObjectMapper mapper;
+
+    private long transferSize = -1;
+
+    public Http2Download( final String url, final Location location, final HttpClient client,
+                          final int timeoutSeconds, final Transfer target, final Map<Transfer, Long> transferSizes,
+                          final EventMetadata eventMetadata, final ObjectMapper mapper )
+    {
+        // a 416 is only expected in answer to a resumed download, and is handled by starting over.
+        super( url, location, client, timeoutSeconds, 200, 206, 304, 416 );
+        this.target = target;
+        this.transferSizes = transferSizes;
+        this.eventMetadata = eventMetadata;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public DownloadJob call()
+    {
+        try
+        {
+            if ( !download() )
+            {
+                // the kept bytes were dropped, so this asks for the whole file.
+                download();
+            }
+        }
+        catch ( final TransferException e )
+        {
+            error = e;
+        }
+
+        return this;
+    }
+
+    /**
+     * @return false if a resumed download was refused with a 416, in which case the kept bytes are discarded and the
+     * caller should ask again for the whole file
+     */
+    private boolean download()
+        throws TransferException
+    {
+        final HttpRequest.Builder builder = newRequest().GET();
+        addConditionalHeaders( builder );
+
+        final Transfer partial = target.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME );
+        final long resumeFrom = addRangeHeaders( builder, partial );
+
+        final HttpRequest request = builder.build();
+        final HttpResponse<InputStream> response = send( request, HttpResponse.BodyHandlers.ofInputStream() );
+        if ( !isSuccessful( response ) )
+        {
+            return true;
+        }
+
+        final int sc = response.statusCode();
+        if ( sc == 304 )
+        {
+            discard( response );
+            logger.debug( "Cached copy is up to date: {}", target );
+        }
+        else if ( sc == 416 )
+        {
+            discard( response );
+            if ( resumeFrom < 1 )
+            {
+                throw new TransferLocationException( location,
+                                                     "Server misconfigured or not responding normally for url %s: '%s'",
+                                                     url, sc );
+            }
+
+            // e.g. the remote file shrank below the kept bytes without its validator changing.
+            logger.debug( "Cannot resume download of: {} from byte: {}. Downloading the whole file.", url,
+                          resumeFrom );
+            discardPartial( partial );
+            return false;
+        }
+        else if ( sc == 206 )
+        {
+            final String contentRange = response.headers().firstValue( "Content-Range" ).orElse( null );
+            if ( resumeFrom < 1 || getRangeStart( contentRange ) != resumeFrom )
+            {
+                discard( response );
+                discardPartial( partial );
+                throw new TransferContentException( target.getResource(),
+                                                    "Unexpected partial content for: %s. Requested bytes from: %s, got: %s",
+                                                    url, resumeFrom, contentRange );
+            }
+
+            logger.debug( "Resuming download of: {} from byte: {}", url, resumeFrom );
+            recordTransferSize( getRangeTotal( contentRange ), resumeFrom, response );
+            writeTarget( response.body(), partial, resumeFrom );
+            discardPartial( partial );
+        }
+        else
+        {
+            if ( resumeFrom > 0 )
+            {
+                // the remote file changed, or the server ignores ranges; either way this is the whole file.
+                logger.debug( "Server sent all of: {} instead of resuming. Discarding the kept bytes.", url );
+                discardPartial( partial );
+            }
+
+            writeMetadata( request, response );
+            recordTransferSize( -1, 0, response );
+            writeTarget( response.body(), partial, 0 );
+        }
+
+        return true;
+    }
+
+    /**
+     * When revalidating a cached target, make the GET conditional on the validators (ETag, Last-Modified) stored in its
+     * HTTP exchange metadata, so an unchanged file comes back as a 304 with no body.
+     */
+    private void addConditionalHeaders( final HttpRequest.Builder builder )
+    {
+        if ( eventMetadata == null || !Boolean.TRUE.equals( eventMetadata.get( TransferManager.REVALIDATE ) )
+                || !target.exists() )
+        {
+            return;
+        }
+
+        final Http2ExchangeMetadata metadata = Http2ExchangeMetadata.read( target, mapper );
+        if ( metadata == null )
+        {
+            logger.debug( "No HTTP exchange metadata for: {}. Revalidating with a plain GET.", target );
+            return;
+        }
+
+        if ( metadata.getETag() != null )
+        {
+            builder.setHeader( "If-None-Match", metadata.getETag() );
+        }
+
+        if ( metadata.getLastModified() != null )
+        {
+            builder.setHeader( "If-Modified-Since", metadata.getLastModified() );
+        }
+    }
+
+    /**
+     * If an earlier attempt left part of the file behind, ask only for the rest of it. The request is conditional
+     * (If-Range) on the validator stored from that attempt, so a changed file comes back whole instead.
+     *
+     * @return the offset the rest of the file was requested from, or 0 for a full download
+     */
+    private long addRangeHeaders( final HttpRequest.Builder builder, final Transfer partial )
+    {
+        if ( partial == null || target.exists() || !partial.exists() )
+        {
+            return 0;
+        }
+
+        final long length = partial.length();
+        final String validator = getResumeValidator();
+        if ( length < 1 || validator == null )
+        {
+            discardPartial( partial );
+            return 0;
+        }
+
+        builder.setHeader( "Range", "bytes=" + length + "-" );
+        builder.setHeader( "If-Range", validator );
+        return length;
+    }
+
+    /**
+     * @return a validator that If-Range accepts: a strong ETag, or else the Last-Modified date
+     */
+    private String getResumeValidator()
+    {
+        final Http2ExchangeMetadata metadata = Http2ExchangeMetadata.read( target, mapper );
+        if ( metadata == null )
+        {
+            return null;
+        }
+
+        final String etag = metadata.getETag();
+        if ( etag != null && !etag.startsWith( "W/" ) )
+        {
+            return etag;
+        }
+
+        return metadata.getLastModified();
+    }
+
+    private void writeMetadata( final HttpRequest request, final HttpResponse<?> response )
+    {
+        final String path = target.getPath();
+        if ( path.endsWith( ChecksumAlgorithm.MD5.getExtension() ) || path.endsWith(
+                ChecksumAlgorithm.SHA1.getExtension() ) || path.endsWith( ChecksumAlgorithm.SHA256.getExtension() ) )
+        {
+            logger.trace( "Skip to write HTTP exchange metadata for the checksum files" );
+            return;
+        }
+
+        Http2ExchangeMetadata.write( target, request, response, mapper );
+    }
+
+    /**
+     * Records the size of the whole file: the total from Content-Range if the server gave one, or else the bytes kept
+     * plus the body's length. Nothing is recorded if the size isn't known.
+     */
+    private void recordTransferSize( final long total, final long resumeFrom, final HttpResponse<?> response )
+    {
+        final long length = response.headers().firstValueAsLong( "Content-Length" ).orElse( -1 );
+        transferSize = total > -1 ? total : ( length > -1 ? resumeFrom + length : -1 );
+        if ( transferSize > -1 )
+        {
+            transferSizes.put( target, transferSize );
+        }
+    }
+
+    /**
+     * @param partial bytes kept from an interrupted attempt
+     * @param resumeFrom how many of those bytes come before the response body; 0 if the response is the whole file
+     */
+    private void writeTarget( final InputStream body, final Transfer partial, final long resumeFrom )
+        throws TransferException
+    {
+        try (InputStream in = body;
+             OutputStream out = target.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata ))
+        {
+            if ( resumeFrom > 0 )
+            {
+                // replay the kept bytes first, so decorators (checksums, events) see the whole file.
+                try (InputStream kept = partial.openInputStream( false ))
+                {
+                    IOUtils.copyLarge( kept, out );
+                }
+            }
+
+            IOUtils.copyLarge( in, out );
+        }
+        catch ( final IOException e )
+        {
+            try
+            {
+                if ( !keepPartial( partial ) )
+                {
+                    target.delete();
+                }
+            }
+            catch ( final IOException eDel )
+            {
+                logger.error( String.format( "Failed to delete target file: %s\nOriginal URL: %s. Reason: %s", target,
+                                             url, eDel.getMessage() ), eDel );
+            }
+
+            throw new TransferContentException( target.getResource(),
+                                                "Failed to write to local proxy store: %s\nOriginal URL: %s. Reason: %s",
+                                                e, target, url, e.getMessage() );
+        }
+    }
+
+    /**
+     * After a failed write, keep what was written so the next attempt can resume, if it's big enough to be worth it
+     * and there is a validator to check the remote file against.
+     */
+    private boolean keepPartial( final Transfer partial )
+    {
+        if ( partial == null || !target.exists() || target.length() < MIN_RESUME_BYTES
+                || getResumeValidator() == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            target.moveTo( partial );
+            return true;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to keep partial download: {} as: {}. Reason: {}", target, partial, e.getMessage() );
+            return false;
+        }
+    }
+
+    private void discardPartial( final Transfer partial )
+    {
+        if ( partial == null || !partial.exists() )
+        {
+            return;
+        }
+
+        try
+        {
+            partial.delete( false );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to delete partial download: {}. Reason: {}", partial, e.getMessage() );
+        }
+    }
+
+    /**
+     * @return the first byte of a Content-Range such as <code>bytes 1048576-2097151/2097152</code>, or -1
+     */
+    private static long getRangeStart( final String contentRange )
+    {
+        if ( contentRange == null )
+        {
+            return -1;
+        }
+
+        final int start = contentRange.indexOf( ' ' );
+        final int end = contentRange.indexOf( '-' );
+        return start < 0 || end <= start ? -1 : parseLong( contentRange.substring( start + 1, end ) );
+    }
+
+    /**
+     * @return the complete length from a Content-Range, or -1 if it is missing or <code>*</code>
+     */
+    private static long getRangeTotal( final String contentRange )
+    {
+        final int idx = contentRange == null ? -1 : contentRange.indexOf( '/' );
+        return idx < 0 ? -1 : parseLong( contentRange.substring( idx + 1 ) );
+    }
+
+    private static long parseLong( final String value )
+    {
+        try
+        {
+            return Long.parseLong( value.trim() );
+        }
+        catch ( final NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getTransferSize()
+    {
+        return transferSize;
+    }
+
+    @Override
+    public Transfer getTransfer()
+    {
+        return target;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.commonjava.maven.galley.io.SpecialPathConstants;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads and writes the HTTP exchange metadata kept next to a downloaded file, in the format the httpclient transport
+ * uses (its <code>HttpExchangeMetadata</code>): request and response headers by upper-cased name, and the response
+ * status. The validators in it (ETag, Last-Modified) make revalidation and resumed downloads work whichever of the
+ * two transports fetched the file.
+ */
+final class Http2ExchangeMetadata
+{
+
+    private static final Logger logger = LoggerFactory.getLogger( Http2ExchangeMetadata.class );
+
+    private static final String RESPONSE_HEADERS = "responseHeaders";
+
+    private final String etag;
+
+    private final String lastModified;
+
+    private Http2ExchangeMetadata( final String etag, final String lastModified )
+    {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    String getETag()
+    {
+        return etag;
+    }
+
+    String getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * @return the metadata stored for the target, or null if there is none or it can't be read
+     */
+    static Http2ExchangeMetadata read( final Transfer target, final ObjectMapper mapper )
+    {
+        final Transfer metaTxfr = target.getSiblingMeta( SpecialPathConstants.HTTP_METADATA_EXT );
+        if ( metaTxfr == null || !metaTxfr.exists() )
+        {
+            return null;
+        }
+
+        try (InputStream in = metaTxfr.openInputStream( false ))
+        {
+            final JsonNode headers = mapper.readTree( in ).path( RESPONSE_HEADERS );
+            return new Http2ExchangeMetadata( first( headers, "ETAG" ), first( headers, "LAST-MODIFIED" ) );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to read HTTP exchange metadata: {}. Reason: {}", metaTxfr, e.getMessage() );
+            return null;
+        }
+    }
+
+    static void write( final Transfer target, final HttpRequest request, final HttpResponse<?> response,
+                       final ObjectMapper mapper )
+    {
+        final Transfer metaTxfr = target.getSiblingMeta( SpecialPathConstants.HTTP_METADATA_EXT );
+        if ( metaTxfr == null )
+        {
+            logger.trace( "SKIP: Cannot retrieve HTTP exchange metadata Transfer instance for: {}", target );
+            return;
+        }
+
+        final Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put( "requestHeaders", toMap( request.headers() ) );
+        metadata.put( RESPONSE_HEADERS, toMap( response.headers() ) );
+        metadata.put( "responseStatusMessage", null );
+        metadata.put( "responseStatusCode", response.statusCode() );
+
+        try (OutputStream out = metaTxfr.openOutputStream( TransferOperation.GENERATE, false ))
+        {
+            out.write( mapper.writeValueAsBytes( metadata ) );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to write HTTP exchange metadata: {}. Reason: {}", metaTxfr, e.getMessage() );
+        }
+    }
+
+    private static Map<String, List<String>> toMap( final HttpHeaders headers )
+    {
+        final Map<String, List<String>> result = new LinkedHashMap<>();
+        headers.map().forEach( ( name, values ) -> result.put( name.toUpperCase( Locale.ROOT ), values ) );
+        return result;
+    }
+
+    private static String first( final JsonNode headers, final String name )
+    {
+        final JsonNode values = headers.path( name );
+        return values.isArray() && values.size() > 0 ? values.get( 0 ).asText() : null;
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2.internal;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+
+public final class Http2Existence
+    extends AbstractHttp2Job
+    implements ExistenceJob
+{
+
+    public Http2Existence( final String url, final Location location, final HttpClient client,
+                           final int timeoutSeconds )
+    {
+        super( url, location, client, timeoutSeconds, 200 );
+    }
+
+    @Override
+    public Boolean call()
+    {
+        try
+        {
+            return isSuccessful( send( newRequest().method( "HEAD", HttpRequest.BodyPublishers.noBody() ).build(),
+                                       HttpResponse.BodyHandlers.discarding() ) );
+        }
+        catch ( final TransferException e )
+        {
+            error = e;
+        }
+
+        return false;
+    }
+
+}
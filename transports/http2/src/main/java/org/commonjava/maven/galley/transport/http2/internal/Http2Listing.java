@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.ListingResult;
+import org.commonjava.maven.galley.spi.transport.ListingJob;
+import org.commonjava.maven.galley.util.HtmlAnchorParser;
+
+/**
+ * Lists a directory from its index page. An anchor is an entry when it points straight into the directory (not above
+ * it, below it or to another server) and its text names the file or subdirectory it points to.
+ */
+public final class Http2Listing
+    extends AbstractHttp2Job
+    implements ListingJob
+{
+
+    private final ConcreteResource resource;
+
+    public Http2Listing( final String url, final ConcreteResource resource, final HttpClient client,
+                         final int timeoutSeconds )
+    {
+        super( url, resource.getLocation(), client, timeoutSeconds, 200 );
+        this.resource = resource;
+    }
+
+    @Override
+    public ListingResult call()
+    {
+        try
+        {
+            final HttpResponse<InputStream> response =
+                    send( newRequest().GET().build(), HttpResponse.BodyHandlers.ofInputStream() );
+
+            if ( isSuccessful( response ) )
+            {
+                // links are relative to the page we ended up on, after any redirect.
+                String dir = response.uri().toString();
+                if ( !dir.endsWith( "/" ) )
+                {
+                    dir += "/";
+                }
+
+                final List<String> entries = new ArrayList<>();
+                final URI base = URI.create( dir );
+                try (InputStream in = response.body())
+                {
+                    new HtmlAnchorParser( new InputStreamReader( in, getCharset( response ) ) ).parse(
+                            ( href, text ) -> {
+                                if ( href != null && isEntry( base, href, text ) )
+                                {
+                                    entries.add( text );
+                                }
+                            } );
+                }
+
+                logger.debug( "Got {} entries in listing: {}", entries.size(), url );
+                return new ListingResult( resource, entries.toArray( new String[entries.size()] ) );
+            }
+        }
+        catch ( final TransferException e )
+        {
+            error = e;
+        }
+        catch ( final IOException e )
+        {
+            error = new TransferException( "Failed to construct directory listing for: %s. Reason: %s", e, url,
+                                           e.getMessage() );
+        }
+
+        return null;
+    }
+
+    static boolean isEntry( final URI base, final String href, final String text )
+    {
+        if ( text.isEmpty() )
+        {
+            return false;
+        }
+
+        final URI link;
+        try
+        {
+            link = base.resolve( href );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            return false;
+        }
+
+        final String path = link.getPath();
+        final String basePath = base.getPath();
+        if ( !Objects.equals( link.getScheme(), base.getScheme() )
+                || !Objects.equals( link.getRawAuthority(), base.getRawAuthority() ) || path == null
+                || !path.startsWith( basePath ) )
+        {
+            return false;
+        }
+
+        final String name = path.substring( basePath.length() );
+        return name.equals( text ) || name.equals( text + "/" ) || ( text.endsWith( "/" ) && name.equals(
+                text.substring( 0, text.length() - 1 ) ) );
+    }
+
+    private static Charset getCharset( final HttpResponse<?> response )
+    {
+        final String contentType = response.headers().firstValue( "Content-Type" ).orElse( "" );
+        for ( final String param : contentType.split( ";" ) )
+        {
+            final String[] parts = param.trim().split( "=", 2 );
+            if ( parts.length == 2 && "charset".equalsIgnoreCase( parts[0].trim() ) )
+            {
+                try
+                {
+                    return Charset.forName( parts[1].trim().replace( "\"", "" ) );
+                }
+                catch ( final IllegalCharsetNameException | UnsupportedCharsetException e )
+                {
+                    break;
+                }
+            }
+        }
+
+        return UTF_8;
+    }
+
+}
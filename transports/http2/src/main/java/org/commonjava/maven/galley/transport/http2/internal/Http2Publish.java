@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2.internal;
+
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.transport.PublishJob;
+
+public final class Http2Publish
+    extends AbstractHttp2Job
+    implements PublishJob
+{
+
+    private final InputStream stream;
+
+    private final long length;
+
+    private final String contentType;
+
+    private boolean success;
+
+    public Http2Publish( final String url, final Location location, final HttpClient client, final int timeoutSeconds,
+                         final InputStream stream, final long length, final String contentType )
+    {
+        super( url, location, client, timeoutSeconds, 200, 201, 204 );
+        this.stream = stream;
+        this.length = length;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public PublishJob call()
+    {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofInputStream( () -> stream );
+        if ( length == 0 )
+        {
+            body = HttpRequest.BodyPublishers.noBody();
+        }
+        else if ( length > 0 )
+        {
+            // a known length is sent as such, instead of streaming the body with no end in sight.
+            body = HttpRequest.BodyPublishers.fromPublisher( body, length );
+        }
+
+        final HttpRequest.Builder request = newRequest().PUT( body );
+        if ( contentType != null )
+        {
+            request.header( "Content-Type", contentType );
+        }
+
+        try
+        {
+            success = isSuccessful( send( request.build(), HttpResponse.BodyHandlers.discarding() ) );
+        }
+        catch ( final TransferException e )
+        {
+            error = e;
+        }
+
+        return this;
+    }
+
+    @Override
+    public long getTransferSize()
+    {
+        return length;
+    }
+
+    @Override
+    public boolean isSuccessful()
+    {
+        return success;
+    }
+
+}
@@ -0,0 +1,597 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.http2.testutil;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.rules.ExternalResource;
+
+/**
+ * In-process HTTP/2 server for tests, speaking cleartext HTTP/2 (h2c) upgraded from HTTP/1.1, which is how the JDK
+ * client reaches http:// URLs. Requests that don't ask to upgrade are answered over HTTP/1.1. Each connection is served
+ * by one thread, answering requests in the order their streams complete, so response bodies should stay within the
+ * default flow-control window (64k).
+ */
+public final class Http2TestServer
+    extends ExternalResource
+{
+
+    public static final String HTTP_2 = "HTTP/2.0";
+
+    public static final String HTTP_1_1 = "HTTP/1.1";
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes( ISO_8859_1 );
+
+    private static final int DATA = 0x0;
+
+    private static final int HEADERS = 0x1;
+
+    private static final int SETTINGS = 0x4;
+
+    private static final int PING = 0x6;
+
+    private static final int GOAWAY = 0x7;
+
+    private static final int WINDOW_UPDATE = 0x8;
+
+    private static final int CONTINUATION = 0x9;
+
+    private static final int END_STREAM = 0x1;
+
+    private static final int ACK = 0x1;
+
+    private static final int END_HEADERS = 0x4;
+
+    private static final int PADDED = 0x8;
+
+    private static final int PRIORITY = 0x20;
+
+    private static final int MAX_FRAME_SIZE = 16384;
+
+    private final Map<String, Response> expectations = new ConcurrentHashMap<>();
+
+    private final List<RecordedRequest> requests = Collections.synchronizedList( new ArrayList<>() );
+
+    private final List<Socket> sockets = Collections.synchronizedList( new ArrayList<>() );
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ServerSocket serverSocket;
+
+    private ExecutorService executor;
+
+    @Override
+    protected void before()
+        throws IOException
+    {
+        serverSocket = new ServerSocket( 0, 50, InetAddress.getLoopbackAddress() );
+        executor = Executors.newCachedThreadPool();
+        executor.execute( this::accept );
+    }
+
+    @Override
+    protected void after()
+    {
+        IOUtils.closeQuietly( serverSocket );
+        synchronized ( sockets )
+        {
+            sockets.forEach( IOUtils::closeQuietly );
+        }
+        executor.shutdownNow();
+    }
+
+    public String getBaseUri()
+    {
+        return "http://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/";
+    }
+
+    public void expect( final String method, final String path, final int status, final String body )
+    {
+        expect( method, path, status, Collections.emptyMap(), body );
+    }
+
+    public void expect( final String method, final String path, final int status, final Map<String, String> headers,
+                        final String body )
+    {
+        expectations.put( method + " " + path, new Response( status, headers, body.getBytes( ISO_8859_1 ) ) );
+    }
+
+    public List<RecordedRequest> getRequests()
+    {
+        synchronized ( requests )
+        {
+            return new ArrayList<>( requests );
+        }
+    }
+
+    /**
+     * @return connections accepted so far
+     */
+    public int getConnectionCount()
+    {
+        return connections.get();
+    }
+
+    private void accept()
+    {
+        while ( !serverSocket.isClosed() )
+        {
+            try
+            {
+                final Socket socket = serverSocket.accept();
+                sockets.add( socket );
+                executor.execute( () -> serve( socket ) );
+            }
+            catch ( final IOException e )
+            {
+                // closed.
+                return;
+            }
+        }
+    }
+
+    private void serve( final Socket socket )
+    {
+        final int connection = connections.incrementAndGet();
+        try (Socket s = socket)
+        {
+            final DataInputStream in = new DataInputStream( new BufferedInputStream( s.getInputStream() ) );
+            final OutputStream out = new BufferedOutputStream( s.getOutputStream() );
+            RecordedRequest request;
+            while ( ( request = readHttp1Request( in, connection ) ) != null )
+            {
+                if ( "h2c".equalsIgnoreCase( request.getHeader( "upgrade" ) ) )
+                {
+                    out.write( "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(
+                            ISO_8859_1 ) );
+                    new Http2Connection( connection, in, out ).serve( request );
+                    return;
+                }
+
+                respondHttp1( request, out );
+            }
+        }
+        catch ( final IOException e )
+        {
+            // client went away, or the server is shutting down.
+        }
+    }
+
+    private RecordedRequest readHttp1Request( final DataInputStream in, final int connection )
+        throws IOException
+    {
+        final String requestLine = readLine( in );
+        if ( requestLine == null || requestLine.isEmpty() )
+        {
+            return null;
+        }
+
+        final String[] parts = requestLine.split( " " );
+        final Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while ( ( line = readLine( in ) ) != null && !line.isEmpty() )
+        {
+            final int idx = line.indexOf( ':' );
+            headers.put( line.substring( 0, idx ).trim().toLowerCase(), line.substring( idx + 1 ).trim() );
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ( headers.containsKey( "content-length" ) )
+        {
+            final byte[] bytes = new byte[Integer.parseInt( headers.get( "content-length" ) )];
+            in.readFully( bytes );
+            body.write( bytes );
+        }
+        else if ( "chunked".equalsIgnoreCase( headers.get( "transfer-encoding" ) ) )
+        {
+            int size;
+            while ( ( size = Integer.parseInt( readLine( in ).split( ";" )[0].trim(), 16 ) ) > 0 )
+            {
+                final byte[] chunk = new byte[size];
+                in.readFully( chunk );
+                body.write( chunk );
+                readLine( in );
+            }
+            readLine( in );
+        }
+
+        return new RecordedRequest( parts[0], parts[1], HTTP_1_1, headers, body.toByteArray(), connection );
+    }
+
+    private static String readLine( final DataInputStream in )
+        throws IOException
+    {
+        final StringBuilder sb = new StringBuilder();
+        int c;
+        while ( ( c = in.read() ) != -1 )
+        {
+            if ( c == '\n' )
+            {
+                return sb.toString();
+            }
+            else if ( c != '\r' )
+            {
+                sb.append( (char) c );
+            }
+        }
+
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private void respondHttp1( final RecordedRequest request, final OutputStream out )
+        throws IOException
+    {
+        final Response response = record( request );
+        final StringBuilder head = new StringBuilder( HTTP_1_1 ).append( ' ' ).append( response.status ).append( "\r\n" );
+        head.append( "Content-Length: " ).append( response.body.length ).append( "\r\n" );
+        response.headers.forEach( ( name, value ) -> head.append( name ).append( ": " ).append( value ).append( "\r\n" ) );
+        head.append( "\r\n" );
+
+        out.write( head.toString().getBytes( ISO_8859_1 ) );
+        if ( !"HEAD".equals( request.getMethod() ) )
+        {
+            out.write( response.body );
+        }
+        out.flush();
+    }
+
+    private Response record( final RecordedRequest request )
+    {
+        requests.add( request );
+        final Response response = expectations.get( request.getMethod() + " " + request.getPath() );
+        return response == null ? new Response( 404, Collections.emptyMap(), new byte[0] ) : response;
+    }
+
+    private final class Http2Connection
+    {
+        private final int connection;
+
+        private final DataInputStream in;
+
+        private final OutputStream out;
+
+        private final Hpack hpack = new Hpack();
+
+        private final Map<Integer, PendingStream> streams = new HashMap<>();
+
+        Http2Connection( final int connection, final DataInputStream in, final OutputStream out )
+        {
+            this.connection = connection;
+            this.in = in;
+            this.out = out;
+        }
+
+        void serve( final RecordedRequest upgraded )
+            throws IOException
+        {
+            writeFrame( SETTINGS, 0, 0, new byte[0], 0, 0 );
+            out.flush();
+
+            final byte[] preface = new byte[PREFACE.length];
+            in.readFully( preface );
+            if ( !Arrays.equals( preface, PREFACE ) )
+            {
+                throw new IOException( "Bad HTTP/2 connection preface" );
+            }
+
+            // the request that asked to upgrade is answered as stream 1.
+            respond( 1, new RecordedRequest( upgraded.getMethod(), upgraded.getPath(), HTTP_2, upgraded.getHeaders(),
+                                             upgraded.getBody(), connection ) );
+
+            while ( true )
+            {
+                final int length;
+                try
+                {
+                    length = ( in.readUnsignedByte() << 16 ) | ( in.readUnsignedByte() << 8 ) | in.readUnsignedByte();
+                }
+                catch ( final EOFException e )
+                {
+                    return;
+                }
+
+                final int type = in.readUnsignedByte();
+                final int flags = in.readUnsignedByte();
+                final int streamId = in.readInt() & 0x7fffffff;
+                final byte[] payload = new byte[length];
+                in.readFully( payload );
+
+                switch ( type )
+                {
+                    case HEADERS:
+                    {
+                        int start = 0;
+                        int end = length;
+                        if ( ( flags & PADDED ) != 0 )
+                        {
+                            start = 1;
+                            end -= payload[0] & 0xff;
+                        }
+                        if ( ( flags & PRIORITY ) != 0 )
+                        {
+                            start += 5;
+                        }
+
+                        final PendingStream stream = new PendingStream( ( flags & END_STREAM ) != 0 );
+                        streams.put( streamId, stream );
+                        headerFragment( streamId, stream, payload, start, end, flags );
+                        break;
+                    }
+                    case CONTINUATION:
+                    {
+                        headerFragment( streamId, streams.get( streamId ), payload, 0, length, flags );
+                        break;
+                    }
+                    case DATA:
+                    {
+                        int start = 0;
+                        int end = length;
+                        if ( ( flags & PADDED ) != 0 )
+                        {
+                            start = 1;
+                            end -= payload[0] & 0xff;
+                        }
+
+                        final PendingStream stream = streams.get( streamId );
+                        stream.body.write( payload, start, end - start );
+                        if ( length > 0 )
+                        {
+                            writeWindowUpdate( 0, length );
+                            if ( ( flags & END_STREAM ) == 0 )
+                            {
+                                writeWindowUpdate( streamId, length );
+                            }
+                            out.flush();
+                        }
+
+                        if ( ( flags & END_STREAM ) != 0 )
+                        {
+                            dispatch( streamId );
+                        }
+                        break;
+                    }
+                    case SETTINGS:
+                    {
+                        if ( ( flags & ACK ) == 0 )
+                        {
+                            writeFrame( SETTINGS, ACK, 0, new byte[0], 0, 0 );
+                            out.flush();
+                        }
+                        break;
+                    }
+                    case PING:
+                    {
+                        if ( ( flags & ACK ) == 0 )
+                        {
+                            writeFrame( PING, ACK, 0, payload, 0, payload.length );
+                            out.flush();
+                        }
+                        break;
+                    }
+                    case GOAWAY:
+                    {
+                        return;
+                    }
+                    default:
+                    {
+                        // PRIORITY, RST_STREAM, WINDOW_UPDATE: nothing to do for a test server.
+                    }
+                }
+            }
+        }
+
+        private void headerFragment( final int streamId, final PendingStream stream, final byte[] payload,
+                                     final int start, final int end, final int flags )
+            throws IOException
+        {
+            stream.headerBlock.write( payload, start, end - start );
+            if ( ( flags & END_HEADERS ) != 0 )
+            {
+                stream.headers = hpack.decode( stream.headerBlock.toByteArray() );
+                if ( stream.endStream )
+                {
+                    dispatch( streamId );
+                }
+            }
+        }
+
+        private void dispatch( final int streamId )
+            throws IOException
+        {
+            final PendingStream stream = streams.remove( streamId );
+            final Map<String, String> headers = new LinkedHashMap<>( stream.headers );
+            final String method = headers.remove( ":method" );
+            final String path = headers.remove( ":path" );
+            headers.remove( ":scheme" );
+            headers.remove( ":authority" );
+
+            respond( streamId, new RecordedRequest( method, path, HTTP_2, headers, stream.body.toByteArray(),
+                                                    connection ) );
+        }
+
+        private void respond( final int streamId, final RecordedRequest request )
+            throws IOException
+        {
+            final Response response = record( request );
+            final boolean hasBody = response.body.length > 0 && !"HEAD".equals( request.getMethod() );
+
+            final Map<String, String> headers = new LinkedHashMap<>();
+            headers.put( ":status", Integer.toString( response.status ) );
+            headers.put( "content-length", Integer.toString( response.body.length ) );
+            headers.putAll( response.headers );
+
+            final byte[] block = Hpack.encode( headers );
+            writeFrame( HEADERS, END_HEADERS | ( hasBody ? 0 : END_STREAM ), streamId, block, 0, block.length );
+            if ( hasBody )
+            {
+                for ( int off = 0; off < response.body.length; off += MAX_FRAME_SIZE )
+                {
+                    final int len = Math.min( MAX_FRAME_SIZE, response.body.length - off );
+                    writeFrame( DATA, off + len == response.body.length ? END_STREAM : 0, streamId, response.body,
+                                off, len );
+                }
+            }
+            out.flush();
+        }
+
+        private void writeWindowUpdate( final int streamId, final int increment )
+            throws IOException
+        {
+            final byte[] payload = { (byte) ( increment >>> 24 ), (byte) ( increment >>> 16 ),
+                    (byte) ( increment >>> 8 ), (byte) increment };
+            writeFrame( WINDOW_UPDATE, 0, streamId, payload, 0, payload.length );
+        }
+
+        private void writeFrame( final int type, final int flags, final int streamId, final byte[] payload,
+                                 final int off, final int len )
+            throws IOException
+        {
+            out.write( len >>> 16 );
+            out.write( len >>> 8 );
+            out.write( len );
+            out.write( type );
+            out.write( flags );
+            out.write( streamId >>> 24 );
+            out.write( streamId >>> 16 );
+            out.write( streamId >>> 8 );
+            out.write( streamId );
+            out.write( payload, off, len );
+        }
+    }
+
+    private static final class PendingStream
+    {
+        private final boolean endStream;
+
+        private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private Map<String, String> headers;
+
+        PendingStream( final boolean endStream )
+        {
+            this.endStream = endStream;
+        }
+    }
+
+    private static final class Response
+    {
+        private final int status;
+
+        private final Map<String, String> headers;
+
+        private final byte[] body;
+
+        Response( final int status, final Map<String, String> headers, final byte[] body )
+        {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    public static final class RecordedRequest
+    {
+        private final String method;
+
+        private final String path;
+
+        private final String protocol;
+
+        private final Map<String, String> headers;
+
+        private final byte[] body;
+
+        private final int connection;
+
+        RecordedRequest( final String method, final String path, final String protocol,
+                         final Map<String, String> headers, final byte[] body, final int connection )
+        {
+            this.method = method;
+            this.path = path;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.body = body;
+            this.connection = connection;
+        }
+
+        public String getMethod()
+        {
+            return method;
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+
+        public String getProtocol()
+        {
+            return protocol;
+        }
+
+        public Map<String, String> getHeaders()
+        {
+            return headers;
+        }
+
+        /**
+         * @param name lower-case header name
+         */
+        public String getHeader( final String name )
+        {
+            return headers.get( name );
+        }
+
+        public byte[] getBody()
+        {
+            return body;
+        }
+
+        /**
+         * @return which connection (counting from 1) the request came in on
+         */
+        public int getConnection()
+        {
+            return connection;
+        }
+    }
+
+}
@@ -34,7 +34,9 @@ import org.commonjava.maven.galley.TransferLocationException;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SpecialPathInfo;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.io.SpecialPathManager;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
 import org.commonjava.maven.galley.spi.transport.ExistenceJob;
 import org.commonjava.maven.galley.spi.transport.ListingJob;
@@ -75,6 +77,9 @@ public class HttpClientTransport
     @Inject
     private TransportMetricConfig metricConfig;
 
+    @Inject
+    private SpecialPathManager specialPathManager;
+
     protected HttpClientTransport()
     {
     }
@@ -86,12 +91,24 @@ public class HttpClientTransport
 
     public HttpClientTransport( final Http http, final ObjectMapper mapper, final GlobalHttpConfiguration globalConfig,
                                 final MetricRegistry metricRegistry, final TransportMetricConfig metricConfig )
+    {
+        this( http, mapper, globalConfig, metricRegistry, metricConfig, null );
+    }
+
+    /**
+     * @param specialPathManager decides which downloads are metadata, and so are worth asking for compressed. Without
+     * one, the HTTP client's default applies to every download.
+     */
+    public HttpClientTransport( final Http http, final ObjectMapper mapper, final GlobalHttpConfiguration globalConfig,
+                                final MetricRegistry metricRegistry, final TransportMetricConfig metricConfig,
+                                final SpecialPathManager specialPathManager )
     {
         this.http = http;
         this.mapper = mapper;
         this.globalConfig = globalConfig;
         this.metricRegistry = metricRegistry;
         this.metricConfig = metricConfig;
+        this.specialPathManager = specialPathManager;
     }
 
     @PreDestroy
@@ -114,7 +131,27 @@ public class HttpClientTransport
         throws TransferException
     {
         return new HttpDownload( getUrl( resource ), getHttpLocation( resource.getLocation() ), target, transferSizes, eventMetadata,
-                                 http, mapper, metricRegistry, metricConfig );
+                                 http, mapper, true, metricRegistry, metricConfig,
+                                 acceptCompressed( resource, eventMetadata ) );
+    }
+
+    /**
+     * Metadata (maven-metadata.xml, package.json, ...) is text that compresses well, and is fetched far more often than
+     * any one artifact. Artifacts are mostly archives already, so compressing them again costs CPU on both ends for
+     * nothing. Local bookkeeping files (.http-metadata.json, .listing.txt) are marked as metadata too, but are never
+     * retrieved from the remote side; directory listings ask for compression in {@link HttpListing}.
+     */
+    private Boolean acceptCompressed( final ConcreteResource resource, final EventMetadata eventMetadata )
+    {
+        if ( specialPathManager == null )
+        {
+            return null;
+        }
+
+        final SpecialPathInfo info = eventMetadata == null ? specialPathManager.getSpecialPathInfo( resource )
+                        : specialPathManager.getSpecialPathInfo( resource, eventMetadata.getPackageType() );
+
+        return info != null && info.isMetadata() && info.isRetrievable();
     }
 
     @Override
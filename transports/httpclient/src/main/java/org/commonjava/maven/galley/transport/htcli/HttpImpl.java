@@ -27,6 +27,7 @@ import org.commonjava.maven.galley.GalleyException;
 import org.commonjava.maven.galley.TransferLocationException;
 import org.commonjava.maven.galley.auth.PasswordEntry;
 import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.transport.htcli.internal.HttpClientPool;
 import org.commonjava.maven.galley.transport.htcli.internal.util.HttpFactoryPasswordDelegate;
 import org.commonjava.maven.galley.transport.htcli.internal.util.LocationLookup;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
@@ -41,6 +42,8 @@ import org.commonjava.util.jhttpc.model.SiteTrustType;
 import javax.enterprise.context.ApplicationScoped;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 @ApplicationScoped
 public class HttpImpl
@@ -52,9 +55,20 @@ public class HttpImpl
 
     private final LocationLookup locationLookup;
 
+    private final HttpClientPool clientPool;
+
     public HttpImpl( final PasswordManager passwords )
+    {
+        this( passwords, new HttpClientPool() );
+    }
+
+    /**
+     * @param clientPool holds the clients for locations, so that requests to a location share one
+     */
+    public HttpImpl( final PasswordManager passwords, final HttpClientPool clientPool )
     {
         this.passwords = passwords;
+        this.clientPool = clientPool;
         this.locationLookup = new LocationLookup();
         this.httpFactory = new HttpFactory( new HttpFactoryPasswordDelegate( passwords, locationLookup ) );
     }
@@ -66,16 +80,35 @@ public class HttpImpl
         return createClient( null );
     }
 
+    /**
+     * Clients for a location are shared: this returns a lease on the location's client, and closing it releases the
+     * lease. A new client is built when the location's settings change.
+     */
     @Override
     public CloseableHttpClient createClient( final HttpLocation location )
             throws GalleyException
+    {
+        if ( location == null )
+        {
+            return newClient( null );
+        }
+
+        locationLookup.register( location );
+        return clientPool.lease( getClientKey( location ), () -> newClient( location ) );
+    }
+
+    public HttpClientPool getClientPool()
+    {
+        return clientPool;
+    }
+
+    private CloseableHttpClient newClient( final HttpLocation location )
+            throws GalleyException
     {
         try
         {
             if ( location != null )
             {
-                locationLookup.register( location );
-
                 int maxConnections = LocationUtils.getMaxConnections( location );
                 SiteConfigBuilder configBuilder = new SiteConfigBuilder( location.getName(), location.getUri() );
                 configBuilder.withAttributes( location.getAttributes() )
@@ -110,6 +143,18 @@ public class HttpImpl
         }
     }
 
+    /**
+     * The location, and everything its client is built from. Passwords are looked up per request, so aren't included.
+     */
+    private List<Object> getClientKey( final HttpLocation location )
+    {
+        return Arrays.asList( location.getName(), location.getUri(), location.getKeyCertPem(),
+                              location.getServerCertPem(), location.getProxyHost(), location.getProxyPort(),
+                              location.getProxyUser(), LocationUtils.getTimeoutSeconds( location ), location.getUser(),
+                              location.isIgnoreHostnameVerification(), LocationUtils.getMaxConnections( location ),
+                              location.getTrustType() );
+    }
+
     private int getProxyPort( final HttpLocation location )
     {
         int port = location.getProxyPort();
@@ -169,5 +214,6 @@ public class HttpImpl
     public void close()
             throws IOException
     {
+        clientPool.close();
     }
 }
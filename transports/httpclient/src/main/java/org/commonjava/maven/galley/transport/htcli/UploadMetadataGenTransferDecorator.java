@@ -64,7 +64,8 @@ public class UploadMetadataGenTransferDecorator
     public UploadMetadataGenTransferDecorator( SpecialPathManager specialPathManager, Function<String, Timer.Context> timerProvider )
     {
         this.specialPathManager = specialPathManager;
-        this.timerProvider = timerProvider;
+        // timing is optional; without a provider, the timers are simply null.
+        this.timerProvider = timerProvider == null ? name -> null : timerProvider;
     }
 
     @Override
@@ -23,6 +23,8 @@ import java.util.Collection;
 import java.util.Collections;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.NoHttpResponseException;
 import org.apache.http.StatusLine;
@@ -30,6 +32,7 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.commonjava.maven.galley.GalleyException;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.TransferLocationException;
@@ -50,6 +53,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 public abstract class AbstractHttpJob
 {
+    protected static final String COMPRESSED_ENCODINGS = "gzip, deflate";
+
+    protected static final String IDENTITY_ENCODING = "identity";
+
     protected final Logger logger = LoggerFactory.getLogger( getClass() );
 
     protected final String url;
@@ -108,11 +115,12 @@ public abstract class AbstractHttpJob
             final StatusLine line = response.getStatusLine();
             final int sc = line.getStatusCode();
             logger.trace( "{} {} : {}", request.getMethod(), line, url );
-            if ( sc > 399 && sc != 404 && sc != 408 && sc != 502 && sc != 503 && sc != 504 )
+            if ( sc > 399 && sc != 404 && sc != 408 && sc != 502 && sc != 503 && sc != 504
+                    && !successStatuses.contains( sc ) )
             {
                 throw new TransferLocationException( location,
-                                                     "Server misconfigured or not responding normally for url %s: '%s'",
-                                                     url, line );
+                                                     "Server misconfigured or not responding normally for url %s: '%s'%s",
+                                                     url, line, getErrorBody() );
             }
             else if ( !successStatuses.contains( sc ) )
             {
@@ -163,6 +171,38 @@ public abstract class AbstractHttpJob
         return true;
     }
 
+    /**
+     * The body of an error response, which usually says what went wrong on the server, to append to the error.
+     */
+    private String getErrorBody()
+    {
+        final HttpEntity entity = response.getEntity();
+        if ( entity == null )
+        {
+            return "";
+        }
+
+        try
+        {
+            return "\n\n" + EntityUtils.toString( entity );
+        }
+        catch ( final IOException e )
+        {
+            logger.debug( "Failed to read body of error response from: {}. Reason: {}", url, e.getMessage() );
+            return "";
+        }
+    }
+
+    /**
+     * Asks for the response compressed (gzip or deflate, decoded by the client as it streams in), or as-is. Left alone,
+     * the client asks for compression on every request, including archives that are already compressed, and ranged
+     * requests, whose byte offsets refer to the content as-is.
+     */
+    protected void acceptEncoding( final boolean compressed )
+    {
+        request.setHeader( HttpHeaders.ACCEPT_ENCODING, compressed ? COMPRESSED_ENCODINGS : IDENTITY_ENCODING );
+    }
+
     /* for GET/HEAD request, need to override below two methods for writeMetadata() */
 
     protected Transfer getTransfer()
@@ -190,6 +230,16 @@ public abstract class AbstractHttpJob
             return;
         }
 
+        // a 304 carries no new content, a 206 only the rest of it, and a 416 none; keep the metadata of the exchange
+        // that describes the whole file.
+        final int sc = response.getStatusLine().getStatusCode();
+        if ( sc == HttpStatus.SC_NOT_MODIFIED || sc == HttpStatus.SC_PARTIAL_CONTENT
+                || sc == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE )
+        {
+            logger.trace( "Skip to write HTTP exchange metadata if the target is not modified or not fully sent." );
+            return;
+        }
+
         if ( target.getPath().endsWith( ChecksumAlgorithm.MD5.getExtension() ) || target.getPath()
                                                                                         .endsWith( ChecksumAlgorithm.SHA1
                                                                                                                    .getExtension() )
@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.maven.galley.GalleyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Long-lived HTTP clients, shared by every request with the same key (a location and the settings its client is
+ * built from). Requests reuse the client, with its SSL setup and kept-alive connections, instead of building one each.
+ * <br/>
+ * Callers get a lease on the shared client. Closing the lease releases it; the shared client stays open. A client is
+ * closed once it has sat unused for the idle timeout, or once it has served its maximum number of leases and the last
+ * one is released, since clients keep some bookkeeping for every request they have run. Idle clients are swept while
+ * leasing, so no background thread is needed.
+ */
+public final class HttpClientPool
+        implements Closeable
+{
+
+    public static final long DEFAULT_IDLE_MILLIS = 60000;
+
+    public static final int DEFAULT_MAX_LEASES = 1000;
+
+    /**
+     * Builds the client for a key that has none.
+     */
+    @FunctionalInterface
+    public interface ClientFactory
+    {
+        CloseableHttpClient create()
+                throws GalleyException;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ConcurrentMap<Object, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private final long idleMillis;
+
+    private final int maxLeases;
+
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    private final LongAdder created = new LongAdder();
+
+    private final LongAdder reused = new LongAdder();
+
+    private final LongAdder evicted = new LongAdder();
+
+    public HttpClientPool()
+    {
+        this( DEFAULT_IDLE_MILLIS, DEFAULT_MAX_LEASES );
+    }
+
+    public HttpClientPool( final long idleMillis, final int maxLeases )
+    {
+        if ( maxLeases < 1 )
+        {
+            throw new IllegalArgumentException( "HTTP clients must allow at least one lease. Got: " + maxLeases );
+        }
+
+        this.idleMillis = idleMillis;
+        this.maxLeases = maxLeases;
+        this.nextSweep.set( System.currentTimeMillis() + idleMillis );
+    }
+
+    /**
+     * @param key identifies the client; keys are compared with equals(), so they should include every setting the
+     * client is built from
+     * @return a lease on the client for the key, building one with the factory if there is none. Close it when done.
+     */
+    public CloseableHttpClient lease( final Object key, final ClientFactory factory )
+            throws GalleyException
+    {
+        sweepIfDue();
+
+        while ( true )
+        {
+            PooledClient pooled = clients.get( key );
+            if ( pooled == null )
+            {
+                final PooledClient fresh = new PooledClient( key, factory.create() );
+                pooled = clients.putIfAbsent( key, fresh );
+                if ( pooled == null )
+                {
+                    created.increment();
+                    pooled = fresh;
+                }
+                else
+                {
+                    // another caller built one first; use theirs.
+                    fresh.closeClient();
+                }
+            }
+            else
+            {
+                reused.increment();
+            }
+
+            if ( pooled.acquire() )
+            {
+                return new Lease( pooled );
+            }
+        }
+    }
+
+    /**
+     * Closes clients that haven't been used within the idle timeout.
+     */
+    public void evictIdle()
+    {
+        final long cutoff = System.currentTimeMillis() - idleMillis;
+        for ( final PooledClient pooled : clients.values() )
+        {
+            if ( pooled.retireIfIdleSince( cutoff ) )
+            {
+                evicted.increment();
+                logger.debug( "Closed HTTP client idle for more than {}ms: {}", idleMillis, pooled.key );
+            }
+        }
+    }
+
+    /**
+     * Closes every client. Clients that are leased are closed when their leases are released.
+     */
+    @Override
+    public void close()
+    {
+        final List<PooledClient> all = new ArrayList<>( clients.values() );
+        for ( final PooledClient pooled : all )
+        {
+            pooled.retire();
+        }
+    }
+
+    public int getClientCount()
+    {
+        return clients.size();
+    }
+
+    /**
+     * @return leases currently held, across all clients
+     */
+    public int getLeasedCount()
+    {
+        int leased = 0;
+        for ( final PooledClient pooled : clients.values() )
+        {
+            leased += pooled.getActive();
+        }
+
+        return leased;
+    }
+
+    public long getCreatedCount()
+    {
+        return created.sum();
+    }
+
+    public long getReusedCount()
+    {
+        return reused.sum();
+    }
+
+    public long getEvictedCount()
+    {
+        return evicted.sum();
+    }
+
+    private void sweepIfDue()
+    {
+        final long now = System.currentTimeMillis();
+        final long due = nextSweep.get();
+        if ( now >= due && nextSweep.compareAndSet( due, now + Math.max( idleMillis / 2, 1 ) ) )
+        {
+            evictIdle();
+        }
+    }
+
+    private final class PooledClient
+    {
+        private final Object key;
+
+        private final CloseableHttpClient client;
+
+        private int active;
+
+        private int leases;
+
+        private long lastUsed = System.currentTimeMillis();
+
+        private boolean retired;
+
+        private boolean closed;
+
+        PooledClient( final Object key, final CloseableHttpClient client )
+        {
+            this.key = key;
+            this.client = client;
+        }
+
+        synchronized boolean acquire()
+        {
+            if ( retired )
+            {
+                return false;
+            }
+
+            active++;
+            if ( ++leases >= maxLeases )
+            {
+                // this lease still gets the client; the next caller builds a new one.
+                retire();
+            }
+
+            return true;
+        }
+
+        synchronized void release()
+        {
+            active--;
+            lastUsed = System.currentTimeMillis();
+            if ( retired && active < 1 )
+            {
+                closeClient();
+            }
+        }
+
+        synchronized boolean retireIfIdleSince( final long cutoff )
+        {
+            if ( retired || active > 0 || lastUsed > cutoff )
+            {
+                return false;
+            }
+
+            retire();
+            return true;
+        }
+
+        synchronized void retire()
+        {
+            if ( !retired )
+            {
+                retired = true;
+                clients.remove( key, this );
+            }
+
+            if ( active < 1 )
+            {
+                closeClient();
+            }
+        }
+
+        synchronized int getActive()
+        {
+            return active;
+        }
+
+        synchronized void closeClient()
+        {
+            if ( !closed )
+            {
+                closed = true;
+                closeQuietly( client );
+            }
+        }
+    }
+
+    /**
+     * A caller's use of a shared client. Closing it releases the client instead of closing it.
+     */
+    private static final class Lease
+            extends CloseableHttpClient
+    {
+        private final PooledClient pooled;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Lease( final PooledClient pooled )
+        {
+            this.pooled = pooled;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute( final HttpHost target, final HttpRequest request,
+                                                   final HttpContext context )
+                throws IOException, ClientProtocolException
+        {
+            return pooled.client.execute( target, request, context );
+        }
+
+        @Override
+        public void close()
+        {
+            if ( released.compareAndSet( false, true ) )
+            {
+                pooled.release();
+            }
+        }
+
+        @Override
+        @SuppressWarnings( "deprecation" )
+        public HttpParams getParams()
+        {
+            return pooled.client.getParams();
+        }
+
+        @Override
+        @SuppressWarnings( "deprecation" )
+        public ClientConnectionManager getConnectionManager()
+        {
+            return pooled.client.getConnectionManager();
+        }
+    }
+}
@@ -19,17 +19,24 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.ClassUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.util.EntityUtils;
 import org.commonjava.maven.galley.TransferContentException;
 import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferManager;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
 import org.commonjava.maven.galley.transport.htcli.Http;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.commonjava.maven.galley.config.TransportMetricConfig;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
 import org.commonjava.maven.galley.transport.htcli.util.HttpUtil;
@@ -41,13 +48,18 @@ import java.util.Map;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static org.apache.commons.io.IOUtils.closeQuietly;
-import static org.apache.commons.io.IOUtils.copy;
+import static org.apache.commons.io.IOUtils.copyLarge;
 
 public final class HttpDownload
     extends AbstractHttpJob
     implements DownloadJob
 {
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // smaller interrupted downloads are simply restarted.
+    private static final long MIN_RESUME_BYTES = 1024 * 1024;
+
     private final Transfer target;
 
     private Map<Transfer, Long> transferSizes;
@@ -62,6 +74,10 @@ public final class HttpDownload
 
     private final TransportMetricConfig metricConfig;
 
+    private final Boolean acceptCompressed;
+
+    private long transferSize = -1;
+
 
     public HttpDownload( final String url, final HttpLocation location, final Transfer target,
                          final Map<Transfer, Long> transferSizes, final EventMetadata eventMetadata, final Http http,
@@ -76,7 +92,22 @@ public final class HttpDownload
                          final ObjectMapper mapper, final boolean deleteFilesOnPath,
                          final MetricRegistry metricRegistry, final TransportMetricConfig metricConfig )
     {
-        super( url, location, http );
+        this( url, location, target, transferSizes, eventMetadata, http, mapper, deleteFilesOnPath, metricRegistry,
+              metricConfig, null );
+    }
+
+    /**
+     * @param acceptCompressed whether to ask for the content compressed; null leaves it to the HTTP client
+     */
+    public HttpDownload( final String url, final HttpLocation location, final Transfer target,
+                         final Map<Transfer, Long> transferSizes, final EventMetadata eventMetadata, final Http http,
+                         final ObjectMapper mapper, final boolean deleteFilesOnPath,
+                         final MetricRegistry metricRegistry, final TransportMetricConfig metricConfig,
+                         final Boolean acceptCompressed )
+    {
+        // a 416 is only expected in answer to a resumed download, and is handled by starting over.
+        super( url, location, http, HttpStatus.SC_OK, HttpStatus.SC_PARTIAL_CONTENT, HttpStatus.SC_NOT_MODIFIED,
+               HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
         this.target = target;
         this.transferSizes = transferSizes;
         this.eventMetadata = eventMetadata;
@@ -84,6 +115,7 @@ public final class HttpDownload
         this.deleteFilesOnPath = deleteFilesOnPath;
         this.metricRegistry = metricRegistry;
         this.metricConfig = metricConfig;
+        this.acceptCompressed = acceptCompressed;
     }
 
     @Override
@@ -130,16 +162,15 @@ public final class HttpDownload
 
     private DownloadJob doCall()
     {
-        request = new HttpGet( url );
         String oldName = Thread.currentThread().getName();
         try
         {
             String newName = oldName + ": GET " + url;
             Thread.currentThread().setName( newName );
-            if ( executeHttp() )
+            if ( !download() )
             {
-                transferSizes.put( target, HttpUtil.getContentLength( response ) );
-                writeTarget();
+                // the kept bytes were dropped, so this asks for the whole file.
+                download();
             }
         }
         catch ( final TransferException e )
@@ -159,16 +190,295 @@ public final class HttpDownload
         return this;
     }
 
+    /**
+     * @return false if a resumed download was refused with a 416, in which case the kept bytes are discarded and the
+     * caller should ask again for the whole file
+     */
+    private boolean download()
+        throws TransferException
+    {
+        request = new HttpGet( url );
+        if ( acceptCompressed != null )
+        {
+            acceptEncoding( acceptCompressed );
+        }
+
+        addConditionalHeaders();
+
+        final Transfer partial = target.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME );
+        final long resumeFrom = addRangeHeaders( partial );
+        if ( executeHttp() )
+        {
+            final int sc = response.getStatusLine().getStatusCode();
+            if ( sc == HttpStatus.SC_NOT_MODIFIED )
+            {
+                logger.debug( "Cached copy is up to date: {}", target );
+            }
+            else if ( sc == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE )
+            {
+                if ( resumeFrom < 1 )
+                {
+                    throw new TransferLocationException( location,
+                                                         "Server misconfigured or not responding normally for url %s: '%s'",
+                                                         url, response.getStatusLine() );
+                }
+
+                // e.g. the remote file shrank below the kept bytes without its validator changing.
+                logger.debug( "Cannot resume download of: {} from byte: {}. Downloading the whole file.", url,
+                              resumeFrom );
+                discardPartial( partial );
+                cleanup();
+                return false;
+            }
+            else if ( sc == HttpStatus.SC_PARTIAL_CONTENT )
+            {
+                final Header contentRange = response.getFirstHeader( HttpHeaders.CONTENT_RANGE );
+                if ( resumeFrom < 1 || getRangeStart( contentRange ) != resumeFrom )
+                {
+                    discardPartial( partial );
+                    throw new TransferContentException( target.getResource(),
+                                                        "Unexpected partial content for: %s. Requested bytes from: %s, got: %s",
+                                                        url, resumeFrom, contentRange );
+                }
+
+                logger.debug( "Resuming download of: {} from byte: {}", url, resumeFrom );
+                transferSize = getResumedSize( contentRange, resumeFrom );
+                if ( transferSize > -1 )
+                {
+                    transferSizes.put( target, transferSize );
+                }
+
+                writeTarget( partial, resumeFrom );
+                discardPartial( partial );
+            }
+            else
+            {
+                if ( resumeFrom > 0 )
+                {
+                    // the remote file changed, or the server ignores ranges; either way this is the whole file.
+                    logger.debug( "Server sent all of: {} instead of resuming. Discarding the kept bytes.", url );
+                    discardPartial( partial );
+                }
+
+                transferSize = HttpUtil.getContentLength( response );
+                transferSizes.put( target, transferSize );
+                writeTarget( partial, 0 );
+                discardPartial( partial );
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * When revalidating a cached target, make the GET conditional on the validators (ETag, Last-Modified) stored in its
+     * HTTP exchange metadata, so an unchanged file comes back as a 304 with no body.
+     */
+    private void addConditionalHeaders()
+    {
+        if ( eventMetadata == null || !Boolean.TRUE.equals( eventMetadata.get( TransferManager.REVALIDATE ) )
+                || !target.exists() )
+        {
+            return;
+        }
+
+        final HttpExchangeMetadata metadata = readExchangeMetadata();
+        if ( metadata == null )
+        {
+            logger.debug( "No HTTP exchange metadata for: {}. Revalidating with a plain GET.", target );
+            return;
+        }
+
+        final String etag = metadata.getETag();
+        if ( etag != null )
+        {
+            request.setHeader( HttpHeaders.IF_NONE_MATCH, etag );
+        }
+
+        final String lastModified = metadata.getLastModified();
+        if ( lastModified != null )
+        {
+            request.setHeader( HttpHeaders.IF_MODIFIED_SINCE, lastModified );
+        }
+    }
+
+    /**
+     * If an earlier attempt left part of the file behind, ask only for the rest of it. The request is conditional
+     * (If-Range) on the validator stored from that attempt, so a changed file comes back whole instead.
+     *
+     * @return the offset the rest of the file was requested from, or 0 for a full download
+     */
+    private long addRangeHeaders( final Transfer partial )
+    {
+        if ( partial == null || target.exists() || !partial.exists() )
+        {
+            return 0;
+        }
+
+        final long length = partial.length();
+        final String validator = getResumeValidator();
+        if ( length < 1 || validator == null )
+        {
+            discardPartial( partial );
+            return 0;
+        }
+
+        // byte offsets refer to the content as-is.
+        acceptEncoding( false );
+        request.setHeader( HttpHeaders.RANGE, "bytes=" + length + "-" );
+        request.setHeader( HttpHeaders.IF_RANGE, validator );
+        return length;
+    }
+
+    /**
+     * @return a validator that If-Range accepts: a strong ETag, or else the Last-Modified date
+     */
+    private String getResumeValidator()
+    {
+        final HttpExchangeMetadata metadata = readExchangeMetadata();
+        if ( metadata == null )
+        {
+            return null;
+        }
+
+        final String etag = metadata.getETag();
+        if ( etag != null && !etag.startsWith( "W/" ) )
+        {
+            return etag;
+        }
+
+        return metadata.getLastModified();
+    }
+
+    private HttpExchangeMetadata readExchangeMetadata()
+    {
+        if ( mapper == null )
+        {
+            return null;
+        }
+
+        final Transfer metaTxfr = target.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION );
+        if ( metaTxfr == null || !metaTxfr.exists() )
+        {
+            return null;
+        }
+
+        try (InputStream in = metaTxfr.openInputStream( false ))
+        {
+            return mapper.readValue( in, HttpExchangeMetadata.class );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to read HTTP exchange metadata: {}. Reason: {}", metaTxfr, e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * @return the size of the whole file: the total from Content-Range if the server gave one, or else the bytes kept
+     * plus the body's length; -1 if neither is known
+     */
+    private long getResumedSize( final Header contentRange, final long resumeFrom )
+    {
+        final String value = contentRange.getValue();
+        final int idx = value.indexOf( '/' );
+        if ( idx > -1 )
+        {
+            try
+            {
+                return Long.parseLong( value.substring( idx + 1 ).trim() );
+            }
+            catch ( final NumberFormatException e )
+            {
+                // "*": the server doesn't know the total.
+            }
+        }
+
+        return response.getFirstHeader( HttpHeaders.CONTENT_LENGTH ) == null ?
+                -1 :
+                resumeFrom + HttpUtil.getContentLength( response );
+    }
+
+    private static long getRangeStart( final Header contentRange )
+    {
+        // e.g. "bytes 1048576-2097151/2097152"
+        if ( contentRange == null )
+        {
+            return -1;
+        }
+
+        final String value = contentRange.getValue().trim();
+        final int start = value.indexOf( ' ' );
+        final int end = value.indexOf( '-' );
+        if ( start < 0 || end <= start )
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Long.parseLong( value.substring( start + 1, end ).trim() );
+        }
+        catch ( final NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * After a failed write, keep what was written so the next attempt can resume, if it's big enough to be worth it
+     * and there is a validator to check the remote file against.
+     */
+    private boolean keepPartial( final Transfer partial )
+    {
+        if ( partial == null || !target.exists() || target.length() < MIN_RESUME_BYTES
+                || getResumeValidator() == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            target.moveTo( partial );
+            return true;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to keep partial download: {} as: {}. Reason: {}", target, partial, e.getMessage() );
+            return false;
+        }
+    }
+
+    private void discardPartial( final Transfer partial )
+    {
+        if ( partial == null || !partial.exists() )
+        {
+            return;
+        }
+
+        try
+        {
+            partial.delete( false );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to delete partial download: {}. Reason: {}", partial, e.getMessage() );
+        }
+    }
+
     @Override
     protected ObjectMapper getMetadataObjectMapper()
     {
         return mapper;
     }
 
+    /**
+     * @return the size of the whole file, also when only the rest of it was downloaded
+     */
     @Override
     public long getTransferSize()
     {
-        return response == null ? -1 : HttpUtil.getContentLength( response );
+        return transferSize;
     }
 
     @Override
@@ -183,7 +493,11 @@ public final class HttpDownload
         return target;
     }
 
-    private void writeTarget()
+    /**
+     * @param partial bytes kept from an interrupted attempt
+     * @param resumeFrom how many of those bytes come before the response body; 0 if the response is the whole file
+     */
+    private void writeTarget( final Transfer partial, final long resumeFrom )
         throws TransferException
     {
         OutputStream out = null;
@@ -197,6 +511,15 @@ public final class HttpDownload
 
                 in = entity.getContent();
                 out = target.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata, deleteFilesOnPath );
+                if ( resumeFrom > 0 )
+                {
+                    // replay the kept bytes first, so decorators (checksums, events) see the whole file.
+                    try (InputStream kept = partial.openInputStream( false ))
+                    {
+                        doCopy( kept, out );
+                    }
+                }
+
                 doCopy( in, out );
                 logger.info( "Ensuring all HTTP data is consumed..." );
             }
@@ -207,8 +530,17 @@ public final class HttpDownload
                 ConcreteResource resource = target.getResource();
                 try
                 {
-                    logger.debug( "Failed to write to local proxy store:{}. Deleting partial target file:{}", eOrig,
-                                  target.getPath() );
+                    if ( keepPartial( partial ) )
+                    {
+                        logger.debug( "Failed to write to local proxy store:{}. Kept partial target file:{} to resume from",
+                                      eOrig, partial.getPath() );
+                    }
+                    else
+                    {
+                        logger.debug( "Failed to write to local proxy store:{}. Deleting partial target file:{}", eOrig,
+                                      target.getPath() );
+                    }
+
                     target.delete();
                 }
                 catch ( IOException eDel )
@@ -232,15 +564,16 @@ public final class HttpDownload
     }
 
     /**
-     * Break out {@link org.apache.commons.io.IOUtils#copy(InputStream, OutputStream)} so we can decorate it with Byteman
-     * rules to test network errors.
+     * Break out {@link org.apache.commons.io.IOUtils#copyLarge(InputStream, OutputStream, byte[])} so we can decorate it
+     * with Byteman rules to test network errors. The buffer is larger than IOUtils' default, so each write down the
+     * decorator chain (and each checksum update) covers more data.
      * @param in
      * @param out
      */
     private void doCopy( final InputStream in, final OutputStream out )
             throws IOException
     {
-        copy( in, out );
+        copyLarge( in, out, new byte[COPY_BUFFER_SIZE] );
     }
 
     private void closeAllQuietly( final InputStream in, final OutputStream out )
@@ -15,26 +15,28 @@
  */
 package org.commonjava.maven.galley.transport.htcli.internal;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.commons.io.IOUtils.closeQuietly;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.ListingResult;
 import org.commonjava.maven.galley.spi.transport.ListingJob;
 import org.commonjava.maven.galley.transport.htcli.Http;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
+import org.commonjava.maven.galley.util.HtmlAnchorParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,15 +67,13 @@ public class HttpListing
     {
         request = new HttpGet( url );
 
+        // index pages are markup, and compress well.
+        acceptEncoding( true );
+
         // return null if something goes wrong, after setting the error.
-        // What we should be doing here is trying to retrieve the html directory
-        // listing, then parse out the filenames from that...
-        //
-        // They'll be links, so that's something to key in on.
-        //
-        // I'm wondering about this:
-        // http://jsoup.org/cookbook/extracting-data/selector-syntax
-        // the dependency is: org.jsoup:jsoup:1.7.2
+        // Links are read off the page as it streams in, rather than loading
+        // and parsing the whole page; big directories run to tens of
+        // thousands of entries.
 
         ListingResult result = null;
         InputStream in = null;
@@ -86,46 +86,27 @@ public class HttpListing
 
             if ( executeHttp() )
             {
-                in = response.getEntity().getContent();
-                String listing = IOUtils.toString( in );
-                Logger logger = LoggerFactory.getLogger( getClass() );
-                logger.debug( "Got raw listing content:\n\n{}\n\n", listing );
+                final HttpEntity entity = response.getEntity();
+                final Charset charset = ContentType.getLenientOrDefault( entity ).getCharset();
+                in = entity.getContent();
 
+                final URL url = new URL( this.url );
                 final ArrayList<String> al = new ArrayList<>();
 
-                // TODO: Charset!!
-                Document doc = Jsoup.parse( listing, url );
-//                try
-//                {
-//                }
-//                catch ( final IOException e )
-//                {
-//                    this.error =
-//                            new TransferLocationException( resource.getLocation(), "Invalid HTML in: {}. Reason: {}", e, url, e.getMessage() );
-//                }
-
-                if ( doc != null )
-                {
-                    for ( final Element link : doc.select( "a" ) )
-                    {
-                        String linkText = link.text();
-                        String linkHref = link.attr( "href" );
-
-                        URL url = new URL( this.url );
-
-                        boolean sameServer = isSameServer( url, linkHref );
-                        boolean subpath = isSubpath( url, linkHref );
-
-                        if ( ( sameServer && subpath )
-                                && ( linkHref.endsWith( linkText ) || linkHref.endsWith( linkText + '/' ) )
-                                && !EXCLUDES.contains( linkText ) )
-                        {
-                            al.add( linkText );
-                        }
-                    }
-
-                    result = new ListingResult( resource, al.toArray( new String[al.size()] ) );
-                }
+                new HtmlAnchorParser( new InputStreamReader( in, charset == null ? UTF_8 : charset ) ).parse(
+                        ( linkHref, linkText ) -> {
+                            if ( linkHref != null && isSameServer( url, linkHref ) && isSubpath( url, linkHref )
+                                    && ( linkHref.endsWith( linkText ) || linkHref.endsWith( linkText + '/' ) )
+                                    && !EXCLUDES.contains( linkText ) )
+                            {
+                                al.add( linkText );
+                            }
+                        } );
+
+                Logger logger = LoggerFactory.getLogger( getClass() );
+                logger.debug( "Got {} entries in listing: {}", al.size(), this.url );
+
+                result = new ListingResult( resource, al.toArray( new String[al.size()] ) );
             }
         }
         catch ( final TransferException e )
@@ -153,15 +134,18 @@ public class HttpListing
 
     static boolean isSubpath( final URL url, final String linkHref )
     {
-        String linkPath;
-        try
-        {
-            URL linkUrl = new URL( linkHref );
-            linkPath = linkUrl.getPath();
-        }
-        catch ( MalformedURLException ex )
+        String linkPath = linkHref;
+        if ( hasProtocol( linkHref ) )
         {
-            linkPath = linkHref;
+            try
+            {
+                URL linkUrl = new URL( linkHref );
+                linkPath = linkUrl.getPath();
+            }
+            catch ( MalformedURLException ex )
+            {
+                linkPath = linkHref;
+            }
         }
 
         boolean valid = linkPath.length() > 0
@@ -179,17 +163,24 @@ public class HttpListing
         String linkProtocol = null;
         String linkAuthority = null;
         Logger logger = LoggerFactory.getLogger( HttpListing.class );
-        try
+        if ( hasProtocol( linkHref ) )
         {
-            URL linkUrl = new URL( linkHref );
-            linkProtocol = linkUrl.getProtocol();
-            linkAuthority = linkUrl.getAuthority();
+            try
+            {
+                URL linkUrl = new URL( linkHref );
+                linkProtocol = linkUrl.getProtocol();
+                linkAuthority = linkUrl.getAuthority();
 
-            logger.debug( "Absolute URL: {} is on the same server.", linkHref );
+                logger.debug( "Absolute URL: {} is on the same server.", linkHref );
+            }
+            catch ( MalformedURLException ex )
+            {
+                // linkHref is a relative path on the same server
+                logger.debug( "URL is relative, must be on the same server." );
+            }
         }
-        catch ( MalformedURLException ex )
+        else
         {
-            // linkHref is a relative path on the same server
             logger.debug( "URL is relative, must be on the same server." );
         }
 
@@ -201,4 +192,13 @@ public class HttpListing
         return valid;
     }
 
+    /**
+     * Relative links (most of a directory page) have no protocol, and parsing them as URLs only to have that fail is
+     * costly when done for every entry.
+     */
+    private static boolean hasProtocol( final String linkHref )
+    {
+        return linkHref.indexOf( ':' ) > 0;
+    }
+
 }
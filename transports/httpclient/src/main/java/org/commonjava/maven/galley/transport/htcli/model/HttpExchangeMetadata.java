@@ -26,6 +26,10 @@ import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.commonjava.maven.galley.io.SpecialPathConstants;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+// derived values (lastModified, contentLength, ...) are written out too, but only the headers are read back.
+@JsonIgnoreProperties( ignoreUnknown = true )
 public class HttpExchangeMetadata
 {
 
@@ -33,6 +37,8 @@ public class HttpExchangeMetadata
 
     protected static final String LAST_MODIFIED = "LAST-MODIFIED";
 
+    protected static final String ETAG = "ETAG";
+
     protected static final Object CONTENT_LENGTH = "CONTENT-LENGTH";
 
     protected static final Object CONTENT_TYPE = "CONTENT-TYPE";
@@ -126,6 +132,17 @@ public class HttpExchangeMetadata
         return values.get( 0 );
     }
 
+    public String getETag()
+    {
+        final List<String> values = responseHeaders.get( ETAG );
+        if ( values == null || values.isEmpty() )
+        {
+            return null;
+        }
+
+        return values.get( 0 );
+    }
+
     public Long getContentLength()
     {
         final List<String> values = responseHeaders.get( CONTENT_LENGTH );
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class HttpClientPoolTest
+{
+
+    private final List<CountingClient> built = new ArrayList<>();
+
+    private final HttpClientPool.ClientFactory factory = () -> {
+        final CountingClient client = new CountingClient();
+        built.add( client );
+        return client;
+    };
+
+    @Test
+    public void leasesShareClientAndReleaseWithoutClosing()
+            throws Exception
+    {
+        final HttpClientPool pool = new HttpClientPool();
+
+        final CloseableHttpClient first = pool.lease( "a", factory );
+        final CloseableHttpClient second = pool.lease( "a", factory );
+        assertThat( pool.getLeasedCount(), equalTo( 2 ) );
+
+        first.close();
+        first.close();
+        second.close();
+
+        pool.lease( "b", factory ).close();
+
+        assertThat( built.size(), equalTo( 2 ) );
+        assertThat( built.get( 0 ).closed, equalTo( 0 ) );
+        assertThat( pool.getCreatedCount(), equalTo( 2L ) );
+        assertThat( pool.getReusedCount(), equalTo( 1L ) );
+        assertThat( pool.getLeasedCount(), equalTo( 0 ) );
+
+        pool.close();
+        assertThat( built.get( 0 ).closed, equalTo( 1 ) );
+        assertThat( built.get( 1 ).closed, equalTo( 1 ) );
+        assertThat( pool.getClientCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void clientIsReplacedAfterMaxLeasesOnceReleased()
+            throws Exception
+    {
+        final HttpClientPool pool = new HttpClientPool( HttpClientPool.DEFAULT_IDLE_MILLIS, 2 );
+
+        final CloseableHttpClient first = pool.lease( "a", factory );
+        final CloseableHttpClient second = pool.lease( "a", factory );
+        final CloseableHttpClient third = pool.lease( "a", factory );
+
+        assertThat( built.size(), equalTo( 2 ) );
+
+        first.close();
+        assertThat( built.get( 0 ).closed, equalTo( 0 ) );
+        second.close();
+        assertThat( built.get( 0 ).closed, equalTo( 1 ) );
+
+        third.close();
+        assertThat( built.get( 1 ).closed, equalTo( 0 ) );
+    }
+
+    @Test
+    public void idleClientsAreEvicted()
+            throws Exception
+    {
+        final HttpClientPool pool = new HttpClientPool( 0, HttpClientPool.DEFAULT_MAX_LEASES );
+
+        final CloseableHttpClient busy = pool.lease( "busy", factory );
+        pool.lease( "idle", factory ).close();
+        Thread.sleep( 5 );
+
+        pool.evictIdle();
+
+        assertThat( built.get( 0 ).closed, equalTo( 0 ) );
+        assertThat( built.get( 1 ).closed, equalTo( 1 ) );
+        assertThat( pool.getEvictedCount(), equalTo( 1L ) );
+        assertThat( pool.getClientCount(), equalTo( 1 ) );
+
+        busy.close();
+    }
+
+    private static final class CountingClient
+            extends CloseableHttpClient
+    {
+        private int closed;
+
+        @Override
+        protected CloseableHttpResponse doExecute( final HttpHost target, final HttpRequest request,
+                                                   final HttpContext context )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            closed++;
+        }
+
+        @Override
+        @SuppressWarnings( "deprecation" )
+        public HttpParams getParams()
+        {
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings( "deprecation" )
+        public ClientConnectionManager getConnectionManager()
+        {
+            return null;
+        }
+    }
+}
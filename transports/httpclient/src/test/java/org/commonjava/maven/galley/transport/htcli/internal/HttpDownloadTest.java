@@ -22,11 +22,14 @@ import static org.junit.Assert.assertThat;
 
 import com.codahale.metrics.ConsoleReporter;
 import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.io.IOUtils;
 import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferManager;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
 import org.commonjava.maven.galley.config.TransportMetricConfig;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
@@ -46,12 +49,16 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 @RunWith( BMUnitRunner.class )
 @BMUnitConfig( debug = true )
@@ -259,6 +266,209 @@ public class HttpDownloadTest
         assertThat( fixture.getAccessesFor( urlPath ), equalTo( 2 ) );
     }
 
+    @Test
+    public void interruptedDownloadResumesWithRangeRequest()
+            throws Exception
+    {
+        final byte[] content = new byte[3 * 1024 * 1024];
+        new Random( 42 ).nextBytes( content );
+        final int firstChunk = 2 * 1024 * 1024;
+        final String path = "/path/to/large.jar";
+        final String etag = "\"large-v1\"";
+        final List<String> ranges = new ArrayList<>();
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                final String range = httpServletRequest.getHeader( "Range" );
+                ranges.add( range );
+                httpServletResponse.setHeader( "ETag", etag );
+                if ( range == null )
+                {
+                    // quit transferring partway through the file
+                    httpServletResponse.setStatus( 200 );
+                    httpServletResponse.setHeader( "Content-Length", Integer.toString( content.length ) );
+                    httpServletResponse.getOutputStream().write( content, 0, firstChunk );
+                    return;
+                }
+
+                assertThat( httpServletRequest.getHeader( "If-Range" ), equalTo( etag ) );
+                final int from = Integer.parseInt( range.substring( "bytes=".length(), range.length() - 1 ) );
+                httpServletResponse.setStatus( 206 );
+                httpServletResponse.setHeader( "Content-Range",
+                                               "bytes " + from + "-" + ( content.length - 1 ) + "/" + content.length );
+                httpServletResponse.setHeader( "Content-Length", Integer.toString( content.length - from ) );
+                httpServletResponse.getOutputStream().write( content, from, content.length - from );
+            }
+        } );
+
+        final String baseUri = fixture.getBaseUri();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "test", baseUri, true, true, true, true, null );
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                                            fixture.getHttp(), new ObjectMapper(), metricRegistry, metricConfig );
+        assertThat( dl.call().getError(), notNullValue() );
+        assertThat( transfer.exists(), equalTo( false ) );
+        assertThat( transfer.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME ).length(), equalTo( (long) firstChunk ) );
+
+        dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                               fixture.getHttp(), new ObjectMapper(), metricRegistry, metricConfig );
+        assertThat( dl.call().getError(), nullValue() );
+
+        assertThat( ranges, equalTo( Arrays.asList( null, "bytes=" + firstChunk + "-" ) ) );
+        assertThat( transfer.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME ).exists(), equalTo( false ) );
+        try (InputStream in = transfer.openInputStream())
+        {
+            assertThat( Arrays.equals( IOUtils.toByteArray( in ), content ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void unsatisfiableResumeFallsBackToFullDownload()
+            throws Exception
+    {
+        // the file shrank below the kept bytes, but kept its validator
+        assertResumeRefusalRestarts( 416, Arrays.asList( null, "bytes=" + ( 2 * 1024 * 1024 ) + "-", null ) );
+    }
+
+    @Test
+    public void ignoredRangeReplacesKeptBytes()
+            throws Exception
+    {
+        // the server doesn't do ranges, and answers with the whole file
+        assertResumeRefusalRestarts( 200, Arrays.asList( null, "bytes=" + ( 2 * 1024 * 1024 ) + "-" ) );
+    }
+
+    /**
+     * Interrupt a download partway, then answer its ranged retry with <code>rangedStatus</code> instead of a 206. The
+     * kept bytes must be dropped, and the file downloaded whole.
+     */
+    private void assertResumeRefusalRestarts( final int rangedStatus, final List<String> expectedRanges )
+            throws Exception
+    {
+        final byte[] content = new byte[3 * 1024 * 1024];
+        new Random( 42 ).nextBytes( content );
+        final int firstChunk = 2 * 1024 * 1024;
+        final String path = "/path/to/refused-" + rangedStatus + ".jar";
+        final String etag = "\"refused-v1\"";
+        final List<String> ranges = new ArrayList<>();
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                final String range = httpServletRequest.getHeader( "Range" );
+                ranges.add( range );
+                httpServletResponse.setHeader( "ETag", etag );
+                if ( range != null && rangedStatus == 416 )
+                {
+                    httpServletResponse.setStatus( 416 );
+                    httpServletResponse.setHeader( "Content-Range", "bytes */" + content.length );
+                    return;
+                }
+
+                httpServletResponse.setStatus( 200 );
+                httpServletResponse.setHeader( "Content-Length", Integer.toString( content.length ) );
+                if ( ranges.size() == 1 )
+                {
+                    // quit transferring partway through the file
+                    httpServletResponse.getOutputStream().write( content, 0, firstChunk );
+                    return;
+                }
+
+                httpServletResponse.getOutputStream().write( content );
+            }
+        } );
+
+        final String baseUri = fixture.getBaseUri();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "test", baseUri, true, true, true, true, null );
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                                            fixture.getHttp(), new ObjectMapper(), metricRegistry, metricConfig );
+        assertThat( dl.call().getError(), notNullValue() );
+        assertThat( transfer.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME ).length(), equalTo( (long) firstChunk ) );
+
+        dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                               fixture.getHttp(), new ObjectMapper(), metricRegistry, metricConfig );
+        assertThat( dl.call().getError(), nullValue() );
+
+        assertThat( ranges, equalTo( expectedRanges ) );
+        assertThat( transfer.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME ).exists(), equalTo( false ) );
+        try (InputStream in = transfer.openInputStream())
+        {
+            assertThat( Arrays.equals( IOUtils.toByteArray( in ), content ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void compressionIsRequestedOnlyWhenAccepted()
+            throws Exception
+    {
+        final String content = "<metadata><versioning><versions><version>1.0</version></versions></versioning></metadata>";
+        final List<String> encodings = new ArrayList<>();
+
+        final ExpectationHandler handler = new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                final String accepted = httpServletRequest.getHeader( "Accept-Encoding" );
+                encodings.add( accepted );
+                httpServletResponse.setStatus( 200 );
+                if ( accepted != null && accepted.contains( "gzip" ) )
+                {
+                    httpServletResponse.setHeader( "Content-Encoding", "gzip" );
+                    try (GZIPOutputStream gzip = new GZIPOutputStream( httpServletResponse.getOutputStream() ))
+                    {
+                        gzip.write( content.getBytes() );
+                    }
+                }
+                else
+                {
+                    httpServletResponse.getOutputStream().write( content.getBytes() );
+                }
+            }
+        };
+
+        final String metadataPath = "/org/foo/maven-metadata.xml";
+        final String artifactPath = "/org/foo/1.0/foo-1.0.jar";
+        fixture.getServer().expect( "GET", fixture.formatUrl( metadataPath ), handler );
+        fixture.getServer().expect( "GET", fixture.formatUrl( artifactPath ), handler );
+
+        final String baseUri = fixture.getBaseUri();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "test", baseUri, true, true, true, true, null );
+
+        for ( final String path : Arrays.asList( metadataPath, artifactPath ) )
+        {
+            final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+            final HttpDownload dl =
+                    new HttpDownload( fixture.formatUrl( path ), location, transfer, new HashMap<Transfer, Long>(),
+                                      new EventMetadata(), fixture.getHttp(), new ObjectMapper(), true, metricRegistry,
+                                      metricConfig, path.equals( metadataPath ) );
+            assertThat( dl.call().getError(), nullValue() );
+
+            try (InputStream in = transfer.openInputStream())
+            {
+                assertThat( IOUtils.toString( in ), equalTo( content ) );
+            }
+        }
+
+        assertThat( encodings, equalTo( Arrays.asList( "gzip, deflate", "identity" ) ) );
+    }
+
     @Test
     public void simpleRetrieveOfAvailableUrl()
         throws Exception
@@ -348,6 +558,65 @@ public class HttpDownloadTest
         assertThat( fixture.getAccessesFor( postPath ), equalTo( 1 ) );
     }
 
+    @Test
+    public void revalidateSendsValidatorsAndKeepsCachedCopyWhenNotModified()
+        throws Exception
+    {
+        final String content = "This is some content " + System.currentTimeMillis();
+        final String path = "/path/to/revalidated.txt";
+        final String etag = "\"v1\"";
+        final List<String> conditions = new ArrayList<>();
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                final String ifNoneMatch = httpServletRequest.getHeader( "If-None-Match" );
+                conditions.add( ifNoneMatch );
+                if ( etag.equals( ifNoneMatch ) )
+                {
+                    httpServletResponse.setStatus( 304 );
+                    return;
+                }
+
+                httpServletResponse.setStatus( 200 );
+                httpServletResponse.setHeader( "ETag", etag );
+                httpServletResponse.getWriter().write( content );
+            }
+        } );
+
+        final String baseUri = fixture.getBaseUri();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "test", baseUri, true, true, true, true, null );
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                                            fixture.getHttp(), new ObjectMapper(), metricRegistry, metricConfig );
+        assertThat( dl.call().getError(), nullValue() );
+
+        final EventMetadata revalidate = new EventMetadata().set( TransferManager.REVALIDATE, Boolean.TRUE );
+        dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), revalidate, fixture.getHttp(),
+                               new ObjectMapper(), metricRegistry, metricConfig );
+        assertThat( dl.call().getError(), nullValue() );
+
+        assertThat( conditions, equalTo( Arrays.asList( null, etag ) ) );
+
+        try (InputStream in = transfer.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+
+        try (InputStream in = transfer.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION ).openInputStream())
+        {
+            final HttpExchangeMetadata metadata = new ObjectMapper().readValue( in, HttpExchangeMetadata.class );
+            assertThat( metadata.getResponseStatusCode(), equalTo( 200 ) );
+            assertThat( metadata.getETag(), equalTo( etag ) );
+        }
+    }
+
     @Test
     public void simpleRetrieveOfMissingUrl()
         throws Exception
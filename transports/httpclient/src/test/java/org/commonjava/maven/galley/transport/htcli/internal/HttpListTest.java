@@ -22,7 +22,6 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
 import java.util.Arrays;
-import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -88,6 +87,9 @@ public class HttpListTest
     };
     /* @formatter:on */
 
+    static final String NEXUS_SWITCHYARD_URL =
+        "https://repository.jboss.org/nexus/content/groups/public/org/switchyard/switchyard-runtime/1.0.0.Final/";
+
     @Rule
     public HttpTestFixture fixture = new HttpTestFixture( "list-basic" );
 
@@ -129,35 +131,6 @@ public class HttpListTest
         return IOUtils.toString( stream );
     }
 
-    @Test
-    public void simpleCentralListing_WriteListingFile()
-        throws Exception
-    {
-        final String dir = "central-btm/";
-        final String fname = dir + "index.html";
-        final String listingFname = dir + ".listing.txt";
-
-        final String url = fixture.formatUrl( fname );
-        final String body = getBody( fname );
-        fixture.getServer()
-               .expect( url, 200, body );
-
-        final SimpleHttpLocation location = new SimpleHttpLocation( "test", url, true, true, true, true, null );
-        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, listingFname ) );
-
-        final HttpListing listing =
-            new HttpListing( url, new ConcreteResource( location, fname ), fixture.getHttp() );
-        final ListingResult result = listing.call();
-
-        assertThat( listing.getError(), nullValue() );
-        assertThat( result, notNullValue() );
-        assertThat( result.getListing(), notNullValue() );
-        assertTrue( Arrays.equals( centralbtm, result.getListing() ) );
-
-        final List<String> lines = IOUtils.readLines( transfer.openInputStream() );
-        assertTrue( "Listing file written incorrectly!", lines.equals( Arrays.asList( centralbtm ) ) );
-    }
-
     @Test
     public void simpleCentralListing_Missing()
         throws Exception
@@ -212,8 +185,9 @@ public class HttpListTest
         final String fname = dir + "index.html";
         final String listingFname = dir + ".listing.txt";
 
-        final String url = fixture.formatUrl( fname );
-        final String body = getBody( fname );
+        // Nexus links each entry by its absolute URL, so point them at the test server.
+        final String url = fixture.formatUrl( dir );
+        final String body = getBody( fname ).replace( NEXUS_SWITCHYARD_URL, url );
         fixture.getServer()
                .expect( url, 200, body );
 
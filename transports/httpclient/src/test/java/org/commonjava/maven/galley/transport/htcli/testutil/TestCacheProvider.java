@@ -24,7 +24,7 @@ import java.io.OutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.commonjava.maven.galley.cache.SimpleLockingSupport;
+import org.commonjava.maven.galley.cache.StripedLockingSupport;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
@@ -42,7 +42,7 @@ public class TestCacheProvider
 
     private final TransferDecoratorManager decorator;
 
-    private final SimpleLockingSupport lockingSupport = new SimpleLockingSupport();
+    private final StripedLockingSupport lockingSupport = new StripedLockingSupport();
 
     public TestCacheProvider( final File dir, final FileEventManager events, final TransferDecoratorManager decorator )
     {
@@ -231,49 +231,49 @@ public class TestCacheProvider
     @Override
     public boolean isReadLocked( final ConcreteResource resource )
     {
-        return lockingSupport.isLocked( resource );
+        return lockingSupport.isReadLocked( resource );
     }
 
     @Override
     public boolean isWriteLocked( final ConcreteResource resource )
     {
-        return lockingSupport.isLocked( resource );
+        return lockingSupport.isWriteLocked( resource );
     }
 
     @Override
     public void unlockRead( final ConcreteResource resource )
     {
-        lockingSupport.unlock( resource );
+        lockingSupport.unlockRead( resource );
     }
 
     @Override
     public void unlockWrite( final ConcreteResource resource )
     {
-        lockingSupport.unlock( resource );
+        lockingSupport.unlockWrite( resource );
     }
 
     @Override
     public void lockRead( final ConcreteResource resource )
     {
-        lockingSupport.lock( resource );
+        lockingSupport.lockRead( resource );
     }
 
     @Override
     public void lockWrite( final ConcreteResource resource )
     {
-        lockingSupport.lock( resource );
+        lockingSupport.lockWrite( resource );
     }
 
     @Override
     public void waitForWriteUnlock( final ConcreteResource resource )
     {
-        lockingSupport.waitForUnlock( resource );
+        lockingSupport.waitForWriteUnlock( resource );
     }
 
     @Override
     public void waitForReadUnlock( final ConcreteResource resource )
     {
-        lockingSupport.waitForUnlock( resource );
+        lockingSupport.waitForReadUnlock( resource );
     }
 
     @Override
@@ -186,6 +186,12 @@ public class TestSpecialPathManager implements SpecialPathManager
     @Override
     public SpecialPathInfo getSpecialPathInfo( String path )
     {
-        return path == null ? null : getSpecialPathInfo( null, path, SpecialPathConstants.PKG_TYPE_MAVEN );
+        return getSpecialPathInfo( path, SpecialPathConstants.PKG_TYPE_MAVEN );
+    }
+
+    @Override
+    public SpecialPathInfo getSpecialPathInfo( String path, String pkgType )
+    {
+        return path == null ? null : getSpecialPathInfo( null, path, pkgType );
     }
 }